@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.CashierPurchase;
+import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.iab.InAppBillingConstants;
+
+/**
+ * Fixtures shared by the benchmarks. The key pair is the same test key pair used by the fake
+ * billing APIs, so signatures produced here verify just like the ones from the fake checkout.
+ */
+final class BenchmarkData {
+  static final String TEST_PRIVATE_KEY =
+      "MIICdgIBADANBgkqhkiG9w0BAQEFAASCAmAwggJcAgEAAoGBALXolIcA1LIcYDnO\n" +
+          "2nfalbkOD2UAQ3KfqsdEGLddG2rW8Cyl2LIyiWVvQ6bp2q5qBoYCds9lBQT21uo1\n" +
+          "VHTcv4mnaLfdBjMlzecrK8y1FzRLKFXyoMqiau8wunFeqFsdzHQ774PbYyNgMGdr\n" +
+          "zUDXqIdQONL8Eq/0pgddk07uNxwbAgMBAAECgYAJInvK57zGkOw4Gu4XlK9uEomt\n" +
+          "Xb0FVYVC6mV/V7qXu+FlrJJcKHOD13mDOT0VAxf+xMLomT8OR8L1EeaC087+aeza\n" +
+          "twYUVx4d+J0cQ8xo3ILwY5Bg4/Y4R0gIbdKupHbhPKaLSAiMxilNKqNfY8upT2X/\n" +
+          "S4OFDDbm7aK8SlGPEQJBAN+YlMb4PS54aBpWgeAP8fzgtOL0Q157bmoQyCokiWv3\n" +
+          "OGa89LraifCtlsqmmAxyFbPzO2cFHYvzzEeU86XZVFkCQQDQRWQ0QJKJsfqxEeYG\n" +
+          "rq9e3TkY8uQeHz8BmgxRcYC0v43bl9ggAJAzh9h9o0X9da1YzkoQ0/cWUp5NK95F\n" +
+          "93WTAkEAxqm1/rcO/RwEOuqDyIXCVxF8Bm5K8UawCtNQVYlTBDeKyFW5B9AmYU6K\n" +
+          "vRGZ5Oz0dYd2TwlPgEqkRTGF7eSUOQJAfyK85oC8cz2oMMsiRdYAy8Hzht1Oj2y3\n" +
+          "g3zMJDNLRArix7fLgM2XOT2l1BwFL5HUPa+/2sHpxUCtzaIHz2Id7QJATyF+fzUR\n" +
+          "eVw04ogIsOIdG0ECrN5/3g9pQnAjxcReQ/4KVCpIE8lQFYjAzQYUkK9VOjX9LYp9\n" +
+          "DGEnpooCco1ZjA==";
+
+  static final String TEST_PUBLIC_KEY =
+      "MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQC16JSHANSyHGA5ztp32pW5Dg9l\n" +
+          "AENyn6rHRBi3XRtq1vAspdiyMollb0Om6dquagaGAnbPZQUE9tbqNVR03L+Jp2i3\n" +
+          "3QYzJc3nKyvMtRc0SyhV8qDKomrvMLpxXqhbHcx0O++D22MjYDBna81A16iHUDjS\n" +
+          "/BKv9KYHXZNO7jccGwIDAQAB";
+
+  static final String SKU = "android.test.purchased";
+
+  /**
+   * A Google Play receipt as returned by both the In-App Billing v3 service and the
+   * Google Play Billing library
+   */
+  static final String PURCHASE_DATA = "{\"autoRenewing\":false," +
+      "\"orderId\":\"7429c5e9-f8e7-4332-b39d-60ce2c215fef\"," +
+      "\"packageName\":\"com.getkeepsafe.cashier.sample\"," +
+      "\"productId\":\"" + SKU + "\"," +
+      "\"purchaseTime\":1476077957823," +
+      "\"purchaseState\":0," +
+      "\"developerPayload\":\"hello-cashier!\"," +
+      "\"purchaseToken\":\"15d12f9b-82fc-4977-b49c-aef730a10463\"}";
+
+  static Product aProduct() {
+    return Product.create(
+        InAppBillingConstants.VENDOR_PACKAGE,
+        SKU,
+        "$0.99",
+        "USD",
+        "Test product",
+        "A product used for benchmarking",
+        false,
+        990_000L);
+  }
+
+  static CashierPurchase aPurchase() {
+    return CashierPurchase.create(aProduct(),
+        "7429c5e9-f8e7-4332-b39d-60ce2c215fef",
+        "15d12f9b-82fc-4977-b49c-aef730a10463",
+        PURCHASE_DATA,
+        "hello-cashier!");
+  }
+
+  private BenchmarkData() {
+  }
+}
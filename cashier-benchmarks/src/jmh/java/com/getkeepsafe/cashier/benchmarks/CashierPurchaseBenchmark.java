@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.CashierPurchase;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@State(Scope.Thread)
+public class CashierPurchaseBenchmark {
+  /** Number of purchases in the batch benchmarks, which model persisting a whole inventory */
+  private static final int BATCH_SIZE = 100;
+
+  private CashierPurchase purchase;
+  private JSONObject json;
+  private String jsonString;
+  private List<CashierPurchase> batch;
+  private String batchJsonString;
+  private byte[] batchBytes;
+
+  @Setup
+  public void setup() throws IOException, JSONException {
+    purchase = BenchmarkData.aPurchase();
+    json = purchase.toJson();
+    jsonString = json.toString();
+    batch = Collections.nCopies(BATCH_SIZE, purchase);
+    batchJsonString = batchToJsonString();
+    batchBytes = batchToBytes();
+  }
+
+  @Benchmark
+  public CashierPurchase createFromJson() throws JSONException {
+    return CashierPurchase.create(json);
+  }
+
+  @Benchmark
+  public CashierPurchase createFromString() throws JSONException {
+    return CashierPurchase.create(jsonString);
+  }
+
+  @Benchmark
+  public JSONObject toJson() throws JSONException {
+    return purchase.toJson();
+  }
+
+  @Benchmark
+  public String toJsonString() throws JSONException {
+    return purchase.toJson().toString();
+  }
+
+  @Benchmark
+  public CashierPurchase createFromStream() throws IOException {
+    return CashierPurchase.create(new JsonReader(new StringReader(jsonString)));
+  }
+
+  @Benchmark
+  public String writeJson() throws IOException {
+    final StringWriter out = new StringWriter();
+    purchase.writeJson(new JsonWriter(out));
+    return out.toString();
+  }
+
+  @Benchmark
+  public String batchToJsonString() throws JSONException {
+    final JSONArray array = new JSONArray();
+    for (final CashierPurchase purchase : batch) {
+      array.put(purchase.toJson());
+    }
+    return array.toString();
+  }
+
+  @Benchmark
+  public String batchWriteJson() throws IOException {
+    final StringWriter out = new StringWriter();
+    final JsonWriter writer = new JsonWriter(out);
+    writer.beginArray();
+    for (final CashierPurchase purchase : batch) {
+      purchase.writeJson(writer);
+    }
+    writer.endArray();
+    return out.toString();
+  }
+
+  @Benchmark
+  public List<CashierPurchase> batchCreateFromString() throws JSONException {
+    final JSONArray array = new JSONArray(batchJsonString);
+    final List<CashierPurchase> purchases = new ArrayList<>(array.length());
+    for (int i = 0; i < array.length(); i++) {
+      purchases.add(CashierPurchase.create(array.getJSONObject(i)));
+    }
+    return purchases;
+  }
+
+  @Benchmark
+  public List<CashierPurchase> batchCreateFromStream() throws IOException {
+    final JsonReader reader = new JsonReader(new StringReader(batchJsonString));
+    final List<CashierPurchase> purchases = new ArrayList<>(BATCH_SIZE);
+    reader.beginArray();
+    while (reader.hasNext()) {
+      purchases.add(CashierPurchase.create(reader));
+    }
+    reader.endArray();
+    return purchases;
+  }
+
+  @Benchmark
+  public byte[] batchToBytes() {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeVarint(batch.size());
+    for (final CashierPurchase purchase : batch) {
+      purchase.writeTo(writer);
+    }
+    return writer.toByteArray();
+  }
+
+  @Benchmark
+  public List<CashierPurchase> batchCreateFromBytes() throws IOException {
+    final BinaryReader reader = new BinaryReader(batchBytes);
+    final int count = reader.readSize();
+    final List<CashierPurchase> purchases = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      purchases.add(CashierPurchase.create(reader));
+    }
+    return purchases;
+  }
+}
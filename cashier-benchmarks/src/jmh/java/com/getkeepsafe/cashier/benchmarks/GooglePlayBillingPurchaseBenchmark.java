@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.billing.GooglePlayBillingPurchase;
+import com.getkeepsafe.cashier.billing.GooglePlayBillingSecurity;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class GooglePlayBillingPurchaseBenchmark {
+  private Product product;
+  private com.android.billingclient.api.Purchase googlePlayPurchase;
+
+  @Setup
+  public void setup() throws JSONException {
+    product = BenchmarkData.aProduct();
+    final String signature =
+        GooglePlayBillingSecurity.sign(BenchmarkData.TEST_PRIVATE_KEY, BenchmarkData.PURCHASE_DATA);
+    googlePlayPurchase = new com.android.billingclient.api.Purchase(BenchmarkData.PURCHASE_DATA, signature);
+  }
+
+  @Benchmark
+  public GooglePlayBillingPurchase create() throws JSONException {
+    return GooglePlayBillingPurchase.create(product, googlePlayPurchase);
+  }
+}
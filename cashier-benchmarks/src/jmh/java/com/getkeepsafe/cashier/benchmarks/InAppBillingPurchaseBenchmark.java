@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.iab.InAppBillingPurchase;
+import com.getkeepsafe.cashier.iab.InAppBillingSecurity;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+@State(Scope.Thread)
+public class InAppBillingPurchaseBenchmark {
+  private Product product;
+  private String signature;
+  private InAppBillingPurchase purchase;
+  private JSONObject json;
+  private String jsonString;
+
+  @Setup
+  public void setup() throws JSONException {
+    product = BenchmarkData.aProduct();
+    signature = InAppBillingSecurity.sign(BenchmarkData.TEST_PRIVATE_KEY, BenchmarkData.PURCHASE_DATA);
+    purchase = InAppBillingPurchase.create(product, BenchmarkData.PURCHASE_DATA, signature);
+    json = purchase.toJson();
+    jsonString = json.toString();
+  }
+
+  /**
+   * Building a purchase from a raw Google Play receipt, as done for every purchase returned by
+   * an inventory query
+   */
+  @Benchmark
+  public InAppBillingPurchase createFromReceipt() throws JSONException {
+    return InAppBillingPurchase.create(product, BenchmarkData.PURCHASE_DATA, signature);
+  }
+
+  /**
+   * Restoring a purchase from its persisted JSON form
+   */
+  @Benchmark
+  public InAppBillingPurchase createFromJson() throws JSONException {
+    return InAppBillingPurchase.create(json);
+  }
+
+  /**
+   * Restoring a purchase from its persisted JSON text with the streaming reader
+   */
+  @Benchmark
+  public InAppBillingPurchase createFromStream() throws IOException {
+    return InAppBillingPurchase.create(new JsonReader(new StringReader(jsonString)));
+  }
+
+  @Benchmark
+  public JSONObject toJson() throws JSONException {
+    return purchase.toJson();
+  }
+
+  @Benchmark
+  public String writeJson() throws IOException {
+    final StringWriter out = new StringWriter();
+    purchase.writeJson(new JsonWriter(out));
+    return out.toString();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.Product;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class ProductBenchmark {
+  private Product product;
+  private JSONObject json;
+  private String jsonString;
+
+  @Setup
+  public void setup() throws JSONException {
+    product = BenchmarkData.aProduct();
+    json = product.toJson();
+    jsonString = product.toJsonString();
+  }
+
+  @Benchmark
+  public Product createFromJson() throws JSONException {
+    return Product.create(json);
+  }
+
+  @Benchmark
+  public Product createFromString() throws JSONException {
+    return Product.create(jsonString);
+  }
+
+  @Benchmark
+  public JSONObject toJson() throws JSONException {
+    return product.toJson();
+  }
+
+  @Benchmark
+  public String toJsonString() throws JSONException {
+    return product.toJsonString();
+  }
+}
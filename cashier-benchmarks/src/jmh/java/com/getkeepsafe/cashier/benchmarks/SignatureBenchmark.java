@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.benchmarks;
+
+import com.getkeepsafe.cashier.billing.GooglePlayBillingSecurity;
+import com.getkeepsafe.cashier.iab.InAppBillingSecurity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.PublicKey;
+
+/**
+ * Local receipt verification. The {@code String} key variants decode and parse the public key on
+ * every call, which is how the vendors currently verify each purchase.
+ */
+@State(Scope.Thread)
+public class SignatureBenchmark {
+  private String signature;
+  private PublicKey publicKey;
+
+  @Setup
+  public void setup() {
+    signature = GooglePlayBillingSecurity.sign(BenchmarkData.TEST_PRIVATE_KEY, BenchmarkData.PURCHASE_DATA);
+    publicKey = GooglePlayBillingSecurity.createPublicKey(BenchmarkData.TEST_PUBLIC_KEY);
+  }
+
+  @Benchmark
+  public boolean googlePlayBillingVerify() {
+    return GooglePlayBillingSecurity.verifySignature(BenchmarkData.TEST_PUBLIC_KEY, BenchmarkData.PURCHASE_DATA, signature);
+  }
+
+  @Benchmark
+  public boolean googlePlayBillingVerifyWithParsedKey() {
+    return GooglePlayBillingSecurity.verifySignature(publicKey, BenchmarkData.PURCHASE_DATA, signature);
+  }
+
+  @Benchmark
+  public boolean inAppBillingVerify() {
+    return InAppBillingSecurity.verifySignature(BenchmarkData.TEST_PUBLIC_KEY, BenchmarkData.PURCHASE_DATA, signature);
+  }
+
+  @Benchmark
+  public boolean inAppBillingVerifyWithParsedKey() {
+    return InAppBillingSecurity.verifySignature(publicKey, BenchmarkData.PURCHASE_DATA, signature);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package android.util;
+
+/**
+ * JVM replacement for the framework Base64. The android-all implementation calls
+ * libcore-only {@code System.arraycopy} overloads and cannot run outside of Android, so this
+ * shadows it on the benchmark classpath. Only the flags Cashier uses are honoured.
+ */
+public class Base64 {
+  public static final int DEFAULT = 0;
+  public static final int NO_PADDING = 1;
+  public static final int NO_WRAP = 2;
+
+  private static final int LINE_LENGTH = 76;
+
+  public static byte[] decode(String str, int flags) {
+    return java.util.Base64.getMimeDecoder().decode(str);
+  }
+
+  public static String encodeToString(byte[] input, int flags) {
+    java.util.Base64.Encoder encoder = java.util.Base64.getEncoder();
+    if ((flags & NO_PADDING) != 0) {
+      encoder = encoder.withoutPadding();
+    }
+
+    final String encoded = encoder.encodeToString(input);
+    if ((flags & NO_WRAP) != 0) {
+      return encoded;
+    }
+
+    // The framework encoder wraps lines at 76 characters and terminates every line
+    final StringBuilder builder = new StringBuilder(encoded.length() + encoded.length() / LINE_LENGTH + 1);
+    for (int i = 0; i < encoded.length(); i += LINE_LENGTH) {
+      builder.append(encoded, i, Math.min(encoded.length(), i + LINE_LENGTH)).append('\n');
+    }
+    return builder.toString();
+  }
+
+  private Base64() {
+  }
+}
@@ -20,7 +20,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -37,11 +36,14 @@ import com.android.billingclient.api.Purchase;
 import com.android.billingclient.api.SkuDetails;
 import com.android.billingclient.api.SkuDetailsParams;
 import com.android.billingclient.api.SkuDetailsResponseListener;
+import com.getkeepsafe.cashier.CashierTrace;
 import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.logging.TaggedLogger;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi implements BillingClientStateListener {
 
@@ -65,10 +67,13 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
      **/
     private boolean isServiceConnected = false;
 
+    private final TaggedLogger log = new TaggedLogger(LOG_TAG);
+
     @Override
     public boolean initialize(final @NonNull Context context, final @NonNull GooglePlayBillingVendor vendor,
                               LifecycleListener listener, Logger logger) {
         final boolean initialized = super.initialize(context, vendor, listener, logger);
+        log.setLogger(logger);
         this.listener = listener;
 
         if (available() && listener != null) {
@@ -81,7 +86,7 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
             createClient(context, vendor).run();
         } else {
             new Handler(Looper.getMainLooper()).post(
-                    createClient(context, vendor)
+                    CashierTrace.wrap("createClient", createClient(context, vendor))
             );
         }
 
@@ -93,12 +98,12 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
         return new Runnable() {
             @Override
             public void run() {
-                logSafely("Creating Google Play Billing client...");
+                log.i("Creating Google Play Billing client...");
                 billing = BillingClient.newBuilder(context)
                         .setListener(vendor)
                         .build();
 
-                logSafely("Attempting to connect to billing service...");
+                log.i("Attempting to connect to billing service...");
                 billing.startConnection(GooglePlayBillingApi.this);
             }
         };
@@ -113,7 +118,7 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
 
     @Override
     public void dispose() {
-        logSafely("Disposing billing client.");
+        log.i("Disposing billing client.");
 
         if (available()) {
             billing.endConnection();
@@ -136,46 +141,79 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
 
     @Override
     public void getSkuDetails(@SkuType String itemType, @NonNull List<String> skus,
-                              @NonNull SkuDetailsResponseListener listener) {
+                              @NonNull final SkuDetailsResponseListener listener) {
         throwIfUnavailable();
 
-        logSafely("Query for SKU details with type: " + itemType + " SKUs: " + TextUtils.join(",", skus));
+        log.d("Query for SKU details with type: {} SKUs: {}", itemType, skus);
 
         SkuDetailsParams query = SkuDetailsParams.newBuilder()
                 .setSkusList(skus)
                 .setType(itemType)
                 .build();
-        billing.querySkuDetailsAsync(query, listener);
+        final int operationId = CashierTrace.currentOperationId();
+        billing.querySkuDetailsAsync(query, new SkuDetailsResponseListener() {
+            @Override
+            public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
+                final CashierTrace.Scope scope = CashierTrace.enter(operationId);
+                try {
+                    listener.onSkuDetailsResponse(responseCode, skuDetailsList);
+                } finally {
+                    scope.exit();
+                }
+            }
+        });
     }
 
     @Override
     public void launchBillingFlow(@NonNull final Activity activity, @NonNull String sku, @SkuType String itemType) {
         throwIfUnavailable();
-        logSafely("Launching billing flow for " + sku + " with type " + itemType);
-
-        getSkuDetails(
-                itemType,
-                Collections.singletonList(sku),
-                new SkuDetailsResponseListener() {
-                    @Override
-                    public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
-                        try {
-                            if (responseCode == BillingResponse.OK && skuDetailsList.size() > 0) {
-                                BillingFlowParams billingFlowParams = BillingFlowParams.newBuilder()
-                                        .setSkuDetails(skuDetailsList.get(0))
-                                        .build();
-
-                                // This will call the {@link PurchasesUpdatedListener} specified in {@link #initialize}
-                                billing.launchBillingFlow(activity, billingFlowParams);
-                            } else {
-                                vendor.onPurchasesUpdated(BillingResponse.ERROR, null);
+        log.i("Launching billing flow for {} with type {}", sku, itemType);
+
+        final long startNanos = System.nanoTime();
+        // The section only covers sending the request, the wait for its response is logged below
+        final boolean traced = CashierTrace.beginSection("launchBillingFlow skuDetails request");
+        try {
+            getSkuDetails(
+                    itemType,
+                    Collections.singletonList(sku),
+                    new SkuDetailsResponseListener() {
+                        @Override
+                        public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
+                            log.d("Got SKU details for billing flow in {}ms",
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                            final boolean traced = CashierTrace.beginSection("launchBillingFlow");
+                            try {
+                                launchBillingFlow(activity, responseCode, skuDetailsList);
+                            } finally {
+                                if (traced) {
+                                    CashierTrace.endSection();
+                                }
                             }
-                        } catch (Exception e) {
-                            vendor.onPurchasesUpdated(BillingResponse.ERROR, null);
                         }
                     }
-                }
-        );
+            );
+        } finally {
+            if (traced) {
+                CashierTrace.endSection();
+            }
+        }
+    }
+
+    private void launchBillingFlow(Activity activity, int responseCode, List<SkuDetails> skuDetailsList) {
+        try {
+            if (responseCode == BillingResponse.OK && skuDetailsList.size() > 0) {
+                BillingFlowParams billingFlowParams = BillingFlowParams.newBuilder()
+                        .setSkuDetails(skuDetailsList.get(0))
+                        .build();
+
+                // This will call the {@link PurchasesUpdatedListener} specified in {@link #initialize}
+                billing.launchBillingFlow(activity, billingFlowParams);
+            } else {
+                vendor.onPurchasesUpdated(BillingResponse.ERROR, null);
+            }
+        } catch (Exception e) {
+            vendor.onPurchasesUpdated(BillingResponse.ERROR, null);
+        }
     }
 
     @Nullable
@@ -185,32 +223,32 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
 
         List<Purchase> allPurchases = new ArrayList<>();
 
-        logSafely("Querying in-app purchases...");
+        log.d("Querying in-app purchases...");
         Purchase.PurchasesResult inAppPurchasesResult = billing.queryPurchases(SkuType.INAPP);
 
         if (inAppPurchasesResult.getResponseCode() == BillingResponse.OK) {
             List<Purchase> inAppPurchases = inAppPurchasesResult.getPurchasesList();
-            logSafely("In-app purchases: " + TextUtils.join(", ", inAppPurchases));
+            log.d("In-app purchases: {}", inAppPurchases);
             allPurchases.addAll(inAppPurchases);
             // Check if we support subscriptions and query those purchases as well
             boolean isSubscriptionSupported =
                     billing.isFeatureSupported(FeatureType.SUBSCRIPTIONS) == BillingResponse.OK;
             if (isSubscriptionSupported) {
-                logSafely("Querying subscription purchases...");
+                log.d("Querying subscription purchases...");
                 Purchase.PurchasesResult subscriptionPurchasesResult = billing.queryPurchases(SkuType.SUBS);
 
                 if (subscriptionPurchasesResult.getResponseCode() == BillingResponse.OK) {
                     List<Purchase> subscriptionPurchases = subscriptionPurchasesResult.getPurchasesList();
-                    logSafely("Subscription purchases: " + TextUtils.join(", ", subscriptionPurchases));
+                    log.d("Subscription purchases: {}", subscriptionPurchases);
                     allPurchases.addAll(subscriptionPurchases);
                     return allPurchases;
                 } else {
-                    logSafely("Error in querying subscription purchases with code: "
-                            + subscriptionPurchasesResult.getResponseCode());
+                    log.w("Error in querying subscription purchases with code: {}",
+                            subscriptionPurchasesResult.getResponseCode());
                     return allPurchases;
                 }
             } else {
-                logSafely("Subscriptions are not supported...");
+                log.i("Subscriptions are not supported...");
                 return allPurchases;
             }
         } else {
@@ -226,7 +264,7 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
         Purchase.PurchasesResult purchasesResult = billing.queryPurchases(itemType);
         if (purchasesResult.getResponseCode() == BillingResponse.OK) {
             List<Purchase> purchases = purchasesResult.getPurchasesList();
-            logSafely(itemType + " purchases: " + TextUtils.join(", ", purchases));
+            log.d("{} purchases: {}", itemType, purchases);
             return purchases;
         }
 
@@ -237,13 +275,13 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
     public void consumePurchase(@NonNull String purchaseToken, @NonNull ConsumeResponseListener listener) {
         throwIfUnavailable();
 
-        logSafely("Consuming product with purchase token: " + purchaseToken);
+        log.d("Consuming product with purchase token: {}", purchaseToken);
         billing.consumeAsync(purchaseToken, listener);
     }
 
     @Override
     public void onBillingSetupFinished(@BillingResponse int billingResponseCode) {
-        logSafely("Service setup finished and connected. Response: " + billingResponseCode);
+        log.i("Service setup finished and connected. Response: {}", billingResponseCode);
 
         if (billingResponseCode == BillingResponse.OK) {
             isServiceConnected = true;
@@ -256,7 +294,7 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
 
     @Override
     public void onBillingServiceDisconnected() {
-        logSafely("Service disconnected");
+        log.i("Service disconnected");
 
         isServiceConnected = false;
 
@@ -272,12 +310,4 @@ public final class GooglePlayBillingApi extends AbstractGooglePlayBillingApi imp
             throw new IllegalStateException("Billing client is not available");
         }
     }
-
-    private void logSafely(String message) {
-        if (logger == null || message == null) {
-            return;
-        }
-
-        logger.i(LOG_TAG, message);
-    }
 }
@@ -2,9 +2,13 @@ package com.getkeepsafe.cashier.billing;
 
 import android.os.Parcelable;
 
+import com.getkeepsafe.cashier.BinaryPurchase;
 import com.getkeepsafe.cashier.CashierPurchase;
 import com.getkeepsafe.cashier.Product;
 import com.getkeepsafe.cashier.Purchase;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.binary.MalformedBinaryException;
 import com.google.auto.value.AutoValue;
 
 import org.json.JSONException;
@@ -16,7 +20,7 @@ import static com.getkeepsafe.cashier.billing.GooglePlayBillingConstants.Purchas
 import static com.getkeepsafe.cashier.billing.GooglePlayBillingConstants.PurchaseConstants.PURCHASE_STATE_REFUNDED;
 
 @AutoValue
-public abstract class GooglePlayBillingPurchase implements Parcelable, Purchase {
+public abstract class GooglePlayBillingPurchase implements Parcelable, BinaryPurchase {
 
     public static GooglePlayBillingPurchase create(Product product,
                                                    com.android.billingclient.api.Purchase googlePlayPurchase)
@@ -35,6 +39,20 @@ public abstract class GooglePlayBillingPurchase implements Parcelable, Purchase
         return new AutoValue_GooglePlayBillingPurchase(cashierPurchase, receipt, googlePlayPurchase.getPurchaseToken(), googlePlayPurchase.getOrderId(), purchaseState);
     }
 
+    /**
+     * Reads a purchase written by {@link #writeTo(BinaryWriter)}
+     */
+    public static GooglePlayBillingPurchase create(BinaryReader reader) throws MalformedBinaryException {
+        final Product product = Product.create(reader);
+        final String orderId = reader.readUniqueString();
+        final String token = reader.readUniqueString();
+        final String receipt = reader.readUniqueString();
+        final int purchaseState = (int) reader.readSignedVarint();
+        final CashierPurchase cashierPurchase = CashierPurchase.create(product, orderId, token, receipt, "");
+
+        return new AutoValue_GooglePlayBillingPurchase(cashierPurchase, receipt, token, orderId, purchaseState);
+    }
+
     public abstract Purchase purchase();
 
     /**
@@ -82,4 +100,13 @@ public abstract class GooglePlayBillingPurchase implements Parcelable, Purchase
     public JSONObject toJson() throws JSONException {
         return new JSONObject(receipt());
     }
+
+    @Override
+    public void writeTo(BinaryWriter writer) {
+        product().writeTo(writer);
+        writer.writeUniqueString(orderId());
+        writer.writeUniqueString(token());
+        writer.writeUniqueString(receipt());
+        writer.writeSignedVarint(purchaseState());
+    }
 }
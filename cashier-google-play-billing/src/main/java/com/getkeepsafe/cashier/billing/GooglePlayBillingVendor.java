@@ -20,7 +20,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.text.TextUtils;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -31,20 +30,30 @@ import com.android.billingclient.api.ConsumeResponseListener;
 import com.android.billingclient.api.PurchasesUpdatedListener;
 import com.android.billingclient.api.SkuDetails;
 import com.android.billingclient.api.SkuDetailsResponseListener;
+import com.getkeepsafe.cashier.BackgroundExecutor;
+import com.getkeepsafe.cashier.BinaryVendor;
+import com.getkeepsafe.cashier.CallSettings;
+import com.getkeepsafe.cashier.CashierTrace;
 import com.getkeepsafe.cashier.ConsumeListener;
+import com.getkeepsafe.cashier.Inventory;
 import com.getkeepsafe.cashier.InventoryListener;
 import com.getkeepsafe.cashier.Preconditions;
 import com.getkeepsafe.cashier.Product;
 import com.getkeepsafe.cashier.ProductDetailsListener;
+import com.getkeepsafe.cashier.ProductsDetailsPageListener;
+import com.getkeepsafe.cashier.ProductsDetailsVendor;
 import com.getkeepsafe.cashier.Purchase;
 import com.getkeepsafe.cashier.PurchaseListener;
 import com.getkeepsafe.cashier.Vendor;
 import com.getkeepsafe.cashier.VendorConstants;
+import com.getkeepsafe.cashier.binary.BinaryReader;
 import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.logging.TaggedLogger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -66,14 +75,19 @@ import static com.getkeepsafe.cashier.VendorConstants.PURCHASE_SUCCESS_RESULT_MA
 import static com.getkeepsafe.cashier.VendorConstants.PURCHASE_UNAVAILABLE;
 import static com.getkeepsafe.cashier.billing.GooglePlayBillingConstants.VENDOR_PACKAGE;
 
-public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedListener,
-        AbstractGooglePlayBillingApi.LifecycleListener {
+public final class GooglePlayBillingVendor implements BinaryVendor, ProductsDetailsVendor,
+        PurchasesUpdatedListener, AbstractGooglePlayBillingApi.LifecycleListener {
 
     /**
      * Internal log tag
      **/
     private static final String LOG_TAG = "GoogleBillingVendor";
 
+    /**
+     * Number of purchase updates kept while the purchase update stream has no subscribers
+     **/
+    private static final int PURCHASE_UPDATE_BUFFER_SIZE = 16;
+
     /**
      * Google Play Billing API wrapper
      **/
@@ -84,18 +98,36 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
      **/
     private final String publicKey64;
 
-    private Logger logger;
+    private final TaggedLogger log = new TaggedLogger(LOG_TAG);
+
+    /**
+     * Retry policy of idempotent operations, none if null.
+     */
+    @Nullable
+    private volatile RetryPolicy retryPolicy;
+
+    private Threading threading;
 
     /**
      * Product being purchased. If not null, purchase is in progress.
      */
     private Product pendingProduct;
 
+    /**
+     * Operation of the purchase in progress, for the purchase result to be traced back to it.
+     */
+    private int pendingOperationId;
+
     /**
      * Pending purchase listener.
      */
     private PurchaseListener purchaseListener;
 
+    /**
+     * Every purchase update, including those nobody is listening for.
+     */
+    private final PurchaseUpdateStream purchaseUpdates = new PurchaseUpdateStream(PURCHASE_UPDATE_BUFFER_SIZE, log);
+
     /**
      * Initialization listeners. Initialization may be called from more than one thread simultaneously.
      */
@@ -155,8 +187,8 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
 
         if (!initializing) {
             initializing = true;
-            logSafely("Initializing Google Play Billing API...");
-            available = api.initialize(context, this, this, logger);
+            log.i("Initializing Google Play Billing API...");
+            available = api.initialize(context, this, this, log.logger());
         }
 
         if (!available) {
@@ -167,7 +199,7 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
 
     @Override
     public synchronized void initialized(boolean success) {
-        logSafely("Initialized: success = " + success);
+        log.i("Initialized: success = {}", success);
         if (!success) {
             logAndDisable("Could not create Google Play Billing instance");
             return;
@@ -181,7 +213,7 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
                     api.isBillingSupported(SkuType.SUBS) == BillingResponse.OK;
 
             available = canPurchaseItems || canSubscribe;
-            logSafely("Connected to service and it is " + (available ? "available" : "not available"));
+            log.i("Connected to service and it is {}", available ? "available" : "not available");
             initializing = false;
 
             for (InitializationListener listener : initializationListeners) {
@@ -189,7 +221,7 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
             }
             initializationListeners.clear();
         } catch (Exception error) {
-            logAndDisable(Log.getStackTraceString(error));
+            logAndDisable("Could not check billing support", error);
         }
     }
 
@@ -204,7 +236,7 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
 
     @Override
     public void dispose(Context context) {
-        logSafely("Disposing Google Play Billing vendor...");
+        log.i("Disposing Google Play Billing vendor...");
         api.dispose();
         available = false;
         initializationListeners.clear();
@@ -229,7 +261,8 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
 
         this.purchaseListener = listener;
         this.pendingProduct = product;
-        logSafely("Launching Google Play Billing flow for " + product.sku());
+        this.pendingOperationId = CashierTrace.currentOperationId();
+        log.i("Launching Google Play Billing flow for {}", product.sku());
         try {
             api.launchBillingFlow(activity, product.sku(), product.isSubscription() ? SkuType.SUBS : SkuType.INAPP);
         } catch (Exception e) {
@@ -241,9 +274,41 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
     @Override
     public void onPurchasesUpdated(@BillingResponse int responseCode,
                                    @Nullable List<com.android.billingclient.api.Purchase> purchases) {
+        final CashierTrace.Scope scope = CashierTrace.enter(pendingOperationId);
+        final boolean traced = CashierTrace.beginSection("onPurchasesUpdated");
+        try {
+            handlePurchasesUpdated(responseCode, purchases);
+        } finally {
+            if (traced) {
+                CashierTrace.endSection();
+            }
+            scope.exit();
+        }
+    }
+
+    private void handlePurchasesUpdated(@BillingResponse int responseCode,
+                                        @Nullable List<com.android.billingclient.api.Purchase> purchases) {
+        // Signatures are checked once for both the purchase listener and the update stream. The
+        // update is captured before handling it clears the pending purchase, and published after
+        // the purchase listener has handled it.
+        final boolean[] verified = verifySignatures(purchases);
+        final PurchaseUpdate update = new PurchaseUpdate(responseCode,
+                verifiedPurchases(purchases, verified),
+                purchaseListener == null ? null : pendingProduct);
+        try {
+            notifyPurchaseListener(responseCode, purchases, verified);
+        } finally {
+            purchaseUpdates.publish(update);
+        }
+    }
+
+    private void notifyPurchaseListener(@BillingResponse int responseCode,
+                                        @Nullable List<com.android.billingclient.api.Purchase> purchases,
+                                        boolean[] verified) {
         if (purchaseListener == null) {
             pendingProduct = null;
-            logSafely("#onPurchasesUpdated called but no purchase listener attached.");
+            pendingOperationId = 0;
+            log.i("#onPurchasesUpdated called but no purchase listener attached.");
             return;
         }
 
@@ -255,52 +320,103 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
                     return;
                 }
 
-                for (com.android.billingclient.api.Purchase purchase : purchases) {
-                    handlePurchase(purchase, responseCode);
+                for (int i = 0; i < purchases.size(); i++) {
+                    handlePurchase(purchases.get(i), verified[i], responseCode);
                 }
                 return;
             case BillingResponse.USER_CANCELED:
-                logSafely("User canceled the purchase code: " + responseCode);
+                log.i("User canceled the purchase code: {}", responseCode);
                 purchaseListener.failure(pendingProduct, getPurchaseError(responseCode));
                 clearPendingPurchase();
                 return;
             default:
-                logSafely("Error purchasing item with code: " + responseCode);
+                log.w("Error purchasing item with code: {}", responseCode);
                 purchaseListener.failure(pendingProduct, getPurchaseError(responseCode));
                 clearPendingPurchase();
         }
     }
 
-    private void handlePurchase(com.android.billingclient.api.Purchase purchase, int responseCode) {
+    private void handlePurchase(com.android.billingclient.api.Purchase purchase,
+                                boolean verified,
+                                int responseCode) {
         // Convert Billing Client purchase model to internal Cashier purchase model
         try {
             Purchase cashierPurchase = GooglePlayBillingPurchase.create(pendingProduct, purchase);
 
             // Check data signature matched with specified public key
-            if (!TextUtils.isEmpty(publicKey64)
-                    && !GooglePlayBillingSecurity.verifySignature(publicKey64,
-                    purchase.getOriginalJson(), purchase.getSignature())) {
-                logSafely("Local signature check failed!");
+            if (!verified) {
+                log.w("Local signature check failed!");
                 purchaseListener.failure(pendingProduct, new Error(PURCHASE_SUCCESS_RESULT_MALFORMED, responseCode));
                 clearPendingPurchase();
                 return;
             }
 
-            logSafely("Successful purchase of " + purchase.getSku() + "!");
+            log.i("Successful purchase of {}!", purchase.getSku());
             purchaseListener.success(cashierPurchase);
             clearPendingPurchase();
         } catch (JSONException error) {
-            logSafely("Error in parsing purchase response: " + purchase.getSku());
+            log.w("Error in parsing purchase response: {}", purchase.getSku());
             purchaseListener.failure(pendingProduct, new Error(PURCHASE_SUCCESS_RESULT_MALFORMED, responseCode));
             clearPendingPurchase();
         }
     }
 
+    /**
+     * @return Whether the signature of each purchase matches the public key, all of them if no key
+     * is set
+     */
+    private boolean[] verifySignatures(@Nullable List<com.android.billingclient.api.Purchase> purchases) {
+        final boolean[] verified = new boolean[purchases == null ? 0 : purchases.size()];
+        for (int i = 0; i < verified.length; i++) {
+            verified[i] = TextUtils.isEmpty(publicKey64) || verifySignature(purchases.get(i));
+        }
+        return verified;
+    }
+
+    private boolean verifySignature(com.android.billingclient.api.Purchase purchase) {
+        final boolean traced = CashierTrace.beginSection("verifySignature");
+        try {
+            return GooglePlayBillingSecurity.verifySignature(publicKey64,
+                    purchase.getOriginalJson(), purchase.getSignature());
+        } catch (IllegalStateException error) {
+            log.w("Malformed signature of purchase {}", purchase.getSku());
+            return false;
+        } finally {
+            if (traced) {
+                CashierTrace.endSection();
+            }
+        }
+    }
+
+    private static List<com.android.billingclient.api.Purchase> verifiedPurchases(
+            @Nullable List<com.android.billingclient.api.Purchase> purchases, boolean[] verified) {
+        if (purchases == null || purchases.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<com.android.billingclient.api.Purchase> verifiedPurchases = new ArrayList<>(purchases.size());
+        for (int i = 0; i < verified.length; i++) {
+            if (verified[i]) {
+                verifiedPurchases.add(purchases.get(i));
+            }
+        }
+        return Collections.unmodifiableList(verifiedPurchases);
+    }
+
     private void clearPendingPurchase() {
         pendingProduct = null;
+        pendingOperationId = 0;
         purchaseListener = null;
     }
 
+    /**
+     * @return The stream of every purchase update from Google Play Billing, including those that
+     * arrive while no purchase is in progress. Prefer subscribing to it over polling the inventory.
+     */
+    public PurchaseUpdateStream purchaseUpdates() {
+        return purchaseUpdates;
+    }
+
     @Override
     public synchronized void consume(@NonNull final Context context, @NonNull final Purchase purchase, @NonNull final ConsumeListener listener) {
         Preconditions.checkNotNull(context, "Purchase is null");
@@ -314,37 +430,76 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
 
         if (tokensToBeConsumed.contains(purchase.token())) {
             // Purchase currently being consumed or already successfully consumed.
-            logSafely("Token was already scheduled to be consumed - skipping...");
+            log.i("Token was already scheduled to be consumed - skipping...");
             listener.failure(purchase, new Error(VendorConstants.CONSUME_UNAVAILABLE, -1));
             return;
         }
 
-        logSafely("Consuming " + product.sku());
+        log.i("Consuming {}", product.sku());
         tokensToBeConsumed.add(purchase.token());
 
-        api.consumePurchase(purchase.token(), new ConsumeResponseListener() {
+        new RetryableOperation(context) {
             @Override
-            public void onConsumeResponse(int responseCode, String purchaseToken) {
-                if (responseCode == BillingResponse.OK) {
-                    logSafely("Successfully consumed " + purchase.product().sku() + "!");
-                    listener.success(purchase);
-                } else {
-                    // Failure in consuming token, remove from the list so retry is possible
-                    logSafely("Error consuming " + purchase.product().sku() + " with code "+responseCode);
-                    tokensToBeConsumed.remove(purchaseToken);
-                    listener.failure(purchase, getConsumeError(responseCode));
-                }
+            void attempt() {
+                api.consumePurchase(purchase.token(), new ConsumeResponseListener() {
+                    @Override
+                    public void onConsumeResponse(int responseCode, String purchaseToken) {
+                        if (responseCode == BillingResponse.OK) {
+                            log.i("Successfully consumed {}!", purchase.product().sku());
+                            listener.success(purchase);
+                        } else {
+                            log.w("Error consuming {} with code {}", purchase.product().sku(), responseCode);
+                            failed(responseCode, getConsumeError(responseCode));
+                        }
+                    }
+                });
             }
-        });
+
+            @Override
+            void fail(Error error) {
+                // Failure in consuming token, remove from the list so retry is possible
+                tokensToBeConsumed.remove(purchase.token());
+                listener.failure(purchase, error);
+            }
+        }.start();
     }
 
     @Override
-    public void getInventory(@NonNull Context context, @Nullable Collection<String> itemSkus, @Nullable Collection<String> subSkus,
-                             @NonNull InventoryListener listener) {
+    public void getInventory(@NonNull Context context, @Nullable final Collection<String> itemSkus, @Nullable final Collection<String> subSkus,
+                             @NonNull final InventoryListener listener) {
         throwIfUninitialized();
 
-        logSafely("Getting inventory ...");
-        InventoryQuery.execute(api, listener, itemSkus, subSkus);
+        log.i("Getting inventory ...");
+        // Settings of the Cashier this query runs for, this vendor may be shared by several
+        final CallSettings settings = CallSettings.current();
+        final Threading queryThreading = threading(settings);
+        new RetryableOperation(context) {
+            @Override
+            void attempt() {
+                InventoryQuery.execute(queryThreading, api, settings.productDetailsCache(), new InventoryQuery.Listener() {
+                    @Override
+                    public void success(Inventory inventory) {
+                        listener.success(inventory);
+                    }
+
+                    @Override
+                    void failure(Error error, @Nullable Integer billingResponse) {
+                        // Only a failed billing call may be retried, the vendor code of other
+                        // failures is not a billing response
+                        if (billingResponse == null) {
+                            fail(error);
+                        } else {
+                            failed(billingResponse, error);
+                        }
+                    }
+                }, itemSkus, subSkus);
+            }
+
+            @Override
+            void fail(Error error) {
+                listener.failure(error);
+            }
+        }.start();
     }
 
     @Override
@@ -352,29 +507,116 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
                                   @NonNull final ProductDetailsListener listener) {
         throwIfUninitialized();
 
-        api.getSkuDetails(
-                isSubscription ? SkuType.SUBS : SkuType.INAPP,
-                Collections.singletonList(sku),
-                new SkuDetailsResponseListener() {
-                    @Override
-                    public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
-                        if (responseCode == BillingResponse.OK && skuDetailsList.size() == 1) {
-                            logSafely("Successfully got sku details for " + sku + "!");
-                            listener.success(
-                                    GooglePlayBillingProduct.create(skuDetailsList.get(0), isSubscription ? SkuType.SUBS : SkuType.INAPP)
-                            );
-                        } else {
-                            logSafely("Error getting sku details for " + sku + " with code "+responseCode);
-                            listener.failure(getDetailsError(responseCode));
+        new RetryableOperation(context) {
+            @Override
+            void attempt() {
+                api.getSkuDetails(
+                        isSubscription ? SkuType.SUBS : SkuType.INAPP,
+                        Collections.singletonList(sku),
+                        new SkuDetailsResponseListener() {
+                            @Override
+                            public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
+                                if (responseCode == BillingResponse.OK && skuDetailsList.size() == 1) {
+                                    log.d("Successfully got sku details for {}!", sku);
+                                    listener.success(
+                                            GooglePlayBillingProduct.create(skuDetailsList.get(0), isSubscription ? SkuType.SUBS : SkuType.INAPP)
+                                    );
+                                } else {
+                                    log.w("Error getting sku details for {} with code {}", sku, responseCode);
+                                    failed(responseCode, getDetailsError(responseCode));
+                                }
+                            }
                         }
-                    }
-                }
-        );
+                );
+            }
+
+            @Override
+            void fail(Error error) {
+                listener.failure(error);
+            }
+        }.start();
+    }
+
+    @Override
+    public void getProductsDetails(@NonNull Context context, @NonNull Collection<String> skus, final boolean isSubscription,
+                                   @NonNull final ProductsDetailsPageListener listener) {
+        throwIfUninitialized();
+
+        if (skus.isEmpty()) {
+            listener.success(Collections.<Product>emptyList());
+            return;
+        }
+
+        // The billing client pages through the SKUs itself, a single request covers all of them
+        final String type = isSubscription ? SkuType.SUBS : SkuType.INAPP;
+        final List<String> skuList = new ArrayList<>(skus);
+        new RetryableOperation(context) {
+            @Override
+            void attempt() {
+                api.getSkuDetails(
+                        type,
+                        skuList,
+                        new SkuDetailsResponseListener() {
+                            @Override
+                            public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
+                                if (responseCode == BillingResponse.OK && skuDetailsList != null) {
+                                    log.d("Successfully got sku details for {} skus!", skuDetailsList.size());
+                                    final List<Product> products = new ArrayList<>(skuDetailsList.size());
+                                    for (SkuDetails skuDetails : skuDetailsList) {
+                                        products.add(GooglePlayBillingProduct.create(skuDetails, type));
+                                    }
+                                    listener.page(products);
+                                    listener.success(products);
+                                } else {
+                                    log.w("Error getting sku details with code {}", responseCode);
+                                    failed(responseCode, getDetailsError(responseCode));
+                                }
+                            }
+                        }
+                );
+            }
+
+            @Override
+            void fail(Error error) {
+                listener.failure(error);
+            }
+        }.start();
     }
 
     @Override
     public void setLogger(Logger logger) {
-        this.logger = logger;
+        log.setLogger(logger);
+    }
+
+    /**
+     * Retries getting product details, getting the inventory and consuming when they fail with a
+     * transient response code. No operation is retried by default.
+     */
+    public void setRetryPolicy(@Nullable RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    synchronized void setThreading(Threading threading) {
+        this.threading = threading;
+    }
+
+    private synchronized Threading threading() {
+        if (threading == null) {
+            threading = new Threading();
+        }
+        return threading;
+    }
+
+    /**
+     * @return Threads to run on for an operation with the given settings
+     */
+    private Threading threading(CallSettings settings) {
+        if (settings.backgroundExecutor() == null && settings.callbackExecutor() == null) {
+            return threading();
+        }
+        return new Threading(
+                settings.backgroundExecutor() == null ? BackgroundExecutor.shared() : settings.backgroundExecutor(),
+                settings.callbackExecutor());
     }
 
     @Override
@@ -417,20 +659,35 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
         throw new UnsupportedOperationException("This is not supported with Google Play Billing Vendor.");
     }
 
-    private boolean canPurchaseAnything() {
-        return canPurchaseItems || canSubscribe;
+    @Override
+    public Product getProductFrom(BinaryReader reader) throws IOException {
+        final Product product = Product.create(reader);
+        if (!product.vendorId().equals(VENDOR_PACKAGE)) {
+            throw new IllegalArgumentException("This product does not belong to Google Play Billing");
+        }
+        return product;
     }
 
-    private void logSafely(String message) {
-        if (logger == null || message == null) {
-            return;
+    @Override
+    public Purchase getPurchaseFrom(BinaryReader reader) throws IOException {
+        final GooglePlayBillingPurchase purchase = GooglePlayBillingPurchase.create(reader);
+        if (!purchase.product().vendorId().equals(VENDOR_PACKAGE)) {
+            throw new IllegalArgumentException("This purchase does not belong to Google Play Billing");
         }
+        return purchase;
+    }
 
-        logger.i(LOG_TAG, message);
+    private boolean canPurchaseAnything() {
+        return canPurchaseItems || canSubscribe;
     }
 
     private void logAndDisable(String message) {
-        logSafely(message);
+        log.w(message);
+        available = false;
+    }
+
+    private void logAndDisable(String message, Throwable error) {
+        log.w(message, error);
         available = false;
     }
 
@@ -510,6 +767,83 @@ public final class GooglePlayBillingVendor implements Vendor, PurchasesUpdatedLi
         return new Error(code, responseCode);
     }
 
+    /**
+     * An idempotent operation, attempted again according to the retry policy while it fails with
+     * a retryable response code
+     */
+    private abstract class RetryableOperation {
+        private final Context context;
+        private int attempts;
+
+        RetryableOperation(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * Makes one attempt, which has to end with the listener succeeding or with a call to
+         * {@link #failed} or {@link #fail}
+         */
+        abstract void attempt();
+
+        /**
+         * Delivers the failure of the operation
+         */
+        abstract void fail(Error error);
+
+        void start() {
+            attempts++;
+            attempt();
+        }
+
+        /**
+         * Retries the operation if the policy allows, otherwise fails it with the given error
+         */
+        void failed(final int responseCode, final Error error) {
+            final RetryPolicy policy = retryPolicy;
+            if (policy == null || !policy.shouldRetry(attempts, responseCode)) {
+                fail(error);
+                return;
+            }
+
+            final long backoff = policy.backoffMillis(attempts);
+            log.i("Retrying in {}ms after response code {}", backoff, responseCode);
+            threading().runOnMainThreadDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    retry(error);
+                }
+            }, backoff);
+        }
+
+        private void retry(final Error error) {
+            if (api.available()) {
+                startOrFail(error);
+                return;
+            }
+
+            log.i("Reconnecting to retry...");
+            initialize(context, new InitializationListener() {
+                @Override
+                public void initialized() {
+                    startOrFail(error);
+                }
+
+                @Override
+                public void unavailable() {
+                    fail(error);
+                }
+            });
+        }
+
+        private void startOrFail(Error error) {
+            try {
+                start();
+            } catch (Exception e) {
+                fail(error);
+            }
+        }
+    }
+
     private void throwIfUninitialized() {
         if (!api.available()) {
             throw new IllegalStateException("Trying to do operation without initialized billing API");
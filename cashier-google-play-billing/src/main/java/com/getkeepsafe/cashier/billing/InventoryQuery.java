@@ -9,6 +9,7 @@ import com.android.billingclient.api.SkuDetailsResponseListener;
 import com.getkeepsafe.cashier.Inventory;
 import com.getkeepsafe.cashier.InventoryListener;
 import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.ProductDetailsCache;
 import com.getkeepsafe.cashier.Purchase;
 import com.getkeepsafe.cashier.Vendor;
 import com.getkeepsafe.cashier.VendorConstants;
@@ -20,40 +21,69 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Inventory query helper class. Performs api calls to get requested products info and purchases.
  * Since cashier purchase contains full product info, but Google Billing only returns order id and
- * receipt, getSkuDetails call must be performed for all purchased skus.
+ * receipt, getSkuDetails call must be performed for all purchased skus that are not found in the
+ * product details cache.
  */
 class InventoryQuery {
 
+    /**
+     * Listener that also learns which billing response failed the query, so that only failures
+     * of the billing service are retried
+     */
+    abstract static class Listener implements InventoryListener {
+        /**
+         * @param billingResponse The response code of the billing call that failed the query, or
+         *                        null if the query failed for another reason.
+         */
+        abstract void failure(Vendor.Error error, @Nullable Integer billingResponse);
+
+        @Override
+        public final void failure(Vendor.Error error) {
+            failure(error, null);
+        }
+    }
+
     private Threading threading;
 
-    private InventoryListener listener;
+    private Listener listener;
 
     private AbstractGooglePlayBillingApi api;
 
+    @Nullable
+    private ProductDetailsCache cache;
+
     /**
-     * Inapp product details returned from async getSkuDetails call
+     * Inapp products by sku, from the cache and the async getSkuDetails call
      * Non null value indicates that sku details query finished
      */
-    private List<SkuDetails> inappSkuDetails = null;
+    private Map<String, Product> inappProducts = null;
 
     /**
-     * Subscription product details returned from async getSkuDetails call
+     * Subscription products by sku, from the cache and the async getSkuDetails call
      * Non null value indicates that sku details query finished
      * */
-    private List<SkuDetails> subsSkuDetails = null;
+    private Map<String, Product> subsProducts = null;
+
+    /**
+     * Purchases of inapp type
+     * Non null value indicates that purchases query finished
+     */
+    private List<com.android.billingclient.api.Purchase> inappPurchases = null;
 
     /**
-     * List of purchases of both inapp and subscription types
+     * Purchases of subscription type
      * Non null value indicates that purchases query finished
      */
-    private List<com.android.billingclient.api.Purchase> purchases = null;
+    private List<com.android.billingclient.api.Purchase> subsPurchases = null;
 
     private Collection<String> inappSkus;
 
@@ -67,177 +97,273 @@ class InventoryQuery {
 
     /**
      * Query inventory.
+     * @param threading Threads to query on and to deliver the result on.
      * @param api Google Play Billing API instance.
      * @param listener Listener to deliver success / error.
      * @param inappSkus List of product skus of item type to query. May be null.
      * @param subSkus List of product skus of subscription type to query. May be null.
      */
-    static void execute(@NonNull AbstractGooglePlayBillingApi api, @NonNull InventoryListener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
-        execute(new Threading(), api, listener, inappSkus, subSkus);
+    static void execute(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @NonNull InventoryListener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
+        execute(threading, api, null, listener, inappSkus, subSkus);
     }
 
-    static void execute(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @NonNull InventoryListener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
-        new InventoryQuery(threading, api, listener, inappSkus, subSkus).execute();
+    /**
+     * Query inventory, taking the details of skus from the cache while they have not expired.
+     * @param cache Cache to look up product details in and to store the queried ones in. May be null.
+     */
+    static void execute(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @Nullable ProductDetailsCache cache, @NonNull final InventoryListener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
+        execute(threading, api, cache, new Listener() {
+            @Override
+            public void success(Inventory inventory) {
+                listener.success(inventory);
+            }
+
+            @Override
+            void failure(Vendor.Error error, @Nullable Integer billingResponse) {
+                listener.failure(error);
+            }
+        }, inappSkus, subSkus);
     }
 
-    private InventoryQuery(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @NonNull InventoryListener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
+    /**
+     * Query inventory, telling the listener which billing response failed the query, if any.
+     */
+    static void execute(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @Nullable ProductDetailsCache cache, @NonNull Listener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
+        new InventoryQuery(threading, api, cache, listener, inappSkus, subSkus).execute();
+    }
+
+    private InventoryQuery(@NonNull Threading threading, @NonNull AbstractGooglePlayBillingApi api, @Nullable ProductDetailsCache cache, @NonNull Listener listener, @Nullable Collection<String> inappSkus, @Nullable Collection<String> subSkus) {
         this.threading = threading;
         this.api = api;
+        this.cache = cache;
         this.listener = listener;
         this.inappSkus = inappSkus;
         this.subSkus = subSkus;
     }
 
     private void execute() {
-        // Execute on new thread to avoid blocking UI thread
+        try {
+            query();
+        } catch (RejectedExecutionException e) {
+            // Too many queries are waiting already
+            listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1), null);
+        }
+    }
+
+    private void query() {
+        // Execute on a background thread to avoid blocking UI thread
         threading.runInBackground(new Runnable() {
             @Override
             public void run() {
                 try {
                     if (!api.available()) {
-                        listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
+                        fail(VendorConstants.INVENTORY_QUERY_UNAVAILABLE);
                         return;
                     }
 
-                    inappSkuDetails = null;
-                    subsSkuDetails = null;
-                    Set<String> inappSkusToQuery = new HashSet<>();
-                    Set<String> subSkusToQuery = new HashSet<>();
-                    boolean subscriptionsSupported = api.isBillingSupported(BillingClient.SkuType.SUBS) == BillingClient.BillingResponse.OK;
+                    if (api.isBillingSupported(BillingClient.SkuType.SUBS) != BillingClient.BillingResponse.OK) {
+                        onPurchases(BillingClient.SkuType.SUBS, new ArrayList<com.android.billingclient.api.Purchase>());
+                        onSkuDetails(BillingClient.SkuType.SUBS, BillingClient.BillingResponse.OK, Collections.<SkuDetails>emptyList(),
+                                Collections.<String, Product>emptyMap());
+                        queryType(BillingClient.SkuType.INAPP, inappSkus);
+                        return;
+                    }
 
-                    if (inappSkus != null) {
-                        inappSkusToQuery.addAll(inappSkus);
+                    // Both purchase queries are blocking calls, query subscriptions on another
+                    // background thread while this one queries inapp products
+                    Runnable querySubs = new Runnable() {
+                        @Override
+                        public void run() {
+                            queryType(BillingClient.SkuType.SUBS, subSkus);
+                        }
+                    };
+                    boolean subsQueued;
+                    try {
+                        threading.runInBackground(querySubs);
+                        subsQueued = true;
+                    } catch (RejectedExecutionException e) {
+                        subsQueued = false;
                     }
-                    if (subSkus != null) {
-                        subSkusToQuery.addAll(subSkus);
+                    queryType(BillingClient.SkuType.INAPP, inappSkus);
+                    if (!subsQueued) {
+                        querySubs.run();
                     }
+                } catch (Exception e) {
+                    fail(VendorConstants.INVENTORY_QUERY_UNAVAILABLE);
+                }
+            }
+        });
+    }
 
-                    // Get purchases of both types
-                    List<com.android.billingclient.api.Purchase> inappPurchases = api.getPurchases(BillingClient.SkuType.INAPP);
-                    List<com.android.billingclient.api.Purchase> subPurchases = subscriptionsSupported ? api.getPurchases(BillingClient.SkuType.SUBS)
-                            : new ArrayList<com.android.billingclient.api.Purchase>();
-
-                    if (inappPurchases == null || subPurchases == null) {
-                        // If any of two getPurchases call didn't return result, return error
-                        listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, -1));
-                        return;
-                    }
+    /**
+     * Queries the purchases of the given type, then the details of their skus and of the
+     * requested ones that are not cached, without waiting for the other type
+     */
+    private void queryType(final String type, @Nullable Collection<String> requestedSkus) {
+        try {
+            List<com.android.billingclient.api.Purchase> typePurchases = api.getPurchases(type);
+            if (typePurchases == null) {
+                // If any of two getPurchases call didn't return result, return error
+                fail(VendorConstants.INVENTORY_QUERY_FAILURE);
+                return;
+            }
 
-                    purchases = new ArrayList<>();
-                    purchases.addAll(inappPurchases);
-                    purchases.addAll(subPurchases);
+            Set<String> skusToQuery = new HashSet<>();
+            if (requestedSkus != null) {
+                skusToQuery.addAll(requestedSkus);
+            }
+            // Add all purchases skus to skus to be queried list
+            for (com.android.billingclient.api.Purchase purchase : typePurchases) {
+                skusToQuery.add(purchase.getSku());
+            }
 
-                    // Add all inapp purchases skus to skus to be queried list
-                    for (com.android.billingclient.api.Purchase inappPurchase : inappPurchases) {
-                        inappSkusToQuery.add(inappPurchase.getSku());
-                    }
-                    // Add all subscription purchases skus to skus to be queried list
-                    for (com.android.billingclient.api.Purchase subPurchase : subPurchases) {
-                        subSkusToQuery.add(subPurchase.getSku());
-                    }
+            if (!onPurchases(type, typePurchases)) {
+                // The other type failed already
+                return;
+            }
 
-                    if (inappSkusToQuery.size() > 0) {
-                        // Perform async sku details query
-                        api.getSkuDetails(BillingClient.SkuType.INAPP, new ArrayList<String>(inappSkusToQuery), new SkuDetailsResponseListener() {
-                            @Override
-                            public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
-                                inappSkuDetails = skuDetailsList != null ? skuDetailsList : new ArrayList<SkuDetails>();
-                                inappResponseCode = responseCode;
-                                // Check if other async operation finished
-                                notifyIfReady();
-                            }
-                        });
-                    } else {
-                        inappSkuDetails = Collections.emptyList();
+            final Map<String, Product> cachedProducts = new HashMap<>();
+            if (cache != null) {
+                boolean isSubscription = BillingClient.SkuType.SUBS.equals(type);
+                Iterator<String> iterator = skusToQuery.iterator();
+                while (iterator.hasNext()) {
+                    String sku = iterator.next();
+                    Product product = cache.getFresh(GooglePlayBillingConstants.VENDOR_PACKAGE, sku, isSubscription);
+                    if (product != null) {
+                        cachedProducts.put(sku, product);
+                        iterator.remove();
                     }
+                }
+            }
 
-                    if (subSkusToQuery.size() > 0 && subscriptionsSupported) {
-                        // Perform async sku details query
-                        api.getSkuDetails(BillingClient.SkuType.SUBS, new ArrayList<String>(subSkusToQuery), new SkuDetailsResponseListener() {
-                            @Override
-                            public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
-                                subsSkuDetails = skuDetailsList != null ? skuDetailsList : new ArrayList<SkuDetails>();
-                                subsResponseCode = responseCode;
-                                // Check if other async operation finished
-                                notifyIfReady();
-                            }
-                        });
-                    } else {
-                        subsSkuDetails = Collections.emptyList();
+            if (skusToQuery.size() > 0) {
+                // Perform async sku details query
+                api.getSkuDetails(type, new ArrayList<String>(skusToQuery), new SkuDetailsResponseListener() {
+                    @Override
+                    public void onSkuDetailsResponse(int responseCode, List<SkuDetails> skuDetailsList) {
+                        onSkuDetails(type, responseCode, skuDetailsList, cachedProducts);
                     }
+                });
+            } else {
+                onSkuDetails(type, BillingClient.BillingResponse.OK, Collections.<SkuDetails>emptyList(), cachedProducts);
+            }
+        } catch (Exception e) {
+            fail(VendorConstants.INVENTORY_QUERY_UNAVAILABLE);
+        }
+    }
 
-                    // Check if result may be delivered.
-                    // Covers case with empty skus and purchase lists
-                    notifyIfReady();
+    /**
+     * @return false if the query failed already
+     */
+    private synchronized boolean onPurchases(String type, List<com.android.billingclient.api.Purchase> typePurchases) {
+        if (BillingClient.SkuType.INAPP.equals(type)) {
+            inappPurchases = typePurchases;
+        } else {
+            subsPurchases = typePurchases;
+        }
+        return !notified;
+    }
 
-                } catch (Exception e) {
-                    listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
+    private synchronized void onSkuDetails(String type, int responseCode, @Nullable List<SkuDetails> skuDetailsList,
+                                           Map<String, Product> cachedProducts) {
+        boolean isSubscription = BillingClient.SkuType.SUBS.equals(type);
+        Map<String, Product> products = new HashMap<>(cachedProducts);
+        if (skuDetailsList != null) {
+            for (SkuDetails skuDetails : skuDetailsList) {
+                Product product = GooglePlayBillingProduct.create(skuDetails, type);
+                products.put(product.sku(), product);
+                if (cache != null && responseCode == BillingClient.BillingResponse.OK) {
+                    cache.put(GooglePlayBillingConstants.VENDOR_PACKAGE, product.sku(), isSubscription, product);
                 }
             }
+        }
+        if (isSubscription) {
+            subsProducts = products;
+            subsResponseCode = responseCode;
+        } else {
+            inappProducts = products;
+            inappResponseCode = responseCode;
+        }
+        // Check if other async operations finished
+        notifyIfReady();
+    }
+
+    private synchronized void fail(final int code) {
+        if (notified) {
+            return;
+        }
+        notified = true;
+        threading.deliver(new Runnable() {
+            @Override
+            public void run() {
+                listener.failure(new Vendor.Error(code, -1), null);
+            }
         });
     }
 
     private synchronized void notifyIfReady() {
-        // When all three variables are not null, all async operations are finished
+        // When all four variables are not null, all async operations are finished
         // and result may be delivered to listener
-        if (purchases != null && inappSkuDetails != null && subsSkuDetails != null && !notified) {
+        if (inappPurchases != null && subsPurchases != null && inappProducts != null && subsProducts != null && !notified) {
 
             if (inappResponseCode != BillingClient.BillingResponse.OK || subsResponseCode != BillingClient.BillingResponse.OK) {
-                // Deliver result on main thread
-                threading.runOnMainThread(new Runnable() {
+                // Report the response code of the call that failed, which may be negative
+                final int responseCode = inappResponseCode != BillingClient.BillingResponse.OK ? inappResponseCode : subsResponseCode;
+                threading.deliver(new Runnable() {
                     @Override
                     public void run() {
-                        listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, Math.max(inappResponseCode, subsResponseCode)));
+                        listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, responseCode), responseCode);
                     }
                 });
                 notified = true;
                 return;
             }
 
-            final Inventory inventory = new Inventory();
+            final Inventory.Builder inventoryBuilder = new Inventory.Builder();
 
-            // Map of sku -> details
-            Map<String, SkuDetails> details = new HashMap<>();
+            // Map of sku -> product
+            Map<String, Product> products = new HashMap<>();
 
-            for (SkuDetails itemDetails : inappSkuDetails) {
-                details.put(itemDetails.getSku(), itemDetails);
-                if (inappSkus != null && inappSkus.contains(itemDetails.getSku())) {
+            for (Product product : inappProducts.values()) {
+                products.put(product.sku(), product);
+                if (inappSkus != null && inappSkus.contains(product.sku())) {
                     // Return product details only when requested in inappSkus param
-                    inventory.addProduct(GooglePlayBillingProduct.create(itemDetails, BillingClient.SkuType.INAPP));
+                    inventoryBuilder.addProduct(product);
                 }
             }
 
-            for (SkuDetails subDetail : subsSkuDetails) {
-                details.put(subDetail.getSku(), subDetail);
-                if (subSkus != null && subSkus.contains(subDetail.getSku())) {
+            for (Product product : subsProducts.values()) {
+                products.put(product.sku(), product);
+                if (subSkus != null && subSkus.contains(product.sku())) {
                     // Return product details only when requested in subSkus param
-                    inventory.addProduct(GooglePlayBillingProduct.create(subDetail, BillingClient.SkuType.SUBS));
+                    inventoryBuilder.addProduct(product);
                 }
             }
 
+            List<com.android.billingclient.api.Purchase> purchases = new ArrayList<>(inappPurchases);
+            purchases.addAll(subsPurchases);
             for (com.android.billingclient.api.Purchase billingPurchase : purchases) {
-                SkuDetails skuDetails = details.get(billingPurchase.getSku());
-                if (skuDetails != null) {
-                    Product product = GooglePlayBillingProduct.create(skuDetails, skuDetails.getType());
+                final Product product = products.get(billingPurchase.getSku());
+                if (product != null) {
                     try {
                         Purchase purchase = GooglePlayBillingPurchase.create(product, billingPurchase);
-                        inventory.addPurchase(purchase);
+                        inventoryBuilder.addPurchase(purchase);
                     } catch (JSONException e) {
                         e.printStackTrace();
-                        // Deliver result on main thread
-                        threading.runOnMainThread(new Runnable() {
+                        threading.deliver(new Runnable() {
                             @Override
                             public void run() {
-                                listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_MALFORMED_RESPONSE, -1));
+                                listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_MALFORMED_RESPONSE, -1), null);
                             }
                         });
+                        notified = true;
                         return;
                     }
                 }
             }
 
-            // Deliver result on main thread
-            threading.runOnMainThread(new Runnable() {
+            final Inventory inventory = inventoryBuilder.build();
+            threading.deliver(new Runnable() {
                 @Override
                 public void run() {
                     listener.success(inventory);
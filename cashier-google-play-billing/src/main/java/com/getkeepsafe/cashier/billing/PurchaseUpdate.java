@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2019 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.billing;
+
+import androidx.annotation.Nullable;
+
+import com.android.billingclient.api.BillingClient.BillingResponse;
+import com.android.billingclient.api.Purchase;
+import com.getkeepsafe.cashier.Product;
+
+import java.util.List;
+
+/**
+ * A result delivered by Google Play Billing to {@link GooglePlayBillingVendor#onPurchasesUpdated},
+ * either for a purchase flow launched by the vendor or unsolicited, e.g. a pending purchase that
+ * completed or a promo code redeemed in the Play Store.
+ */
+public final class PurchaseUpdate {
+    private final int responseCode;
+    private final List<Purchase> purchases;
+    private final Product product;
+
+    PurchaseUpdate(@BillingResponse int responseCode, List<Purchase> purchases, @Nullable Product product) {
+        this.responseCode = responseCode;
+        this.purchases = purchases;
+        this.product = product;
+    }
+
+    @BillingResponse
+    public int responseCode() {
+        return responseCode;
+    }
+
+    /**
+     * The updated purchases. Purchases failing the signature check of the vendor are left out.
+     */
+    public List<Purchase> purchases() {
+        return purchases;
+    }
+
+    /**
+     * The product of the purchase flow this update is the result of, or null if it is unsolicited
+     */
+    @Nullable
+    public Product product() {
+        return product;
+    }
+
+    public boolean isSolicited() {
+        return product != null;
+    }
+
+    @Override
+    public String toString() {
+        return "PurchaseUpdate{responseCode=" + responseCode
+                + ", purchases=" + purchases.size()
+                + ", solicited=" + isSolicited() + "}";
+    }
+}
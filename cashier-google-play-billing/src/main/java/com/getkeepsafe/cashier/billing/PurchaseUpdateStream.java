@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2019 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.billing;
+
+import com.getkeepsafe.cashier.logging.TaggedLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Multicasts the {@link PurchaseUpdate}s of a {@link GooglePlayBillingVendor} to any number of
+ * subscribers.
+ * <p>
+ * Updates published while nobody is subscribed are buffered, up to a bound past which the oldest
+ * are dropped, and handed to the next subscriber. Every new subscriber otherwise receives the
+ * latest update on subscription. Updates are delivered on the publishing thread, the main thread
+ * for Google Play Billing, so subscribers should return quickly.
+ * <p>
+ * Every subscriber receives updates in the order they were published, replayed ones included:
+ * updates are delivered, and replayed on subscription, while holding the stream's lock. A
+ * subscriber must therefore not wait on another thread that publishes or subscribes. A subscriber
+ * that throws is logged and does not keep the update from the other subscribers.
+ */
+public final class PurchaseUpdateStream {
+    public interface Subscriber {
+        void onPurchaseUpdate(PurchaseUpdate update);
+    }
+
+    public interface Subscription {
+        void unsubscribe();
+    }
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    /**
+     * Guards all of the state below: the subscribers and buffer, so that buffered updates are never
+     * stranded between having subscribers and not having any, and delivery, so that updates are
+     * never reordered
+     */
+    private final Object lock = new Object();
+    /**
+     * Replaced rather than modified, so a subscriber that unsubscribes while an update is delivered
+     * to it does not disturb the delivery
+     */
+    private Subscriber[] subscribers = NO_SUBSCRIBERS;
+    private final ArrayDeque<PurchaseUpdate> buffer = new ArrayDeque<>();
+    private final int capacity;
+    private final TaggedLogger log;
+    private long dropped;
+    private PurchaseUpdate latest;
+
+    PurchaseUpdateStream(int capacity, TaggedLogger log) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.log = log;
+    }
+
+    public Subscription subscribe(final Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber is null");
+        }
+
+        synchronized (lock) {
+            add(subscriber);
+            final List<PurchaseUpdate> replay;
+            if (buffer.isEmpty()) {
+                replay = latest == null
+                        ? Collections.<PurchaseUpdate>emptyList()
+                        : Collections.singletonList(latest);
+            } else {
+                replay = new ArrayList<>(buffer);
+                buffer.clear();
+            }
+
+            // Replayed before any update published after subscribing, which waits for the lock
+            for (PurchaseUpdate update : replay) {
+                deliver(subscriber, update);
+            }
+        }
+
+        return new Subscription() {
+            @Override
+            public void unsubscribe() {
+                synchronized (lock) {
+                    remove(subscriber);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The number of updates dropped because the buffer was full
+     */
+    public long droppedUpdates() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    void publish(PurchaseUpdate update) {
+        synchronized (lock) {
+            latest = update;
+            final Subscriber[] current = subscribers;
+            if (current.length == 0) {
+                if (buffer.size() == capacity) {
+                    buffer.removeFirst();
+                    dropped++;
+                }
+                buffer.addLast(update);
+                return;
+            }
+
+            for (Subscriber subscriber : current) {
+                deliver(subscriber, update);
+            }
+        }
+    }
+
+    private void deliver(Subscriber subscriber, PurchaseUpdate update) {
+        try {
+            subscriber.onPurchaseUpdate(update);
+        } catch (RuntimeException e) {
+            log.w("Purchase update subscriber failed", e);
+        }
+    }
+
+    /**
+     * Must hold {@link #lock}
+     */
+    private void add(Subscriber subscriber) {
+        final Subscriber[] updated = Arrays.copyOf(subscribers, subscribers.length + 1);
+        updated[subscribers.length] = subscriber;
+        subscribers = updated;
+    }
+
+    /**
+     * Must hold {@link #lock}
+     */
+    private void remove(Subscriber subscriber) {
+        final Subscriber[] current = subscribers;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+
+        if (current.length == 1) {
+            subscribers = NO_SUBSCRIBERS;
+        } else {
+            final Subscriber[] updated = new Subscriber[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            subscribers = updated;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  Copyright 2019 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.billing;
+
+import com.android.billingclient.api.BillingClient.BillingResponse;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When and how often {@link GooglePlayBillingVendor} retries the idempotent operations that fail
+ * with a transient response code: getting product details, getting the inventory and consuming.
+ * <p>
+ * Retries back off exponentially, with jitter so that many clients failing at once do not retry
+ * in lockstep. A retry after the billing service disconnected reconnects first.
+ *
+ * @see GooglePlayBillingVendor#setRetryPolicy(RetryPolicy)
+ */
+public final class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Set<Integer> retryableResponseCodes;
+    private final Random random = new Random();
+
+    private RetryPolicy(Builder builder) {
+        maxAttempts = builder.maxAttempts;
+        initialBackoffMillis = builder.initialBackoffMillis;
+        maxBackoffMillis = builder.maxBackoffMillis;
+        retryableResponseCodes = new HashSet<>(builder.retryableResponseCodes);
+    }
+
+    /**
+     * @param attempts     The number of attempts made so far
+     * @param responseCode The response code the last attempt failed with
+     */
+    boolean shouldRetry(int attempts, @BillingResponse int responseCode) {
+        return attempts < maxAttempts && retryableResponseCodes.contains(responseCode);
+    }
+
+    /**
+     * @param attempts The number of attempts made so far
+     * @return How long to wait before the next attempt: between half of and the full exponential
+     * backoff
+     */
+    long backoffMillis(int attempts) {
+        return backoffMillis(attempts, random);
+    }
+
+    long backoffMillis(int attempts, Random random) {
+        final int shift = Math.min(attempts - 1, 30);
+        final long backoff = Math.min(initialBackoffMillis << shift, maxBackoffMillis);
+        final long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 500;
+        private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(10);
+        private Collection<Integer> retryableResponseCodes = Arrays.asList(
+                BillingResponse.SERVICE_DISCONNECTED,
+                BillingResponse.SERVICE_UNAVAILABLE,
+                BillingResponse.ERROR);
+
+        /**
+         * The number of attempts, including the first one, 3 by default
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be positive");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * The backoff before the first retry, doubled for every retry after it. 500 milliseconds
+         * by default.
+         */
+        public Builder initialBackoff(long duration, TimeUnit unit) {
+            initialBackoffMillis = checkDuration(duration, unit);
+            return this;
+        }
+
+        /**
+         * The longest backoff, 10 seconds by default
+         */
+        public Builder maxBackoff(long duration, TimeUnit unit) {
+            maxBackoffMillis = checkDuration(duration, unit);
+            return this;
+        }
+
+        /**
+         * The {@link BillingResponse} codes worth retrying. By default
+         * {@link BillingResponse#SERVICE_DISCONNECTED}, {@link BillingResponse#SERVICE_UNAVAILABLE}
+         * and {@link BillingResponse#ERROR}.
+         */
+        public Builder retryableResponseCodes(Collection<Integer> responseCodes) {
+            if (responseCodes == null) {
+                throw new IllegalArgumentException("Response codes are null");
+            }
+            retryableResponseCodes = responseCodes;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+        private static long checkDuration(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Duration must be positive");
+            }
+            return unit.toMillis(duration);
+        }
+    }
+}
@@ -3,21 +3,65 @@ package com.getkeepsafe.cashier.billing;
 import android.os.Handler;
 import android.os.Looper;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.BackgroundExecutor;
+import com.getkeepsafe.cashier.CashierTrace;
+
+import java.util.concurrent.Executor;
 
 class Threading {
 
-    private ExecutorService threadExecutor = Executors.newCachedThreadPool();
+    private static Handler mainHandler;
+
+    private final Executor backgroundExecutor;
+
+    @Nullable
+    private final Executor callbackExecutor;
 
-    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    Threading() {
+        this(BackgroundExecutor.shared(), null);
+    }
+
+    /**
+     * @param callbackExecutor Executor to deliver results on, or null for the main thread
+     */
+    Threading(Executor backgroundExecutor, @Nullable Executor callbackExecutor) {
+        this.backgroundExecutor = backgroundExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
 
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException If the executor has no room left
+     */
     void runInBackground(Runnable runnable) {
-        threadExecutor.execute(runnable);
+        backgroundExecutor.execute(CashierTrace.wrap("background", runnable));
     }
 
     void runOnMainThread(Runnable runnable) {
-        mainHandler.post(runnable);
+        mainHandler().post(CashierTrace.wrap("mainThread", runnable));
+    }
+
+    /**
+     * Delivers a result to a listener, on the callback executor if one is set
+     */
+    void deliver(Runnable runnable) {
+        if (callbackExecutor == null) {
+            runOnMainThread(runnable);
+        } else {
+            callbackExecutor.execute(CashierTrace.wrap("deliver", runnable));
+        }
+    }
+
+    void runOnMainThreadDelayed(Runnable runnable, long delayMillis) {
+        mainHandler().postDelayed(CashierTrace.wrap("mainThread", runnable), delayMillis);
+    }
+
+    private static synchronized Handler mainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
     }
 
 }
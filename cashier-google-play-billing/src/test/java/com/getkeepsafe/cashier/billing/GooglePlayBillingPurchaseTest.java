@@ -1,12 +1,16 @@
 package com.getkeepsafe.cashier.billing;
 
 import com.android.billingclient.api.Purchase;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
 
 import org.json.JSONException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.IOException;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -62,4 +66,17 @@ public class GooglePlayBillingPurchaseTest {
         assertEquals(JSON_REFUNDED, purchase.receipt());
         assertTrue(purchase.refunded());
     }
+
+    @Test
+    public void binary_round_trip() throws IOException, JSONException {
+        Purchase billingPurchase = new TestPurchase(TestData.productInappA, JSON_CANCELED, SIGNATURE);
+        GooglePlayBillingPurchase purchase = GooglePlayBillingPurchase.create(TestData.productInappA, billingPurchase);
+
+        BinaryWriter writer = new BinaryWriter();
+        purchase.writeTo(writer);
+        GooglePlayBillingPurchase read = GooglePlayBillingPurchase.create(new BinaryReader(writer.toByteArray()));
+
+        assertEquals(purchase, read);
+        assertTrue(read.canceled());
+    }
 }
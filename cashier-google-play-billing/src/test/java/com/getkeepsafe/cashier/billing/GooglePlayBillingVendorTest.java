@@ -5,10 +5,16 @@ import android.content.Context;
 
 import com.android.billingclient.api.BillingClient;
 import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.SkuDetails;
 import com.android.billingclient.api.SkuDetailsResponseListener;
+import com.getkeepsafe.cashier.CallbackExecutor;
+import com.getkeepsafe.cashier.Cashier;
 import com.getkeepsafe.cashier.ConsumeListener;
+import com.getkeepsafe.cashier.Inventory;
+import com.getkeepsafe.cashier.InventoryListener;
 import com.getkeepsafe.cashier.Product;
 import com.getkeepsafe.cashier.ProductDetailsListener;
+import com.getkeepsafe.cashier.ProductsDetailsPageListener;
 import com.getkeepsafe.cashier.Purchase;
 import com.getkeepsafe.cashier.PurchaseListener;
 import com.getkeepsafe.cashier.Vendor;
@@ -22,13 +28,18 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import edu.emory.mathcs.backport.java.util.Collections;
 
@@ -39,6 +50,7 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -246,6 +258,41 @@ public class GooglePlayBillingVendorTest {
         vendor.purchase(activity, TestData.productInappA, null, listener);
     }
 
+    @Test
+    public void publishes_purchase_updates() throws JSONException {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        PurchaseListener listener = mock(PurchaseListener.class);
+        mockApiPurchaseSuccess(vendor, TestData.productInappA, true);
+        PurchaseUpdateStream.Subscriber subscriber = mock(PurchaseUpdateStream.Subscriber.class);
+        vendor.purchaseUpdates().subscribe(subscriber);
+
+        vendor.purchase(activity, TestData.productInappA, null, listener);
+        vendor.onPurchasesUpdated(BillingClient.BillingResponse.OK,
+                Collections.singletonList(new TestPurchase(TestData.productInappB)));
+
+        ArgumentCaptor<PurchaseUpdate> argument = ArgumentCaptor.forClass(PurchaseUpdate.class);
+        verify(subscriber, times(2)).onPurchaseUpdate(argument.capture());
+        assertTrue(argument.getAllValues().get(0).isSolicited());
+        PurchaseUpdate unsolicited = argument.getAllValues().get(1);
+        assertFalse(unsolicited.isSolicited());
+        assertEquals(TestData.productInappB.sku(), unsolicited.purchases().get(0).getSku());
+    }
+
+    @Test
+    public void publishes_purchase_update_after_purchase_listener() throws JSONException {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        PurchaseListener listener = mock(PurchaseListener.class);
+        mockApiPurchaseSuccess(vendor, TestData.productInappA, true);
+        PurchaseUpdateStream.Subscriber subscriber = mock(PurchaseUpdateStream.Subscriber.class);
+        vendor.purchaseUpdates().subscribe(subscriber);
+
+        vendor.purchase(activity, TestData.productInappA, null, listener);
+
+        InOrder inOrder = inOrder(listener, subscriber);
+        inOrder.verify(listener).success(any(Purchase.class));
+        inOrder.verify(subscriber).onPurchaseUpdate(any(PurchaseUpdate.class));
+    }
+
     @Test(expected = RuntimeException.class)
     public void purchase_while_another_purchase_in_progress() {
         GooglePlayBillingVendor vendor = successfullyInitializedVendor();
@@ -361,6 +408,200 @@ public class GooglePlayBillingVendorTest {
         assertEquals(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, argumentError.getValue().code);
     }
 
+    @Test
+    public void retry_product_details_on_transient_failure() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        vendor.setThreading(TestHelper.mockThreading());
+        vendor.setRetryPolicy(new RetryPolicy.Builder().maxAttempts(3).build());
+        ProductDetailsListener listener = mock(ProductDetailsListener.class);
+        final int[] calls = {0};
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                SkuDetailsResponseListener responseListener = invocation.getArgument(2);
+                if (++calls[0] < 3) {
+                    responseListener.onSkuDetailsResponse(BillingClient.BillingResponse.SERVICE_UNAVAILABLE, null);
+                } else {
+                    responseListener.onSkuDetailsResponse(BillingClient.BillingResponse.OK,
+                            Collections.singletonList(TestData.getSkuDetail(TestData.productInappA.sku())));
+                }
+                return null;
+            }
+        }).when(api).getSkuDetails(eq(BillingClient.SkuType.INAPP), ArgumentMatchers.<String>anyList(), any(SkuDetailsResponseListener.class));
+
+        vendor.getProductDetails(context, TestData.productInappA.sku(), false, listener);
+
+        assertEquals(3, calls[0]);
+        verify(listener).success(TestData.productInappA);
+        verify(listener, never()).failure(any(Vendor.Error.class));
+    }
+
+    @Test
+    public void does_not_retry_inventory_failure_without_billing_response() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        vendor.setThreading(TestHelper.mockThreading());
+        vendor.setRetryPolicy(new RetryPolicy.Builder().maxAttempts(3).build());
+        when(api.getPurchases(anyString())).thenReturn(null);
+        InventoryListener listener = mock(InventoryListener.class);
+
+        vendor.getInventory(context, null, null, listener);
+
+        verify(api, times(1)).getPurchases(BillingClient.SkuType.INAPP);
+        verify(listener).failure(any(Vendor.Error.class));
+    }
+
+    @Test
+    public void retry_gives_up_after_max_attempts() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        vendor.setThreading(TestHelper.mockThreading());
+        vendor.setRetryPolicy(new RetryPolicy.Builder().maxAttempts(2).build());
+        ConsumeListener listener = mock(ConsumeListener.class);
+        Purchase purchase = mock(Purchase.class);
+        when(purchase.product()).thenReturn(TestData.productInappA);
+        when(purchase.token()).thenReturn("TOKEN");
+        mockConsume(vendor, BillingClient.BillingResponse.ERROR);
+
+        vendor.consume(context, purchase, listener);
+
+        verify(api, times(2)).consumePurchase(eq("TOKEN"), any(ConsumeResponseListener.class));
+        ArgumentCaptor<Vendor.Error> argumentError = ArgumentCaptor.forClass(Vendor.Error.class);
+        verify(listener).failure(eq(purchase), argumentError.capture());
+        assertEquals(VendorConstants.CONSUME_FAILURE, argumentError.getValue().code);
+    }
+
+    @Test
+    public void get_inventory_on_background_executor() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        final List<Runnable> tasks = new ArrayList<>();
+        Cashier cashier = Cashier.forVendor(context, vendor)
+                .withBackgroundExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        tasks.add(command);
+                    }
+                })
+                .build();
+        when(api.getPurchases(anyString())).thenReturn(new ArrayList<com.android.billingclient.api.Purchase>());
+        InventoryListener listener = mock(InventoryListener.class);
+
+        cashier.getInventory(listener);
+        verify(listener, never()).success(any(Inventory.class));
+        // Purchases of both types are queried as separate tasks
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        assertEquals(2, tasks.size());
+
+        verify(listener).success(any(Inventory.class));
+    }
+
+    @Test
+    public void deliver_inventory_on_callback_executor() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        final List<Runnable> backgroundTasks = new ArrayList<>();
+        final List<Runnable> callbacks = new ArrayList<>();
+        Cashier cashier = Cashier.forVendor(context, vendor)
+                .withBackgroundExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        backgroundTasks.add(command);
+                    }
+                })
+                .withCallbackExecutor(CallbackExecutor.from(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        callbacks.add(command);
+                    }
+                }))
+                .build();
+        when(api.getPurchases(anyString())).thenReturn(new ArrayList<com.android.billingclient.api.Purchase>());
+        InventoryListener listener = mock(InventoryListener.class);
+
+        cashier.getInventory(listener);
+        for (int i = 0; i < backgroundTasks.size(); i++) {
+            backgroundTasks.get(i).run();
+        }
+        // The vendor and Cashier share a single hop to the callback executor
+        assertEquals(1, callbacks.size());
+        verify(listener, never()).success(any(Inventory.class));
+
+        callbacks.get(0).run();
+        verify(listener).success(any(Inventory.class));
+    }
+
+    @Test
+    public void keep_executors_per_cashier() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        vendor.setThreading(TestHelper.mockThreading());
+        final List<Runnable> tasks = new ArrayList<>();
+        Cashier withExecutor = Cashier.forVendor(context, vendor)
+                .withBackgroundExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        tasks.add(command);
+                    }
+                })
+                .build();
+        Cashier withDefaults = Cashier.forVendor(context, vendor).build();
+        when(api.getPurchases(anyString())).thenReturn(new ArrayList<com.android.billingclient.api.Purchase>());
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryListener defaultsListener = mock(InventoryListener.class);
+
+        withExecutor.getInventory(listener);
+        withDefaults.getInventory(defaultsListener);
+
+        verify(defaultsListener).success(any(Inventory.class));
+        verify(listener, never()).success(any(Inventory.class));
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void fail_inventory_when_background_executor_is_full() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        Cashier cashier = Cashier.forVendor(context, vendor)
+                .withBackgroundExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        throw new RejectedExecutionException();
+                    }
+                })
+                .build();
+        InventoryListener listener = mock(InventoryListener.class);
+
+        cashier.getInventory(listener);
+
+        ArgumentCaptor<Vendor.Error> argumentError = ArgumentCaptor.forClass(Vendor.Error.class);
+        verify(listener).failure(argumentError.capture());
+        assertEquals(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, argumentError.getValue().code);
+    }
+
+    @Test
+    public void get_products_details_in_single_request() {
+        GooglePlayBillingVendor vendor = successfullyInitializedVendor();
+        ProductsDetailsPageListener listener = mock(ProductsDetailsPageListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                List<String> skus = invocation.getArgument(1);
+                SkuDetailsResponseListener responseListener = invocation.getArgument(2);
+
+                List<SkuDetails> details = new ArrayList<>();
+                for (String sku : skus) {
+                    details.add(TestData.getSkuDetail(sku));
+                }
+                responseListener.onSkuDetailsResponse(BillingClient.BillingResponse.OK, details);
+                return null;
+            }
+        }).when(api).getSkuDetails(eq(BillingClient.SkuType.INAPP), ArgumentMatchers.<String>anyList(), any(SkuDetailsResponseListener.class));
+
+        vendor.getProductsDetails(context, Arrays.asList(TestData.productInappA.sku(), TestData.productInappB.sku()), false, listener);
+
+        verify(api, times(1)).getSkuDetails(eq(BillingClient.SkuType.INAPP), ArgumentMatchers.<String>anyList(), any(SkuDetailsResponseListener.class));
+        List<Product> expected = Arrays.asList(TestData.productInappA, TestData.productInappB);
+        verify(listener).page(expected);
+        verify(listener).success(expected);
+    }
+
 
     private void mockSuccessfulInitialization(GooglePlayBillingVendor vendor) {
         when(api.initialize(eq(context), eq(vendor), eq(vendor), any(Logger.class))).thenAnswer(new Answer<Boolean>() {
@@ -6,28 +6,39 @@ import com.android.billingclient.api.SkuDetailsResponseListener;
 import com.getkeepsafe.cashier.Inventory;
 import com.getkeepsafe.cashier.InventoryListener;
 import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.ProductDetailsCache;
 import com.getkeepsafe.cashier.Vendor;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import edu.emory.mathcs.backport.java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -187,4 +198,137 @@ public class InventoryQueryTest {
             assertTrue(TestData.allProducts.contains(product));
         }
     }
+
+    @Test
+    public void queries_subscriptions_concurrently() {
+        Threading threading = TestHelper.mockThreading();
+        final List<Runnable> tasks = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                tasks.add((Runnable) invocation.getArgument(0));
+                return null;
+            }
+        }).when(threading).runInBackground(any(Runnable.class));
+
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryQuery.execute(threading, api, listener, TestData.allInAppSkus, TestData.allSubSkus);
+        tasks.get(0).run();
+
+        // Inapp sku details are queried while subscription purchases are still waiting
+        assertEquals(2, tasks.size());
+        verify(api).getSkuDetails(eq(BillingClient.SkuType.INAPP), eq(TestData.allInAppSkus), any(SkuDetailsResponseListener.class));
+        verify(api, never()).getPurchases(BillingClient.SkuType.SUBS);
+        verify(listener, never()).success(any(Inventory.class));
+
+        tasks.get(1).run();
+        verify(api).getSkuDetails(eq(BillingClient.SkuType.SUBS), eq(TestData.allSubSkus), any(SkuDetailsResponseListener.class));
+        verify(listener).success(any(Inventory.class));
+    }
+
+    @Test
+    public void queries_subscriptions_inline_when_background_executor_is_full() {
+        Threading threading = TestHelper.mockThreading();
+        doAnswer(new Answer() {
+            private boolean first = true;
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if (!first) {
+                    throw new RejectedExecutionException();
+                }
+                first = false;
+                ((Runnable) invocation.getArgument(0)).run();
+                return null;
+            }
+        }).when(threading).runInBackground(any(Runnable.class));
+
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryQuery.execute(threading, api, listener, TestData.allInAppSkus, TestData.allSubSkus);
+
+        InOrder inOrder = inOrder(api);
+        inOrder.verify(api).getPurchases(BillingClient.SkuType.INAPP);
+        inOrder.verify(api).getPurchases(BillingClient.SkuType.SUBS);
+        verify(listener).success(any(Inventory.class));
+    }
+
+    @Test
+    public void returns_single_error_when_both_purchases_calls_fail() {
+        when(api.getPurchases(anyString())).thenReturn(null);
+
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryQuery.execute(
+                TestHelper.mockThreading(),
+                api,
+                listener,
+                TestData.allInAppSkus,
+                TestData.allSubSkus
+        );
+
+        verify(listener, times(1)).failure(any(Vendor.Error.class));
+        verify(listener, never()).success(any(Inventory.class));
+    }
+
+    @Test
+    public void reports_no_billing_response_when_purchases_call_fails() {
+        when(api.getPurchases(BillingClient.SkuType.INAPP)).thenReturn(null);
+
+        InventoryQuery.Listener listener = mock(InventoryQuery.Listener.class);
+        InventoryQuery.execute(TestHelper.mockThreading(), api, null, listener, TestData.allInAppSkus, TestData.allSubSkus);
+
+        ArgumentCaptor<Vendor.Error> argumentError = ArgumentCaptor.forClass(Vendor.Error.class);
+        verify(listener).failure(argumentError.capture(), ArgumentMatchers.<Integer>isNull());
+        assertEquals(-1, argumentError.getValue().vendorCode);
+    }
+
+    @Test
+    public void reports_billing_response_of_failed_sku_details_call() {
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                SkuDetailsResponseListener listener = invocation.getArgument(2);
+                listener.onSkuDetailsResponse(BillingClient.BillingResponse.SERVICE_DISCONNECTED, null);
+                return null;
+            }
+        }).when(api).getSkuDetails(eq(BillingClient.SkuType.SUBS), ArgumentMatchers.<String>anyList(), any(SkuDetailsResponseListener.class));
+
+        InventoryQuery.Listener listener = mock(InventoryQuery.Listener.class);
+        InventoryQuery.execute(TestHelper.mockThreading(), api, null, listener, TestData.allInAppSkus, TestData.allSubSkus);
+
+        // The negative code of the failed call is not hidden by the successful one
+        ArgumentCaptor<Vendor.Error> argumentError = ArgumentCaptor.forClass(Vendor.Error.class);
+        verify(listener).failure(argumentError.capture(), eq(BillingClient.BillingResponse.SERVICE_DISCONNECTED));
+        assertEquals(BillingClient.BillingResponse.SERVICE_DISCONNECTED, argumentError.getValue().vendorCode);
+    }
+
+    @Test
+    public void takes_purchased_products_from_cache() {
+        ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+        cache.put(GooglePlayBillingConstants.VENDOR_PACKAGE, TestData.productInappA.sku(), false, TestData.productInappA);
+
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryQuery.execute(TestHelper.mockThreading(), api, cache, listener, null, null);
+        ArgumentCaptor<Inventory> argument = ArgumentCaptor.forClass(Inventory.class);
+
+        verify(api, never()).getSkuDetails(eq(BillingClient.SkuType.INAPP), ArgumentMatchers.<String>anyList(), any(SkuDetailsResponseListener.class));
+        verify(listener).success(argument.capture());
+        assertEquals(1, argument.getValue().purchases().size());
+        assertEquals(TestData.productInappA, argument.getValue().purchases().get(0).product());
+    }
+
+    @Test
+    public void stores_queried_products_in_cache() {
+        ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+
+        InventoryListener listener = mock(InventoryListener.class);
+        InventoryQuery.execute(TestHelper.mockThreading(), api, cache, listener, TestData.allInAppSkus, TestData.allSubSkus);
+
+        verify(listener).success(any(Inventory.class));
+        for (String sku : TestData.allInAppSkus) {
+            assertNotNull(cache.getFresh(GooglePlayBillingConstants.VENDOR_PACKAGE, sku, false));
+        }
+        for (String sku : TestData.allSubSkus) {
+            assertNotNull(cache.getFresh(GooglePlayBillingConstants.VENDOR_PACKAGE, sku, true));
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package com.getkeepsafe.cashier.billing;
+
+import com.android.billingclient.api.BillingClient;
+import com.android.billingclient.api.Purchase;
+import com.getkeepsafe.cashier.logging.TaggedLogger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PurchaseUpdateStreamTest {
+
+    private final PurchaseUpdateStream stream = new PurchaseUpdateStream(2, new TaggedLogger("PurchaseUpdateStreamTest"));
+
+    @Test
+    public void multicasts_updates() {
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        stream.subscribe(first);
+        PurchaseUpdateStream.Subscription subscription = stream.subscribe(second);
+
+        PurchaseUpdate update = anUpdate();
+        stream.publish(update);
+        subscription.unsubscribe();
+        PurchaseUpdate other = anUpdate();
+        stream.publish(other);
+
+        assertEquals(listOf(update, other), first.updates);
+        assertEquals(listOf(update), second.updates);
+    }
+
+    @Test
+    public void replays_latest_update_to_new_subscribers() {
+        stream.subscribe(new RecordingSubscriber());
+        stream.publish(anUpdate());
+        PurchaseUpdate latest = anUpdate();
+        stream.publish(latest);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        stream.subscribe(subscriber);
+
+        assertEquals(listOf(latest), subscriber.updates);
+    }
+
+    @Test
+    public void buffers_updates_without_subscribers() {
+        PurchaseUpdate first = anUpdate();
+        PurchaseUpdate second = anUpdate();
+        PurchaseUpdate third = anUpdate();
+        stream.publish(first);
+        stream.publish(second);
+        stream.publish(third);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        stream.subscribe(subscriber);
+
+        assertEquals(listOf(second, third), subscriber.updates);
+        assertEquals(1, stream.droppedUpdates());
+    }
+
+    @Test
+    public void delivers_updates_past_failing_subscriber() {
+        stream.subscribe(new PurchaseUpdateStream.Subscriber() {
+            @Override
+            public void onPurchaseUpdate(PurchaseUpdate update) {
+                throw new IllegalStateException();
+            }
+        });
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        stream.subscribe(subscriber);
+
+        PurchaseUpdate update = anUpdate();
+        stream.publish(update);
+
+        assertEquals(listOf(update), subscriber.updates);
+    }
+
+    @Test
+    public void replays_buffered_updates_before_later_ones() throws InterruptedException {
+        final PurchaseUpdate buffered = anUpdate();
+        final PurchaseUpdate later = anUpdate();
+        stream.publish(buffered);
+
+        // An update published from another thread while the buffer is replayed comes after it
+        final Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stream.publish(later);
+            }
+        });
+        final RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onPurchaseUpdate(PurchaseUpdate update) {
+                super.onPurchaseUpdate(update);
+                if (update == buffered) {
+                    publisher.start();
+                    try {
+                        publisher.join(100);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        };
+        stream.subscribe(subscriber);
+        publisher.join();
+
+        assertEquals(listOf(buffered, later), subscriber.updates);
+    }
+
+    private static PurchaseUpdate anUpdate() {
+        return new PurchaseUpdate(BillingClient.BillingResponse.OK, Collections.<Purchase>emptyList(), null);
+    }
+
+    private static List<PurchaseUpdate> listOf(PurchaseUpdate... updates) {
+        List<PurchaseUpdate> list = new ArrayList<>();
+        Collections.addAll(list, updates);
+        return list;
+    }
+
+    private static class RecordingSubscriber implements PurchaseUpdateStream.Subscriber {
+        final List<PurchaseUpdate> updates = new ArrayList<>();
+
+        @Override
+        public void onPurchaseUpdate(PurchaseUpdate update) {
+            updates.add(update);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.getkeepsafe.cashier.billing;
+
+import com.android.billingclient.api.BillingClient;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy.Builder()
+            .maxAttempts(3)
+            .initialBackoff(100, TimeUnit.MILLISECONDS)
+            .maxBackoff(1, TimeUnit.SECONDS)
+            .build();
+
+    @Test
+    public void retries_transient_errors_up_to_max_attempts() {
+        assertTrue(policy.shouldRetry(1, BillingClient.BillingResponse.SERVICE_DISCONNECTED));
+        assertTrue(policy.shouldRetry(2, BillingClient.BillingResponse.ERROR));
+        assertFalse(policy.shouldRetry(3, BillingClient.BillingResponse.SERVICE_UNAVAILABLE));
+        assertFalse(policy.shouldRetry(1, BillingClient.BillingResponse.DEVELOPER_ERROR));
+        assertFalse(policy.shouldRetry(1, BillingClient.BillingResponse.ITEM_NOT_OWNED));
+    }
+
+    @Test
+    public void backs_off_exponentially_with_jitter() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.backoffMillis(1, random));
+            assertBetween(100, 200, policy.backoffMillis(2, random));
+            assertBetween(400, 800, policy.backoffMillis(4, random));
+            assertBetween(500, 1000, policy.backoffMillis(40, random));
+        }
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
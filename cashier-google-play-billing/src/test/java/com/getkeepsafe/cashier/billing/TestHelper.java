@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
@@ -36,6 +37,8 @@ class TestHelper {
         };
         doAnswer(executeAnswer).when(mock).runOnMainThread(any(Runnable.class));
         doAnswer(executeAnswer).when(mock).runInBackground(any(Runnable.class));
+        doAnswer(executeAnswer).when(mock).deliver(any(Runnable.class));
+        doAnswer(executeAnswer).when(mock).runOnMainThreadDelayed(any(Runnable.class), anyLong());
         return mock;
     }
 
@@ -19,14 +19,24 @@ package com.getkeepsafe.cashier.iab;
 import android.content.Intent;
 import android.os.Parcelable;
 
+import com.getkeepsafe.cashier.BinaryPurchase;
 import com.getkeepsafe.cashier.CashierPurchase;
 import com.getkeepsafe.cashier.Product;
 import com.getkeepsafe.cashier.Purchase;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.binary.MalformedBinaryException;
+import com.getkeepsafe.cashier.json.JsonFieldReader;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+import com.getkeepsafe.cashier.json.MalformedJsonException;
 import com.google.auto.value.AutoValue;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.AUTO_RENEWING;
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.DEVELOPER_PAYLOAD;
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.ORDER_ID;
@@ -42,7 +52,7 @@ import static com.getkeepsafe.cashier.iab.InAppBillingConstants.RESPONSE_INAPP_P
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.RESPONSE_INAPP_SIGNATURE;
 
 @AutoValue
-public abstract class InAppBillingPurchase implements Parcelable, Purchase {
+public abstract class InAppBillingPurchase implements Parcelable, BinaryPurchase {
   public static final String GP_ORDER_ID_TEST = "TEST-ORDER-ID";
 
   public static final String GP_KEY_PACKAGE_NAME = "gp-package-name";
@@ -131,6 +141,57 @@ public abstract class InAppBillingPurchase implements Parcelable, Purchase {
         purchaseData);
   }
 
+  /**
+   * Reads a purchase from the next JSON object of the given reader, in the format written by
+   * {@link #toJson()} or {@link #writeJson(JsonWriter)}. Unknown keys are skipped.
+   */
+  public static InAppBillingPurchase create(JsonReader reader) throws IOException {
+    final GooglePlayFields fields = new GooglePlayFields();
+    final Purchase purchase = CashierPurchase.create(reader, fields);
+    if (fields.packageName == null) {
+      throw new MalformedJsonException("No value for " + GP_KEY_PACKAGE_NAME);
+    } else if (fields.dataSignature == null) {
+      throw new MalformedJsonException("No value for " + GP_KEY_DATA_SIG);
+    } else if (fields.purchaseData == null) {
+      throw new MalformedJsonException("No value for " + GP_KEY_PURCHASE_DATA);
+    } else if (fields.autoRenew == null) {
+      throw new MalformedJsonException("No value for " + GP_KEY_AUTO_RENEW);
+    } else if (!fields.hasPurchaseTime) {
+      throw new MalformedJsonException("No value for " + GP_KEY_PURCHASE_TIME);
+    } else if (!fields.hasPurchaseState) {
+      throw new MalformedJsonException("No value for " + GP_KEY_PURCHASE_STATE);
+    }
+
+    return create(purchase,
+        fields.packageName,
+        fields.dataSignature,
+        fields.autoRenew,
+        fields.purchaseTime,
+        fields.purchaseState,
+        fields.purchaseData);
+  }
+
+  /**
+   * Reads a purchase written by {@link #writeTo(BinaryWriter)}
+   */
+  public static InAppBillingPurchase create(BinaryReader reader) throws MalformedBinaryException {
+    final Purchase purchase = CashierPurchase.create(reader);
+    final String packageName = reader.readString();
+    final String dataSignature = reader.readUniqueString();
+    final boolean autoRenew = reader.readBoolean();
+    final long purchaseTime = reader.readSignedVarint();
+    final int purchaseState = (int) reader.readSignedVarint();
+    final String purchaseData = reader.readBoolean() ? purchase.receipt() : reader.readUniqueString();
+
+    return create(purchase,
+        packageName,
+        dataSignature,
+        autoRenew,
+        purchaseTime,
+        purchaseState,
+        purchaseData);
+  }
+
   public static InAppBillingPurchase create(Product product, Intent purchaseIntent)
       throws JSONException {
     if (product == null || purchaseIntent == null) {
@@ -225,4 +286,92 @@ public abstract class InAppBillingPurchase implements Parcelable, Purchase {
 
     return object;
   }
+
+  /**
+   * Writes this purchase as a JSON object, in the same format as {@link #toJson()}
+   */
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    cashierPurchase().writeJsonFields(writer);
+    writer.name(GP_KEY_PACKAGE_NAME).value(packageName());
+    writer.name(GP_KEY_DATA_SIG).value(dataSignature());
+    writer.name(GP_KEY_AUTO_RENEW).value(autoRenewing());
+    writer.name(GP_KEY_PURCHASE_TIME).value(purchaseTime());
+    writer.name(GP_KEY_PURCHASE_STATE).value(purchaseState());
+    writer.name(GP_KEY_PURCHASE_DATA).value(receipt());
+    writer.endObject();
+  }
+
+  @Override
+  public void writeTo(BinaryWriter writer) {
+    final CashierPurchase purchase = cashierPurchase();
+    purchase.writeTo(writer);
+    writer.writeString(packageName());
+    writer.writeUniqueString(dataSignature());
+    writer.writeBoolean(autoRenewing());
+    writer.writeSignedVarint(purchaseTime());
+    writer.writeSignedVarint(purchaseState());
+    // The receipt is normally the purchase data the Cashier purchase was created from, which is
+    // also the largest field, so it is not written twice
+    final boolean sameReceipt = receipt().equals(purchase.receipt());
+    writer.writeBoolean(sameReceipt);
+    if (!sameReceipt) {
+      writer.writeUniqueString(receipt());
+    }
+  }
+
+  private CashierPurchase cashierPurchase() {
+    final Purchase purchase = purchase();
+    if (purchase instanceof CashierPurchase) {
+      return (CashierPurchase) purchase;
+    }
+
+    return CashierPurchase.create(purchase.product(),
+        purchase.orderId(),
+        purchase.token(),
+        purchase.receipt(),
+        purchase.developerPayload());
+  }
+
+  /**
+   * Collects the Google Play specific fields while {@link CashierPurchase} streams the rest
+   */
+  private static final class GooglePlayFields implements JsonFieldReader {
+    String packageName;
+    String dataSignature;
+    String purchaseData;
+    Boolean autoRenew;
+    boolean hasPurchaseTime;
+    long purchaseTime;
+    boolean hasPurchaseState;
+    int purchaseState;
+
+    @Override
+    public boolean readField(String name, JsonReader reader) throws IOException {
+      switch (name) {
+        case GP_KEY_PACKAGE_NAME:
+          packageName = reader.nextString();
+          return true;
+        case GP_KEY_DATA_SIG:
+          dataSignature = reader.nextString();
+          return true;
+        case GP_KEY_PURCHASE_DATA:
+          purchaseData = reader.nextString();
+          return true;
+        case GP_KEY_AUTO_RENEW:
+          autoRenew = reader.nextBoolean();
+          return true;
+        case GP_KEY_PURCHASE_TIME:
+          purchaseTime = reader.nextLong();
+          hasPurchaseTime = true;
+          return true;
+        case GP_KEY_PURCHASE_STATE:
+          purchaseState = reader.nextInt();
+          hasPurchaseState = true;
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
 }
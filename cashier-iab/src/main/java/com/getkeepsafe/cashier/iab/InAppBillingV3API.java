@@ -28,7 +28,9 @@ import android.os.RemoteException;
 import android.text.TextUtils;
 
 import com.android.vending.billing.IInAppBillingService;
+import com.getkeepsafe.cashier.CashierTrace;
 import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.logging.TaggedLogger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -54,20 +56,27 @@ import static com.getkeepsafe.cashier.iab.InAppBillingConstants.VENDOR_PACKAGE;
 public class InAppBillingV3API extends AbstractInAppBillingV3API {
   private IInAppBillingService billing;
   private LifecycleListener listener;
+  private int connectingOperationId;
+  private final TaggedLogger log = new TaggedLogger("InAppBillingV3API");
 
   private final ServiceConnection serviceConnection = new ServiceConnection() {
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
-      logger.i("InAppBillingV3API", "onServiceConnected");
-      billing = IInAppBillingService.Stub.asInterface(service);
-      if (listener != null) {
-        listener.initialized(available());
+      final CashierTrace.Scope scope = CashierTrace.enter(connectingOperationId);
+      try {
+        log.i("onServiceConnected");
+        billing = IInAppBillingService.Stub.asInterface(service);
+        if (listener != null) {
+          listener.initialized(available());
+        }
+      } finally {
+        scope.exit();
       }
     }
 
     @Override
     public void onServiceDisconnected(ComponentName name) {
-      logger.i("InAppBillingV3API", "onServiceDisconnected");
+      log.i("onServiceDisconnected");
       billing = null;
       if (listener != null) {
         listener.disconnected();
@@ -79,6 +88,7 @@ public class InAppBillingV3API extends AbstractInAppBillingV3API {
   public boolean initialize(Context context, InAppBillingV3Vendor vendor, LifecycleListener listener,
                             Logger logger) {
     final boolean superInited = super.initialize(context, vendor, listener, logger);
+    log.setLogger(logger);
     this.listener = listener;
     if (available()) {
       if (listener != null) {
@@ -102,6 +112,9 @@ public class InAppBillingV3API extends AbstractInAppBillingV3API {
       }
     }
 
+    // The connection callbacks belong to the operation that bound the service
+    connectingOperationId = CashierTrace.currentOperationId();
+    final boolean traced = CashierTrace.beginSection("bindService");
     try {
       return superInited
           && context.bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
@@ -112,6 +125,10 @@ public class InAppBillingV3API extends AbstractInAppBillingV3API {
       // There is not much we can do about this, so we're going to default to returning false
       // since we are unable to bind the service, which means the vendor is not available.
       return false;
+    } finally {
+      if (traced) {
+        CashierTrace.endSection();
+      }
     }
   }
 
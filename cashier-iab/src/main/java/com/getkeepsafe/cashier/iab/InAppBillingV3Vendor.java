@@ -24,23 +24,29 @@ import android.content.IntentSender;
 import android.os.Bundle;
 import android.os.RemoteException;
 import android.text.TextUtils;
-import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.getkeepsafe.cashier.BinaryVendor;
+import com.getkeepsafe.cashier.CashierTrace;
 import com.getkeepsafe.cashier.ConsumeListener;
 import com.getkeepsafe.cashier.Inventory;
 import com.getkeepsafe.cashier.InventoryListener;
 import com.getkeepsafe.cashier.Product;
 import com.getkeepsafe.cashier.ProductDetailsListener;
+import com.getkeepsafe.cashier.ProductsDetailsPageListener;
+import com.getkeepsafe.cashier.ProductsDetailsVendor;
 import com.getkeepsafe.cashier.Purchase;
 import com.getkeepsafe.cashier.PurchaseListener;
 import com.getkeepsafe.cashier.Vendor;
+import com.getkeepsafe.cashier.binary.BinaryReader;
 import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.logging.TaggedLogger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -87,13 +93,14 @@ import static com.getkeepsafe.cashier.iab.InAppBillingConstants.VENDOR_PACKAGE;
  * Please use GooglePlayBillingVendor that uses new Google Play Billing library.
  */
 @Deprecated
-public class InAppBillingV3Vendor implements Vendor {
+public class InAppBillingV3Vendor implements BinaryVendor, ProductsDetailsVendor {
   private final AbstractInAppBillingV3API api;
   private final String publicKey64;
 
-  private Logger logger;
+  private final TaggedLogger log = new TaggedLogger("InAppBillingV3Vendor");
   private String developerPayload;
   private Product pendingProduct;
+  private int pendingOperationId;
   private PurchaseListener purchaseListener;
   private InitializationListener initializationListener;
 
@@ -106,7 +113,7 @@ public class InAppBillingV3Vendor implements Vendor {
       = new AbstractInAppBillingV3API.LifecycleListener() {
     @Override
     public void initialized(boolean success) {
-      log("initialized: success=" + success);
+      log.i("initialized: success={}", success);
       if (!success) {
         logAndDisable("Couldn't create InAppBillingService instance");
         return;
@@ -120,10 +127,10 @@ public class InAppBillingV3Vendor implements Vendor {
             = api.isBillingSupported(PRODUCT_TYPE_SUBSCRIPTION) == BILLING_RESPONSE_RESULT_OK;
 
         available = canPurchaseItems || canSubscribe;
-        log("Connected to service and it is " + (available ? "available" : "not available"));
+        log.i("Connected to service and it is {}", available ? "available" : "not available");
         initializationListener.initialized();
       } catch (RemoteException e) {
-        logAndDisable(Log.getStackTraceString(e));
+        logAndDisable("Couldn't check billing support", e);
       }
     }
 
@@ -173,8 +180,8 @@ public class InAppBillingV3Vendor implements Vendor {
       return;
     }
 
-    log("Initializing In-App billing v3...");
-    available = api.initialize(context, this, lifecycleListener, logger);
+    log.i("Initializing In-App billing v3...");
+    available = api.initialize(context, this, lifecycleListener, log.logger());
 
     if (!available) {
       initializationListener.unavailable();
@@ -186,7 +193,7 @@ public class InAppBillingV3Vendor implements Vendor {
     if (context == null) {
       throw new IllegalArgumentException("Given null context");
     }
-    log("Disposing self...");
+    log.i("Disposing self...");
     api.dispose(context);
     available = false;
   }
@@ -232,7 +239,7 @@ public class InAppBillingV3Vendor implements Vendor {
       throw new IllegalArgumentException("Cannot purchase given product!" + product.toString());
     }
 
-    log("Constructing buy intent...");
+    log.i("Constructing buy intent...");
     final String type = product.isSubscription() ? PRODUCT_TYPE_SUBSCRIPTION : PRODUCT_TYPE_ITEM;
     try {
       if (developerPayload == null) {
@@ -244,27 +251,28 @@ public class InAppBillingV3Vendor implements Vendor {
       final Bundle buyBundle = api.getBuyIntent(product.sku(), type, developerPayload);
       final int response = getResponseCode(buyBundle);
       if (response != BILLING_RESPONSE_RESULT_OK) {
-        log("Couldn't purchase product! code:" + response);
+        log.w("Couldn't purchase product! code:{}", response);
         listener.failure(product, purchaseError(response));
         return;
       }
 
       final PendingIntent pendingIntent = buyBundle.getParcelable(RESPONSE_BUY_INTENT);
       if (pendingIntent == null) {
-        log("Received no pending intent!");
+        log.w("Received no pending intent!");
         listener.failure(product, purchaseError(response));
         return;
       }
 
-      log("Launching buy intent for " + product.sku());
+      log.i("Launching buy intent for {}", product.sku());
       this.purchaseListener = listener;
       pendingProduct = product;
+      pendingOperationId = CashierTrace.currentOperationId();
       requestCode = new Random().nextInt(1024);
       activity.startIntentSenderForResult(pendingIntent.getIntentSender(),
           requestCode,
           new Intent(), 0, 0, 0);
     } catch (RemoteException | IntentSender.SendIntentException e) {
-      log("Failed to launch purchase!\n" + Log.getStackTraceString(e));
+      log.w("Failed to launch purchase!", e);
       listener.failure(product, purchaseError(BILLING_RESPONSE_RESULT_ERROR));
     }
   }
@@ -283,17 +291,17 @@ public class InAppBillingV3Vendor implements Vendor {
     }
 
     try {
-      log("Consuming " + product.sku() + " " + purchase.token());
+      log.i("Consuming {} {}", product.sku(), purchase.token());
       final int response = api.consumePurchase(purchase.token());
       if (response == BILLING_RESPONSE_RESULT_OK) {
-        log("Successfully consumed purchase!");
+        log.i("Successfully consumed purchase!");
         listener.success(purchase);
       } else {
-        log("Couldn't consume purchase! " + response);
+        log.w("Couldn't consume purchase! {}", response);
         listener.failure(purchase, consumeError(response));
       }
     } catch (RemoteException e) {
-      log("Couldn't consume purchase! " + Log.getStackTraceString(e));
+      log.w("Couldn't consume purchase!", e);
       listener.failure(purchase, consumeError(BILLING_RESPONSE_RESULT_ERROR));
     }
   }
@@ -311,21 +319,21 @@ public class InAppBillingV3Vendor implements Vendor {
     final List<String> inappSkusList = inappSkus == null ? null : new ArrayList<>(inappSkus);
     final List<String> subSkusList = subSkus == null ? null : new ArrayList<>(subSkus);
 
-    final Inventory inventory = new Inventory();
+    final Inventory.Builder inventoryBuilder = new Inventory.Builder();
     try {
-      log("Querying inventory...");
-      inventory.addPurchases(getPurchases(PRODUCT_TYPE_ITEM));
-      inventory.addPurchases(getPurchases(PRODUCT_TYPE_SUBSCRIPTION));
+      log.i("Querying inventory...");
+      inventoryBuilder.addPurchases(getPurchases(PRODUCT_TYPE_ITEM));
+      inventoryBuilder.addPurchases(getPurchases(PRODUCT_TYPE_SUBSCRIPTION));
 
       if (inappSkusList != null && !inappSkusList.isEmpty()) {
-        inventory.addProducts(getProductsWithType(inappSkusList, PRODUCT_TYPE_ITEM));
+        inventoryBuilder.addProducts(getProductsWithType(inappSkusList, PRODUCT_TYPE_ITEM));
       }
 
       if (subSkusList != null && !subSkusList.isEmpty()) {
-        inventory.addProducts(getProductsWithType(subSkusList, PRODUCT_TYPE_SUBSCRIPTION));
+        inventoryBuilder.addProducts(getProductsWithType(subSkusList, PRODUCT_TYPE_SUBSCRIPTION));
       }
 
-      listener.success(inventory);
+      listener.success(inventoryBuilder.build());
     } catch (RemoteException | ApiException e) {
       listener.failure(new Vendor.Error(INVENTORY_QUERY_FAILURE, codeFromException(e)));
     } catch (JSONException e) {
@@ -354,13 +362,28 @@ public class InAppBillingV3Vendor implements Vendor {
     }
   }
 
+  @Override
+  public void getProductsDetails(Context context, Collection<String> skus, boolean isSubscription,
+                                 ProductsDetailsPageListener listener) {
+    if (context == null || skus == null || listener == null) {
+      throw new IllegalArgumentException("Context or skus or listener is null");
+    }
+    throwIfUninitialized();
+    final String type = isSubscription ? PRODUCT_TYPE_SUBSCRIPTION : PRODUCT_TYPE_ITEM;
+    try {
+      listener.success(getProductsWithType(new ArrayList<>(skus), type, listener));
+    } catch (RemoteException | ApiException e) {
+      listener.failure(new Vendor.Error(PRODUCT_DETAILS_QUERY_FAILURE, codeFromException(e)));
+    }
+  }
+
   private List<InAppBillingPurchase> getPurchases(String type)
       throws RemoteException, ApiException, JSONException {
     throwIfUninitialized();
     if (type.equals(PRODUCT_TYPE_ITEM)) {
-      log("Querying item purchases...");
+      log.d("Querying item purchases...");
     } else {
-      log("Querying subscription purchases...");
+      log.d("Querying subscription purchases...");
     }
     String paginationToken = null;
     final List<InAppBillingPurchase> purchaseList = new ArrayList<>();
@@ -368,7 +391,7 @@ public class InAppBillingV3Vendor implements Vendor {
       final Bundle purchases = api.getPurchases(type, paginationToken);
 
       final int response = getResponseCode(purchases);
-      log("Got response: " + response);
+      log.d("Got response: {}", response);
       if (response != BILLING_RESPONSE_RESULT_OK) {
         throw new ApiException(response);
       }
@@ -410,12 +433,12 @@ public class InAppBillingV3Vendor implements Vendor {
           continue;
         }
 
-        log("Found purchase: " + sku);
+        log.d("Found purchase: {}", sku);
         if (!TextUtils.isEmpty(publicKey64)) {
-          if (InAppBillingSecurity.verifySignature(publicKey64, purchaseData, signature)) {
-            log("Purchase locally verified: " + sku);
+          if (verifySignature(purchaseData, signature)) {
+            log.d("Purchase locally verified: {}", sku);
           } else {
-            log("Purchase not locally verified: " + sku);
+            log.w("Purchase not locally verified: {}", sku);
             continue;
           }
         }
@@ -425,7 +448,7 @@ public class InAppBillingV3Vendor implements Vendor {
 
       paginationToken = purchases.getString(INAPP_CONTINUATION_TOKEN);
       if (paginationToken != null) {
-        log("Pagination token found, continuing on....");
+        log.d("Pagination token found, continuing on....");
       }
     } while (!TextUtils.isEmpty(paginationToken));
 
@@ -434,12 +457,21 @@ public class InAppBillingV3Vendor implements Vendor {
 
   private List<Product> getProductsWithType(List<String> skus, String type)
       throws RemoteException, ApiException {
+    return getProductsWithType(skus, type, null);
+  }
+
+  /**
+   * @param pageListener Receives the products of each page of 20 SKUs as it is retrieved
+   */
+  private List<Product> getProductsWithType(List<String> skus, String type,
+                                            @Nullable ProductsDetailsPageListener pageListener)
+      throws RemoteException, ApiException {
     if (skus == null || TextUtils.isEmpty(type)) {
       throw new IllegalArgumentException("Given skus are null or type is empty/null");
     }
 
     throwIfUninitialized();
-    log("Retrieving sku details for " + skus.size() + " " + type + " skus");
+    log.d("Retrieving sku details for {} {} skus", skus.size(), type);
     if (!type.equals(PRODUCT_TYPE_ITEM) && !type.equals(PRODUCT_TYPE_SUBSCRIPTION)) {
       throw new IllegalArgumentException("Invalid product type " + type);
     }
@@ -452,7 +484,7 @@ public class InAppBillingV3Vendor implements Vendor {
 
       final Bundle skuDetails = api.getSkuDetails(type, skuQuery);
       final int response = getResponseCode(skuDetails);
-      log("Got response: " + response);
+      log.d("Got response: {}", response);
       if (skuDetails == null) {
         continue;
       }
@@ -465,14 +497,20 @@ public class InAppBillingV3Vendor implements Vendor {
           = skuDetails.getStringArrayList(RESPONSE_GET_SKU_DETAILS_LIST);
       if (detailsList == null) continue;
 
+      final List<Product> pageProducts = new ArrayList<>(detailsList.size());
       for (final String detail : detailsList) {
-        log("Parsing sku details: " + detail);
+        log.d("Parsing sku details: {}", detail);
         try {
-          products.add(InAppBillingProduct.create(detail, type.equals(PRODUCT_TYPE_SUBSCRIPTION)));
+          pageProducts.add(InAppBillingProduct.create(detail, type.equals(PRODUCT_TYPE_SUBSCRIPTION)));
         } catch (JSONException e) {
-          log("Couldn't parse sku: " + detail);
+          log.w("Couldn't parse sku: {}", detail);
         }
       }
+
+      products.addAll(pageProducts);
+      if (pageListener != null && !pageProducts.isEmpty()) {
+        pageListener.page(Collections.unmodifiableList(pageProducts));
+      }
     }
 
     return Collections.unmodifiableList(products);
@@ -480,19 +518,33 @@ public class InAppBillingV3Vendor implements Vendor {
 
   @Override
   public void setLogger(@Nullable Logger logger) {
-    this.logger = logger;
+    log.setLogger(logger);
   }
 
   @Override
   public boolean onActivityResult(int requestCode, int resultCode, Intent data) {
-    log("onActivityResult " + resultCode);
+    log.i("onActivityResult {}", resultCode);
     if (this.requestCode != requestCode) {
       return false;
     }
 
+    final CashierTrace.Scope scope = CashierTrace.enter(pendingOperationId);
+    final boolean traced = CashierTrace.beginSection("onActivityResult");
+    try {
+      handleActivityResult(resultCode, data);
+    } finally {
+      if (traced) {
+        CashierTrace.endSection();
+      }
+      scope.exit();
+    }
+    return true;
+  }
+
+  private void handleActivityResult(int resultCode, Intent data) {
     if (data == null) {
       purchaseListener.failure(pendingProduct, purchaseError(BILLING_RESPONSE_RESULT_ERROR));
-      return true;
+      return;
     }
 
     final int responseCode = getResponseCode(data);
@@ -500,23 +552,23 @@ public class InAppBillingV3Vendor implements Vendor {
       try {
         final InAppBillingPurchase purchase = InAppBillingPurchase.create(pendingProduct, data);
         if (!purchase.developerPayload().equals(developerPayload)) {
-          log("Developer payload mismatch!");
+          log.w("Developer payload mismatch!");
           purchaseListener.failure(pendingProduct,
               new Vendor.Error(PURCHASE_SUCCESS_RESULT_MALFORMED,
                   BILLING_RESPONSE_RESULT_ERROR));
-          return true;
+          return;
         }
 
         if (!TextUtils.isEmpty(publicKey64)
-            && !InAppBillingSecurity.verifySignature(publicKey64, purchase.receipt(), purchase.dataSignature())) {
-          log("Local signature check failed!");
+            && !verifySignature(purchase.receipt(), purchase.dataSignature())) {
+          log.w("Local signature check failed!");
           purchaseListener.failure(pendingProduct,
               new Vendor.Error(PURCHASE_SUCCESS_RESULT_MALFORMED,
                   BILLING_RESPONSE_RESULT_ERROR));
-          return true;
+          return;
         }
 
-        log("Successful purchase of " + pendingProduct.sku() + "!");
+        log.i("Successful purchase of {}!", pendingProduct.sku());
         purchaseListener.success(purchase);
         developerPayload = null;
       } catch (JSONException e) {
@@ -525,14 +577,12 @@ public class InAppBillingV3Vendor implements Vendor {
                 BILLING_RESPONSE_RESULT_ERROR));
       }
     } else if (resultCode == Activity.RESULT_OK) {
-      log("CashierPurchase failed! " + responseCode);
+      log.w("CashierPurchase failed! {}", responseCode);
       purchaseListener.failure(pendingProduct, purchaseError(responseCode));
     } else {
-      log("CashierPurchase canceled! " + responseCode);
+      log.i("CashierPurchase canceled! {}", responseCode);
       purchaseListener.failure(pendingProduct, purchaseError(responseCode));
     }
-
-    return true;
   }
 
   @Override
@@ -555,6 +605,26 @@ public class InAppBillingV3Vendor implements Vendor {
     return purchase;
   }
 
+  @Override
+  public Product getProductFrom(BinaryReader reader) throws IOException {
+    final Product product = Product.create(reader);
+    if (!product.vendorId().equals(VENDOR_PACKAGE)) {
+      throw new IllegalArgumentException("This product does not belong to Google Play");
+    }
+
+    return product;
+  }
+
+  @Override
+  public Purchase getPurchaseFrom(BinaryReader reader) throws IOException {
+    final InAppBillingPurchase purchase = InAppBillingPurchase.create(reader);
+    if (!purchase.product().vendorId().equals(VENDOR_PACKAGE)) {
+      throw new IllegalArgumentException("This purchase does not belong to Google Play");
+    }
+
+    return purchase;
+  }
+
   private void throwIfUninitialized() {
     if (!api.available()) {
       throw new IllegalStateException("Trying to purchase without initializing first!");
@@ -566,7 +636,12 @@ public class InAppBillingV3Vendor implements Vendor {
   }
 
   private void logAndDisable(String message) {
-    log(message);
+    log.w(message);
+    available = false;
+  }
+
+  private void logAndDisable(String message, Throwable error) {
+    log.w(message, error);
     available = false;
   }
 
@@ -577,13 +652,13 @@ public class InAppBillingV3Vendor implements Vendor {
 
   private int getResponseCode(Bundle bundle) {
     if (bundle == null) {
-      log("Null response code from bundle, assuming OK (known issue)");
+      log.d("Null response code from bundle, assuming OK (known issue)");
       return BILLING_RESPONSE_RESULT_OK;
     }
 
     final Object o = bundle.get(RESPONSE_CODE);
     if (o == null) {
-      log("Null response code from bundle, assuming OK (known issue)");
+      log.d("Null response code from bundle, assuming OK (known issue)");
       return BILLING_RESPONSE_RESULT_OK;
     } else if (o instanceof Integer) {
       return (Integer) o;
@@ -591,7 +666,7 @@ public class InAppBillingV3Vendor implements Vendor {
       return ((Long) o).intValue();
     } else {
       final String message = "Unexpected type for bundle response code. " + o.getClass().getName();
-      log(message);
+      log.e(message);
       throw new RuntimeException(message);
     }
   }
@@ -653,9 +728,15 @@ public class InAppBillingV3Vendor implements Vendor {
     return new Vendor.Error(code, response);
   }
 
-  private void log(String message) {
-    if (logger == null) return;
-    logger.i("InAppBillingV3Vendor", message);
+  private boolean verifySignature(String purchaseData, String signature) {
+    final boolean traced = CashierTrace.beginSection("verifySignature");
+    try {
+      return InAppBillingSecurity.verifySignature(publicKey64, purchaseData, signature);
+    } finally {
+      if (traced) {
+        CashierTrace.endSection();
+      }
+    }
   }
 
   private class ApiException extends Exception {
@@ -3,6 +3,10 @@ package com.getkeepsafe.cashier.iab;
 import android.os.Bundle;
 
 import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -10,6 +14,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.PURCHASE_STATE_CANCELED;
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.PURCHASE_STATE_PURCHASED;
 import static com.getkeepsafe.cashier.iab.InAppBillingConstants.PurchaseConstants.PURCHASE_STATE_REFUNDED;
@@ -70,6 +78,32 @@ public class InAppBillingPurchaseTest {
     assertThat(InAppBillingPurchase.create(purchase.toJson())).isEqualTo(purchase);
   }
 
+  @Test
+  public void streamsToJson() throws IOException, JSONException {
+    Product product = Product.create(IN_APP_BILLING_PURCHASE_VALID_PRODUCT_JSON);
+    InAppBillingPurchase purchase = InAppBillingPurchase.create(product, VALID_PURCHASE_RECEIPT_JSON, "test");
+    StringWriter out = new StringWriter();
+    purchase.writeJson(new JsonWriter(out));
+    assertJsonHasProperties(new JSONObject(out.toString()), purchase);
+  }
+
+  @Test
+  public void streamsFromJson() throws IOException, JSONException {
+    Product product = Product.create(IN_APP_BILLING_PURCHASE_VALID_PRODUCT_JSON);
+    InAppBillingPurchase purchase = InAppBillingPurchase.create(product, VALID_PURCHASE_RECEIPT_JSON, "test");
+    JsonReader reader = new JsonReader(new StringReader(purchase.toJson().toString()));
+    assertThat(InAppBillingPurchase.create(reader)).isEqualTo(purchase);
+  }
+
+  @Test
+  public void binaryRoundTrip() throws IOException, JSONException {
+    Product product = Product.create(IN_APP_BILLING_PURCHASE_VALID_PRODUCT_JSON);
+    InAppBillingPurchase purchase = InAppBillingPurchase.create(product, VALID_PURCHASE_RECEIPT_JSON, "test");
+    BinaryWriter writer = new BinaryWriter();
+    purchase.writeTo(writer);
+    assertThat(InAppBillingPurchase.create(new BinaryReader(writer.toByteArray()))).isEqualTo(purchase);
+  }
+
   @Test
   public void isParcelable() throws JSONException {
     Product product = Product.create(IN_APP_BILLING_PURCHASE_VALID_PRODUCT_JSON);
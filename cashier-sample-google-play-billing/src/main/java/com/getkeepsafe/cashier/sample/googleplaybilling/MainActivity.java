@@ -41,6 +41,7 @@ import com.getkeepsafe.cashier.VendorMissingException;
 import com.getkeepsafe.cashier.billing.GooglePlayBillingConstants;
 import com.getkeepsafe.cashier.billing.GooglePlayBillingVendor;
 import com.getkeepsafe.cashier.billing.debug.FakeGooglePlayBillingApi;
+import com.getkeepsafe.cashier.logging.LogLevel;
 import com.getkeepsafe.cashier.logging.LogcatLogger;
 
 import java.util.ArrayList;
@@ -301,7 +302,7 @@ public class MainActivity extends AppCompatActivity {
                 }
                 try {
                     cashier = Cashier.forVendor(MainActivity.this, vendor)
-                            .withLogger(new LogcatLogger())
+                            .withLogger(new LogcatLogger(LogLevel.DEBUG))
                             .build();
                 } catch (VendorMissingException e) {
                     // Wont happen in sample
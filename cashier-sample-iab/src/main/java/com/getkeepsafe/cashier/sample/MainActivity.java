@@ -43,6 +43,7 @@ import com.getkeepsafe.cashier.VendorMissingException;
 import com.getkeepsafe.cashier.iab.InAppBillingConstants;
 import com.getkeepsafe.cashier.iab.InAppBillingV3Vendor;
 import com.getkeepsafe.cashier.iab.debug.FakeInAppBillingV3Api;
+import com.getkeepsafe.cashier.logging.LogLevel;
 import com.getkeepsafe.cashier.logging.LogcatLogger;
 
 import org.json.JSONException;
@@ -219,7 +220,7 @@ public class MainActivity extends AppCompatActivity {
 
         try {
             cashier = Cashier.forProduct(this, testProduct)
-                    .withLogger(new LogcatLogger())
+                    .withLogger(new LogcatLogger(LogLevel.DEBUG))
                     .build();
         } catch (VendorMissingException e) {
             // Wont happen in sample
@@ -312,13 +313,13 @@ public class MainActivity extends AppCompatActivity {
                     .forVendor(
                             new InAppBillingV3Vendor(
                                     new FakeInAppBillingV3Api(MainActivity.this), FakeInAppBillingV3Api.TEST_PUBLIC_KEY))
-                    .withLogger(new LogcatLogger())
+                    .withLogger(new LogcatLogger(LogLevel.DEBUG))
                     .build();
         } else if (purchasedProduct != null) {
             try {
                 cashier = Cashier
                         .forPurchase(MainActivity.this, purchasedProduct)
-                        .withLogger(new LogcatLogger())
+                        .withLogger(new LogcatLogger(LogLevel.DEBUG))
                         .build();
             } catch (VendorMissingException e) {
                 // Won't happen in sample
@@ -326,7 +327,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             try {
                 cashier = Cashier.forProduct(MainActivity.this, testProduct)
-                        .withLogger(new LogcatLogger())
+                        .withLogger(new LogcatLogger(LogLevel.DEBUG))
                         .build();
             } catch (VendorMissingException e) {
                 // Shouldn't happen in sample
@@ -0,0 +1,479 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.store;
+
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.Cashier;
+import com.getkeepsafe.cashier.Purchase;
+import com.getkeepsafe.cashier.PurchaseStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link PurchaseStore} that keeps purchases in an append-only journal file.
+ * <p>
+ * Every change is appended as a checksummed record and synced to disk before the call returns,
+ * so changes should not be made on the main thread. {@link Cashier} makes them on its background
+ * executor.
+ * A record that was only partly written when the process died fails its checksum and is dropped,
+ * along with anything after it, the next time the journal is opened. Records that were
+ * superseded are dropped by compacting the journal into a new file, which then atomically
+ * replaces the old one.
+ * <p>
+ * Opening the journal maps the file into memory and indexes it by purchase token and SKU. The
+ * purchases themselves are only decoded, by the vendor they belong to, when they are first read.
+ * Their vendor factories must be registered with {@link Cashier#putVendorFactory} by then.
+ */
+public final class PurchaseJournal implements PurchaseStore, Closeable {
+  /** "CSJ1" */
+  private static final int MAGIC = 0x43534a31;
+  private static final int HEADER_SIZE = 4;
+  /** Payload length, checksum and type */
+  private static final int RECORD_HEADER_SIZE = 9;
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_REMOVE = 2;
+  /** Journals smaller than this are not worth compacting */
+  private static final long MIN_COMPACTION_SIZE = 16 * 1024;
+
+  private final File file;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+  private final HashMap<String, List<Entry>> entriesBySku = new HashMap<>();
+  private RandomAccessFile journal;
+  private FileChannel channel;
+  private long size;
+  private long liveSize;
+
+  private static final class Entry {
+    final String token;
+    final String vendorId;
+    final String sku;
+    /** The purchase in the format of {@link Cashier#purchaseToBytes(Purchase)} */
+    final ByteBuffer data;
+    final int recordSize;
+    @Nullable
+    Purchase purchase;
+
+    Entry(String token, String vendorId, String sku, ByteBuffer data, int recordSize) {
+      this.token = token;
+      this.vendorId = vendorId;
+      this.sku = sku;
+      this.data = data;
+      this.recordSize = recordSize;
+    }
+
+    byte[] bytes() {
+      final byte[] bytes = new byte[data.remaining()];
+      data.duplicate().get(bytes);
+      return bytes;
+    }
+  }
+
+  /**
+   * Opens the journal at the given path, creating it if it does not exist yet
+   *
+   * @throws IOException If the file cannot be read or written, or is not a purchase journal
+   */
+  public static PurchaseJournal open(File file) throws IOException {
+    final PurchaseJournal journal = new PurchaseJournal(file);
+    try {
+      journal.load();
+    } catch (IOException e) {
+      journal.close();
+      throw e;
+    }
+    return journal;
+  }
+
+  private PurchaseJournal(File file) {
+    this.file = file;
+  }
+
+  @Override
+  public synchronized List<Purchase> purchases() {
+    final List<Purchase> purchases = new ArrayList<>(entries.size());
+    for (final Entry entry : entries.values()) {
+      final Purchase purchase = decode(entry);
+      if (purchase != null) {
+        purchases.add(purchase);
+      }
+    }
+    return purchases;
+  }
+
+  /**
+   * @return The stored purchase with the given token, or {@code null} if there is none
+   */
+  @Nullable
+  public synchronized Purchase purchaseForToken(String token) {
+    final Entry entry = entries.get(token);
+    return entry == null ? null : decode(entry);
+  }
+
+  /**
+   * @return The stored purchases of the given SKU, across all vendors
+   */
+  public synchronized List<Purchase> purchasesForSku(String sku) {
+    final List<Entry> skuEntries = entriesBySku.get(sku);
+    if (skuEntries == null) {
+      return Collections.emptyList();
+    }
+
+    final List<Purchase> purchases = new ArrayList<>(skuEntries.size());
+    for (final Entry entry : skuEntries) {
+      final Purchase purchase = decode(entry);
+      if (purchase != null) {
+        purchases.add(purchase);
+      }
+    }
+    return purchases;
+  }
+
+  @Override
+  public synchronized void put(Purchase purchase) throws IOException {
+    putEntry(purchase);
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void remove(Purchase purchase) throws IOException {
+    removeEntry(purchase.token());
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void replace(String vendorId, Collection<? extends Purchase> purchases)
+      throws IOException {
+    final Set<String> tokens = new HashSet<>(purchases.size());
+    for (final Purchase purchase : purchases) {
+      tokens.add(purchase.token());
+    }
+
+    final List<String> removed = new ArrayList<>();
+    for (final Entry entry : entries.values()) {
+      if (entry.vendorId.equals(vendorId) && !tokens.contains(entry.token)) {
+        removed.add(entry.token);
+      }
+    }
+    for (final String token : removed) {
+      removeEntry(token);
+    }
+    for (final Purchase purchase : purchases) {
+      putEntry(purchase);
+    }
+    compactIfNeeded();
+  }
+
+  /**
+   * Rewrites the journal with only the records of the purchases it currently holds
+   */
+  public synchronized void compact() throws IOException {
+    final File compacted = new File(file.getPath() + ".compact");
+    final RandomAccessFile output = new RandomAccessFile(compacted, "rw");
+    try {
+      output.setLength(0);
+      final FileChannel outputChannel = output.getChannel();
+      long position = writeFully(outputChannel, header(), 0);
+      for (final Entry entry : entries.values()) {
+        final ByteBuffer record = record(TYPE_PUT, putPayload(entry.token, entry.vendorId, entry.sku,
+            entry.bytes()));
+        position = writeFully(outputChannel, record, position);
+      }
+      outputChannel.force(true);
+    } finally {
+      output.close();
+    }
+
+    final HashMap<String, Purchase> decoded = new HashMap<>();
+    for (final Entry entry : entries.values()) {
+      if (entry.purchase != null) {
+        decoded.put(entry.token, entry.purchase);
+      }
+    }
+
+    closeFile();
+    final boolean replaced = compacted.renameTo(file);
+    // Reopens the original journal if it could not be replaced
+    load();
+    if (!replaced) {
+      throw new IOException("Could not replace " + file + " with its compacted journal");
+    }
+    for (final Entry entry : entries.values()) {
+      entry.purchase = decoded.get(entry.token);
+    }
+  }
+
+  /**
+   * @return The size of the journal file in bytes
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closeFile();
+  }
+
+  private void load() throws IOException {
+    entries.clear();
+    entriesBySku.clear();
+    liveSize = 0;
+
+    // Left behind if the process died while compacting, the journal itself is still intact
+    final File compacted = new File(file.getPath() + ".compact");
+    if (compacted.exists() && !compacted.delete()) {
+      throw new IOException("Could not delete " + compacted);
+    }
+
+    journal = new RandomAccessFile(file, "rw");
+    channel = journal.getChannel();
+    size = channel.size();
+    if (size < HEADER_SIZE) {
+      // A new journal, or one that died before its header was written
+      channel.truncate(0);
+      size = writeFully(channel, header(), 0);
+      channel.force(true);
+      return;
+    }
+
+    final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    if (map.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not a purchase journal");
+    }
+
+    final CRC32 crc = new CRC32();
+    byte[] payload = new byte[256];
+    int position = HEADER_SIZE;
+    while (size - position >= RECORD_HEADER_SIZE) {
+      final int length = map.getInt(position);
+      final int checksum = map.getInt(position + 4);
+      final byte type = map.get(position + 8);
+      final int payloadStart = position + RECORD_HEADER_SIZE;
+      if (length < 0 || length > size - payloadStart) {
+        break;
+      }
+
+      if (payload.length < length) {
+        payload = new byte[Math.max(length, payload.length * 2)];
+      }
+      map.position(payloadStart);
+      map.get(payload, 0, length);
+      crc.reset();
+      crc.update(type);
+      crc.update(payload, 0, length);
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+
+      if (!apply(map, type, payload, payloadStart, length)) {
+        break;
+      }
+      position = payloadStart + length;
+    }
+
+    if (position < size) {
+      // Drops the record that was being written when the process died
+      channel.truncate(position);
+      channel.force(true);
+      size = position;
+    }
+  }
+
+  private boolean apply(ByteBuffer map, byte type, byte[] payload, int offset, int length)
+      throws IOException {
+    final DataInputStream input = new DataInputStream(
+        new ByteArrayInputStream(payload, 0, length));
+    final String token = input.readUTF();
+    switch (type) {
+      case TYPE_PUT:
+        final String vendorId = input.readUTF();
+        final String sku = input.readUTF();
+        final int dataLength = input.available();
+        final ByteBuffer data = map.duplicate();
+        data.limit(offset + length);
+        data.position(offset + length - dataLength);
+        index(new Entry(token, vendorId, sku, data.slice(), RECORD_HEADER_SIZE + length));
+        return true;
+      case TYPE_REMOVE:
+        unindex(token);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void putEntry(Purchase purchase) throws IOException {
+    final byte[] bytes = Cashier.purchaseToBytes(purchase);
+    final Entry existing = entries.get(purchase.token());
+    if (existing != null && Arrays.equals(existing.bytes(), bytes)) {
+      return;
+    }
+
+    final String vendorId = purchase.product().vendorId();
+    final String sku = purchase.product().sku();
+    final ByteBuffer record = record(TYPE_PUT, putPayload(purchase.token(), vendorId, sku, bytes));
+    final int recordSize = record.remaining();
+    append(record);
+    final Entry entry = new Entry(purchase.token(), vendorId, sku, ByteBuffer.wrap(bytes),
+        recordSize);
+    entry.purchase = purchase;
+    index(entry);
+  }
+
+  private void removeEntry(String token) throws IOException {
+    if (!entries.containsKey(token)) {
+      return;
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeUTF(token);
+    append(record(TYPE_REMOVE, bytes.toByteArray()));
+    unindex(token);
+  }
+
+  private void index(Entry entry) {
+    unindex(entry.token);
+    entries.put(entry.token, entry);
+    List<Entry> skuEntries = entriesBySku.get(entry.sku);
+    if (skuEntries == null) {
+      skuEntries = new ArrayList<>(1);
+      entriesBySku.put(entry.sku, skuEntries);
+    }
+    skuEntries.add(entry);
+    liveSize += entry.recordSize;
+  }
+
+  private void unindex(String token) {
+    final Entry entry = entries.remove(token);
+    if (entry == null) {
+      return;
+    }
+
+    final List<Entry> skuEntries = entriesBySku.get(entry.sku);
+    final Iterator<Entry> iterator = skuEntries.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next() == entry) {
+        iterator.remove();
+      }
+    }
+    if (skuEntries.isEmpty()) {
+      entriesBySku.remove(entry.sku);
+    }
+    liveSize -= entry.recordSize;
+  }
+
+  @Nullable
+  private Purchase decode(Entry entry) {
+    if (entry.purchase == null) {
+      try {
+        entry.purchase = Cashier.purchaseFromBytes(entry.bytes());
+      } catch (IOException | RuntimeException e) {
+        // Kept in the journal, it may be readable once its vendor is registered
+        return null;
+      }
+    }
+    return entry.purchase;
+  }
+
+  private void append(ByteBuffer record) throws IOException {
+    final long start = size;
+    try {
+      size = writeFully(channel, record, start);
+      channel.force(false);
+    } catch (IOException e) {
+      // Does not leave a partial record for the next append to follow
+      size = start;
+      channel.truncate(start);
+      throw e;
+    }
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (size >= MIN_COMPACTION_SIZE && size - HEADER_SIZE - liveSize > liveSize) {
+      compact();
+    }
+  }
+
+  private void closeFile() throws IOException {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+      channel = null;
+    }
+  }
+
+  private static ByteBuffer header() {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.flip();
+    return header;
+  }
+
+  private static byte[] putPayload(String token, String vendorId, String sku, byte[] data)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 64);
+    final DataOutputStream output = new DataOutputStream(bytes);
+    output.writeUTF(token);
+    output.writeUTF(vendorId);
+    output.writeUTF(sku);
+    output.write(data);
+    return bytes.toByteArray();
+  }
+
+  private static ByteBuffer record(byte type, byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(payload);
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+    record.putInt(payload.length);
+    record.putInt((int) crc.getValue());
+    record.put(type);
+    record.put(payload);
+    record.flip();
+    return record;
+  }
+
+  private static long writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+}
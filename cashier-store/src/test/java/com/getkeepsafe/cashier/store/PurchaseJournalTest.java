@@ -0,0 +1,207 @@
+package com.getkeepsafe.cashier.store;
+
+import com.getkeepsafe.cashier.BinaryVendor;
+import com.getkeepsafe.cashier.Cashier;
+import com.getkeepsafe.cashier.CashierPurchase;
+import com.getkeepsafe.cashier.Product;
+import com.getkeepsafe.cashier.Purchase;
+import com.getkeepsafe.cashier.Vendor;
+import com.getkeepsafe.cashier.VendorFactory;
+import com.getkeepsafe.cashier.binary.BinaryReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PurchaseJournalTest {
+  final String TEST_VENDOR_ID = "store-test";
+  final BinaryVendor testVendor = mock(BinaryVendor.class);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  File file;
+  PurchaseJournal journal;
+
+  @Before
+  public void setup() throws IOException {
+    when(testVendor.getPurchaseFrom(any(BinaryReader.class))).thenAnswer(new Answer<CashierPurchase>() {
+      @Override
+      public CashierPurchase answer(InvocationOnMock invocation) throws Throwable {
+        return CashierPurchase.create((BinaryReader) invocation.getArgument(0));
+      }
+    });
+    Cashier.putVendorFactory(TEST_VENDOR_ID, new VendorFactory() {
+      @Override
+      public Vendor create() {
+        return testVendor;
+      }
+    });
+    file = new File(folder.getRoot(), "purchases.journal");
+    journal = PurchaseJournal.open(file);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    journal.close();
+  }
+
+  @Test
+  public void readsPurchasesAfterReopening() throws IOException {
+    final Purchase first = aPurchase("sku", "first");
+    final Purchase second = aPurchase("other", "second");
+    journal.put(first);
+    journal.put(second);
+    reopen();
+
+    assertThat(journal.purchases()).containsExactly(first, second).inOrder();
+    assertThat(journal.purchaseForToken("second")).isEqualTo(second);
+    assertThat(journal.purchaseForToken("missing")).isNull();
+    assertThat(journal.purchasesForSku("sku")).containsExactly(first);
+  }
+
+  @Test
+  public void removesPurchases() throws IOException {
+    final Purchase purchase = aPurchase("sku", "token");
+    journal.put(purchase);
+    journal.remove(purchase);
+    assertThat(journal.purchases()).isEmpty();
+
+    reopen();
+    assertThat(journal.purchases()).isEmpty();
+    assertThat(journal.purchasesForSku("sku")).isEmpty();
+  }
+
+  @Test
+  public void replacesPurchasesOfVendor() throws IOException {
+    final Purchase kept = aPurchase("sku", "kept");
+    final Purchase dropped = aPurchase("sku", "dropped");
+    final Purchase added = aPurchase("sku", "added");
+    journal.put(kept);
+    journal.put(dropped);
+    journal.replace(TEST_VENDOR_ID, Arrays.asList(kept, added));
+    reopen();
+
+    assertThat(journal.purchases()).containsExactly(kept, added);
+  }
+
+  @Test
+  public void doesNotRewriteUnchangedPurchases() throws IOException {
+    final Purchase purchase = aPurchase("sku", "token");
+    journal.put(purchase);
+    final long size = journal.size();
+    journal.put(purchase);
+    journal.replace(TEST_VENDOR_ID, Collections.singletonList(purchase));
+    assertThat(journal.size()).isEqualTo(size);
+  }
+
+  @Test
+  public void dropsTornRecord() throws IOException {
+    final Purchase purchase = aPurchase("sku", "first");
+    journal.put(purchase);
+    final long size = journal.size();
+    journal.put(aPurchase("sku", "second"));
+    journal.close();
+
+    // Cuts the last record short, like a crash in the middle of writing it
+    final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.setLength(size + 12);
+    raw.close();
+
+    journal = PurchaseJournal.open(file);
+    assertThat(journal.purchases()).containsExactly(purchase);
+    assertThat(journal.size()).isEqualTo(size);
+
+    final Purchase third = aPurchase("sku", "third");
+    journal.put(third);
+    reopen();
+    assertThat(journal.purchases()).containsExactly(purchase, third).inOrder();
+  }
+
+  @Test
+  public void dropsCorruptRecord() throws IOException {
+    final Purchase purchase = aPurchase("sku", "first");
+    journal.put(purchase);
+    final long size = journal.size();
+    journal.put(aPurchase("sku", "second"));
+    journal.close();
+
+    final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.seek(raw.length() - 1);
+    final int last = raw.read();
+    raw.seek(raw.length() - 1);
+    raw.write(last ^ 0xff);
+    raw.close();
+
+    journal = PurchaseJournal.open(file);
+    assertThat(journal.purchases()).containsExactly(purchase);
+    assertThat(journal.size()).isEqualTo(size);
+  }
+
+  @Test
+  public void compactsSupersededRecords() throws IOException {
+    final Purchase purchase = aPurchase("sku", "kept");
+    journal.put(purchase);
+    final long size = journal.size();
+    for (int i = 0; i < 10; i++) {
+      final Purchase temporary = aPurchase("sku", "temporary" + i);
+      journal.put(temporary);
+      journal.remove(temporary);
+    }
+    assertThat(journal.size()).isGreaterThan(size);
+
+    journal.compact();
+    assertThat(journal.size()).isEqualTo(size);
+    assertThat(journal.purchases()).containsExactly(purchase);
+    reopen();
+    assertThat(journal.purchases()).containsExactly(purchase);
+  }
+
+  @Test
+  public void compactsAutomatically() throws IOException {
+    for (int i = 0; i < 200; i++) {
+      final Purchase temporary = aPurchase("sku", "temporary" + i);
+      journal.put(temporary);
+      journal.remove(temporary);
+    }
+    assertThat(journal.size()).isLessThan(16 * 1024L);
+    assertThat(journal.purchases()).isEmpty();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    final File other = folder.newFile();
+    final RandomAccessFile raw = new RandomAccessFile(other, "rw");
+    raw.writeLong(42L);
+    raw.close();
+    PurchaseJournal.open(other);
+  }
+
+  private void reopen() throws IOException {
+    journal.close();
+    journal = PurchaseJournal.open(file);
+  }
+
+  private Purchase aPurchase(String sku, String token) {
+    final Product product = Product.create(TEST_VENDOR_ID, sku, "$1", "USD", "name", "description", false, 1000000L);
+    return CashierPurchase.create(product, "order-" + token, token, "receipt-" + token, "payload");
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.metrics.CashierMetrics;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of named daemon threads for the blocking work of vendors, such as querying
+ * purchases. Threads are let go once idle, and tasks beyond the queue's capacity are rejected
+ * rather than piling up.
+ * <p>
+ * Vendors share {@link #shared()} unless given another executor, see
+ * {@link Cashier.Builder#withBackgroundExecutor(Executor)}.
+ */
+public final class BackgroundExecutor implements Executor {
+  static final int DEFAULT_THREADS = 2;
+  static final int DEFAULT_QUEUE_CAPACITY = 64;
+  static final long DEFAULT_KEEP_ALIVE_SECONDS = 30;
+
+  private static BackgroundExecutor shared;
+
+  private final ThreadPoolExecutor executor;
+  private final String name;
+  @Nullable
+  private final CashierMetrics metrics;
+  private final AtomicLong rejected = new AtomicLong();
+
+  private BackgroundExecutor(Builder builder) {
+    name = builder.name;
+    metrics = builder.metrics;
+    executor = new ThreadPoolExecutor(builder.threads, builder.threads,
+        builder.keepAliveMillis, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(builder.queueCapacity), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static final class Builder {
+    private String name = "cashier-background";
+    private int threads = DEFAULT_THREADS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long keepAliveMillis = TimeUnit.SECONDS.toMillis(DEFAULT_KEEP_ALIVE_SECONDS);
+    @Nullable
+    private CashierMetrics metrics;
+
+    /**
+     * Sets the prefix of the names of the threads, which are numbered
+     */
+    public Builder name(String name) {
+      if (name == null || name.length() == 0) {
+        throw new IllegalArgumentException("Name is null or empty");
+      }
+      this.name = name;
+      return this;
+    }
+
+    public Builder threads(int threads) {
+      if (threads <= 0) {
+        throw new IllegalArgumentException("Number of threads must be positive");
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * Sets the number of tasks that can wait for a thread before further tasks are rejected
+     */
+    public Builder queueCapacity(int capacity) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException("Queue capacity must be positive");
+      }
+      this.queueCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Sets how long a thread is kept around without work
+     */
+    public Builder keepAlive(long keepAlive, TimeUnit unit) {
+      if (keepAlive <= 0) {
+        throw new IllegalArgumentException("Keep alive time must be positive");
+      }
+      this.keepAliveMillis = unit.toMillis(keepAlive);
+      return this;
+    }
+
+    /**
+     * Records the depth of the queue, under {@link CashierMetrics#QUEUE_BACKGROUND}, every time a
+     * task is submitted
+     */
+    public Builder metrics(@Nullable CashierMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public BackgroundExecutor build() {
+      return new BackgroundExecutor(this);
+    }
+  }
+
+  /**
+   * @return The executor shared by the vendors of this process
+   */
+  public static synchronized BackgroundExecutor shared() {
+    if (shared == null) {
+      shared = new Builder().build();
+    }
+    return shared;
+  }
+
+  /**
+   * @throws RejectedExecutionException If the queue is full
+   */
+  @Override
+  public void execute(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      throw e;
+    } finally {
+      if (metrics != null) {
+        metrics.recordQueueDepth(CashierMetrics.QUEUE_BACKGROUND, executor.getQueue().size());
+      }
+    }
+  }
+
+  /**
+   * @return The number of tasks waiting for a thread
+   */
+  public int queueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return The number of threads currently running a task
+   */
+  public int activeThreads() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return The number of threads alive, busy or idle
+   */
+  public int threads() {
+    return executor.getPoolSize();
+  }
+
+  public long completedTasks() {
+    return executor.getCompletedTaskCount();
+  }
+
+  /**
+   * @return The number of tasks rejected because the queue was full
+   */
+  public long rejectedTasks() {
+    return rejected.get();
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+
+/**
+ * A {@link Purchase} that can be written in Cashier's compact binary format, to be read back by
+ * the {@link BinaryVendor} that sold it
+ */
+public interface BinaryPurchase extends Purchase {
+  void writeTo(BinaryWriter writer);
+}
@@ -0,0 +1,36 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import com.getkeepsafe.cashier.binary.BinaryReader;
+
+import java.io.IOException;
+
+/**
+ * A {@link Vendor} that reads its products and purchases from Cashier's compact binary format.
+ * Cashier reads the products of other vendors itself, and stores purchases that are not a
+ * {@link BinaryPurchase} as JSON, see {@link Cashier#purchaseToBytes}.
+ */
+public interface BinaryVendor extends Vendor {
+  Product getProductFrom(BinaryReader reader) throws IOException;
+
+  /**
+   * Reads a purchase written by {@link BinaryPurchase#writeTo}
+   */
+  Purchase getPurchaseFrom(BinaryReader reader) throws IOException;
+}
@@ -0,0 +1,312 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonToken;
+import com.getkeepsafe.cashier.json.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deserializes the elements of a JSON array in chunks spread over an {@link Executor}.
+ * <p>
+ * The calling thread works through the chunks too and only waits for the ones other threads
+ * already started, so the batch completes even if the executor is busy, saturated or rejects the
+ * work outright.
+ */
+final class BulkDeserializer<T> {
+  interface ElementReader<T> {
+    T read(Vendor vendor, JSONObject json) throws JSONException;
+  }
+
+  static final ElementReader<Product> PRODUCTS = new ElementReader<Product>() {
+    @Override
+    public Product read(Vendor vendor, JSONObject json) throws JSONException {
+      return vendor.getProductFrom(json);
+    }
+  };
+
+  static final ElementReader<Purchase> PURCHASES = new ElementReader<Purchase>() {
+    @Override
+    public Purchase read(Vendor vendor, JSONObject json) throws JSONException {
+      return vendor.getPurchaseFrom(json);
+    }
+  };
+
+  /** Below this many elements per chunk the hand-off costs more than it saves */
+  private static final int MIN_CHUNK_SIZE = 16;
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private static Executor defaultExecutor;
+
+  private final ElementReader<T> reader;
+  private final JSONObject[] elements;
+  private final Vendor[] elementVendors;
+  private final Object[] results;
+  private final int chunkSize;
+  private final int chunkCount;
+  private final AtomicInteger nextChunk = new AtomicInteger();
+  private final CountDownLatch chunksDone;
+
+  BulkDeserializer(JSONArray json, ElementReader<T> reader, VendorCache vendors) {
+    this(elementsOf(json), reader, vendors);
+  }
+
+  /**
+   * Reads the elements of the JSON array one at a time off the given reader, without holding the
+   * whole input in memory
+   *
+   * @throws JSONException If the input is not a JSON array
+   */
+  BulkDeserializer(Reader json, ElementReader<T> reader, VendorCache vendors)
+      throws IOException, JSONException {
+    this(elementsOf(json), reader, vendors);
+  }
+
+  /**
+   * The vendors are resolved up front, on the calling thread, so that each vendor ID in the batch
+   * costs a single lookup
+   *
+   * @param json The JSON objects of the batch, or the exception explaining why an element is not
+   *             one
+   */
+  private BulkDeserializer(List<Object> json, ElementReader<T> reader, VendorCache vendors) {
+    this.reader = reader;
+    final int size = json.size();
+    elements = new JSONObject[size];
+    elementVendors = new Vendor[size];
+    results = new Object[size];
+
+    final HashMap<String, Object> batchVendors = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      final Object element = json.get(i);
+      if (element instanceof Exception) {
+        results[i] = ParseResult.failure((Exception) element);
+        continue;
+      }
+
+      try {
+        elements[i] = (JSONObject) element;
+        final String vendorId = elements[i].getString(Product.KEY_VENDOR_ID);
+        Object vendor = batchVendors.get(vendorId);
+        if (vendor == null) {
+          try {
+            vendor = vendors.get(vendorId);
+          } catch (RuntimeException e) {
+            // A missing factory or an invalid ID only fails the elements of that vendor ID
+            vendor = e;
+          }
+          batchVendors.put(vendorId, vendor);
+        }
+
+        if (vendor instanceof Vendor) {
+          elementVendors[i] = (Vendor) vendor;
+        } else {
+          results[i] = ParseResult.failure((Exception) vendor);
+        }
+      } catch (JSONException e) {
+        results[i] = ParseResult.failure(e);
+      }
+    }
+
+    chunkSize = Math.max(MIN_CHUNK_SIZE, (size + PARALLELISM * 4 - 1) / (PARALLELISM * 4));
+    chunkCount = (size + chunkSize - 1) / chunkSize;
+    chunksDone = new CountDownLatch(chunkCount);
+  }
+
+  @SuppressWarnings("unchecked")
+  List<ParseResult<T>> run(Executor executor) {
+    final Runnable worker = new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+
+    final int helpers = Math.min(chunkCount, PARALLELISM) - 1;
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+
+    drain();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        chunksDone.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    final List<?> list = Arrays.asList(results);
+    return new ArrayList<>((List<ParseResult<T>>) list);
+  }
+
+  private void drain() {
+    int chunk;
+    while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+      final int end = Math.min(elements.length, (chunk + 1) * chunkSize);
+      for (int i = chunk * chunkSize; i < end; i++) {
+        if (results[i] != null) {
+          continue;
+        }
+
+        try {
+          results[i] = ParseResult.success(reader.read(elementVendors[i], elements[i]));
+        } catch (Exception e) {
+          results[i] = ParseResult.failure(e);
+        }
+      }
+      chunksDone.countDown();
+    }
+  }
+
+  private static List<Object> elementsOf(JSONArray json) {
+    final int size = json.length();
+    final List<Object> elements = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      try {
+        elements.add(json.getJSONObject(i));
+      } catch (JSONException e) {
+        elements.add(e);
+      }
+    }
+    return elements;
+  }
+
+  private static List<Object> elementsOf(Reader json) throws IOException, JSONException {
+    final JsonReader reader = new JsonReader(json);
+    try {
+      if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+        throw new JSONException("Expected a JSON array");
+      }
+      final List<Object> elements = new ArrayList<>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+          elements.add(readObject(reader));
+        } else {
+          reader.skipValue();
+          elements.add(new JSONException("Element " + elements.size() + " is not a JSON object"));
+        }
+      }
+      reader.endArray();
+      return elements;
+    } catch (MalformedJsonException e) {
+      throw new JSONException(e.getMessage());
+    }
+  }
+
+  /**
+   * Builds the JSON object the vendors read from, out of the streamed tokens
+   */
+  private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+    final JSONObject object = new JSONObject();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      object.put(reader.nextName(), readValue(reader));
+    }
+    reader.endObject();
+    return object;
+  }
+
+  private static Object readValue(JsonReader reader) throws IOException, JSONException {
+    final JsonToken token = reader.peek();
+    switch (token) {
+      case BEGIN_OBJECT:
+        return readObject(reader);
+      case BEGIN_ARRAY:
+        final JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+      case STRING:
+        return reader.nextString();
+      case NUMBER:
+        return number(reader.nextString());
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return JSONObject.NULL;
+      default:
+        throw new JSONException("Unexpected " + token);
+    }
+  }
+
+  private static Object number(String literal) {
+    if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+      try {
+        return Long.parseLong(literal);
+      } catch (NumberFormatException e) {
+        // Too large for a long
+      }
+    }
+    return Double.parseDouble(literal);
+  }
+
+  /**
+   * A pool of up to one daemon thread per core, which are let go once idle
+   */
+  static synchronized Executor defaultExecutor() {
+    if (defaultExecutor == null) {
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM,
+          30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "cashier-bulk-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.allowCoreThreadTimeOut(true);
+      defaultExecutor = executor;
+    }
+    return defaultExecutor;
+  }
+}
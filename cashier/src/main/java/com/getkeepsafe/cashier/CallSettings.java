@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.logging.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * The settings of the {@link Cashier} an operation runs for, see {@link Cashier.Builder}.
+ * <p>
+ * A vendor instance may be shared by several Cashier instances with different settings, so they
+ * are never set on the vendor. Vendors look them up for the operation that is current on the
+ * thread, see {@link CashierTrace}, while the operation is in flight. Outside of an operation the
+ * vendor's own defaults apply.
+ */
+public final class CallSettings {
+  static final CallSettings DEFAULT = new CallSettings(null, null, null, null);
+
+  private static final ConcurrentHashMap<Integer, CallSettings> operations = new ConcurrentHashMap<>();
+
+  @Nullable
+  private final Logger logger;
+  @Nullable
+  private final Executor backgroundExecutor;
+  @Nullable
+  private final Executor callbackExecutor;
+  @Nullable
+  private final ProductDetailsCache productDetailsCache;
+
+  CallSettings(@Nullable Logger logger,
+               @Nullable Executor backgroundExecutor,
+               @Nullable Executor callbackExecutor,
+               @Nullable ProductDetailsCache productDetailsCache) {
+    this.logger = logger;
+    this.backgroundExecutor = backgroundExecutor;
+    this.callbackExecutor = callbackExecutor;
+    this.productDetailsCache = productDetailsCache;
+  }
+
+  /**
+   * @return The settings of the operation running on this thread, all unset if there is none
+   */
+  public static CallSettings current() {
+    if (operations.isEmpty()) {
+      return DEFAULT;
+    }
+    final int operationId = CashierTrace.currentOperationId();
+    if (operationId == CashierTrace.NO_OPERATION) {
+      return DEFAULT;
+    }
+    final CallSettings settings = operations.get(operationId);
+    return settings == null ? DEFAULT : settings;
+  }
+
+  /**
+   * Makes the settings current for the given operation until it is unregistered
+   */
+  static void register(int operationId, CallSettings settings) {
+    if (!settings.isDefault()) {
+      operations.put(operationId, settings);
+    }
+  }
+
+  static void unregister(int operationId) {
+    operations.remove(operationId);
+  }
+
+  /**
+   * @return The logger to use in place of the vendor's, or null
+   */
+  @Nullable
+  public Logger logger() {
+    return logger;
+  }
+
+  /**
+   * @return The executor to run blocking work on in place of {@link BackgroundExecutor#shared()},
+   * or null
+   */
+  @Nullable
+  public Executor backgroundExecutor() {
+    return backgroundExecutor;
+  }
+
+  /**
+   * @return The executor to deliver results on in place of any hop to the main thread, or null
+   */
+  @Nullable
+  public Executor callbackExecutor() {
+    return callbackExecutor;
+  }
+
+  /**
+   * @return The cache to look up the products of purchases in, and to keep up to date with the
+   * product details fetched on the vendor's own, or null
+   */
+  @Nullable
+  public ProductDetailsCache productDetailsCache() {
+    return productDetailsCache;
+  }
+
+  boolean isDefault() {
+    return logger == null && backgroundExecutor == null && callbackExecutor == null
+        && productDetailsCache == null;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof CallSettings)) return false;
+    final CallSettings o = (CallSettings) other;
+    return logger == o.logger
+        && backgroundExecutor == o.backgroundExecutor
+        && callbackExecutor == o.callbackExecutor
+        && productDetailsCache == o.productDetailsCache;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = System.identityHashCode(logger);
+    result = 31 * result + System.identityHashCode(backgroundExecutor);
+    result = 31 * result + System.identityHashCode(callbackExecutor);
+    return 31 * result + System.identityHashCode(productDetailsCache);
+  }
+}
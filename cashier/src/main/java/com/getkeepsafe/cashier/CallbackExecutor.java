@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Where the listeners of a {@link Cashier} are called, see
+ * {@link Cashier.Builder#withCallbackExecutor(CallbackExecutor)}.
+ * <p>
+ * Callbacks already running on the executor are delivered right away rather than handed over
+ * again, so a vendor and Cashier both delivering on it cost a single thread hop.
+ */
+public abstract class CallbackExecutor implements Executor {
+  private static CallbackExecutor mainThread;
+
+  private CallbackExecutor() {
+  }
+
+  /**
+   * @return An executor delivering on the main thread, right away when already on it
+   */
+  public static synchronized CallbackExecutor mainThread() {
+    if (mainThread == null) {
+      mainThread = new MainThread();
+    }
+    return mainThread;
+  }
+
+  /**
+   * @return An executor delivering on whichever thread produces the result: the calling thread
+   * for results that are known right away, like cached product details, and otherwise the thread
+   * the vendor completes the operation on
+   */
+  public static CallbackExecutor direct() {
+    return Direct.INSTANCE;
+  }
+
+  /**
+   * @return An executor delivering on the given executor. Callbacks of an operation, like the
+   * pages of a product details query, are only delivered in order if the executor runs its tasks
+   * one at a time.
+   */
+  public static CallbackExecutor from(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor is null");
+    }
+    return executor instanceof CallbackExecutor
+        ? (CallbackExecutor) executor
+        : new Wrapping(executor);
+  }
+
+  private static final class MainThread extends CallbackExecutor {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        command.run();
+      } else {
+        handler.post(command);
+      }
+    }
+  }
+
+  private static final class Direct extends CallbackExecutor {
+    static final Direct INSTANCE = new Direct();
+
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  }
+
+  private static final class Wrapping extends CallbackExecutor {
+    private final Executor executor;
+    private final ThreadLocal<Boolean> delivering = new ThreadLocal<>();
+
+    Wrapping(Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      if (delivering.get() != null) {
+        command.run();
+        return;
+      }
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          delivering.set(Boolean.TRUE);
+          try {
+            command.run();
+          } finally {
+            delivering.remove();
+          }
+        }
+      });
+    }
+  }
+
+  PurchaseListener wrap(final PurchaseListener listener) {
+    return new PurchaseListener() {
+      @Override
+      public void success(final Purchase purchase) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.success(purchase);
+          }
+        });
+      }
+
+      @Override
+      public void failure(final Product product, final Vendor.Error error) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.failure(product, error);
+          }
+        });
+      }
+    };
+  }
+
+  ConsumeListener wrap(final ConsumeListener listener) {
+    return new ConsumeListener() {
+      @Override
+      public void success(final Purchase purchase) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.success(purchase);
+          }
+        });
+      }
+
+      @Override
+      public void failure(final Purchase purchase, final Vendor.Error error) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.failure(purchase, error);
+          }
+        });
+      }
+    };
+  }
+
+  InventoryListener wrap(final InventoryListener listener) {
+    return new InventoryListener() {
+      @Override
+      public void success(final Inventory inventory) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.success(inventory);
+          }
+        });
+      }
+
+      @Override
+      public void failure(final Vendor.Error error) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.failure(error);
+          }
+        });
+      }
+    };
+  }
+
+  ProductDetailsListener wrap(final ProductDetailsListener listener) {
+    return new ProductDetailsListener() {
+      @Override
+      public void success(final Product product) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.success(product);
+          }
+        });
+      }
+
+      @Override
+      public void failure(final Vendor.Error error) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.failure(error);
+          }
+        });
+      }
+    };
+  }
+
+  /**
+   * @return A listener that is a {@link ProductsDetailsPageListener} if the given one is
+   */
+  ProductsDetailsListener wrap(final ProductsDetailsListener listener) {
+    final ProductsDetailsPageListener pageListener = listener instanceof ProductsDetailsPageListener
+        ? (ProductsDetailsPageListener) listener
+        : null;
+    return new ProductsDetailsPageListener() {
+      @Override
+      public void page(final List<Product> products) {
+        if (pageListener == null) {
+          return;
+        }
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            pageListener.page(products);
+          }
+        });
+      }
+
+      @Override
+      public void success(final List<Product> products) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.success(products);
+          }
+        });
+      }
+
+      @Override
+      public void failure(final Vendor.Error error) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            listener.failure(error);
+          }
+        });
+      }
+    };
+  }
+}
@@ -25,13 +25,31 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.binary.MalformedBinaryException;
 import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.metrics.CashierMetrics;
+import com.getkeepsafe.cashier.metrics.HistogramMetrics;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The global entry point for all billing related functionality.
@@ -39,11 +57,43 @@ import java.util.HashMap;
  * There should only be one instance of this class for each Activity that hosts a billing flow
  */
 public class Cashier {
-  private static HashMap<String, VendorFactory> vendorFactories = new HashMap<>(1);
+  /**
+   * Copy-on-write: the published map is never modified, writers publish a modified copy. Lookups
+   * are a single volatile read and never lock.
+   */
+  private static volatile HashMap<String, VendorFactory> vendorFactories = new HashMap<>(1);
+  private static final Object vendorFactoriesLock = new Object();
+  private static boolean vendorFactoriesFrozen = false;
+  private static final VendorCache vendors = new VendorCache();
+  /** Shared by all instances, identical queries on a shared vendor are coalesced across them */
+  private static final SingleFlight inFlight = new SingleFlight();
+  private static volatile String installerPackageName;
   static boolean sPurchaseInProgress = false;
 
   private final Context context;
   private final Vendor vendor;
+  @Nullable
+  private final VendorCache.Entry sharedVendor;
+  @Nullable
+  private final PurchaseStore store;
+  /** Writes to the store, which may block on disk, in order off the calling thread */
+  private final Executor storeWrites;
+  @Nullable
+  private final ProductDetailsCache productDetailsCache;
+  @Nullable
+  private final OperationTimeouts timeouts;
+  @Nullable
+  private final CashierMetrics metrics;
+  @Nullable
+  private final CallbackExecutor callbackExecutor;
+  private final CallSettings settings;
+  /** The operations whose settings are registered until they complete, or this is disposed */
+  private final Set<Integer> openCalls =
+      Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+  private boolean sharedVendorReleased;
+  private final Object inventoryLock = new Object();
+  @Nullable
+  private Inventory lastInventory;
 
   /**
    * Registers a vendor factory for use
@@ -52,11 +102,48 @@ public class Cashier {
    * @param factory  The {@link VendorFactory} that will create instances of the {@link Vendor}
    */
   public static void putVendorFactory(String vendorId, VendorFactory factory) {
-    if (TextUtils.isEmpty(vendorId)) {
-      throw new IllegalArgumentException("Invalid vendor id, null or empty");
+    putVendorFactories(Collections.singletonMap(vendorId, factory));
+  }
+
+  /**
+   * Registers several vendor factories at once, publishing them together
+   *
+   * @param factories The {@link VendorFactory} instances keyed by their vendor's unique package ID
+   */
+  public static void putVendorFactories(Map<String, VendorFactory> factories) {
+    for (final String vendorId : factories.keySet()) {
+      if (TextUtils.isEmpty(vendorId)) {
+        throw new IllegalArgumentException("Invalid vendor id, null or empty");
+      }
+    }
+
+    synchronized (vendorFactoriesLock) {
+      if (vendorFactoriesFrozen) {
+        throw new IllegalStateException("Vendor factories are frozen");
+      }
+
+      final HashMap<String, VendorFactory> updated = new HashMap<>(vendorFactories);
+      updated.putAll(factories);
+      vendorFactories = updated;
+    }
+
+    for (final String vendorId : factories.keySet()) {
+      dispose(vendors.evict(vendorId));
     }
+  }
+
+  /**
+   * Prevents any further vendor factory registration. Call this once all vendors are registered
+   * at startup to guard against them being replaced later on.
+   */
+  public static void freezeVendorFactories() {
+    setVendorFactoriesFrozen(true);
+  }
 
-    vendorFactories.put(vendorId, factory);
+  static void setVendorFactoriesFrozen(boolean frozen) {
+    synchronized (vendorFactoriesLock) {
+      vendorFactoriesFrozen = frozen;
+    }
   }
 
   /**
@@ -76,14 +163,120 @@ public class Cashier {
     return factory;
   }
 
+  /**
+   * Drops every cached {@link Vendor} instance that is not in use by a Cashier instance, disposing
+   * those that were pre-warmed. Vendors
+   * are cached per vendor ID so that deserialization and the {@code forInstaller},
+   * {@code forProduct} and {@code forPurchase} builders share a single instance.
+   */
+  public static void trimVendorCache() {
+    dispose(vendors.trim());
+  }
+
+  /**
+   * Disposes vendors dropped from the cache while unreferenced. Only those that were pre-warmed
+   * were initialized, the others have nothing to clean up.
+   */
+  private static void dispose(List<VendorCache.Entry> dropped) {
+    for (final VendorCache.Entry entry : dropped) {
+      if (entry.context != null) {
+        entry.vendor.dispose(entry.context);
+      }
+    }
+  }
+
+  /**
+   * Connects to the given vendor ahead of its first use, e.g. from
+   * {@code Application.onCreate()}, so that the first purchase or inventory query does not wait
+   * for the billing service to connect and report what it supports. The vendor becomes the
+   * instance shared by the {@code forInstaller}, {@code forProduct} and {@code forPurchase}
+   * builders for its ID until {@link #trimVendorCache()} disposes it. If another instance for the
+   * ID is already in use, that instance is pre-warmed instead of the given one.
+   * <p>
+   * Connecting is asynchronous, this returns right away.
+   */
+  public static void prewarm(Context context, Vendor vendor) {
+    prewarm(context, vendor, null, null, null);
+  }
+
+  /**
+   * Connects to the given vendor ahead of its first use like {@link #prewarm(Context, Vendor)},
+   * then loads the details of the given products into the given cache
+   *
+   * @param cache    The cache to load product details into, to be passed to the builders of the
+   *                 Cashier instances that use them
+   * @param itemSkus The SKUs of consumable products to load, or null
+   * @param subSkus  The SKUs of subscription products to load, or null
+   */
+  public static void prewarm(Context context,
+                             final Vendor vendor,
+                             @Nullable ProductDetailsCache cache,
+                             @Nullable Collection<String> itemSkus,
+                             @Nullable Collection<String> subSkus) {
+    Preconditions.checkNotNull(context, "Context is null");
+    Preconditions.checkNotNull(vendor, "Vendor is null");
+    final Context appContext = context.getApplicationContext() == null
+        ? context
+        : context.getApplicationContext();
+    final VendorCache.Entry entry = vendors.prewarm(vendor, appContext);
+    if (entry.vendor != vendor) {
+      Log.w("Cashier", "Another instance of vendor " + vendor.id() + " is in use, pre-warming it instead");
+    }
+
+    entry.vendor.initialize(appContext, new Vendor.InitializationListener() {
+      @Override
+      public void initialized() {
+      }
+
+      @Override
+      public void unavailable() {
+        Log.w("Cashier", "Could not pre-warm vendor " + vendor.id());
+      }
+    });
+
+    final boolean loadItems = itemSkus != null && !itemSkus.isEmpty();
+    final boolean loadSubs = subSkus != null && !subSkus.isEmpty();
+    if (cache == null || (!loadItems && !loadSubs)) {
+      return;
+    }
+
+    // Shares the pre-warmed instance by reference, like the builders for the vendor's ID would,
+    // and releases it once the products are loaded
+    final Builder builder = new Builder(appContext).withProductDetailsCache(cache);
+    builder.sharedVendorId = entry.vendorId;
+    final Cashier cashier = builder.build();
+    final AtomicInteger remaining = new AtomicInteger(loadItems && loadSubs ? 2 : 1);
+    final ProductsDetailsListener ignoreResult = new ProductsDetailsListener() {
+      @Override
+      public void success(List<Product> products) {
+        loaded();
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        Log.w("Cashier", "Could not pre-load product details, error " + error.code);
+        loaded();
+      }
+
+      private void loaded() {
+        if (remaining.decrementAndGet() == 0) {
+          cashier.dispose();
+        }
+      }
+    };
+    if (loadItems) {
+      cashier.getProductDetails(itemSkus, false, ignoreResult);
+    }
+    if (loadSubs) {
+      cashier.getProductDetails(subSkus, true, ignoreResult);
+    }
+  }
+
   /**
    * Returns a Cashier instance builder depending on the app installer
    */
   public static Builder forInstaller(Context context) {
-    final String installer = context
-        .getPackageManager()
-        .getInstallerPackageName(context.getPackageName());
-    return new Builder(context).forVendor(getVendorFactory(installer).create());
+    return new Builder(context).forSharedVendor(installerPackageName(context));
   }
 
   /**
@@ -104,7 +297,7 @@ public class Cashier {
    * Returns a Cashier instance builder that sells the given {@link Product}
    **/
   public static Builder forProduct(Context context, Product product) {
-    return new Builder(context).forVendor(getVendorFactory(product.vendorId()).create());
+    return new Builder(context).forSharedVendor(product.vendorId());
   }
 
   /**
@@ -119,7 +312,7 @@ public class Cashier {
    **/
   public static Product productFromVendor(JSONObject json) throws JSONException {
     final String vendorId = json.getString(Product.KEY_VENDOR_ID);
-    final Vendor vendor = getVendorFactory(vendorId).create();
+    final Vendor vendor = vendors.get(vendorId);
     return vendor.getProductFrom(json);
   }
 
@@ -135,15 +328,252 @@ public class Cashier {
    **/
   public static Purchase purchaseFromVendor(JSONObject json) throws JSONException {
     final String vendorId = json.getString(Product.KEY_VENDOR_ID);
-    final Vendor vendor = getVendorFactory(vendorId).create();
+    final Vendor vendor = vendors.get(vendorId);
     return vendor.getPurchaseFrom(json);
   }
 
-  private Cashier(Context context, Vendor vendor) {
+  /**
+   * Returns the products from the given JSON array, deserialized in parallel on a shared pool of
+   * background threads. See {@link #productsFromVendor(JSONArray, Executor)}.
+   **/
+  public static List<ParseResult<Product>> productsFromVendor(JSONArray json) {
+    return productsFromVendor(json, BulkDeserializer.defaultExecutor());
+  }
+
+  /**
+   * Returns the products from the given JSON array, each supplied by the vendor it belongs to.
+   * The work is split between the calling thread and the given executor, which blocks until every
+   * element is read.
+   *
+   * @return One result per element, in the order of the array. An element that cannot be read
+   * fails on its own without affecting the rest of the batch.
+   **/
+  public static List<ParseResult<Product>> productsFromVendor(JSONArray json, Executor executor) {
+    return new BulkDeserializer<>(json, BulkDeserializer.PRODUCTS, vendors).run(executor);
+  }
+
+  /**
+   * Returns the products from the JSON array read from the given reader, deserialized in parallel on
+   * a shared pool of background threads. See {@link #productsFromVendor(JSONArray, Executor)}.
+   *
+   * @throws JSONException If the input is not a JSON array
+   **/
+  public static List<ParseResult<Product>> productsFromVendor(Reader json)
+      throws IOException, JSONException {
+    return productsFromVendor(json, BulkDeserializer.defaultExecutor());
+  }
+
+  /**
+   * Returns the products from the JSON array read from the given reader. See
+   * {@link #productsFromVendor(JSONArray, Executor)}. Elements are parsed one at a time as they are
+   * read, an element that is not a JSON object fails on its own.
+   *
+   * @throws JSONException If the input is not a JSON array
+   **/
+  public static List<ParseResult<Product>> productsFromVendor(Reader json, Executor executor)
+      throws IOException, JSONException {
+    return new BulkDeserializer<>(json, BulkDeserializer.PRODUCTS, vendors).run(executor);
+  }
+
+  /**
+   * Returns the purchases from the given JSON array, deserialized in parallel on a shared pool of
+   * background threads. See {@link #purchasesFromVendor(JSONArray, Executor)}.
+   **/
+  public static List<ParseResult<Purchase>> purchasesFromVendor(JSONArray json) {
+    return purchasesFromVendor(json, BulkDeserializer.defaultExecutor());
+  }
+
+  /**
+   * Returns the purchases from the given JSON array, each supplied by the vendor it belongs to.
+   * The work is split between the calling thread and the given executor, which blocks until every
+   * element is read.
+   *
+   * @return One result per element, in the order of the array. An element that cannot be read
+   * fails on its own without affecting the rest of the batch.
+   **/
+  public static List<ParseResult<Purchase>> purchasesFromVendor(JSONArray json, Executor executor) {
+    return new BulkDeserializer<>(json, BulkDeserializer.PURCHASES, vendors).run(executor);
+  }
+
+  /**
+   * Returns the purchases from the JSON array read from the given reader, deserialized in parallel on
+   * a shared pool of background threads. See {@link #purchasesFromVendor(JSONArray, Executor)}.
+   *
+   * @throws JSONException If the input is not a JSON array
+   **/
+  public static List<ParseResult<Purchase>> purchasesFromVendor(Reader json)
+      throws IOException, JSONException {
+    return purchasesFromVendor(json, BulkDeserializer.defaultExecutor());
+  }
+
+  /**
+   * Returns the purchases from the JSON array read from the given reader. See
+   * {@link #purchasesFromVendor(JSONArray, Executor)}. Elements are parsed one at a time as they are
+   * read, an element that is not a JSON object fails on its own.
+   *
+   * @throws JSONException If the input is not a JSON array
+   **/
+  public static List<ParseResult<Purchase>> purchasesFromVendor(Reader json, Executor executor)
+      throws IOException, JSONException {
+    return new BulkDeserializer<>(json, BulkDeserializer.PURCHASES, vendors).run(executor);
+  }
+
+  /**
+   * Returns the given product in Cashier's compact binary format
+   **/
+  public static byte[] productToBytes(Product product) {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeString(product.vendorId());
+    product.writeTo(writer);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns a product from the given bytes, written by {@link #productToBytes(Product)}, read by
+   * the vendor it belongs to if it is a {@link BinaryVendor}
+   **/
+  public static Product productFromBytes(byte[] bytes) throws IOException {
+    final BinaryReader reader = new BinaryReader(bytes);
+    final Vendor vendor = vendors.get(reader.readString());
+    final Product product = vendor instanceof BinaryVendor
+        ? ((BinaryVendor) vendor).getProductFrom(reader)
+        : Product.create(reader);
+    checkFullyRead(reader);
+    return product;
+  }
+
+  /**
+   * Returns the given purchase in Cashier's compact binary format. Purchases that are not a
+   * {@link BinaryPurchase} are embedded as JSON, to be read by their vendor's
+   * {@link Vendor#getPurchaseFrom(JSONObject)}.
+   **/
+  public static byte[] purchaseToBytes(Purchase purchase) {
+    final BinaryWriter writer = new BinaryWriter();
+    writePurchase(writer, purchase);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns the given purchases in Cashier's compact binary format. Vendor IDs, SKUs and products
+   * that repeat across the purchases are only encoded once.
+   **/
+  public static byte[] purchasesToBytes(Collection<? extends Purchase> purchases) {
+    final BinaryWriter writer = new BinaryWriter(purchases.size() * 256);
+    writer.writeVarint(purchases.size());
+    for (final Purchase purchase : purchases) {
+      writePurchase(writer, purchase);
+    }
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns a purchase from the given bytes, written by {@link #purchaseToBytes(Purchase)}, read
+   * by the vendor it belongs to
+   **/
+  public static Purchase purchaseFromBytes(byte[] bytes) throws IOException {
+    final BinaryReader reader = new BinaryReader(bytes);
+    final Purchase purchase = readPurchase(reader);
+    checkFullyRead(reader);
+    return purchase;
+  }
+
+  /**
+   * Returns the purchases from the given bytes, written by {@link #purchasesToBytes(Collection)},
+   * each read by the vendor it belongs to
+   **/
+  public static List<Purchase> purchasesFromBytes(byte[] bytes) throws IOException {
+    final BinaryReader reader = new BinaryReader(bytes);
+    final int count = reader.readSize();
+    final List<Purchase> purchases = new ArrayList<>(Math.min(count, bytes.length));
+    for (int i = 0; i < count; i++) {
+      purchases.add(readPurchase(reader));
+    }
+    checkFullyRead(reader);
+    return purchases;
+  }
+
+  private static void writePurchase(BinaryWriter writer, Purchase purchase) {
+    writer.writeString(purchase.product().vendorId());
+    final boolean binary = purchase instanceof BinaryPurchase;
+    writer.writeBoolean(binary);
+    if (binary) {
+      ((BinaryPurchase) purchase).writeTo(writer);
+      return;
+    }
+
+    try {
+      writer.writeString(purchase.toJson().toString());
+    } catch (JSONException e) {
+      throw new IllegalArgumentException("Purchase of " + purchase.product().sku() + " cannot be written as JSON", e);
+    }
+  }
+
+  private static Purchase readPurchase(BinaryReader reader) throws IOException {
+    final String vendorId = reader.readString();
+    final Vendor vendor = vendors.get(vendorId);
+    if (!reader.readBoolean()) {
+      try {
+        return vendor.getPurchaseFrom(new JSONObject(reader.readString()));
+      } catch (JSONException e) {
+        throw new MalformedBinaryException("Malformed purchase JSON: " + e.getMessage());
+      }
+    }
+
+    if (!(vendor instanceof BinaryVendor)) {
+      throw new MalformedBinaryException("Vendor " + vendorId + " cannot read binary purchases");
+    }
+    return ((BinaryVendor) vendor).getPurchaseFrom(reader);
+  }
+
+  private static void checkFullyRead(BinaryReader reader) throws MalformedBinaryException {
+    if (reader.hasRemaining()) {
+      throw new MalformedBinaryException("Unexpected data after the last value");
+    }
+  }
+
+  /**
+   * The installer does not change for the lifetime of the process, so it is only looked up once
+   */
+  private static String installerPackageName(Context context) {
+    String installer = installerPackageName;
+    if (installer == null) {
+      installer = context
+          .getPackageManager()
+          .getInstallerPackageName(context.getPackageName());
+      // Apps that were not installed through a store have no installer. Cached as the empty
+      // string, which getVendorFactory rejects the same way as null.
+      if (installer == null) {
+        installer = "";
+      }
+      installerPackageName = installer;
+    }
+    return installer;
+  }
+
+  private Cashier(Context context,
+                  Vendor vendor,
+                  @Nullable VendorCache.Entry sharedVendor,
+                  @Nullable PurchaseStore store,
+                  @Nullable ProductDetailsCache productDetailsCache,
+                  @Nullable OperationTimeouts timeouts,
+                  @Nullable CashierMetrics metrics,
+                  @Nullable CallbackExecutor callbackExecutor,
+                  CallSettings settings) {
     Preconditions.checkNotNull(context, "Context is null");
     Preconditions.checkNotNull(vendor, "Vendor is null");
     this.context = context;
     this.vendor = vendor;
+    this.sharedVendor = sharedVendor;
+    this.store = store;
+    this.storeWrites = store == null ? null : new SerialExecutor(
+        settings.backgroundExecutor() == null
+            ? BackgroundExecutor.shared()
+            : settings.backgroundExecutor());
+    this.productDetailsCache = productDetailsCache;
+    this.timeouts = timeouts;
+    this.metrics = metrics;
+    this.callbackExecutor = callbackExecutor;
+    this.settings = settings;
   }
 
   /**
@@ -163,14 +593,14 @@ public class Cashier {
    * @param activity         The activity that will host the purchase flow
    * @param product          The {@link Product} you wish to buy
    * @param developerPayload Your custom payload to pass along to the {@link Vendor}
-   * @param purchaseListener         The {@link PurchaseListener} to handle the result
+   * @param listener         The {@link PurchaseListener} to handle the result
    */
   public void purchase(final Activity activity,
                        final Product product,
                        @Nullable final String developerPayload,
-                       final PurchaseListener purchaseListener) {
+                       final PurchaseListener listener) {
     Preconditions.checkNotNull(product, "Product is null");
-    Preconditions.checkNotNull(purchaseListener, "PurchaseListener is null");
+    Preconditions.checkNotNull(listener, "PurchaseListener is null");
     if (Looper.myLooper() != Looper.getMainLooper()) {
       throw new CalledFromWrongThreadException("[Cashier] Cashier.purchase() should only be called from the UI thread");
     }
@@ -181,21 +611,28 @@ public class Cashier {
     }
     sPurchaseInProgress = true;
 
+    final PurchaseListener purchaseListener = callbackExecutor == null
+        ? listener
+        : callbackExecutor.wrap(listener);
+    final Call call = new Call(CashierMetrics.Operation.PURCHASE, "purchase");
     final PurchaseListener purchaseListenerWrapper = new PurchaseListener() {
       @Override
       public void success(Purchase purchase) {
+        call.succeeded();
+        storePurchase(purchase);
         purchaseListener.success(purchase);
         sPurchaseInProgress = false;
       }
 
       @Override
       public void failure(Product product, Vendor.Error error) {
+        call.failed(error);
         purchaseListener.failure(product, error);
         sPurchaseInProgress = false;
       }
     };
 
-    vendor.initialize(context, new Vendor.InitializationListener() {
+    initializeVendor(call, new Vendor.InitializationListener() {
       @Override
       public void initialized() {
         if (!vendor.available() || !vendor.canPurchase(product)) {
@@ -223,15 +660,53 @@ public class Cashier {
    * Consumes the given purchase
    *
    * @param purchase The {@link Purchase} to consume. Must not be a subscription
-   * @param listener The {@link ConsumeListener} to handle the result
+   * @param callback The {@link ConsumeListener} to handle the result
    */
-  public void consume(final Purchase purchase, final ConsumeListener listener) {
+  public void consume(final Purchase purchase, final ConsumeListener callback) {
     Preconditions.checkNotNull(purchase, "Purchase is null");
-    Preconditions.checkNotNull(listener, "ConsumeListener is null");
+    Preconditions.checkNotNull(callback, "ConsumeListener is null");
     if (purchase.product().isSubscription()) {
       throw new IllegalArgumentException("Cannot consume a subscription type!");
     }
-    vendor.initialize(context, new Vendor.InitializationListener() {
+    final ConsumeListener consumeListener = callbackExecutor == null
+        ? callback
+        : callbackExecutor.wrap(callback);
+    final Call call = new Call(CashierMetrics.Operation.CONSUME, "consume");
+    call.startDeadline(new Runnable() {
+      @Override
+      public void run() {
+        consumeListener.failure(purchase, timedOut());
+      }
+    });
+    final ConsumeListener listener = new ConsumeListener() {
+      @Override
+      public void success(final Purchase purchase) {
+        if (!call.succeeded()) {
+          return;
+        }
+        if (store != null) {
+          storeWrites.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                store.remove(purchase);
+              } catch (IOException e) {
+                Log.w("Cashier", "Could not remove the consumed purchase from the purchase store", e);
+              }
+            }
+          });
+        }
+        consumeListener.success(purchase);
+      }
+
+      @Override
+      public void failure(Purchase purchase, Vendor.Error error) {
+        if (call.failed(error)) {
+          consumeListener.failure(purchase, error);
+        }
+      }
+    };
+    initializeVendor(call, new Vendor.InitializationListener() {
       @Override
       public void initialized() {
         if (!vendor.available()) {
@@ -266,25 +741,129 @@ public class Cashier {
    *
    * @param itemSkus A collection of {@link Product} skus to query the vendor for
    * @param subSkus  A collection of subscription {@link Product} skus to query the vendor for
-   * @param listener {@link InventoryListener} to handle the result
+   * @param callback {@link InventoryListener} to handle the result
    */
   public void getInventory(@Nullable final Collection<String> itemSkus,
                            @Nullable final Collection<String> subSkus,
-                           final InventoryListener listener) {
-    Preconditions.checkNotNull(listener, "InventoryListener is null");
-    vendor.initialize(context, new Vendor.InitializationListener() {
+                           final InventoryListener callback) {
+    Preconditions.checkNotNull(callback, "InventoryListener is null");
+    final InventoryListener inventoryListener = callbackExecutor == null
+        ? callback
+        : callbackExecutor.wrap(callback);
+    final InventoryListener listener = store == null ? inventoryListener : new InventoryListener() {
+      @Override
+      public void success(final Inventory inventory) {
+        storeWrites.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              store.replace(vendor.id(), inventory.purchases());
+            } catch (IOException e) {
+              Log.w("Cashier", "Could not update the purchase store with the inventory", e);
+            }
+          }
+        });
+        inventoryListener.success(inventory);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        inventoryListener.failure(error);
+      }
+    };
+
+    final SingleFlight.Key key = new SingleFlight.Key(vendor, settings, "inventory",
+        SingleFlight.normalize(itemSkus), SingleFlight.normalize(subSkus));
+    if (!inFlight.join(key, this, listener)) {
+      return;
+    }
+    recordInFlight();
+
+    final Call call = new Call(CashierMetrics.Operation.INVENTORY, "inventory");
+    call.startDeadline(new Runnable() {
+      @Override
+      public void run() {
+        for (final InventoryListener listener : Cashier.this.<InventoryListener>completeFlight(key)) {
+          listener.failure(timedOut());
+        }
+      }
+    });
+    final InventoryListener sharedListener = new InventoryListener() {
+      @Override
+      public void success(Inventory inventory) {
+        if (!call.succeeded()) {
+          return;
+        }
+        for (final InventoryListener listener : Cashier.this.<InventoryListener>completeFlight(key)) {
+          listener.success(inventory);
+        }
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        if (!call.failed(error)) {
+          return;
+        }
+        for (final InventoryListener listener : Cashier.this.<InventoryListener>completeFlight(key)) {
+          listener.failure(error);
+        }
+      }
+    };
+    initializeVendor(call, new Vendor.InitializationListener() {
       @Override
       public void initialized() {
         try {
-          vendor.getInventory(context, itemSkus, subSkus, listener);
+          vendor.getInventory(context, itemSkus, subSkus, sharedListener);
         } catch (Exception e) {
-          listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
+          sharedListener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
         }
       }
 
       @Override
       public void unavailable() {
-        listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
+        sharedListener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_UNAVAILABLE, -1));
+      }
+    });
+  }
+
+  /**
+   * Returns a list of purchased items from the vendor, along with what changed since the previous
+   * inventory delivered to an {@link InventoryDeltaListener} of this Cashier
+   *
+   * @param listener {@link InventoryDeltaListener} to handle the result
+   */
+  public void getInventory(final InventoryDeltaListener listener) {
+    getInventory(null, null, listener);
+  }
+
+  /**
+   * Returns a list of purchased items and specified products from the vendor, along with what
+   * changed since the previous inventory delivered to an {@link InventoryDeltaListener} of this
+   * Cashier. The first inventory reports everything as added. Products are compared with those
+   * of the previous query, so keep querying the same SKUs.
+   *
+   * @param itemSkus      A collection of {@link Product} skus to query the vendor for
+   * @param subSkus       A collection of subscription {@link Product} skus to query the vendor for
+   * @param deltaListener {@link InventoryDeltaListener} to handle the result
+   */
+  public void getInventory(@Nullable final Collection<String> itemSkus,
+                           @Nullable final Collection<String> subSkus,
+                           final InventoryDeltaListener deltaListener) {
+    Preconditions.checkNotNull(deltaListener, "InventoryDeltaListener is null");
+    getInventory(itemSkus, subSkus, new InventoryListener() {
+      @Override
+      public void success(Inventory inventory) {
+        final InventoryDelta delta;
+        synchronized (inventoryLock) {
+          delta = InventoryDelta.between(lastInventory, inventory);
+          lastInventory = inventory;
+        }
+        deltaListener.success(inventory, delta);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        deltaListener.failure(error);
       }
     });
   }
@@ -296,24 +875,650 @@ public class Cashier {
    *
    * @param sku            The SKU to lookup details for
    * @param isSubscription Whether the SKU is for a subscription or consumable product
-   * @param listener       The {@link ProductDetailsListener} to handle the result
+   * @param callback       The {@link ProductDetailsListener} to handle the result. Results
+   *                       served from the {@link ProductDetailsCache} are delivered right away,
+   *                       on the calling thread, unless a {@link CallbackExecutor} is set.
    */
-  public void getProductDetails(final String sku, final boolean isSubscription, final ProductDetailsListener listener) {
+  public void getProductDetails(final String sku, final boolean isSubscription, final ProductDetailsListener callback) {
     Preconditions.checkNotNull(sku, "SKU is null");
-    Preconditions.checkNotNull(listener, "ProductDetailsListener is null");
-    vendor.initialize(context, new Vendor.InitializationListener() {
+    Preconditions.checkNotNull(callback, "ProductDetailsListener is null");
+    final ProductDetailsListener listener = callbackExecutor == null
+        ? callback
+        : callbackExecutor.wrap(callback);
+    if (productDetailsCache == null) {
+      queryProductDetails(sku, isSubscription, listener);
+      return;
+    }
+
+    final ProductDetailsCache.Entry cached = productDetailsCache.get(vendor.id(), sku, isSubscription);
+    if (cached == null) {
+      queryProductDetails(sku, isSubscription, cachingListener(sku, isSubscription, null, listener));
+      return;
+    }
+
+    if (cached.product != null) {
+      listener.success(cached.product);
+    } else {
+      listener.failure(cached.error);
+    }
+
+    if (!productDetailsCache.isFresh(cached) && productDetailsCache.beginRefresh(cached)) {
+      queryProductDetails(sku, isSubscription, cachingListener(sku, isSubscription, cached, null));
+    }
+  }
+
+  private void queryProductDetails(final String sku,
+                                   final boolean isSubscription,
+                                   final ProductDetailsListener listener) {
+    final SingleFlight.Key key = new SingleFlight.Key(vendor, settings, "productDetails", sku, isSubscription);
+    if (!inFlight.join(key, this, listener)) {
+      return;
+    }
+    recordInFlight();
+
+    final Call call = new Call(CashierMetrics.Operation.PRODUCT_DETAILS, "productDetails");
+    call.startDeadline(new Runnable() {
+      @Override
+      public void run() {
+        for (final ProductDetailsListener listener : Cashier.this.<ProductDetailsListener>completeFlight(key)) {
+          listener.failure(timedOut());
+        }
+      }
+    });
+    final ProductDetailsListener sharedListener = new ProductDetailsListener() {
+      @Override
+      public void success(Product product) {
+        if (!call.succeeded()) {
+          return;
+        }
+        for (final ProductDetailsListener listener : Cashier.this.<ProductDetailsListener>completeFlight(key)) {
+          listener.success(product);
+        }
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        if (!call.failed(error)) {
+          return;
+        }
+        for (final ProductDetailsListener listener : Cashier.this.<ProductDetailsListener>completeFlight(key)) {
+          listener.failure(error);
+        }
+      }
+    };
+    noteVendorIfDisconnected();
+    initializeVendor(call, new Vendor.InitializationListener() {
+      @Override
+      public void initialized() {
+        invalidateProductDetailsIfReconnected();
+        try {
+          vendor.getProductDetails(context, sku, isSubscription, sharedListener);
+        } catch (Exception e) {
+          sharedListener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
+        }
+      }
+
+      @Override
+      public void unavailable() {
+        sharedListener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
+      }
+    });
+  }
+
+  /**
+   * Returns the {@link Product}s with up-to-date information for the given SKUs, querying the
+   * vendor with as few requests as it allows. A vendor that is not a {@link ProductsDetailsVendor}
+   * is queried one SKU at a time. Products available in the {@link ProductDetailsCache} are not
+   * queried again.
+   *
+   * @param skus           The SKUs to lookup details for
+   * @param isSubscription Whether the SKUs are for subscription or consumable products
+   * @param callback       The {@link ProductsDetailsListener} to handle the result. A
+   *                       {@link ProductsDetailsPageListener} also receives the products as they
+   *                       arrive, starting with those from the cache.
+   */
+  public void getProductDetails(final Collection<String> skus,
+                                final boolean isSubscription,
+                                final ProductsDetailsListener callback) {
+    Preconditions.checkNotNull(skus, "SKUs are null");
+    Preconditions.checkNotNull(callback, "ProductsDetailsListener is null");
+    final ProductsDetailsListener listener = callbackExecutor == null
+        ? callback
+        : callbackExecutor.wrap(callback);
+    final List<String> requested = new ArrayList<>(new LinkedHashSet<>(skus));
+    final HashMap<String, Product> found = new HashMap<>();
+    final List<String> missing = new ArrayList<>();
+    for (final String sku : requested) {
+      final ProductDetailsCache.Entry cached = productDetailsCache == null
+          ? null
+          : productDetailsCache.get(vendor.id(), sku, isSubscription);
+      if (cached == null || !productDetailsCache.isFresh(cached)) {
+        missing.add(sku);
+      } else if (cached.product != null) {
+        found.put(sku, cached.product);
+      }
+    }
+
+    final ProductsDetailsPageListener pageListener = listener instanceof ProductsDetailsPageListener
+        ? (ProductsDetailsPageListener) listener
+        : null;
+    if (pageListener != null && !found.isEmpty()) {
+      pageListener.page(inOrder(requested, found));
+    }
+
+    if (missing.isEmpty()) {
+      listener.success(inOrder(requested, found));
+      return;
+    }
+
+    final String vendorId = vendor.id();
+    final ProductsDetailsPageListener vendorListener = new ProductsDetailsPageListener() {
+      @Override
+      public void page(List<Product> products) {
+        if (pageListener != null) {
+          pageListener.page(products);
+        }
+      }
+
+      @Override
+      public void success(List<Product> products) {
+        for (final Product product : products) {
+          found.put(product.sku(), product);
+          if (productDetailsCache != null) {
+            productDetailsCache.put(vendorId, product.sku(), isSubscription, product);
+          }
+        }
+
+        if (productDetailsCache != null) {
+          for (final String sku : missing) {
+            if (!found.containsKey(sku)) {
+              productDetailsCache.putNotFound(vendorId, sku, isSubscription,
+                  new Vendor.Error(VendorConstants.PRODUCT_DETAILS_NOT_FOUND, -1));
+            }
+          }
+        }
+        listener.success(inOrder(requested, found));
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        listener.failure(error);
+      }
+    };
+
+    final SingleFlight.Key key = new SingleFlight.Key(vendor, settings, "productsDetails",
+        SingleFlight.normalize(missing), isSubscription);
+    if (!inFlight.join(key, this, vendorListener)) {
+      return;
+    }
+    recordInFlight();
+
+    final Call call = new Call(CashierMetrics.Operation.PRODUCT_DETAILS, "productsDetails");
+    call.startDeadline(new Runnable() {
+      @Override
+      public void run() {
+        for (final ProductsDetailsPageListener listener : Cashier.this.<ProductsDetailsPageListener>completeFlight(key)) {
+          listener.failure(timedOut());
+        }
+      }
+    });
+    final ProductsDetailsPageListener sharedListener = new ProductsDetailsPageListener() {
+      @Override
+      public void page(List<Product> products) {
+        if (call.isFinished()) {
+          return;
+        }
+        for (final ProductsDetailsPageListener listener : inFlight.<ProductsDetailsPageListener>listeners(key)) {
+          listener.page(products);
+        }
+      }
+
+      @Override
+      public void success(List<Product> products) {
+        if (!call.succeeded()) {
+          return;
+        }
+        for (final ProductsDetailsPageListener listener : Cashier.this.<ProductsDetailsPageListener>completeFlight(key)) {
+          listener.success(products);
+        }
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        if (!call.failed(error)) {
+          return;
+        }
+        for (final ProductsDetailsPageListener listener : Cashier.this.<ProductsDetailsPageListener>completeFlight(key)) {
+          listener.failure(error);
+        }
+      }
+    };
+    noteVendorIfDisconnected();
+    initializeVendor(call, new Vendor.InitializationListener() {
       @Override
       public void initialized() {
+        invalidateProductDetailsIfReconnected();
         try {
-          vendor.getProductDetails(context, sku, isSubscription, listener);
+          if (vendor instanceof ProductsDetailsVendor) {
+            ((ProductsDetailsVendor) vendor).getProductsDetails(context, missing, isSubscription, sharedListener);
+          } else {
+            getProductsDetailsOneByOne(missing, isSubscription, sharedListener);
+          }
         } catch (Exception e) {
-          listener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
+          sharedListener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
         }
       }
 
       @Override
       public void unavailable() {
-        listener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
+        sharedListener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_UNAVAILABLE, -1));
+      }
+    });
+  }
+
+  /**
+   * Initiates a purchase flow
+   *
+   * @param activity The activity that will host the purchase flow
+   * @param product  The {@link Product} you wish to buy
+   * @return A {@link CashierFuture} of the purchase
+   */
+  public CashierFuture<Purchase> purchase(Activity activity, Product product) {
+    final CashierFuture<Purchase> future = new CashierFuture<>(callbackExecutor);
+    purchase(activity, product, null, new PurchaseListener() {
+      @Override
+      public void success(Purchase purchase) {
+        future.succeed(purchase);
+      }
+
+      @Override
+      public void failure(Product product, Vendor.Error error) {
+        future.fail(error);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Consumes the given purchase
+   *
+   * @param purchase The {@link Purchase} to consume. Must not be a subscription
+   * @return A {@link CashierFuture} of the consumed purchase
+   */
+  public CashierFuture<Purchase> consume(Purchase purchase) {
+    final CashierFuture<Purchase> future = new CashierFuture<>(callbackExecutor);
+    consume(purchase, new ConsumeListener() {
+      @Override
+      public void success(Purchase purchase) {
+        future.succeed(purchase);
+      }
+
+      @Override
+      public void failure(Purchase purchase, Vendor.Error error) {
+        future.fail(error);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Returns a list of purchased items from the vendor
+   *
+   * @return A {@link CashierFuture} of the inventory
+   */
+  public CashierFuture<Inventory> getInventory() {
+    return getInventory(null, null);
+  }
+
+  /**
+   * Returns a list of purchased items from the vendor
+   *
+   * @param itemSkus A list of {@link String}s of item SKUs to query the vendor for
+   * @param subSkus  A list of {@link String}s of subscription SKUs to query the vendor for
+   * @return A {@link CashierFuture} of the inventory
+   */
+  public CashierFuture<Inventory> getInventory(@Nullable Collection<String> itemSkus,
+                                               @Nullable Collection<String> subSkus) {
+    final CashierFuture<Inventory> future = new CashierFuture<>(callbackExecutor);
+    getInventory(itemSkus, subSkus, new InventoryListener() {
+      @Override
+      public void success(Inventory inventory) {
+        future.succeed(inventory);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        future.fail(error);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Returns the product details for the given SKU
+   *
+   * @param sku            The SKU to lookup details for
+   * @param isSubscription Whether the SKU is for a subscription or consumable product
+   * @return A {@link CashierFuture} of the product
+   */
+  public CashierFuture<Product> getProductDetails(String sku, boolean isSubscription) {
+    final CashierFuture<Product> future = new CashierFuture<>(callbackExecutor);
+    getProductDetails(sku, isSubscription, new ProductDetailsListener() {
+      @Override
+      public void success(Product product) {
+        future.succeed(product);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        future.fail(error);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Returns the product details for the given SKUs, in the order they were given
+   *
+   * @param skus           The SKUs to lookup details for
+   * @param isSubscription Whether the SKUs are for subscription or consumable products
+   * @return A {@link CashierFuture} of the products
+   */
+  public CashierFuture<List<Product>> getProductDetails(Collection<String> skus, boolean isSubscription) {
+    final CashierFuture<List<Product>> future = new CashierFuture<>(callbackExecutor);
+    getProductDetails(skus, isSubscription, new ProductsDetailsListener() {
+      @Override
+      public void success(List<Product> products) {
+        future.succeed(products);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        future.fail(error);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * One vendor operation, with its deadline and measurements
+   */
+  private final class Call {
+    private final CashierMetrics.Operation operation;
+    private final String name;
+    private final int operationId = CashierTrace.newOperationId();
+    private final long startNanos = System.nanoTime();
+    @Nullable
+    private OperationTimeouts.Deadline deadline;
+
+    Call(CashierMetrics.Operation operation, String name) {
+      this.operation = operation;
+      this.name = name;
+      if (!settings.isDefault()) {
+        openCalls.add(operationId);
+        CallSettings.register(operationId, settings);
+      }
+    }
+
+    /**
+     * Runs the given runnable if the operation does not finish within this Cashier's timeout
+     */
+    void startDeadline(final Runnable onTimeout) {
+      if (timeouts == null) {
+        return;
+      }
+      deadline = timeouts.start(vendor.id(), name, new Runnable() {
+        @Override
+        public void run() {
+          record(timedOut());
+          onTimeout.run();
+        }
+      });
+    }
+
+    /**
+     * @return Whether the response is to be delivered, which it is not once the operation timed
+     * out
+     */
+    boolean succeeded() {
+      if (deadline != null && !deadline.finish()) {
+        return false;
+      }
+      record(null);
+      return true;
+    }
+
+    /**
+     * @return Whether the failure is to be delivered, which it is not once the operation timed
+     * out
+     */
+    boolean failed(Vendor.Error error) {
+      if (deadline != null && !deadline.finish()) {
+        return false;
+      }
+      record(error);
+      return true;
+    }
+
+    boolean isFinished() {
+      return deadline != null && deadline.isFinished();
+    }
+
+    private void record(@Nullable Vendor.Error error) {
+      if (openCalls.remove(operationId)) {
+        CallSettings.unregister(operationId);
+      }
+      if (metrics == null) {
+        return;
+      }
+      metrics.recordLatency(vendor.id(), operation, System.nanoTime() - startNanos);
+      if (error != null) {
+        metrics.recordError(vendor.id(), operation, error);
+      }
+    }
+  }
+
+  /**
+   * Initializes the vendor, measuring how long it takes to connect if it is not connected yet.
+   * The operation of the given call is current while the vendor is initialized and while the
+   * listener runs, so the vendor and its billing API can tag their work with it.
+   */
+  private void initializeVendor(final Call call, final Vendor.InitializationListener listener) {
+    final boolean wasAvailable = vendor.available();
+    final long startNanos = System.nanoTime();
+    final CashierTrace.Scope scope = CashierTrace.enter(call.operationId);
+    final boolean traced = CashierTrace.beginSection(call.name + " init");
+    try {
+      vendor.initialize(context, new Vendor.InitializationListener() {
+        @Override
+        public void initialized() {
+          final CashierTrace.Scope scope = CashierTrace.enter(call.operationId);
+          final boolean traced = CashierTrace.beginSection(call.name + " initialized");
+          try {
+            if (metrics != null && !wasAvailable) {
+              metrics.recordLatency(vendor.id(), CashierMetrics.Operation.INITIALIZE, System.nanoTime() - startNanos);
+            }
+            listener.initialized();
+          } finally {
+            if (traced) {
+              CashierTrace.endSection();
+            }
+            scope.exit();
+          }
+        }
+
+        @Override
+        public void unavailable() {
+          final CashierTrace.Scope scope = CashierTrace.enter(call.operationId);
+          try {
+            listener.unavailable();
+          } finally {
+            scope.exit();
+          }
+        }
+      });
+    } finally {
+      if (traced) {
+        CashierTrace.endSection();
+      }
+      scope.exit();
+    }
+  }
+
+  /**
+   * Ends the vendor query with the given key
+   *
+   * @return The listeners that were waiting on it
+   */
+  private <L> List<L> completeFlight(SingleFlight.Key key) {
+    final List<L> listeners = inFlight.complete(key);
+    recordInFlight();
+    return listeners;
+  }
+
+  private void recordInFlight() {
+    if (metrics != null) {
+      metrics.recordQueueDepth(CashierMetrics.QUEUE_IN_FLIGHT, inFlight.size());
+    }
+  }
+
+  private static Vendor.Error timedOut() {
+    return new Vendor.Error(VendorConstants.TIMED_OUT, -1);
+  }
+
+  private static List<Product> inOrder(List<String> skus, Map<String, Product> products) {
+    final List<Product> ordered = new ArrayList<>(products.size());
+    for (final String sku : skus) {
+      final Product product = products.get(sku);
+      if (product != null) {
+        ordered.add(product);
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * Looks up the given SKUs with a request each, for vendors that cannot batch them. Each product
+   * is delivered as a page of its own and SKUs the vendor does not know about are left out, like a
+   * {@link ProductsDetailsVendor} would.
+   */
+  private void getProductsDetailsOneByOne(List<String> skus,
+                                          boolean isSubscription,
+                                          final ProductsDetailsPageListener listener) {
+    final List<Product> products = new ArrayList<>(skus.size());
+    final AtomicInteger remaining = new AtomicInteger(skus.size());
+    final AtomicBoolean failed = new AtomicBoolean();
+    for (final String sku : skus) {
+      vendor.getProductDetails(context, sku, isSubscription, new ProductDetailsListener() {
+        @Override
+        public void success(Product product) {
+          synchronized (products) {
+            products.add(product);
+          }
+          listener.page(Collections.singletonList(product));
+          completed();
+        }
+
+        @Override
+        public void failure(Vendor.Error error) {
+          if (error.code != VendorConstants.PRODUCT_DETAILS_NOT_FOUND && failed.compareAndSet(false, true)) {
+            listener.failure(error);
+          }
+          completed();
+        }
+
+        private void completed() {
+          if (remaining.decrementAndGet() == 0 && !failed.get()) {
+            synchronized (products) {
+              listener.success(new ArrayList<>(products));
+            }
+          }
+        }
+      });
+    }
+  }
+
+  private void noteVendorIfDisconnected() {
+    if (productDetailsCache != null && !vendor.available()) {
+      productDetailsCache.disconnected(vendor);
+    }
+  }
+
+  private void invalidateProductDetailsIfReconnected() {
+    if (productDetailsCache != null) {
+      // If the vendor reconnected, what it knows about its products may have changed meanwhile
+      productDetailsCache.connected(vendor);
+    }
+  }
+
+  /**
+   * Keeps the results of a product details query in the cache. Queries that refresh a cached
+   * entry in the background have no listener of their own.
+   */
+  private ProductDetailsListener cachingListener(final String sku,
+                                                 final boolean isSubscription,
+                                                 @Nullable final ProductDetailsCache.Entry refreshing,
+                                                 @Nullable final ProductDetailsListener listener) {
+    final String vendorId = vendor.id();
+    return new ProductDetailsListener() {
+      @Override
+      public void success(Product product) {
+        productDetailsCache.put(vendorId, sku, isSubscription, product);
+        if (listener != null) {
+          listener.success(product);
+        }
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        if (error.code == VendorConstants.PRODUCT_DETAILS_NOT_FOUND) {
+          productDetailsCache.putNotFound(vendorId, sku, isSubscription, error);
+        } else if (refreshing != null) {
+          productDetailsCache.endRefresh(refreshing);
+        }
+
+        if (listener != null) {
+          listener.failure(error);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the purchases of this Cashier's vendor as last seen in its {@link PurchaseStore}.
+   * This does not need the vendor to be initialized, so it answers what the user owns right away
+   * on a cold start, while {@link #getInventory(InventoryListener)} confirms it with the vendor.
+   *
+   * @return The stored purchases, or an empty list if this Cashier has no purchase store
+   **/
+  public List<Purchase> storedPurchases() {
+    if (store == null) {
+      return Collections.emptyList();
+    }
+
+    final String vendorId = vendor.id();
+    final List<Purchase> purchases = new ArrayList<>();
+    for (final Purchase purchase : store.purchases()) {
+      if (vendorId.equals(purchase.product().vendorId())) {
+        purchases.add(purchase);
+      }
+    }
+    return purchases;
+  }
+
+  private void storePurchase(final Purchase purchase) {
+    if (store == null) {
+      return;
+    }
+
+    storeWrites.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          store.put(purchase);
+        } catch (IOException e) {
+          Log.w("Cashier", "Could not add the purchase to the purchase store", e);
+        }
       }
     });
   }
@@ -326,10 +1531,26 @@ public class Cashier {
   }
 
   /**
-   * Runs any cleanup functions the {@link Vendor} may need
+   * Runs any cleanup functions the {@link Vendor} may need. A vendor that is shared with other
+   * Cashier instances is only disposed along with the last of them.
    **/
   public void dispose() {
-    vendor.dispose(context);
+    // Results of queries this instance joined are not delivered anymore, even when the vendor
+    // lives on for the other instances sharing it
+    inFlight.cancel(this);
+    // Operations the vendor never completes would keep their settings registered otherwise
+    for (final Integer operationId : openCalls) {
+      openCalls.remove(operationId);
+      CallSettings.unregister(operationId);
+    }
+    if (sharedVendor == null) {
+      vendor.dispose(context);
+    } else if (!sharedVendorReleased) {
+      sharedVendorReleased = true;
+      if (vendors.release(sharedVendor)) {
+        vendor.dispose(context);
+      }
+    }
     sPurchaseInProgress = false;
   }
 
@@ -344,7 +1565,14 @@ public class Cashier {
   public static class Builder {
     private final Context context;
     private Vendor vendor;
+    private String sharedVendorId;
     private Logger logger;
+    private PurchaseStore store;
+    private ProductDetailsCache productDetailsCache;
+    private OperationTimeouts timeouts;
+    private CashierMetrics metrics;
+    private Executor backgroundExecutor;
+    private CallbackExecutor callbackExecutor;
 
     public Builder(Context context) {
       this.context = context;
@@ -352,20 +1580,110 @@ public class Cashier {
 
     public Builder forVendor(Vendor vendor) {
       this.vendor = vendor;
+      this.sharedVendorId = null;
       return this;
     }
 
+    /**
+     * Uses the cached vendor instance for the given ID, which is acquired in {@link #build()}
+     */
+    Builder forSharedVendor(String vendorId) {
+      // Fails early for vendors that are not registered, like creating the vendor here would
+      getVendorFactory(vendorId);
+      this.vendor = null;
+      this.sharedVendorId = vendorId;
+      return this;
+    }
+
+    /**
+     * Logs the vendor's work on the operations of the built Cashier to the given logger. The
+     * vendor also falls back to it for work outside of any operation, like handling purchase
+     * updates; for a shared vendor that is the logger of the last Cashier built with one.
+     */
     public Builder withLogger(@Nullable Logger logger) {
       this.logger = logger;
       return this;
     }
 
+    /**
+     * Records the latencies and errors of the built Cashier's operations to the given metrics,
+     * e.g. a {@link HistogramMetrics}
+     */
+    public Builder withMetrics(@Nullable CashierMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Runs the blocking work of the vendor, such as inventory queries, on the given executor
+     * instead of {@link BackgroundExecutor#shared()}. Like the other settings, it only applies to
+     * the operations of the built Cashier, even when its vendor is shared.
+     */
+    public Builder withBackgroundExecutor(@Nullable Executor executor) {
+      this.backgroundExecutor = executor;
+      return this;
+    }
+
+    /**
+     * Calls the listeners passed to the built Cashier on the given executor. By default results
+     * are delivered on the thread the vendor produces them on, which is the main thread for the
+     * bundled vendors, and cached product details on the calling thread.
+     * {@link CallbackExecutor#direct()} skips the hops to the main thread, for callers that hand
+     * the results over to their own threads anyway.
+     */
+    public Builder withCallbackExecutor(@Nullable CallbackExecutor executor) {
+      this.callbackExecutor = executor;
+      return this;
+    }
+
+    /**
+     * Keeps the given store up to date with the purchases made, consumed and queried through the
+     * built Cashier, see {@link Cashier#storedPurchases()}. The store is written in order on the
+     * background executor, since writes may wait on the disk.
+     * <p>
+     * Purchases the vendor learns about outside of a purchase flow, such as a pending purchase
+     * that completed, are only stored by the next {@link Cashier#getInventory} call.
+     */
+    public Builder withPurchaseStore(@Nullable PurchaseStore store) {
+      this.store = store;
+      return this;
+    }
+
+    /**
+     * Serves {@link Cashier#getProductDetails} from the given cache where possible. Vendors also
+     * look up the products of queried purchases in it.
+     */
+    public Builder withProductDetailsCache(@Nullable ProductDetailsCache productDetailsCache) {
+      this.productDetailsCache = productDetailsCache;
+      return this;
+    }
+
+    /**
+     * Fails vendor operations that take too long with {@link VendorConstants#TIMED_OUT}
+     */
+    public Builder withOperationTimeouts(@Nullable OperationTimeouts timeouts) {
+      this.timeouts = timeouts;
+      return this;
+    }
+
     public Cashier build() {
+      VendorCache.Entry sharedVendor = null;
+      Vendor vendor = this.vendor;
+      if (sharedVendorId != null) {
+        sharedVendor = vendors.acquire(sharedVendorId);
+        vendor = sharedVendor.vendor;
+      }
+
       if (logger != null) {
         vendor.setLogger(logger);
       }
 
-      return new Cashier(context, vendor);
+      // The vendor may be shared with other Cashier instances, its operations look these up for
+      // the call they run for instead of having them set on the vendor
+      final CallSettings settings =
+          new CallSettings(logger, backgroundExecutor, callbackExecutor, productDetailsCache);
+      return new Cashier(context, vendor, sharedVendor, store, productDetailsCache, timeouts, metrics,
+          callbackExecutor, settings);
     }
   }
 }
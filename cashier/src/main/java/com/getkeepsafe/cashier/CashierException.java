@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+/**
+ * The cause of the {@link java.util.concurrent.ExecutionException} thrown by
+ * {@link CashierFuture#get()} when the operation failed
+ */
+public class CashierException extends Exception {
+  public final Vendor.Error error;
+
+  public CashierException(Vendor.Error error) {
+    super("Failed with code " + error.code + ", vendor code " + error.vendorCode);
+    this.error = error;
+  }
+}
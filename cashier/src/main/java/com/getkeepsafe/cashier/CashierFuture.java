@@ -0,0 +1,497 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of a {@link Cashier} operation, which either succeeds with a value or fails
+ * with a {@link Vendor.Error}.
+ * <p>
+ * Callbacks run on the thread that completes the future, which for most vendors is the main
+ * thread, or right away if the future is already complete. Do not block the main thread on
+ * {@link #get()}, the vendor may need it to deliver the result.
+ * <p>
+ * A transform or continuation that throws fails the future derived with it with
+ * {@link VendorConstants#CALLBACK_FAILED}.
+ * <p>
+ * Cancelling a future does not stop the vendor's work, but its result is dropped and no callback
+ * is called. Cancellation spreads to the futures derived from this one and to the futures this one
+ * was derived from, so cancelling the end of a chain cancels the whole chain.
+ */
+public final class CashierFuture<T> implements Future<T> {
+  public interface Callback<T> {
+    void success(T value);
+
+    void failure(Vendor.Error error);
+  }
+
+  public interface Transform<T, R> {
+    R apply(T value);
+  }
+
+  public interface Continuation<T, R> {
+    CashierFuture<R> then(T value);
+  }
+
+  private static final int PENDING = 0;
+  private static final int SUCCEEDED = 1;
+  private static final int FAILED = 2;
+  private static final int CANCELLED = 3;
+
+  private static ScheduledThreadPoolExecutor timer;
+
+  /** Where timeouts fail the future, the main thread if null */
+  @Nullable
+  private final Executor timeoutExecutor;
+  private int state = PENDING;
+  private T value;
+  private Vendor.Error error;
+  private List<Callback<? super T>> callbacks = new ArrayList<>(1);
+  private List<Runnable> cancellationListeners = new ArrayList<>(1);
+
+  CashierFuture() {
+    this(null);
+  }
+
+  /**
+   * @param timeoutExecutor Where {@link #timeout} fails this future and those derived from it,
+   *                        the main thread if null
+   */
+  CashierFuture(@Nullable Executor timeoutExecutor) {
+    this.timeoutExecutor = timeoutExecutor;
+  }
+
+  public static <T> CashierFuture<T> succeeded(T value) {
+    final CashierFuture<T> future = new CashierFuture<>();
+    future.succeed(value);
+    return future;
+  }
+
+  public static <T> CashierFuture<T> failed(Vendor.Error error) {
+    final CashierFuture<T> future = new CashierFuture<>();
+    future.fail(error);
+    return future;
+  }
+
+  /**
+   * @return A future that succeeds with the values of all the given futures, in their order, or
+   * fails with the first of them to fail, cancelling the others
+   */
+  public static <T> CashierFuture<List<T>> all(Collection<? extends CashierFuture<? extends T>> futures) {
+    final List<CashierFuture<? extends T>> inputs = new ArrayList<>(futures);
+    final CashierFuture<List<T>> result = new CashierFuture<>();
+    if (inputs.isEmpty()) {
+      result.succeed(Collections.<T>emptyList());
+      return result;
+    }
+
+    final Object[] values = new Object[inputs.size()];
+    final int[] remaining = {inputs.size()};
+    for (int i = 0; i < inputs.size(); i++) {
+      final int index = i;
+      inputs.get(i).addCallback(new Callback<T>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void success(T value) {
+          final boolean done;
+          synchronized (values) {
+            values[index] = value;
+            done = --remaining[0] == 0;
+          }
+          if (done) {
+            result.succeed((List<T>) (List<?>) Arrays.asList(values));
+          }
+        }
+
+        @Override
+        public void failure(Vendor.Error error) {
+          if (result.fail(error)) {
+            cancelAll(inputs);
+          }
+        }
+      });
+    }
+    result.onCancel(new Runnable() {
+      @Override
+      public void run() {
+        cancelAll(inputs);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return A future that succeeds with the value of the first of the given futures to succeed,
+   * cancelling the others, or fails with the error of the last of them to fail
+   */
+  public static <T> CashierFuture<T> any(Collection<? extends CashierFuture<? extends T>> futures) {
+    final List<CashierFuture<? extends T>> inputs = new ArrayList<>(futures);
+    if (inputs.isEmpty()) {
+      throw new IllegalArgumentException("No futures given");
+    }
+
+    final CashierFuture<T> result = new CashierFuture<>();
+    final int[] remaining = {inputs.size()};
+    for (final CashierFuture<? extends T> input : inputs) {
+      input.addCallback(new Callback<T>() {
+        @Override
+        public void success(T value) {
+          if (result.succeed(value)) {
+            cancelAll(inputs);
+          }
+        }
+
+        @Override
+        public void failure(Vendor.Error error) {
+          final boolean last;
+          synchronized (remaining) {
+            last = --remaining[0] == 0;
+          }
+          if (last) {
+            result.fail(error);
+          }
+        }
+      });
+    }
+    result.onCancel(new Runnable() {
+      @Override
+      public void run() {
+        cancelAll(inputs);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Calls the given callback once this future completes, unless it is cancelled
+   */
+  public CashierFuture<T> addCallback(Callback<? super T> callback) {
+    Preconditions.checkNotNull(callback, "Callback is null");
+    final int state;
+    synchronized (this) {
+      state = this.state;
+      if (state == PENDING) {
+        callbacks.add(callback);
+        return this;
+      }
+    }
+
+    if (state == SUCCEEDED) {
+      callback.success(value);
+    } else if (state == FAILED) {
+      callback.failure(error);
+    }
+    return this;
+  }
+
+  /**
+   * @return A future of the given transform applied to the value of this one
+   */
+  public <R> CashierFuture<R> map(final Transform<? super T, ? extends R> transform) {
+    final CashierFuture<R> result = derive();
+    addCallback(new Callback<T>() {
+      @Override
+      public void success(T value) {
+        final R transformed;
+        try {
+          transformed = transform.apply(value);
+        } catch (RuntimeException e) {
+          result.failWith(e);
+          return;
+        }
+        result.succeed(transformed);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        result.fail(error);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return A future of the operation the given continuation starts with the value of this one
+   */
+  public <R> CashierFuture<R> then(final Continuation<? super T, R> continuation) {
+    final CashierFuture<R> result = derive();
+    addCallback(new Callback<T>() {
+      @Override
+      public void success(T value) {
+        final CashierFuture<R> next;
+        try {
+          next = continuation.then(value);
+          Preconditions.checkNotNull(next, "Continuation returned null");
+        } catch (RuntimeException e) {
+          result.failWith(e);
+          return;
+        }
+        result.onCancel(new Runnable() {
+          @Override
+          public void run() {
+            next.cancel(false);
+          }
+        });
+        next.addCallback(new Callback<R>() {
+          @Override
+          public void success(R value) {
+            result.succeed(value);
+          }
+
+          @Override
+          public void failure(Vendor.Error error) {
+            result.fail(error);
+          }
+        });
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        result.fail(error);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Fails this future with {@link VendorConstants#TIMED_OUT} if it has not completed within the
+   * given time. The failure is delivered on the callback executor of the {@link Cashier} the
+   * future came from, or the main thread.
+   */
+  public CashierFuture<T> timeout(long timeout, TimeUnit unit) {
+    final Runnable expire = new Runnable() {
+      @Override
+      public void run() {
+        fail(new Vendor.Error(VendorConstants.TIMED_OUT, -1));
+      }
+    };
+    final ScheduledFuture<?> timeoutTask = timer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (!isDone()) {
+          timeoutExecutor().execute(expire);
+        }
+      }
+    }, timeout, unit);
+    addCallback(new Callback<T>() {
+      @Override
+      public void success(T value) {
+        timeoutTask.cancel(false);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        timeoutTask.cancel(false);
+      }
+    });
+    onCancel(new Runnable() {
+      @Override
+      public void run() {
+        timeoutTask.cancel(false);
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    final List<Runnable> listeners;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      state = CANCELLED;
+      listeners = cancellationListeners;
+      callbacks = null;
+      cancellationListeners = null;
+      notifyAll();
+    }
+
+    for (final Runnable listener : listeners) {
+      listener.run();
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return state == CANCELLED;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return state != PENDING;
+  }
+
+  @Override
+  public synchronized T get() throws InterruptedException, ExecutionException {
+    while (state == PENDING) {
+      wait();
+    }
+    return result();
+  }
+
+  @Override
+  public synchronized T get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (state == PENDING) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return result();
+  }
+
+  boolean succeed(T value) {
+    final List<Callback<? super T>> callbacks;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      state = SUCCEEDED;
+      this.value = value;
+      callbacks = complete();
+    }
+
+    for (final Callback<? super T> callback : callbacks) {
+      callback.success(value);
+    }
+    return true;
+  }
+
+  boolean fail(Vendor.Error error) {
+    final List<Callback<? super T>> callbacks;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      state = FAILED;
+      this.error = error;
+      callbacks = complete();
+    }
+
+    for (final Callback<? super T> callback : callbacks) {
+      callback.failure(error);
+    }
+    return true;
+  }
+
+  private void failWith(RuntimeException e) {
+    Log.w("Cashier", "Future callback failed", e);
+    fail(new Vendor.Error(VendorConstants.CALLBACK_FAILED, -1));
+  }
+
+  /**
+   * Runs the given listener if this future is cancelled
+   */
+  void onCancel(Runnable listener) {
+    synchronized (this) {
+      if (state == PENDING) {
+        cancellationListeners.add(listener);
+        return;
+      }
+      if (state != CANCELLED) {
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  private List<Callback<? super T>> complete() {
+    final List<Callback<? super T>> callbacks = this.callbacks;
+    this.callbacks = null;
+    cancellationListeners = null;
+    notifyAll();
+    return callbacks;
+  }
+
+  private T result() throws ExecutionException {
+    switch (state) {
+      case SUCCEEDED:
+        return value;
+      case FAILED:
+        throw new ExecutionException(new CashierException(error));
+      default:
+        throw new CancellationException();
+    }
+  }
+
+  /**
+   * @return A future that is cancelled along with this one, and cancels this one when it is
+   */
+  private <R> CashierFuture<R> derive() {
+    final CashierFuture<R> result = new CashierFuture<>(timeoutExecutor);
+    onCancel(new Runnable() {
+      @Override
+      public void run() {
+        result.cancel(false);
+      }
+    });
+    result.onCancel(new Runnable() {
+      @Override
+      public void run() {
+        cancel(false);
+      }
+    });
+    return result;
+  }
+
+  private static void cancelAll(List<? extends CashierFuture<?>> futures) {
+    for (final CashierFuture<?> future : futures) {
+      future.cancel(false);
+    }
+  }
+
+  private Executor timeoutExecutor() {
+    return timeoutExecutor == null ? CallbackExecutor.mainThread() : timeoutExecutor;
+  }
+
+  static synchronized ScheduledThreadPoolExecutor timer() {
+    if (timer == null) {
+      timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "cashier-timeout");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return timer;
+  }
+}
@@ -16,13 +16,25 @@
 
 package com.getkeepsafe.cashier;
 
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.binary.MalformedBinaryException;
+import com.getkeepsafe.cashier.json.JsonFieldReader;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
 import com.google.auto.value.AutoValue;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
+import static com.getkeepsafe.cashier.Product.requireField;
+
 @AutoValue
-public abstract class CashierPurchase implements Purchase {
+public abstract class CashierPurchase implements BinaryPurchase {
   public static final String KEY_ORDER_ID = "cashier-order-id";
   public static final String KEY_TOKEN = "cashier-token";
   public static final String KEY_RECEIPT = "cashier-receipt";
@@ -50,6 +62,68 @@ public abstract class CashierPurchase implements Purchase {
         json.getString(KEY_DEV_PAYLOAD));
   }
 
+  /**
+   * Reads a purchase from the next JSON object of the given reader. Unknown keys are skipped.
+   */
+  public static CashierPurchase create(JsonReader reader) throws IOException {
+    return create(reader, null);
+  }
+
+  /**
+   * Reads a purchase from the next JSON object of the given reader, handing any key that is not
+   * part of the Cashier format to {@code extraFields} before skipping it
+   */
+  public static CashierPurchase create(JsonReader reader, @Nullable JsonFieldReader extraFields)
+      throws IOException {
+    final Product.JsonFields productFields = new Product.JsonFields();
+    String orderId = null;
+    String token = null;
+    String receipt = null;
+    String developerPayload = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      switch (name) {
+        case KEY_ORDER_ID:
+          orderId = reader.nextString();
+          break;
+        case KEY_TOKEN:
+          token = reader.nextString();
+          break;
+        case KEY_RECEIPT:
+          receipt = reader.nextString();
+          break;
+        case KEY_DEV_PAYLOAD:
+          developerPayload = reader.nextString();
+          break;
+        default:
+          if (!productFields.readField(name, reader)
+              && (extraFields == null || !extraFields.readField(name, reader))) {
+            reader.skipValue();
+          }
+      }
+    }
+    reader.endObject();
+
+    return create(productFields.build(),
+        requireField(orderId, KEY_ORDER_ID),
+        requireField(token, KEY_TOKEN),
+        requireField(receipt, KEY_RECEIPT),
+        requireField(developerPayload, KEY_DEV_PAYLOAD));
+  }
+
+  /**
+   * Reads a purchase written by {@link #writeTo(BinaryWriter)}
+   */
+  public static CashierPurchase create(BinaryReader reader) throws MalformedBinaryException {
+    return create(Product.create(reader),
+        reader.readUniqueString(),
+        reader.readUniqueString(),
+        reader.readUniqueString(),
+        reader.readString());
+  }
+
   public static CashierPurchase create(Product product,
                                        String orderId,
                                        String token,
@@ -66,4 +140,33 @@ public abstract class CashierPurchase implements Purchase {
     object.put(KEY_DEV_PAYLOAD, developerPayload());
     return object;
   }
+
+  /**
+   * Writes this purchase as a JSON object, in the same format as {@link #toJson()}
+   */
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writeJsonFields(writer);
+    writer.endObject();
+  }
+
+  /**
+   * Writes the fields of this purchase into the JSON object that is currently open in the writer
+   */
+  public void writeJsonFields(JsonWriter writer) throws IOException {
+    product().writeJsonFields(writer);
+    writer.name(KEY_ORDER_ID).value(orderId());
+    writer.name(KEY_TOKEN).value(token());
+    writer.name(KEY_RECEIPT).value(receipt());
+    writer.name(KEY_DEV_PAYLOAD).value(developerPayload());
+  }
+
+  @Override
+  public void writeTo(BinaryWriter writer) {
+    product().writeTo(writer);
+    writer.writeUniqueString(orderId());
+    writer.writeUniqueString(token());
+    writer.writeUniqueString(receipt());
+    writer.writeString(developerPayload());
+  }
 }
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Correlates the stages of a {@link Cashier} operation across the vendor and billing API layers.
+ * <p>
+ * Every operation gets an id, which is current on the thread while the operation runs and is
+ * carried across thread hops by {@link #wrap(String, Runnable)}. Log lines of the vendors are
+ * tagged with it, so the lines of concurrent operations can be told apart.
+ * <p>
+ * When tracing is enabled, the stages are also marked as {@link Trace} sections named after the
+ * operation id, to be seen in systrace or Perfetto. Tracing is off by default, and a no-op below
+ * API 18.
+ */
+public final class CashierTrace {
+  static final int NO_OPERATION = 0;
+  // Trace section names longer than this are rejected by the platform
+  private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+  private static final AtomicInteger operationIds = new AtomicInteger();
+  private static final ThreadLocal<Integer> current = new ThreadLocal<>();
+  private static volatile boolean enabled;
+
+  private CashierTrace() {
+  }
+
+  /**
+   * The state of the thread before an operation id was entered, to be restored once the stage
+   * completes
+   */
+  public static final class Scope {
+    private final Integer previous;
+
+    private Scope(Integer previous) {
+      this.previous = previous;
+    }
+
+    public void exit() {
+      current.set(previous);
+    }
+  }
+
+  public static void setEnabled(boolean enabled) {
+    CashierTrace.enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return A new operation id, never {@code 0}
+   */
+  public static int newOperationId() {
+    int id;
+    do {
+      id = operationIds.incrementAndGet();
+    } while (id == NO_OPERATION);
+    return id;
+  }
+
+  /**
+   * @return The id of the operation running on this thread, or {@code 0} if there is none
+   */
+  public static int currentOperationId() {
+    final Integer id = current.get();
+    return id == null ? NO_OPERATION : id;
+  }
+
+  /**
+   * Makes the given operation current on this thread until {@link Scope#exit()} is called
+   */
+  public static Scope enter(int operationId) {
+    final Scope scope = new Scope(current.get());
+    current.set(operationId == NO_OPERATION ? null : operationId);
+    return scope;
+  }
+
+  /**
+   * Starts a trace section for the current operation, if tracing is enabled. A section that was
+   * started must be ended with {@link #endSection()} on the same thread, whether or not tracing
+   * is still enabled by then.
+   *
+   * @return {@code true} if a section was started
+   */
+  public static boolean beginSection(String name) {
+    if (!enabled || Build.VERSION.SDK_INT < 18) {
+      return false;
+    }
+    final int id = currentOperationId();
+    String section = id == NO_OPERATION ? "Cashier " + name : "Cashier#" + id + " " + name;
+    if (section.length() > MAX_SECTION_NAME_LENGTH) {
+      section = section.substring(0, MAX_SECTION_NAME_LENGTH);
+    }
+    Trace.beginSection(section);
+    return true;
+  }
+
+  /**
+   * Ends the section started by the last call to {@link #beginSection(String)} on this thread
+   * that returned {@code true}
+   */
+  public static void endSection() {
+    if (Build.VERSION.SDK_INT < 18) {
+      return;
+    }
+    Trace.endSection();
+  }
+
+  /**
+   * @return The given runnable, running as a trace section of the operation that is current when
+   * this is called, on whichever thread it ends up on
+   */
+  public static Runnable wrap(final String section, final Runnable runnable) {
+    final int operationId = currentOperationId();
+    if (operationId == NO_OPERATION && !enabled) {
+      return runnable;
+    }
+    return new Runnable() {
+      @Override
+      public void run() {
+        final Scope scope = enter(operationId);
+        final boolean traced = beginSection(section);
+        try {
+          runnable.run();
+        } finally {
+          if (traced) {
+            endSection();
+          }
+          scope.exit();
+        }
+      }
+    };
+  }
+
+  /**
+   * @return The given log message, prefixed with the current operation id if there is one
+   */
+  public static String tag(String message) {
+    final int id = currentOperationId();
+    return id == NO_OPERATION ? message : "[op " + id + "] " + message;
+  }
+}
@@ -16,41 +16,199 @@
 
 package com.getkeepsafe.cashier;
 
+import androidx.annotation.Nullable;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
+/**
+ * The purchases a user owns and the products that were queried along with them, indexed by SKU,
+ * purchase token and order ID.
+ * <p>
+ * Inventories created through {@link Builder} are immutable and safe to share between threads.
+ */
 public class Inventory {
   private final List<Purchase> purchases;
   private final List<Product> products;
+  private final HashMap<String, Purchase> purchasesBySku;
+  private final HashMap<String, Purchase> purchasesByToken;
+  private final HashMap<String, Purchase> purchasesByOrderId;
+  private final HashMap<String, Product> productsBySku;
+  private final boolean immutable;
 
+  /**
+   * Creates an empty, mutable inventory, which is not safe to share between threads
+   *
+   * @deprecated Build an immutable inventory with {@link Builder} instead
+   */
+  @Deprecated
   public Inventory() {
-    purchases = new ArrayList<>();
-    products = new ArrayList<>();
+    this(new ArrayList<Purchase>(), new ArrayList<Product>(), false);
+  }
+
+  private Inventory(List<Purchase> purchases, List<Product> products, boolean immutable) {
+    this.purchases = purchases;
+    this.products = products;
+    this.immutable = immutable;
+    purchasesBySku = new HashMap<>(purchases.size() * 2);
+    purchasesByToken = new HashMap<>(purchases.size() * 2);
+    purchasesByOrderId = new HashMap<>(purchases.size() * 2);
+    productsBySku = new HashMap<>(products.size() * 2);
+    for (final Purchase purchase : purchases) {
+      index(purchase);
+    }
+    for (final Product product : products) {
+      index(product);
+    }
   }
 
   public List<Purchase> purchases() {
     return Collections.unmodifiableList(purchases);
   }
 
+  public List<Product> products() {
+    return Collections.unmodifiableList(products);
+  }
+
+  /**
+   * @return The first purchase of the given SKU, or {@code null} if the user does not own it
+   */
+  @Nullable
+  public Purchase purchaseForSku(String sku) {
+    return purchasesBySku.get(sku);
+  }
+
+  /**
+   * @return The purchase with the given token, or {@code null} if there is none
+   */
+  @Nullable
+  public Purchase purchaseForToken(String token) {
+    return purchasesByToken.get(token);
+  }
+
+  /**
+   * @return The purchase with the given order ID, or {@code null} if there is none
+   */
+  @Nullable
+  public Purchase purchaseForOrderId(String orderId) {
+    return purchasesByOrderId.get(orderId);
+  }
+
+  /**
+   * @return The product with the given SKU, or {@code null} if it was not queried
+   */
+  @Nullable
+  public Product productForSku(String sku) {
+    return productsBySku.get(sku);
+  }
+
+  /**
+   * @return Whether the user owns a purchase of the given SKU
+   */
+  public boolean owns(String sku) {
+    return purchasesBySku.containsKey(sku);
+  }
+
+  /**
+   * @deprecated Inventories are built with {@link Builder#addPurchase(Purchase)}
+   */
+  @Deprecated
   public void addPurchase(Purchase purchase) {
+    checkMutable();
     purchases.add(purchase);
+    index(purchase);
   }
 
+  /**
+   * @deprecated Inventories are built with {@link Builder#addPurchases(Collection)}
+   */
+  @Deprecated
   public void addPurchases(Collection<? extends Purchase> purchases) {
-    this.purchases.addAll(purchases);
-  }
-
-  public List<Product> products() {
-    return Collections.unmodifiableList(products);
+    checkMutable();
+    for (final Purchase purchase : purchases) {
+      addPurchase(purchase);
+    }
   }
 
+  /**
+   * @deprecated Inventories are built with {@link Builder#addProduct(Product)}
+   */
+  @Deprecated
   public void addProduct(Product product) {
+    checkMutable();
     products.add(product);
+    index(product);
   }
 
+  /**
+   * @deprecated Inventories are built with {@link Builder#addProducts(Collection)}
+   */
+  @Deprecated
   public void addProducts(Collection<? extends Product> products) {
-    this.products.addAll(products);
+    checkMutable();
+    for (final Product product : products) {
+      addProduct(product);
+    }
+  }
+
+  private void index(Purchase purchase) {
+    final String sku = purchase.product().sku();
+    if (!purchasesBySku.containsKey(sku)) {
+      purchasesBySku.put(sku, purchase);
+    }
+    purchasesByToken.put(purchase.token(), purchase);
+    purchasesByOrderId.put(purchase.orderId(), purchase);
+  }
+
+  private void index(Product product) {
+    productsBySku.put(product.sku(), product);
+  }
+
+  private void checkMutable() {
+    if (immutable) {
+      throw new UnsupportedOperationException("Inventory is immutable");
+    }
+  }
+
+  public static class Builder {
+    private final ArrayList<Purchase> purchases = new ArrayList<>();
+    private final ArrayList<Product> products = new ArrayList<>();
+
+    public Builder addPurchase(Purchase purchase) {
+      Preconditions.checkNotNull(purchase, "Purchase is null");
+      purchases.add(purchase);
+      return this;
+    }
+
+    public Builder addPurchases(Collection<? extends Purchase> purchases) {
+      for (final Purchase purchase : purchases) {
+        addPurchase(purchase);
+      }
+      return this;
+    }
+
+    public Builder addProduct(Product product) {
+      Preconditions.checkNotNull(product, "Product is null");
+      products.add(product);
+      return this;
+    }
+
+    public Builder addProducts(Collection<? extends Product> products) {
+      for (final Product product : products) {
+        addProduct(product);
+      }
+      return this;
+    }
+
+    /**
+     * Returns an immutable snapshot of the purchases and products added so far. The builder can
+     * keep being used afterwards without affecting it.
+     */
+    public Inventory build() {
+      return new Inventory(new ArrayList<>(purchases), new ArrayList<>(products), true);
+    }
   }
 }
@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two {@link Inventory} results. Purchases are matched by token and
+ * products by SKU; a purchase or product present in both that is no longer equal, such as a
+ * purchase that was refunded or a product whose price changed, is reported as changed with its
+ * current value.
+ */
+public final class InventoryDelta {
+  private final List<Purchase> addedPurchases;
+  private final List<Purchase> removedPurchases;
+  private final List<Purchase> changedPurchases;
+  private final List<Product> addedProducts;
+  private final List<Product> removedProducts;
+  private final List<Product> changedProducts;
+
+  /**
+   * @param previous The earlier inventory, or {@code null} to report everything in the current
+   *                 one as added
+   * @param current  The later inventory
+   */
+  public static InventoryDelta between(@Nullable Inventory previous, Inventory current) {
+    final List<Purchase> addedPurchases = new ArrayList<>();
+    final List<Purchase> removedPurchases = new ArrayList<>();
+    final List<Purchase> changedPurchases = new ArrayList<>();
+    for (final Purchase purchase : current.purchases()) {
+      final Purchase previousPurchase = previous == null ? null : previous.purchaseForToken(purchase.token());
+      if (previousPurchase == null) {
+        addedPurchases.add(purchase);
+      } else if (!previousPurchase.equals(purchase)) {
+        changedPurchases.add(purchase);
+      }
+    }
+
+    final List<Product> addedProducts = new ArrayList<>();
+    final List<Product> removedProducts = new ArrayList<>();
+    final List<Product> changedProducts = new ArrayList<>();
+    for (final Product product : current.products()) {
+      final Product previousProduct = previous == null ? null : previous.productForSku(product.sku());
+      if (previousProduct == null) {
+        addedProducts.add(product);
+      } else if (!previousProduct.equals(product)) {
+        changedProducts.add(product);
+      }
+    }
+
+    if (previous != null) {
+      for (final Purchase purchase : previous.purchases()) {
+        if (current.purchaseForToken(purchase.token()) == null) {
+          removedPurchases.add(purchase);
+        }
+      }
+      for (final Product product : previous.products()) {
+        if (current.productForSku(product.sku()) == null) {
+          removedProducts.add(product);
+        }
+      }
+    }
+
+    return new InventoryDelta(addedPurchases, removedPurchases, changedPurchases,
+        addedProducts, removedProducts, changedProducts);
+  }
+
+  private InventoryDelta(List<Purchase> addedPurchases,
+                         List<Purchase> removedPurchases,
+                         List<Purchase> changedPurchases,
+                         List<Product> addedProducts,
+                         List<Product> removedProducts,
+                         List<Product> changedProducts) {
+    this.addedPurchases = Collections.unmodifiableList(addedPurchases);
+    this.removedPurchases = Collections.unmodifiableList(removedPurchases);
+    this.changedPurchases = Collections.unmodifiableList(changedPurchases);
+    this.addedProducts = Collections.unmodifiableList(addedProducts);
+    this.removedProducts = Collections.unmodifiableList(removedProducts);
+    this.changedProducts = Collections.unmodifiableList(changedProducts);
+  }
+
+  public List<Purchase> addedPurchases() {
+    return addedPurchases;
+  }
+
+  /**
+   * @return The purchases of the earlier inventory that are no longer owned
+   */
+  public List<Purchase> removedPurchases() {
+    return removedPurchases;
+  }
+
+  /**
+   * @return The current value of the purchases that differ from the earlier inventory
+   */
+  public List<Purchase> changedPurchases() {
+    return changedPurchases;
+  }
+
+  public List<Product> addedProducts() {
+    return addedProducts;
+  }
+
+  /**
+   * @return The products of the earlier inventory that are missing from the current one
+   */
+  public List<Product> removedProducts() {
+    return removedProducts;
+  }
+
+  /**
+   * @return The current value of the products that differ from the earlier inventory
+   */
+  public List<Product> changedProducts() {
+    return changedProducts;
+  }
+
+  public boolean isEmpty() {
+    return addedPurchases.isEmpty() && removedPurchases.isEmpty() && changedPurchases.isEmpty()
+        && addedProducts.isEmpty() && removedProducts.isEmpty() && changedProducts.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "InventoryDelta{"
+        + "addedPurchases=" + addedPurchases
+        + ", removedPurchases=" + removedPurchases
+        + ", changedPurchases=" + changedPurchases
+        + ", addedProducts=" + addedProducts
+        + ", removedProducts=" + removedProducts
+        + ", changedProducts=" + changedProducts
+        + "}";
+  }
+}
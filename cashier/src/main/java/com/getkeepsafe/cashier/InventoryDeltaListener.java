@@ -0,0 +1,29 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+/**
+ * Receives an inventory along with what changed since the previous inventory queried through the
+ * same {@link Cashier}
+ *
+ * @see Cashier#getInventory(java.util.Collection, java.util.Collection, InventoryDeltaListener)
+ */
+public interface InventoryDeltaListener {
+  void success(Inventory inventory, InventoryDelta delta);
+
+  void failure(Vendor.Error error);
+}
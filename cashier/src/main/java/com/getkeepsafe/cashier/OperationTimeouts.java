@@ -0,0 +1,271 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deadlines for the vendor operations of {@link Cashier}, so a vendor that never calls back does
+ * not leave a listener waiting forever. An operation that misses its deadline fails with
+ * {@link VendorConstants#TIMED_OUT}, on the main thread, and the vendor's response is dropped if
+ * it comes in later.
+ * <p>
+ * Timeouts are either fixed or adaptive. Adaptive timeouts follow the latency observed for each
+ * operation of each vendor: a multiple of its 99th percentile, kept between a minimum and a
+ * maximum. An operation that times out counts as taking its timeout. Until enough operations
+ * have been observed the fixed timeout is used.
+ * <p>
+ * Purchases are not given a deadline, since they wait on the user.
+ *
+ * @see Cashier.Builder#withOperationTimeouts(OperationTimeouts)
+ */
+public final class OperationTimeouts {
+  static final int WINDOW_SIZE = 128;
+  static final int MIN_SAMPLES = 20;
+  static final int PERCENTILE = 99;
+  static final int PERCENTILE_MULTIPLIER = 2;
+
+  /**
+   * The recent latencies of one operation of one vendor, in a ring buffer
+   */
+  private static final class Window {
+    final long[] samples = new long[WINDOW_SIZE];
+    int count;
+    int next;
+
+    void add(long latencyNanos) {
+      samples[next] = latencyNanos;
+      next = (next + 1) % WINDOW_SIZE;
+      if (count < WINDOW_SIZE) {
+        count++;
+      }
+    }
+
+    long percentile(int percentile) {
+      final long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      final int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+      return sorted[Math.max(rank, 0)];
+    }
+  }
+
+  /**
+   * A started operation, to be finished exactly once either by its response or by its timeout
+   */
+  final class Deadline {
+    private final String key;
+    private final long startNanos;
+    private final long timeoutNanos;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile ScheduledFuture<?> timeoutTask;
+
+    Deadline(String key, long startNanos, long timeoutNanos) {
+      this.key = key;
+      this.startNanos = startNanos;
+      this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * @return {@code true} if the response came in time and should be delivered
+     */
+    boolean finish() {
+      if (!finished.compareAndSet(false, true)) {
+        return false;
+      }
+
+      final ScheduledFuture<?> timeoutTask = this.timeoutTask;
+      if (timeoutTask != null) {
+        timeoutTask.cancel(false);
+      }
+      addLatency(key, clock.nanoTime() - startNanos);
+      return true;
+    }
+
+    boolean isFinished() {
+      return finished.get();
+    }
+
+    /**
+     * Finishes the operation as timed out. The timeout is recorded as its latency, a lower bound
+     * of the real one, so a vendor that stops responding raises its adaptive timeout instead of
+     * being judged only by the calls that made it in time.
+     *
+     * @return {@code true} if the operation was not finished yet and should be failed
+     */
+    boolean expire() {
+      if (!finished.compareAndSet(false, true)) {
+        return false;
+      }
+
+      addLatency(key, timeoutNanos);
+      return true;
+    }
+  }
+
+  private final long timeoutNanos;
+  private final boolean adaptive;
+  private final long minTimeoutNanos;
+  private final long maxTimeoutNanos;
+  private final ProductDetailsCache.Clock clock;
+  private final HashMap<String, Window> windows = new HashMap<>();
+  private Executor timeoutExecutor;
+
+  private OperationTimeouts(Builder builder) {
+    timeoutNanos = builder.timeoutNanos;
+    adaptive = builder.adaptive;
+    minTimeoutNanos = builder.minTimeoutNanos;
+    maxTimeoutNanos = builder.maxTimeoutNanos;
+    clock = builder.clock;
+  }
+
+  /**
+   * Starts the deadline of an operation
+   *
+   * @param onTimeout Fails the operation, run on the main thread if it is not finished in time
+   */
+  Deadline start(String vendorId, String operation, final Runnable onTimeout) {
+    final String key = vendorId + '\n' + operation;
+    final long timeoutNanos = timeoutNanos(key);
+    final Deadline deadline = new Deadline(key, clock.nanoTime(), timeoutNanos);
+    deadline.timeoutTask = CashierFuture.timer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (deadline.expire()) {
+          timeoutExecutor().execute(onTimeout);
+        }
+      }
+    }, timeoutNanos, TimeUnit.NANOSECONDS);
+    return deadline;
+  }
+
+  long timeoutNanos(String vendorId, String operation) {
+    return timeoutNanos(vendorId + '\n' + operation);
+  }
+
+  void record(String vendorId, String operation, long latencyNanos) {
+    addLatency(vendorId + '\n' + operation, latencyNanos);
+  }
+
+  synchronized void timeoutExecutor(Executor executor) {
+    timeoutExecutor = executor;
+  }
+
+  private synchronized void addLatency(String key, long latencyNanos) {
+    if (!adaptive) {
+      return;
+    }
+
+    Window window = windows.get(key);
+    if (window == null) {
+      window = new Window();
+      windows.put(key, window);
+    }
+    window.add(latencyNanos);
+  }
+
+  private synchronized long timeoutNanos(String key) {
+    final Window window = windows.get(key);
+    if (!adaptive || window == null || window.count < MIN_SAMPLES) {
+      return timeoutNanos;
+    }
+
+    final long timeout = window.percentile(PERCENTILE) * PERCENTILE_MULTIPLIER;
+    return Math.min(Math.max(timeout, minTimeoutNanos), maxTimeoutNanos);
+  }
+
+  private synchronized Executor timeoutExecutor() {
+    if (timeoutExecutor == null) {
+      final Handler handler = new Handler(Looper.getMainLooper());
+      timeoutExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+          handler.post(runnable);
+        }
+      };
+    }
+    return timeoutExecutor;
+  }
+
+  public static class Builder {
+    private long timeoutNanos = TimeUnit.SECONDS.toNanos(30);
+    private boolean adaptive;
+    private long minTimeoutNanos = TimeUnit.SECONDS.toNanos(5);
+    private long maxTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+    private ProductDetailsCache.Clock clock = ProductDetailsCache.SYSTEM_CLOCK;
+
+    /**
+     * The timeout of every operation, or of those without enough observed latencies when
+     * adaptive, 30 seconds by default
+     */
+    public Builder timeout(long duration, TimeUnit unit) {
+      timeoutNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    /**
+     * Derives the timeout of each operation of each vendor from its observed latency, disabled
+     * by default
+     */
+    public Builder adaptive(boolean adaptive) {
+      this.adaptive = adaptive;
+      return this;
+    }
+
+    /**
+     * The shortest adaptive timeout, 5 seconds by default
+     */
+    public Builder minTimeout(long duration, TimeUnit unit) {
+      minTimeoutNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    /**
+     * The longest adaptive timeout, 60 seconds by default
+     */
+    public Builder maxTimeout(long duration, TimeUnit unit) {
+      maxTimeoutNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    Builder clock(ProductDetailsCache.Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public OperationTimeouts build() {
+      if (minTimeoutNanos > maxTimeoutNanos) {
+        throw new IllegalArgumentException("The minimum timeout is longer than the maximum");
+      }
+      return new OperationTimeouts(this);
+    }
+
+    private static long checkDuration(long duration, TimeUnit unit) {
+      if (duration <= 0) {
+        throw new IllegalArgumentException("Duration must be positive");
+      }
+      return unit.toNanos(duration);
+    }
+  }
+}
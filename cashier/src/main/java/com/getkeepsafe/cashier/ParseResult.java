@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The outcome of deserializing a single element of a bulk call such as
+ * {@link Cashier#purchasesFromVendor(org.json.JSONArray)}: either the value or the reason it
+ * could not be read.
+ */
+public final class ParseResult<T> {
+  @Nullable
+  private final T value;
+  @Nullable
+  private final Exception error;
+
+  static <T> ParseResult<T> success(T value) {
+    return new ParseResult<>(value, null);
+  }
+
+  static <T> ParseResult<T> failure(Exception error) {
+    return new ParseResult<>(null, error);
+  }
+
+  private ParseResult(@Nullable T value, @Nullable Exception error) {
+    this.value = value;
+    this.error = error;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * @return The deserialized value, or {@code null} if this element failed
+   */
+  @Nullable
+  public T value() {
+    return value;
+  }
+
+  /**
+   * @return The {@link org.json.JSONException} or {@link VendorMissingException} this element
+   * failed with, or {@code null} if it succeeded
+   */
+  @Nullable
+  public Exception error() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess() ? "ParseResult{value=" + value + "}" : "ParseResult{error=" + error + "}";
+  }
+}
@@ -18,11 +18,20 @@ package com.getkeepsafe.cashier;
 
 import android.os.Parcelable;
 
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.binary.MalformedBinaryException;
+import com.getkeepsafe.cashier.json.JsonFieldReader;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+import com.getkeepsafe.cashier.json.MalformedJsonException;
 import com.google.auto.value.AutoValue;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 @AutoValue
 public abstract class Product implements Parcelable {
   public static final String KEY_VENDOR_ID = "vendor-id";
@@ -66,6 +75,46 @@ public abstract class Product implements Parcelable {
         json.getLong(KEY_MICRO_PRICE));
   }
 
+  /**
+   * Reads a product from the next JSON object of the given reader. Unknown keys are skipped.
+   */
+  public static Product create(JsonReader reader) throws IOException {
+    final JsonFields fields = new JsonFields();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!fields.readField(reader.nextName(), reader)) {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return fields.build();
+  }
+
+  /**
+   * Reads a product written by {@link #writeTo(BinaryWriter)}
+   */
+  public static Product create(BinaryReader reader) throws MalformedBinaryException {
+    final Object reference = reader.readReference();
+    if (reference != null) {
+      if (!(reference instanceof Product)) {
+        throw new MalformedBinaryException("Reference is not a product");
+      }
+      return (Product) reference;
+    }
+
+    final Product product = create(
+        reader.readString(),
+        reader.readString(),
+        reader.readString(),
+        reader.readString(),
+        reader.readString(),
+        reader.readString(),
+        reader.readBoolean(),
+        reader.readSignedVarint());
+    reader.putReference(product);
+    return product;
+  }
+
   public static Product create(String vendorId,
                                String sku,
                                String price,
@@ -101,4 +150,117 @@ public abstract class Product implements Parcelable {
   public String toJsonString() throws JSONException {
     return toJson().toString();
   }
+
+  /**
+   * Writes this product as a JSON object, in the same format as {@link #toJson()}
+   */
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writeJsonFields(writer);
+    writer.endObject();
+  }
+
+  /**
+   * Writes the fields of this product into the JSON object that is currently open in the writer,
+   * for types that flatten a product into their own JSON representation
+   */
+  public void writeJsonFields(JsonWriter writer) throws IOException {
+    writer.name(KEY_VENDOR_ID).value(vendorId());
+    writer.name(KEY_NAME).value(name());
+    writer.name(KEY_SKU).value(sku());
+    writer.name(KEY_PRICE).value(price());
+    writer.name(KEY_CURRENCY).value(currency());
+    writer.name(KEY_DESCRIPTION).value(description());
+    writer.name(KEY_IS_SUB).value(isSubscription());
+    writer.name(KEY_MICRO_PRICE).value(microsPrice());
+  }
+
+  /**
+   * Writes this product in the binary format. A product that was already written to the same
+   * writer is only written as a reference to the first copy.
+   */
+  public void writeTo(BinaryWriter writer) {
+    if (writer.writeReference(this)) {
+      return;
+    }
+
+    writer.writeString(vendorId());
+    writer.writeString(sku());
+    writer.writeString(price());
+    writer.writeString(currency());
+    writer.writeString(name());
+    writer.writeString(description());
+    writer.writeBoolean(isSubscription());
+    writer.writeSignedVarint(microsPrice());
+  }
+
+  static <T> T requireField(T value, String key) throws MalformedJsonException {
+    if (value == null) {
+      throw new MalformedJsonException("No value for " + key);
+    }
+    return value;
+  }
+
+  /**
+   * Collects the product fields of a JSON object while it is being streamed
+   */
+  static final class JsonFields implements JsonFieldReader {
+    private String vendorId;
+    private String sku;
+    private String price;
+    private String currency;
+    private String name;
+    private String description;
+    private Boolean isSubscription;
+    private boolean hasMicrosPrice;
+    private long microsPrice;
+
+    @Override
+    public boolean readField(String key, JsonReader reader) throws IOException {
+      switch (key) {
+        case KEY_VENDOR_ID:
+          vendorId = reader.nextString();
+          return true;
+        case KEY_SKU:
+          sku = reader.nextString();
+          return true;
+        case KEY_PRICE:
+          price = reader.nextString();
+          return true;
+        case KEY_CURRENCY:
+          currency = reader.nextString();
+          return true;
+        case KEY_NAME:
+          name = reader.nextString();
+          return true;
+        case KEY_DESCRIPTION:
+          description = reader.nextString();
+          return true;
+        case KEY_IS_SUB:
+          isSubscription = reader.nextBoolean();
+          return true;
+        case KEY_MICRO_PRICE:
+          microsPrice = reader.nextLong();
+          hasMicrosPrice = true;
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    Product build() throws MalformedJsonException {
+      if (!hasMicrosPrice) {
+        throw new MalformedJsonException("No value for " + KEY_MICRO_PRICE);
+      }
+      return create(
+          requireField(vendorId, KEY_VENDOR_ID),
+          requireField(sku, KEY_SKU),
+          requireField(price, KEY_PRICE),
+          requireField(currency, KEY_CURRENCY),
+          requireField(name, KEY_NAME),
+          requireField(description, KEY_DESCRIPTION),
+          requireField(isSubscription, KEY_IS_SUB),
+          microsPrice);
+    }
+  }
 }
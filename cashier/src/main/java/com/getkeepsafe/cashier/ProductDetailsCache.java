@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory cache of the results of {@link Cashier#getProductDetails}, kept in least recently
+ * used order and bounded in size.
+ * <p>
+ * Products are served from the cache until they expire. For a while after that they are still
+ * served, while the cache is refreshed from the vendor in the background. SKUs the vendor does not
+ * know about are cached for a shorter time. The cache is cleared when the default locale changes,
+ * since products carry localized names and prices, and a vendor's products are dropped whenever
+ * it reconnects after losing its connection.
+ * <p>
+ * A single cache may be shared by several {@link Cashier} instances.
+ *
+ * @see Cashier.Builder#withProductDetailsCache(ProductDetailsCache)
+ */
+public final class ProductDetailsCache {
+  interface Clock {
+    long nanoTime();
+  }
+
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  static final class Entry {
+    @Nullable
+    final Product product;
+    @Nullable
+    final Vendor.Error error;
+    final long expiresAt;
+    final long staleUntil;
+    boolean refreshing;
+
+    Entry(@Nullable Product product, @Nullable Vendor.Error error, long expiresAt, long staleUntil) {
+      this.product = product;
+      this.error = error;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+    }
+  }
+
+  private final int maxEntries;
+  private final long expireAfterNanos;
+  private final long staleNanos;
+  private final long notFoundExpireAfterNanos;
+  private final Clock clock;
+  private final LinkedHashMap<String, Entry> entries;
+  /** The vendor instances seen connected, and whether each has been seen disconnected since */
+  private final Map<Vendor, Boolean> connections = new WeakHashMap<>();
+  private Locale locale;
+
+  private ProductDetailsCache(Builder builder) {
+    maxEntries = builder.maxEntries;
+    expireAfterNanos = builder.expireAfterNanos;
+    staleNanos = builder.staleNanos;
+    notFoundExpireAfterNanos = builder.notFoundExpireAfterNanos;
+    clock = builder.clock;
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    locale = Locale.getDefault();
+  }
+
+  /**
+   * Drops every cached product
+   */
+  public synchronized void invalidate() {
+    entries.clear();
+  }
+
+  /**
+   * Drops the cached products of the given vendor
+   */
+  public synchronized void invalidate(String vendorId) {
+    final String prefix = vendorId + '\n';
+    final Iterator<String> iterator = entries.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Notes that the given vendor instance is not connected. If it was connected before, its
+   * products are dropped once it reconnects, see {@link #connected(Vendor)}.
+   */
+  synchronized void disconnected(Vendor vendor) {
+    if (connections.containsKey(vendor)) {
+      connections.put(vendor, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Notes that the given vendor instance is connected, dropping its products if it lost its
+   * connection since it was last seen connected. The first connection of an instance keeps them.
+   */
+  synchronized void connected(Vendor vendor) {
+    if (Boolean.TRUE.equals(connections.put(vendor, Boolean.FALSE))) {
+      invalidate(vendor.id());
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The cached result for the given SKU, or {@code null} if there is none or it is too old
+   * to be served at all
+   */
+  @Nullable
+  synchronized Entry get(String vendorId, String sku, boolean isSubscription) {
+    checkLocale();
+    final String key = key(vendorId, sku, isSubscription);
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    if (clock.nanoTime() - entry.staleUntil >= 0) {
+      entries.remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * @return The cached product for the given SKU if it has not expired yet, for vendors looking up
+   * the products of their purchases
+   */
+  @Nullable
+  public synchronized Product getFresh(String vendorId, String sku, boolean isSubscription) {
+    final Entry entry = get(vendorId, sku, isSubscription);
+    return entry != null && isFresh(entry) ? entry.product : null;
+  }
+
+  synchronized boolean isFresh(Entry entry) {
+    return clock.nanoTime() - entry.expiresAt < 0;
+  }
+
+  /**
+   * @return {@code true} if the caller should refresh the given entry, {@code false} if another
+   * refresh is already on its way
+   */
+  synchronized boolean beginRefresh(Entry entry) {
+    if (entry.refreshing) {
+      return false;
+    }
+
+    entry.refreshing = true;
+    return true;
+  }
+
+  /**
+   * Lets a later lookup retry the refresh of an entry whose refresh failed
+   */
+  synchronized void endRefresh(Entry entry) {
+    entry.refreshing = false;
+  }
+
+  /**
+   * Caches a product the vendor returned, for vendors fetching product details on their own
+   */
+  public synchronized void put(String vendorId, String sku, boolean isSubscription, Product product) {
+    checkLocale();
+    final long now = clock.nanoTime();
+    entries.put(key(vendorId, sku, isSubscription),
+        new Entry(product, null, now + expireAfterNanos, now + expireAfterNanos + staleNanos));
+  }
+
+  synchronized void putNotFound(String vendorId, String sku, boolean isSubscription, Vendor.Error error) {
+    checkLocale();
+    final long expiresAt = clock.nanoTime() + notFoundExpireAfterNanos;
+    entries.put(key(vendorId, sku, isSubscription), new Entry(null, error, expiresAt, expiresAt));
+  }
+
+  private void checkLocale() {
+    final Locale current = Locale.getDefault();
+    if (!current.equals(locale)) {
+      entries.clear();
+      locale = current;
+    }
+  }
+
+  private static String key(String vendorId, String sku, boolean isSubscription) {
+    return vendorId + '\n' + sku + (isSubscription ? "\ns" : "\ni");
+  }
+
+  public static class Builder {
+    private int maxEntries = 256;
+    private long expireAfterNanos = TimeUnit.MINUTES.toNanos(30);
+    private long staleNanos = TimeUnit.HOURS.toNanos(24);
+    private long notFoundExpireAfterNanos = TimeUnit.MINUTES.toNanos(1);
+    private Clock clock = SYSTEM_CLOCK;
+
+    /**
+     * The number of products to keep, 256 by default
+     */
+    public Builder maxEntries(int maxEntries) {
+      if (maxEntries <= 0) {
+        throw new IllegalArgumentException("maxEntries must be positive");
+      }
+      this.maxEntries = maxEntries;
+      return this;
+    }
+
+    /**
+     * How long products are served without asking the vendor, 30 minutes by default
+     */
+    public Builder expireAfter(long duration, TimeUnit unit) {
+      expireAfterNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    /**
+     * How long expired products are still served while they are refreshed in the background,
+     * 24 hours by default. Zero makes every lookup of an expired product wait for the vendor.
+     */
+    public Builder staleWhileRevalidate(long duration, TimeUnit unit) {
+      staleNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    /**
+     * How long SKUs the vendor does not know about are remembered, 1 minute by default. Zero
+     * disables caching them.
+     */
+    public Builder notFoundExpireAfter(long duration, TimeUnit unit) {
+      notFoundExpireAfterNanos = checkDuration(duration, unit);
+      return this;
+    }
+
+    Builder clock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public ProductDetailsCache build() {
+      return new ProductDetailsCache(this);
+    }
+
+    private static long checkDuration(long duration, TimeUnit unit) {
+      if (duration < 0) {
+        throw new IllegalArgumentException("Duration must not be negative");
+      }
+      return unit.toNanos(duration);
+    }
+  }
+}
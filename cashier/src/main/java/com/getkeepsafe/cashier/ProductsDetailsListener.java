@@ -0,0 +1,29 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import java.util.List;
+
+public interface ProductsDetailsListener {
+  /**
+   * @param products The products found, in the order of the requested SKUs. SKUs that do not
+   *                 describe any current {@link Product} are left out.
+   */
+  void success(List<Product> products);
+
+  void failure(Vendor.Error error);
+}
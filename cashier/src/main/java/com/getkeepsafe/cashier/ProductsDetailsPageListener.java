@@ -0,0 +1,27 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import java.util.List;
+
+/**
+ * A {@link ProductsDetailsListener} that also receives the products page by page, as they arrive,
+ * before {@link #success(List)} delivers all of them
+ */
+public interface ProductsDetailsPageListener extends ProductsDetailsListener {
+  void page(List<Product> products);
+}
@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import android.content.Context;
+
+import java.util.Collection;
+
+/**
+ * A {@link Vendor} that looks up the details of several products at once. Cashier queries other
+ * vendors one SKU at a time instead, see {@link Cashier#getProductDetails(Collection, boolean, ProductsDetailsListener)}.
+ */
+public interface ProductsDetailsVendor extends Vendor {
+  /**
+   * Looks up the details of several products of the same type with as few requests as possible,
+   * delivering each page of products to the listener as it arrives
+   */
+  void getProductsDetails(Context context,
+                          Collection<String> skus,
+                          boolean isSubscription,
+                          ProductsDetailsPageListener listener);
+}
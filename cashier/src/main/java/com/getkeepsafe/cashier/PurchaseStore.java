@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local storage for the purchases a user owns, which {@link Cashier} keeps up to date with the
+ * results of purchases, consumptions and inventory queries. This lets the app know what the user
+ * owns on a cold start, before the vendor has finished connecting to its billing service.
+ * <p>
+ * Cashier calls the store from its background executor, one call at a time, so an implementation
+ * may block on disk. Purchases that reach the vendor outside of a purchase flow, such as a pending
+ * purchase that completed later, are stored with the next inventory query.
+ *
+ * @see Cashier.Builder#withPurchaseStore(PurchaseStore)
+ */
+public interface PurchaseStore {
+  /**
+   * @return Every stored purchase, across all vendors
+   */
+  List<Purchase> purchases();
+
+  /**
+   * Stores the given purchase, replacing any stored purchase with the same token
+   */
+  void put(Purchase purchase) throws IOException;
+
+  /**
+   * Removes the stored purchase with the same token as the given one, if any
+   */
+  void remove(Purchase purchase) throws IOException;
+
+  /**
+   * Replaces the stored purchases of the given vendor with a complete inventory from that vendor
+   */
+  void replace(String vendorId, Collection<? extends Purchase> purchases) throws IOException;
+}
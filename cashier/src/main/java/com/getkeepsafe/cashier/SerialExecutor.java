@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on another executor. When that
+ * executor rejects the tasks, they run on the submitting thread instead, still in order.
+ */
+final class SerialExecutor implements Executor {
+  private final Executor executor;
+  private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  private boolean running;
+
+  private final Runnable drain = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  SerialExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    synchronized (tasks) {
+      tasks.addLast(task);
+      if (running) {
+        return;
+      }
+      running = true;
+    }
+
+    try {
+      executor.execute(drain);
+    } catch (RejectedExecutionException e) {
+      drain();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      final Runnable task;
+      synchronized (tasks) {
+        task = tasks.pollFirst();
+        if (task == null) {
+          running = false;
+          return;
+        }
+      }
+
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        // One failing task should not stop the ones after it
+        Log.w("Cashier", "Task failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Coalesces identical vendor queries that are in flight at the same time: the first caller
+ * starts the query and every caller that joins before it completes receives the same result.
+ */
+final class SingleFlight {
+  /**
+   * Identifies a query by the vendor instance it runs on, the settings of the Cashier running it,
+   * the operation and its arguments
+   */
+  static final class Key {
+    final Vendor vendor;
+    final CallSettings settings;
+    final String operation;
+    final List<Object> arguments;
+
+    Key(Vendor vendor, CallSettings settings, String operation, Object... arguments) {
+      this.vendor = vendor;
+      this.settings = settings;
+      this.operation = operation;
+      this.arguments = Arrays.asList(arguments);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      final Key o = (Key) other;
+      return vendor == o.vendor
+          && settings.equals(o.settings)
+          && operation.equals(o.operation)
+          && arguments.equals(o.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(vendor);
+      result = 31 * result + settings.hashCode();
+      result = 31 * result + operation.hashCode();
+      return 31 * result + arguments.hashCode();
+    }
+  }
+
+  /**
+   * A listener waiting on a query, with the {@link Cashier} it was given to
+   */
+  private static final class Waiter {
+    final Object owner;
+    final Object listener;
+
+    Waiter(Object owner, Object listener) {
+      this.owner = owner;
+      this.listener = listener;
+    }
+  }
+
+  private final HashMap<Key, List<Waiter>> calls = new HashMap<>();
+
+  /**
+   * @return A sorted set of the given SKUs, so that the same SKUs in another order or with
+   * duplicates make the same key
+   */
+  @Nullable
+  static TreeSet<String> normalize(@Nullable Collection<String> skus) {
+    return skus == null ? null : new TreeSet<>(skus);
+  }
+
+  /**
+   * Adds the listener to the query with the given key
+   *
+   * @param owner The Cashier the listener was given to, see {@link #cancel(Object)}
+   * @return {@code true} if no such query was in flight and the caller has to start it
+   */
+  synchronized boolean join(Key key, Object owner, Object listener) {
+    List<Waiter> waiters = calls.get(key);
+    if (waiters != null) {
+      waiters.add(new Waiter(owner, listener));
+      return false;
+    }
+
+    waiters = new ArrayList<>(1);
+    waiters.add(new Waiter(owner, listener));
+    calls.put(key, waiters);
+    return true;
+  }
+
+  /**
+   * @return The listeners currently waiting on the query, which stays in flight
+   */
+  synchronized <L> List<L> listeners(Key key) {
+    return listenersOf(calls.get(key));
+  }
+
+  /**
+   * Ends the query with the given key
+   *
+   * @return The listeners that were waiting on it, to be given its result
+   */
+  synchronized <L> List<L> complete(Key key) {
+    return listenersOf(calls.remove(key));
+  }
+
+  /**
+   * @return The number of queries in flight
+   */
+  synchronized int size() {
+    return calls.size();
+  }
+
+  /**
+   * Forgets the listeners the given owner is waiting with, without notifying them. Queries other
+   * owners are waiting on stay in flight for them.
+   */
+  synchronized void cancel(Object owner) {
+    final Iterator<List<Waiter>> calls = this.calls.values().iterator();
+    while (calls.hasNext()) {
+      final List<Waiter> waiters = calls.next();
+      final Iterator<Waiter> iterator = waiters.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().owner == owner) {
+          iterator.remove();
+        }
+      }
+      if (waiters.isEmpty()) {
+        calls.remove();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <L> List<L> listenersOf(@Nullable List<Waiter> waiters) {
+    if (waiters == null) {
+      return Collections.emptyList();
+    }
+
+    final List<L> listeners = new ArrayList<>(waiters.size());
+    for (final Waiter waiter : waiters) {
+      listeners.add((L) waiter.listener);
+    }
+    return listeners;
+  }
+}
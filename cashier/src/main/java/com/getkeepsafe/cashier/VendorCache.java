@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a single {@link Vendor} instance per vendor ID, so that deserializing purchases or
+ * building {@link Cashier} instances for the same vendor does not create a new vendor, and with
+ * it a new billing API, every time.
+ * <p>
+ * Instances handed out through {@link #acquire(String)} are reference counted. Once the last
+ * reference is released the vendor is dropped from the cache and the caller disposes it. The
+ * caller also disposes the unreferenced vendors dropped by {@link #evict(String)} and
+ * {@link #trim()}. A pre-warmed vendor is held by a reference of its own until then, see
+ * {@link #prewarm(Vendor, Context)}.
+ * <p>
+ * Looking up a vendor with {@link #get(String)} takes no lock, as it is on the path of every
+ * deserialization. Only reference counts and removals are guarded by the cache's lock, and vendors
+ * are created outside of it.
+ */
+final class VendorCache {
+  static final class Entry {
+    final String vendorId;
+    final Vendor vendor;
+    /** The context the vendor was pre-warmed with, to dispose it with once dropped */
+    @Nullable
+    Context context;
+    /** Guarded by the cache, like whether one of the references is held by pre-warming */
+    int references;
+    boolean warm;
+
+    Entry(String vendorId, Vendor vendor) {
+      this.vendorId = vendorId;
+      this.vendor = vendor;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cached vendor without taking a reference to it, for uses that do not depend on
+   * the vendor being initialized, such as deserialization
+   */
+  Vendor get(String vendorId) {
+    return entry(vendorId).vendor;
+  }
+
+  /**
+   * Caches the given vendor instance for its ID, unless another instance is already in use or
+   * pre-warmed, and holds a reference to the cached instance until {@link #trim()} or
+   * {@link #evict(String)}
+   *
+   * @param context The context the vendor is initialized with, to dispose it with once dropped
+   * @return The entry of the instance to initialize, the given one or the one already in use
+   */
+  synchronized Entry prewarm(Vendor vendor, Context context) {
+    Entry entry = entries.get(vendor.id());
+    if (entry == null || (entry.references == 0 && entry.context == null)) {
+      // A cached instance that is neither in use nor initialized, e.g. one created to deserialize
+      // stored purchases, is simply replaced
+      entry = new Entry(vendor.id(), vendor);
+      entries.put(vendor.id(), entry);
+    }
+
+    if (!entry.warm) {
+      entry.warm = true;
+      entry.references++;
+    }
+    if (entry.context == null) {
+      entry.context = context;
+    }
+    return entry;
+  }
+
+  Entry acquire(String vendorId) {
+    while (true) {
+      final Entry entry = entry(vendorId);
+      synchronized (this) {
+        // Unless it was dropped in the meantime
+        if (entries.get(vendorId) == entry) {
+          entry.references++;
+          return entry;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if this released the last reference, in which case the caller is
+   * responsible for disposing the vendor
+   */
+  synchronized boolean release(Entry entry) {
+    if (entry.references == 0) {
+      return false;
+    }
+
+    entry.references--;
+    if (entry.references > 0) {
+      return false;
+    }
+
+    entries.remove(entry.vendorId, entry);
+    return true;
+  }
+
+  /**
+   * Drops the cached vendor for the given ID. Holders of a reference keep using their instance,
+   * and the last of them disposes it on release.
+   *
+   * @return The dropped entry if it was not referenced, for the caller to dispose
+   */
+  synchronized List<Entry> evict(String vendorId) {
+    final Entry entry = entries.remove(vendorId);
+    if (entry != null) {
+      unwarm(entry);
+    }
+    if (entry == null || entry.references > 0) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(entry);
+  }
+
+  /**
+   * Drops every cached vendor that is not referenced by a {@link Cashier}, pre-warmed ones
+   * included
+   *
+   * @return The dropped entries, for the caller to dispose
+   */
+  synchronized List<Entry> trim() {
+    final List<Entry> dropped = new ArrayList<>();
+    final Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      final Entry entry = iterator.next();
+      unwarm(entry);
+      if (entry.references == 0) {
+        iterator.remove();
+        dropped.add(entry);
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Releases the reference held by pre-warming, if any
+   */
+  private void unwarm(Entry entry) {
+    if (entry.warm) {
+      entry.warm = false;
+      entry.references--;
+    }
+  }
+
+  private Entry entry(String vendorId) {
+    final Entry entry = entries.get(vendorId);
+    if (entry != null) {
+      return entry;
+    }
+
+    // Concurrent callers may both create a vendor, only one of them is cached and the other one
+    // is dropped before it was ever initialized
+    final Entry created = new Entry(vendorId, Cashier.getVendorFactory(vendorId).create());
+    final Entry existing = entries.putIfAbsent(vendorId, created);
+    return existing == null ? created : existing;
+  }
+}
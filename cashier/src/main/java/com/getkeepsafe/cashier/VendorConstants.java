@@ -106,4 +106,16 @@ public class VendorConstants {
    * Unknown error while querying for the product details
    */
   public static final int PRODUCT_DETAILS_QUERY_FAILURE = 2;
+
+  // Any operation
+  /**
+   * The operation did not complete in time. Distinct from the codes of every operation above.
+   */
+  public static final int TIMED_OUT = 100;
+
+  /**
+   * A {@link CashierFuture.Transform} or {@link CashierFuture.Continuation} threw on the result
+   * of the operation. Distinct from the codes of every operation above.
+   */
+  public static final int CALLBACK_FAILED = 101;
 }
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.binary;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reads data written by a {@link BinaryWriter}
+ */
+public final class BinaryReader {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final byte[] data;
+  private final int limit;
+  private final int version;
+  private int pos;
+
+  private String[] strings = new String[16];
+  private int stringCount;
+  private Object[] references = new Object[16];
+  private int referenceCount;
+
+  public BinaryReader(byte[] data) throws MalformedBinaryException {
+    this(data, 0, data.length);
+  }
+
+  public BinaryReader(byte[] data, int offset, int length) throws MalformedBinaryException {
+    if (offset < 0 || length < 0 || offset + length > data.length) {
+      throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+    }
+    this.data = data;
+    this.pos = offset;
+    this.limit = offset + length;
+    this.version = readByte();
+    if (version < 1 || version > BinaryWriter.FORMAT_VERSION) {
+      throw new MalformedBinaryException("Unsupported format version " + version);
+    }
+  }
+
+  /**
+   * The format version the data was written with
+   */
+  public int version() {
+    return version;
+  }
+
+  public boolean hasRemaining() {
+    return pos < limit;
+  }
+
+  public int readByte() throws MalformedBinaryException {
+    if (pos >= limit) {
+      throw new MalformedBinaryException("Unexpected end of data");
+    }
+    return data[pos++] & 0xFF;
+  }
+
+  public boolean readBoolean() throws MalformedBinaryException {
+    final int value = readByte();
+    if (value > 1) {
+      throw new MalformedBinaryException("Invalid boolean " + value);
+    }
+    return value == 1;
+  }
+
+  public long readVarint() throws MalformedBinaryException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new MalformedBinaryException("Malformed varint");
+  }
+
+  public long readSignedVarint() throws MalformedBinaryException {
+    final long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a varint that has to fit in a non-negative int, such as a length or a count
+   */
+  public int readSize() throws MalformedBinaryException {
+    final long value = readVarint();
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new MalformedBinaryException("Invalid size " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Reads a string written by {@link BinaryWriter#writeString(String)}
+   */
+  public String readString() throws MalformedBinaryException {
+    final int index = readSize();
+    if (index > 0) {
+      if (index > stringCount) {
+        throw new MalformedBinaryException("Invalid string reference " + index);
+      }
+      return strings[index - 1];
+    }
+
+    final String value = readUniqueString();
+    if (stringCount == strings.length) {
+      final String[] newStrings = new String[stringCount * 2];
+      System.arraycopy(strings, 0, newStrings, 0, stringCount);
+      strings = newStrings;
+    }
+    strings[stringCount++] = value;
+    return value;
+  }
+
+  /**
+   * Reads a string written by {@link BinaryWriter#writeUniqueString(String)}
+   */
+  public String readUniqueString() throws MalformedBinaryException {
+    final int length = readSize();
+    if (length > limit - pos) {
+      throw new MalformedBinaryException("Unexpected end of data");
+    }
+    final String value = new String(data, pos, length, UTF_8);
+    pos += length;
+    return value;
+  }
+
+  /**
+   * Reads the marker written by {@link BinaryWriter#writeReference(Object)}. Returns the value
+   * it refers to, or {@code null} if a new value follows. In that case the caller reads the value
+   * and then registers it through {@link #putReference(Object)}.
+   */
+  public Object readReference() throws MalformedBinaryException {
+    final int index = readSize();
+    if (index == 0) {
+      return null;
+    } else if (index > referenceCount) {
+      throw new MalformedBinaryException("Invalid reference " + index);
+    }
+    return references[index - 1];
+  }
+
+  public void putReference(Object value) {
+    if (referenceCount == references.length) {
+      final Object[] newReferences = new Object[referenceCount * 2];
+      System.arraycopy(references, 0, newReferences, 0, referenceCount);
+      references = newReferences;
+    }
+    references[referenceCount++] = value;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Writes Cashier's compact binary format. The first byte is the {@link #FORMAT_VERSION},
+ * integers are written as varints and strings as UTF-8 with a varint length prefix.
+ * <p>
+ * Strings written through {@link #writeString(String)} and values written through
+ * {@link #writeReference(Object)} go through tables that are shared by everything written to this
+ * writer, so repeated vendor IDs, SKUs or whole products are only encoded once and referenced by
+ * index after that.
+ */
+public final class BinaryWriter {
+  public static final int FORMAT_VERSION = 1;
+
+  private byte[] buffer;
+  private int count;
+
+  private final HashMap<String, Integer> strings = new HashMap<>();
+  private final HashMap<Object, Integer> references = new HashMap<>();
+
+  public BinaryWriter() {
+    this(256);
+  }
+
+  public BinaryWriter(int initialCapacity) {
+    buffer = new byte[Math.max(16, initialCapacity)];
+    writeByte(FORMAT_VERSION);
+  }
+
+  public void writeByte(int value) {
+    ensureCapacity(1);
+    buffer[count++] = (byte) value;
+  }
+
+  public void writeBoolean(boolean value) {
+    writeByte(value ? 1 : 0);
+  }
+
+  /**
+   * Writes a non-negative value in as few bytes as needed, 7 bits per byte
+   */
+  public void writeVarint(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[count++] = (byte) value;
+  }
+
+  /**
+   * Writes a value that may be negative, zig-zag encoded so small magnitudes stay small
+   */
+  public void writeSignedVarint(long value) {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Writes a string through the string table. Use this for values that are likely to repeat,
+   * such as vendor IDs, SKUs and currencies.
+   */
+  public void writeString(String value) {
+    final Integer index = strings.get(value);
+    if (index != null) {
+      writeVarint(index + 1);
+      return;
+    }
+
+    strings.put(value, strings.size());
+    writeVarint(0);
+    writeUniqueString(value);
+  }
+
+  /**
+   * Writes a string inline, bypassing the string table. Use this for values that are not going
+   * to repeat, such as tokens, receipts and signatures.
+   */
+  public void writeUniqueString(String value) {
+    final int length = value.length();
+    int utf8Length = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        utf8Length += 1;
+      } else if (c < 0x800) {
+        utf8Length += 2;
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+        utf8Length += 3;
+      } else if (isSurrogatePair(value, i)) {
+        utf8Length += 4;
+        i++;
+      } else {
+        utf8Length += 1;
+      }
+    }
+
+    writeVarint(utf8Length);
+    ensureCapacity(utf8Length);
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[count++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[count++] = (byte) (0xC0 | (c >> 6));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+        buffer[count++] = (byte) (0xE0 | (c >> 12));
+        buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      } else if (isSurrogatePair(value, i)) {
+        final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        // Unpaired surrogates cannot be encoded, replaced the same way String.getBytes() does
+        buffer[count++] = '?';
+      }
+    }
+  }
+
+  /**
+   * Writes a back reference if an equal value was written through this method before and returns
+   * {@code true}. Otherwise marks the start of a new value and returns {@code false}, in which
+   * case the caller writes the value out itself. Values written this way must not contain other
+   * references.
+   */
+  public boolean writeReference(Object value) {
+    final Integer index = references.get(value);
+    if (index != null) {
+      writeVarint(index + 1);
+      return true;
+    }
+
+    references.put(value, references.size());
+    writeVarint(0);
+    return false;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public byte[] toByteArray() {
+    final byte[] bytes = new byte[count];
+    System.arraycopy(buffer, 0, bytes, 0, count);
+    return bytes;
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, 0, count);
+  }
+
+  private static boolean isSurrogatePair(String value, int index) {
+    return Character.isHighSurrogate(value.charAt(index))
+        && index + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(index + 1));
+  }
+
+  private void ensureCapacity(int extra) {
+    if (count + extra > buffer.length) {
+      final byte[] newBuffer = new byte[Math.max(buffer.length * 2, count + extra)];
+      System.arraycopy(buffer, 0, newBuffer, 0, count);
+      buffer = newBuffer;
+    }
+  }
+}
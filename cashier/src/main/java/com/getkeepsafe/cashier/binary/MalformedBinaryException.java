@@ -0,0 +1,29 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.binary;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a {@link BinaryReader} is handed data that was not written by a compatible
+ * {@link BinaryWriter}, or that is truncated or corrupt
+ */
+public class MalformedBinaryException extends IOException {
+  public MalformedBinaryException(String message) {
+    super(message);
+  }
+}
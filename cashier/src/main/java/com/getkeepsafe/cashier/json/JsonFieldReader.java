@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.json;
+
+import java.io.IOException;
+
+/**
+ * Reads the fields of a JSON object that a streaming codec does not know about itself. This lets
+ * vendor types that extend the Cashier JSON format read their own keys in the same single pass.
+ */
+public interface JsonFieldReader {
+  /**
+   * Called with the reader positioned on the value of the field {@code name}.
+   *
+   * @return {@code true} if the value was consumed, {@code false} to have it skipped
+   */
+  boolean readField(String name, JsonReader reader) throws IOException;
+}
@@ -0,0 +1,608 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * A forward-only, pull based JSON reader modelled after {@code android.util.JsonReader}, which is
+ * not available on every API level Cashier supports. Values are read straight off a character
+ * buffer, so parsing does not build any intermediate tree.
+ */
+public final class JsonReader implements Closeable {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int SCOPE_EMPTY_DOCUMENT = 0;
+  private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+  private static final int SCOPE_EMPTY_OBJECT = 2;
+  private static final int SCOPE_DANGLING_NAME = 3;
+  private static final int SCOPE_NONEMPTY_OBJECT = 4;
+  private static final int SCOPE_EMPTY_ARRAY = 5;
+  private static final int SCOPE_NONEMPTY_ARRAY = 6;
+
+  private final Reader in;
+  private final char[] buffer = new char[1024];
+  private int pos;
+  private int limit;
+  /** Number of characters that were shifted out of the buffer, for error messages */
+  private long consumed;
+
+  private int[] stack = new int[32];
+  private int stackSize;
+
+  private JsonToken peeked;
+
+  private final String[] nameCache = new String[64];
+  /** Shared by every string that needs unescaping or spans a buffer refill */
+  private StringBuilder builder;
+
+  public JsonReader(Reader in) {
+    if (in == null) {
+      throw new NullPointerException("in == null");
+    }
+    this.in = in;
+    stack[stackSize++] = SCOPE_EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Reads UTF-8 encoded JSON from the given stream
+   */
+  public JsonReader(InputStream in) {
+    this(new InputStreamReader(in, UTF_8));
+  }
+
+  public void beginObject() throws IOException {
+    expect(JsonToken.BEGIN_OBJECT);
+    push(SCOPE_EMPTY_OBJECT);
+    peeked = null;
+  }
+
+  public void endObject() throws IOException {
+    expect(JsonToken.END_OBJECT);
+    stackSize--;
+    peeked = null;
+  }
+
+  public void beginArray() throws IOException {
+    expect(JsonToken.BEGIN_ARRAY);
+    push(SCOPE_EMPTY_ARRAY);
+    peeked = null;
+  }
+
+  public void endArray() throws IOException {
+    expect(JsonToken.END_ARRAY);
+    stackSize--;
+    peeked = null;
+  }
+
+  /**
+   * Returns whether the current object or array has another element
+   */
+  public boolean hasNext() throws IOException {
+    final JsonToken token = peek();
+    return token != JsonToken.END_OBJECT
+        && token != JsonToken.END_ARRAY
+        && token != JsonToken.END_DOCUMENT;
+  }
+
+  public String nextName() throws IOException {
+    expect(JsonToken.NAME);
+    peeked = null;
+    return readName();
+  }
+
+  /**
+   * Returns the next string value, coercing numbers to their literal representation like
+   * {@link org.json.JSONObject#getString(String)} does
+   */
+  public String nextString() throws IOException {
+    final JsonToken token = peek();
+    peeked = null;
+    if (token == JsonToken.STRING) {
+      return readString();
+    } else if (token == JsonToken.NUMBER) {
+      return readLiteral();
+    }
+    throw unexpected(JsonToken.STRING, token);
+  }
+
+  /**
+   * Returns the next boolean value, also accepting the strings {@code "true"} and
+   * {@code "false"} like {@link org.json.JSONObject#getBoolean(String)} does
+   */
+  public boolean nextBoolean() throws IOException {
+    final JsonToken token = peek();
+    final String value;
+    if (token == JsonToken.BOOLEAN) {
+      value = readLiteral();
+    } else if (token == JsonToken.STRING) {
+      value = readString();
+    } else {
+      throw unexpected(JsonToken.BOOLEAN, token);
+    }
+    peeked = null;
+    if ("true".equalsIgnoreCase(value)) {
+      return true;
+    } else if ("false".equalsIgnoreCase(value)) {
+      return false;
+    }
+    throw syntaxError("Expected a boolean but was " + value);
+  }
+
+  /**
+   * Returns the next value as a long. Numbers encoded as strings are accepted as well.
+   */
+  public long nextLong() throws IOException {
+    final JsonToken token = peek();
+    final String value;
+    if (token == JsonToken.NUMBER) {
+      value = readLiteral();
+    } else if (token == JsonToken.STRING) {
+      value = readString();
+    } else {
+      throw unexpected(JsonToken.NUMBER, token);
+    }
+    peeked = null;
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      // Fall through to the slower path for fractions and exponents
+    }
+    try {
+      final double asDouble = Double.parseDouble(value);
+      final long asLong = (long) asDouble;
+      if (asLong != asDouble) {
+        throw syntaxError("Expected a long but was " + value);
+      }
+      return asLong;
+    } catch (NumberFormatException e) {
+      throw syntaxError("Expected a long but was " + value);
+    }
+  }
+
+  public int nextInt() throws IOException {
+    final long value = nextLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw syntaxError("Expected an int but was " + value);
+    }
+    return (int) value;
+  }
+
+  public void nextNull() throws IOException {
+    expect(JsonToken.NULL);
+    final String value = readLiteral();
+    peeked = null;
+    if (!"null".equals(value)) {
+      throw syntaxError("Expected null but was " + value);
+    }
+  }
+
+  /**
+   * Skips the next value, recursively skipping nested objects and arrays
+   */
+  public void skipValue() throws IOException {
+    final JsonToken token = peek();
+    switch (token) {
+      case BEGIN_OBJECT:
+        beginObject();
+        while (hasNext()) {
+          nextName();
+          skipValue();
+        }
+        endObject();
+        break;
+      case BEGIN_ARRAY:
+        beginArray();
+        while (hasNext()) {
+          skipValue();
+        }
+        endArray();
+        break;
+      case STRING:
+        peeked = null;
+        skipString();
+        break;
+      case NUMBER:
+      case BOOLEAN:
+      case NULL:
+        peeked = null;
+        skipLiteral();
+        break;
+      default:
+        throw syntaxError("Expected a value but was " + token);
+    }
+  }
+
+  /**
+   * Returns the type of the next token without consuming it
+   */
+  public JsonToken peek() throws IOException {
+    if (peeked != null) {
+      return peeked;
+    }
+
+    final int scope = stack[stackSize - 1];
+    switch (scope) {
+      case SCOPE_EMPTY_ARRAY:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+        if (nextNonWhitespace() == ']') {
+          return peeked = JsonToken.END_ARRAY;
+        }
+        pos--;
+        break;
+      case SCOPE_NONEMPTY_ARRAY:
+        final int arrayChar = nextNonWhitespace();
+        if (arrayChar == ']') {
+          return peeked = JsonToken.END_ARRAY;
+        } else if (arrayChar != ',') {
+          throw syntaxError("Unterminated array");
+        }
+        break;
+      case SCOPE_EMPTY_OBJECT:
+      case SCOPE_NONEMPTY_OBJECT:
+        stack[stackSize - 1] = SCOPE_DANGLING_NAME;
+        if (scope == SCOPE_NONEMPTY_OBJECT) {
+          final int objectChar = nextNonWhitespace();
+          if (objectChar == '}') {
+            return peeked = JsonToken.END_OBJECT;
+          } else if (objectChar != ',') {
+            throw syntaxError("Unterminated object");
+          }
+        }
+        final int nameChar = nextNonWhitespace();
+        if (nameChar == '"') {
+          return peeked = JsonToken.NAME;
+        } else if (nameChar == '}' && scope == SCOPE_EMPTY_OBJECT) {
+          return peeked = JsonToken.END_OBJECT;
+        }
+        throw syntaxError("Expected a name");
+      case SCOPE_DANGLING_NAME:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+        if (nextNonWhitespace() != ':') {
+          throw syntaxError("Expected ':'");
+        }
+        break;
+      case SCOPE_EMPTY_DOCUMENT:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+        break;
+      default:
+        final int trailingChar = nextNonWhitespaceOrEof();
+        if (trailingChar == -1) {
+          return peeked = JsonToken.END_DOCUMENT;
+        }
+        throw syntaxError("Expected a single top-level value");
+    }
+
+    final int c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return peeked = JsonToken.BEGIN_OBJECT;
+      case '[':
+        return peeked = JsonToken.BEGIN_ARRAY;
+      case '"':
+        return peeked = JsonToken.STRING;
+      case 't':
+      case 'f':
+        pos--;
+        return peeked = JsonToken.BOOLEAN;
+      case 'n':
+        pos--;
+        return peeked = JsonToken.NULL;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          pos--;
+          return peeked = JsonToken.NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    peeked = null;
+    stackSize = 1;
+    stack[0] = SCOPE_NONEMPTY_DOCUMENT;
+    in.close();
+  }
+
+  private void expect(JsonToken expected) throws IOException {
+    final JsonToken token = peek();
+    if (token != expected) {
+      throw unexpected(expected, token);
+    }
+  }
+
+  private void push(int scope) {
+    if (stackSize == stack.length) {
+      final int[] newStack = new int[stackSize * 2];
+      System.arraycopy(stack, 0, newStack, 0, stackSize);
+      stack = newStack;
+    }
+    stack[stackSize++] = scope;
+  }
+
+  /**
+   * Makes sure at least {@code minimum} characters are buffered past {@link #pos}
+   */
+  private boolean fill(int minimum) throws IOException {
+    consumed += pos;
+    if (pos != limit) {
+      limit -= pos;
+      System.arraycopy(buffer, pos, buffer, 0, limit);
+    } else {
+      limit = 0;
+    }
+    pos = 0;
+
+    int read;
+    while ((read = in.read(buffer, limit, buffer.length - limit)) != -1) {
+      limit += read;
+      if (limit >= minimum) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    final int c = nextNonWhitespaceOrEof();
+    if (c == -1) {
+      throw new MalformedJsonException("End of input");
+    }
+    return c;
+  }
+
+  private int nextNonWhitespaceOrEof() throws IOException {
+    while (pos < limit || fill(1)) {
+      final char c = buffer[pos++];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads a name, reusing the string instance of a previously read name with the same characters.
+   * The objects of a batch all repeat the same keys, so this avoids allocating them over and over.
+   */
+  private String readName() throws IOException {
+    final char[] buffer = this.buffer;
+    final int start = pos;
+    int hash = 0;
+    for (int p = start; p < limit; p++) {
+      final char c = buffer[p];
+      if (c == '"') {
+        final int length = p - start;
+        final int slot = (hash ^ (hash >>> 16)) & (nameCache.length - 1);
+        String name = nameCache[slot];
+        if (name == null || !regionEquals(name, buffer, start, length)) {
+          name = new String(buffer, start, length);
+          nameCache[slot] = name;
+        }
+        pos = p + 1;
+        return name;
+      } else if (c == '\\') {
+        break;
+      }
+      hash = 31 * hash + c;
+    }
+    // Escaped or spanning a buffer refill, take the general path
+    return readString();
+  }
+
+  private static boolean regionEquals(String value, char[] buffer, int start, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != buffer[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the remainder of a string whose opening quote has already been consumed
+   */
+  private String readString() throws IOException {
+    boolean buffered = false;
+    while (true) {
+      final char[] buffer = this.buffer;
+      int p = pos;
+      int start = p;
+      while (p < limit) {
+        final char c = buffer[p++];
+        if (c == '"') {
+          pos = p;
+          if (!buffered) {
+            return new String(buffer, start, p - start - 1);
+          }
+          builder.append(buffer, start, p - start - 1);
+          return builder.toString();
+        } else if (c == '\\') {
+          pos = p;
+          if (!buffered) {
+            startBuilder();
+            buffered = true;
+          }
+          builder.append(buffer, start, p - start - 1);
+          builder.append(readEscapeCharacter());
+          p = pos;
+          start = p;
+        }
+      }
+
+      if (!buffered) {
+        startBuilder();
+        buffered = true;
+      }
+      builder.append(buffer, start, p - start);
+      pos = p;
+      if (!fill(1)) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+  private void startBuilder() {
+    if (builder == null) {
+      builder = new StringBuilder();
+    } else {
+      builder.setLength(0);
+    }
+  }
+
+  private void skipString() throws IOException {
+    while (true) {
+      while (pos < limit) {
+        final char c = buffer[pos++];
+        if (c == '"') {
+          return;
+        } else if (c == '\\') {
+          readEscapeCharacter();
+        }
+      }
+      if (!fill(1)) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+  private char readEscapeCharacter() throws IOException {
+    if (pos == limit && !fill(1)) {
+      throw syntaxError("Unterminated escape sequence");
+    }
+
+    final char escaped = buffer[pos++];
+    switch (escaped) {
+      case 'u':
+        if (pos + 4 > limit && !fill(4)) {
+          throw syntaxError("Unterminated escape sequence");
+        }
+        char result = 0;
+        for (int i = pos, end = pos + 4; i < end; i++) {
+          final char c = buffer[i];
+          result <<= 4;
+          if (c >= '0' && c <= '9') {
+            result += (c - '0');
+          } else if (c >= 'a' && c <= 'f') {
+            result += (c - 'a' + 10);
+          } else if (c >= 'A' && c <= 'F') {
+            result += (c - 'A' + 10);
+          } else {
+            throw syntaxError("Malformed unicode escape \\u" + new String(buffer, pos, 4));
+          }
+        }
+        pos += 4;
+        return result;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case '"':
+      case '\\':
+      case '/':
+        return escaped;
+      default:
+        throw syntaxError("Invalid escape sequence \\" + escaped);
+    }
+  }
+
+  /**
+   * Reads an unquoted literal such as a number, {@code true}, {@code false} or {@code null}
+   */
+  private String readLiteral() throws IOException {
+    boolean buffered = false;
+    while (true) {
+      int p = pos;
+      while (p < limit) {
+        if (isLiteralEnd(buffer[p])) {
+          final String value;
+          if (!buffered) {
+            value = new String(buffer, pos, p - pos);
+          } else {
+            value = builder.append(buffer, pos, p - pos).toString();
+          }
+          pos = p;
+          return value;
+        }
+        p++;
+      }
+
+      if (!buffered) {
+        startBuilder();
+        buffered = true;
+      }
+      builder.append(buffer, pos, p - pos);
+      pos = p;
+      if (!fill(1)) {
+        return builder.toString();
+      }
+    }
+  }
+
+  private void skipLiteral() throws IOException {
+    do {
+      while (pos < limit) {
+        if (isLiteralEnd(buffer[pos])) {
+          return;
+        }
+        pos++;
+      }
+    } while (fill(1));
+  }
+
+  private static boolean isLiteralEnd(char c) {
+    switch (c) {
+      case ' ':
+      case '\n':
+      case '\r':
+      case '\t':
+      case ',':
+      case ':':
+      case '{':
+      case '}':
+      case '[':
+      case ']':
+      case '"':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private MalformedJsonException unexpected(JsonToken expected, JsonToken actual) {
+    return syntaxError("Expected " + expected + " but was " + actual);
+  }
+
+  private MalformedJsonException syntaxError(String message) {
+    return new MalformedJsonException(message + " at character " + (consumed + pos));
+  }
+}
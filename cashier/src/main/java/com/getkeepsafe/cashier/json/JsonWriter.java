@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A streaming JSON writer modelled after {@code android.util.JsonWriter}, which is not available
+ * on every API level Cashier supports. Output is collected in a small internal buffer and handed
+ * to the underlying {@link Writer} in chunks, and whenever a complete top-level value has been
+ * written.
+ */
+public final class JsonWriter implements Closeable, Flushable {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int SCOPE_EMPTY_DOCUMENT = 0;
+  private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+  private static final int SCOPE_EMPTY_OBJECT = 2;
+  private static final int SCOPE_DANGLING_NAME = 3;
+  private static final int SCOPE_NONEMPTY_OBJECT = 4;
+  private static final int SCOPE_EMPTY_ARRAY = 5;
+  private static final int SCOPE_NONEMPTY_ARRAY = 6;
+
+  private final Writer out;
+  private final char[] buffer = new char[1024];
+  private int count;
+
+  private int[] stack = new int[32];
+  private int stackSize;
+
+  public JsonWriter(Writer out) {
+    if (out == null) {
+      throw new NullPointerException("out == null");
+    }
+    this.out = out;
+    stack[stackSize++] = SCOPE_EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Writes UTF-8 encoded JSON to the given stream. Call {@link #flush()} or {@link #close()} when
+   * done.
+   */
+  public JsonWriter(OutputStream out) {
+    this(new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    beforeValue();
+    push(SCOPE_EMPTY_OBJECT);
+    write('{');
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    final int scope = stack[stackSize - 1];
+    if (scope != SCOPE_EMPTY_OBJECT && scope != SCOPE_NONEMPTY_OBJECT) {
+      throw new IllegalStateException("Not inside an object, or a name is missing its value");
+    }
+    stackSize--;
+    write('}');
+    afterValue();
+    return this;
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    beforeValue();
+    push(SCOPE_EMPTY_ARRAY);
+    write('[');
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    final int scope = stack[stackSize - 1];
+    if (scope != SCOPE_EMPTY_ARRAY && scope != SCOPE_NONEMPTY_ARRAY) {
+      throw new IllegalStateException("Not inside an array");
+    }
+    stackSize--;
+    write(']');
+    afterValue();
+    return this;
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    if (name == null) {
+      throw new NullPointerException("name == null");
+    }
+    final int scope = stack[stackSize - 1];
+    if (scope == SCOPE_NONEMPTY_OBJECT) {
+      write(',');
+    } else if (scope != SCOPE_EMPTY_OBJECT) {
+      throw new IllegalStateException("Names can only be written inside an object");
+    }
+    stack[stackSize - 1] = SCOPE_DANGLING_NAME;
+    string(name);
+    write(':');
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    string(value);
+    afterValue();
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    beforeValue();
+    write(value ? "true" : "false");
+    afterValue();
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    beforeValue();
+    write(Long.toString(value));
+    afterValue();
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    beforeValue();
+    write("null");
+    afterValue();
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    drain();
+    out.close();
+    if (stackSize > 1 || stack[0] != SCOPE_NONEMPTY_DOCUMENT) {
+      throw new IOException("Incomplete document");
+    }
+  }
+
+  private void beforeValue() throws IOException {
+    final int scope = stack[stackSize - 1];
+    switch (scope) {
+      case SCOPE_EMPTY_DOCUMENT:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+        break;
+      case SCOPE_EMPTY_ARRAY:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+        break;
+      case SCOPE_NONEMPTY_ARRAY:
+        write(',');
+        break;
+      case SCOPE_DANGLING_NAME:
+        stack[stackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+        break;
+      case SCOPE_NONEMPTY_DOCUMENT:
+        throw new IllegalStateException("JSON must have only one top-level value");
+      default:
+        throw new IllegalStateException("Values inside an object must be preceded by a name");
+    }
+  }
+
+  private void afterValue() throws IOException {
+    if (stackSize == 1) {
+      drain();
+    }
+  }
+
+  private void push(int scope) {
+    if (stackSize == stack.length) {
+      final int[] newStack = new int[stackSize * 2];
+      System.arraycopy(stack, 0, newStack, 0, stackSize);
+      stack = newStack;
+    }
+    stack[stackSize++] = scope;
+  }
+
+  /**
+   * Writes a quoted string, copying runs of characters that need no escaping in one go
+   */
+  private void string(String value) throws IOException {
+    write('"');
+    int last = 0;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      final String replacement;
+      if (c == '"') {
+        replacement = "\\\"";
+      } else if (c == '\\') {
+        replacement = "\\\\";
+      } else if (c == '\n') {
+        replacement = "\\n";
+      } else if (c == '\r') {
+        replacement = "\\r";
+      } else if (c == '\t') {
+        replacement = "\\t";
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        replacement = String.format("\\u%04x", (int) c);
+      } else {
+        continue;
+      }
+
+      if (last < i) {
+        write(value, last, i - last);
+      }
+      write(replacement);
+      last = i + 1;
+    }
+    if (last < length) {
+      write(value, last, length - last);
+    }
+    write('"');
+  }
+
+  private void write(char c) throws IOException {
+    if (count == buffer.length) {
+      drain();
+    }
+    buffer[count++] = c;
+  }
+
+  private void write(String value) throws IOException {
+    write(value, 0, value.length());
+  }
+
+  private void write(String value, int offset, int length) throws IOException {
+    if (length > buffer.length - count) {
+      drain();
+      if (length > buffer.length) {
+        out.write(value, offset, length);
+        return;
+      }
+    }
+    value.getChars(offset, offset + length, buffer, count);
+    count += length;
+  }
+
+  private void drain() throws IOException {
+    if (count > 0) {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a {@link JsonReader} encounters input that is not well-formed JSON, or JSON that
+ * does not have the shape expected by the type being read
+ */
+public class MalformedJsonException extends IOException {
+  public MalformedJsonException(String message) {
+    super(message);
+  }
+
+  public MalformedJsonException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,482 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier.logging;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Logger} that keeps billing diagnostics in a file, at close to no cost to the logging
+ * thread.
+ * <p>
+ * Logging only stores the record into a preallocated ring buffer, without locking or formatting.
+ * A background thread drains the buffer in batches and appends the records to the file. Once the
+ * file reaches its maximum size it is rotated, keeping the given number of files, so the most
+ * recent records are always on disk for support requests, see {@link #files()}.
+ * <p>
+ * Records that come in while the buffer is full are dropped and counted, see {@link #dropped()}.
+ */
+public final class FileLogger implements LevelAwareLogger, Closeable {
+  static final int DEFAULT_CAPACITY = 4096;
+  static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+  static final int DEFAULT_MAX_FILES = 3;
+  static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+  private static final int WRITE_BUFFER_SIZE = 32 * 1024;
+  private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final String LOG_TAG = "Cashier";
+
+  private final File file;
+  private final long maxFileSize;
+  private final int maxFiles;
+  private final LogLevel minLevel;
+  private final long flushIntervalNanos;
+  private final RingBuffer records;
+  private final Writer writer;
+  private volatile boolean closed;
+
+  private FileLogger(Builder builder) {
+    file = builder.file;
+    maxFileSize = builder.maxFileSize;
+    maxFiles = builder.maxFiles;
+    minLevel = builder.minLevel;
+    flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.flushIntervalMillis);
+    records = new RingBuffer(builder.capacity);
+    writer = new Writer();
+    writer.start();
+  }
+
+  public static final class Builder {
+    private final File file;
+    private int capacity = DEFAULT_CAPACITY;
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private int maxFiles = DEFAULT_MAX_FILES;
+    private LogLevel minLevel = LogLevel.DEBUG;
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    /**
+     * @param file The file to log to. Rotated files are kept next to it, suffixed with
+     *             {@code .1}, {@code .2}...
+     */
+    public Builder(File file) {
+      if (file == null) {
+        throw new IllegalArgumentException("File is null");
+      }
+      this.file = file;
+    }
+
+    /**
+     * Sets the number of records that can be waiting to be written, rounded up to a power of two
+     */
+    public Builder capacity(int records) {
+      if (records <= 0) {
+        throw new IllegalArgumentException("Capacity must be positive");
+      }
+      this.capacity = records;
+      return this;
+    }
+
+    /**
+     * Sets the size past which the file is rotated
+     */
+    public Builder maxFileSize(long bytes) {
+      if (bytes <= 0) {
+        throw new IllegalArgumentException("Maximum file size must be positive");
+      }
+      this.maxFileSize = bytes;
+      return this;
+    }
+
+    /**
+     * Sets the number of files kept, the current one included
+     */
+    public Builder maxFiles(int files) {
+      if (files <= 0) {
+        throw new IllegalArgumentException("Maximum number of files must be positive");
+      }
+      this.maxFiles = files;
+      return this;
+    }
+
+    public Builder minLevel(LogLevel level) {
+      if (level == null) {
+        throw new IllegalArgumentException("Level is null");
+      }
+      this.minLevel = level;
+      return this;
+    }
+
+    /**
+     * Sets how long records may wait in the buffer before being written, while it is not filling
+     * up
+     */
+    public Builder flushInterval(long interval, TimeUnit unit) {
+      if (interval <= 0) {
+        throw new IllegalArgumentException("Flush interval must be positive");
+      }
+      this.flushIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    public FileLogger build() {
+      return new FileLogger(this);
+    }
+  }
+
+  /**
+   * Bounded buffer of log records for any number of logging threads and a single writer. Slots are
+   * claimed by moving the head forward, and handed to the writer by publishing their sequence
+   * number once filled in.
+   */
+  static final class RingBuffer {
+    interface Sink {
+      void write(long timeMillis, LogLevel level, String tag, String message) throws IOException;
+    }
+
+    private final int mask;
+    private final long[] times;
+    private final LogLevel[] levels;
+    private final String[] tags;
+    private final String[] messages;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Only moved forward by the writer
+    private volatile long tail;
+
+    RingBuffer(int capacity) {
+      final int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+      mask = size - 1;
+      times = new long[size];
+      levels = new LogLevel[size];
+      tags = new String[size];
+      messages = new String[size];
+      published = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+        published.set(i, -1);
+      }
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+
+    /**
+     * @return Whether the record was taken, it is dropped if the buffer is full
+     */
+    boolean offer(long timeMillis, LogLevel level, String tag, String message) {
+      long sequence;
+      do {
+        sequence = head.get();
+        if (sequence - tail > mask) {
+          dropped.incrementAndGet();
+          return false;
+        }
+      } while (!head.compareAndSet(sequence, sequence + 1));
+
+      final int index = (int) sequence & mask;
+      times[index] = timeMillis;
+      levels[index] = level;
+      tags[index] = tag;
+      messages[index] = message;
+      published.set(index, sequence);
+      return true;
+    }
+
+    /**
+     * Hands up to {@code max} published records to the sink, oldest first. Must only be called by
+     * the writer.
+     *
+     * @return The number of records drained
+     */
+    int drain(Sink sink, int max) throws IOException {
+      long next = tail;
+      int drained = 0;
+      try {
+        while (drained < max && published.get((int) next & mask) == next) {
+          final int index = (int) next & mask;
+          final String tag = tags[index];
+          final String message = messages[index];
+          tags[index] = null;
+          messages[index] = null;
+          next++;
+          drained++;
+          sink.write(times[index], levels[index], tag, message);
+        }
+      } finally {
+        tail = next;
+      }
+      return drained;
+    }
+
+    /**
+     * @return The sequence number the next record will get
+     */
+    long head() {
+      return head.get();
+    }
+
+    long tail() {
+      return tail;
+    }
+
+    int size() {
+      return (int) (head.get() - tail);
+    }
+
+    long dropped() {
+      return dropped.get();
+    }
+  }
+
+  @Override
+  public boolean isLoggable(LogLevel level) {
+    return !closed && level.isAtLeast(minLevel);
+  }
+
+  @Override
+  public void d(String tag, String message) {
+    log(LogLevel.DEBUG, tag, message);
+  }
+
+  @Override
+  public void i(String tag, String message) {
+    log(LogLevel.INFO, tag, message);
+  }
+
+  @Override
+  public void w(String tag, String message) {
+    log(LogLevel.WARN, tag, message);
+  }
+
+  @Override
+  public void e(String tag, String message) {
+    log(LogLevel.ERROR, tag, message);
+  }
+
+  private void log(LogLevel level, String tag, String message) {
+    if (!isLoggable(level)) {
+      return;
+    }
+    records.offer(System.currentTimeMillis(), level, tag, message);
+    // The writer wakes up on its own every flush interval, only hurry it when the buffer fills up
+    if (records.size() > records.capacity() / 2) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * @return The number of records dropped because the buffer was full
+   */
+  public long dropped() {
+    return records.dropped();
+  }
+
+  /**
+   * Waits until the records logged so far are written to the file
+   */
+  public void flush() {
+    final long target = records.head();
+    final long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+    while (writer.written < target && writer.isAlive() && System.nanoTime() < deadline) {
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  /**
+   * @return The log files, oldest first, to attach to a support request. Call {@link #flush()}
+   * first for them to hold the latest records.
+   */
+  public List<File> files() {
+    final List<File> files = new ArrayList<>(maxFiles);
+    for (int i = maxFiles - 1; i > 0; i--) {
+      final File rotated = rotated(i);
+      if (rotated.exists()) {
+        files.add(rotated);
+      }
+    }
+    if (file.exists()) {
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Writes the remaining records and stops the writer. Records logged afterwards are ignored.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.NANOSECONDS.toMillis(FLUSH_TIMEOUT_NANOS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private File rotated(int index) {
+    return new File(file.getPath() + "." + index);
+  }
+
+  private final class Writer extends Thread implements RingBuffer.Sink {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date date = new Date();
+    private final FieldPosition fieldPosition = new FieldPosition(0);
+    private final StringBuffer line = new StringBuffer(256);
+    private FileChannel channel;
+    private long size;
+    private boolean failed;
+    // Sequence number up to which records are written to the file
+    volatile long written;
+
+    Writer() {
+      super("cashier-file-logger");
+      setDaemon(true);
+      setPriority(Thread.MIN_PRIORITY);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final boolean closing = closed;
+        try {
+          while (records.drain(this, records.capacity()) > 0) {
+            // Keep draining while logging threads keep up
+          }
+          writeBuffer();
+        } catch (IOException e) {
+          fail(e);
+        }
+        written = records.tail();
+        if (closing) {
+          closeChannel();
+          return;
+        }
+        LockSupport.parkNanos(this, flushIntervalNanos);
+      }
+    }
+
+    @Override
+    public void write(long timeMillis, LogLevel level, String tag, String message) throws IOException {
+      if (failed) {
+        return;
+      }
+      date.setTime(timeMillis);
+      line.setLength(0);
+      dateFormat.format(date, line, fieldPosition);
+      line.append(' ').append(level.name().charAt(0)).append('/').append(tag).append(": ")
+          .append(message).append('\n');
+
+      final CharBuffer chars = CharBuffer.wrap(line);
+      encoder.reset();
+      while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+        writeBuffer();
+      }
+      while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+        writeBuffer();
+      }
+    }
+
+    private void writeBuffer() throws IOException {
+      if (failed || buffer.position() == 0) {
+        buffer.clear();
+        return;
+      }
+      if (channel == null) {
+        openChannel();
+      } else if (size > 0 && size + buffer.position() > maxFileSize) {
+        rotate();
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        size += channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    private void openChannel() throws IOException {
+      final File parent = file.getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+        throw new IOException("Could not create " + parent);
+      }
+      channel = new FileOutputStream(file, true).getChannel();
+      size = channel.size();
+    }
+
+    private void rotate() throws IOException {
+      closeChannel();
+      final File oldest = rotated(maxFiles - 1);
+      if (maxFiles > 1 && oldest.exists() && !oldest.delete()) {
+        throw new IOException("Could not delete " + oldest);
+      }
+      for (int i = maxFiles - 2; i >= 0; i--) {
+        final File from = i == 0 ? file : rotated(i);
+        if (from.exists() && !from.renameTo(rotated(i + 1))) {
+          throw new IOException("Could not rotate " + from);
+        }
+      }
+      if (maxFiles == 1 && file.exists() && !file.delete()) {
+        throw new IOException("Could not delete " + file);
+      }
+      openChannel();
+    }
+
+    private void closeChannel() {
+      if (channel == null) {
+        return;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Nothing left to do with it
+      }
+      channel = null;
+    }
+
+    private void fail(IOException e) {
+      // Keep draining so logging threads are not left with a full buffer, but stop writing
+      Log.w(LOG_TAG, "Could not write log file " + file, e);
+      failed = true;
+      buffer.clear();
+      closeChannel();
+    }
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier.logging;
+
+/**
+ * A {@link Logger} that filters messages by level. Messages below its level are neither built nor
+ * written, so a logger that only takes warnings costs close to nothing on the hot paths of the
+ * vendors.
+ * <p>
+ * A plain {@link Logger} takes every message, with debug messages written as info.
+ */
+public interface LevelAwareLogger extends Logger {
+  boolean isLoggable(LogLevel level);
+
+  void d(String tag, String message);
+}
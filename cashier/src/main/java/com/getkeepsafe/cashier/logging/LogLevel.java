@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier.logging;
+
+/**
+ * Severity of a log message, from the most to the least verbose
+ */
+public enum LogLevel {
+  /**
+   * Details meant for debugging, such as every purchase or SKU a query returned
+   */
+  DEBUG,
+  INFO,
+  WARN,
+  ERROR;
+
+  boolean isAtLeast(LogLevel level) {
+    return compareTo(level) >= 0;
+  }
+}
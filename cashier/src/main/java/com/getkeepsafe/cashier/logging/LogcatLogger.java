@@ -18,9 +18,32 @@ package com.getkeepsafe.cashier.logging;
 
 import android.util.Log;
 
-public class LogcatLogger implements Logger {
+/**
+ * Writes to logcat the messages of {@link LogLevel#INFO} and above, or of the given minimum level
+ */
+public class LogcatLogger implements LevelAwareLogger {
   private static final String INTERNAL_TAG = "Cashier";
 
+  private final LogLevel minLevel;
+
+  public LogcatLogger() {
+    this(LogLevel.INFO);
+  }
+
+  public LogcatLogger(LogLevel minLevel) {
+    this.minLevel = minLevel;
+  }
+
+  @Override
+  public boolean isLoggable(LogLevel level) {
+    return level.isAtLeast(minLevel);
+  }
+
+  @Override
+  public void d(String tag, String message) {
+    Log.d(INTERNAL_TAG + ":" + tag, message);
+  }
+
   @Override
   public void i(String tag, String message) {
     Log.i(INTERNAL_TAG + ":" + tag, message);
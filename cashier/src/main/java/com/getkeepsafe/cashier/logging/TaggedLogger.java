@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.getkeepsafe.cashier.logging;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.CallSettings;
+import com.getkeepsafe.cashier.CashierTrace;
+
+/**
+ * Writes the messages of one component to a {@link Logger} under its tag, tagged with the
+ * current {@link CashierTrace} operation. Messages of an operation go to the logger of the
+ * {@link com.getkeepsafe.cashier.Cashier} it runs for, see {@link CallSettings}.
+ * <p>
+ * Messages are only built if their level is loggable: parameterized messages substitute their
+ * arguments for the {@code {}} placeholders of the format, and {@link Message}s are only asked for
+ * their text, after the level was checked. Without a logger nothing is built at all.
+ */
+public final class TaggedLogger {
+  private static final String PLACEHOLDER = "{}";
+
+  /**
+   * A message that is expensive to build, built only when it is logged
+   */
+  public interface Message {
+    String build();
+  }
+
+  private final String tag;
+  @Nullable
+  private volatile Logger logger;
+
+  public TaggedLogger(String tag) {
+    this.tag = tag;
+  }
+
+  public void setLogger(@Nullable Logger logger) {
+    this.logger = logger;
+  }
+
+  /**
+   * @return The logger of the Cashier the current operation runs for if it has one,
+   * otherwise the logger set on this instance
+   */
+  @Nullable
+  public Logger logger() {
+    final Logger callLogger = CallSettings.current().logger();
+    return callLogger != null ? callLogger : logger;
+  }
+
+  public boolean isLoggable(LogLevel level) {
+    return isLoggable(logger(), level);
+  }
+
+  public void d(String message) {
+    log(LogLevel.DEBUG, message);
+  }
+
+  public void d(String format, @Nullable Object arg) {
+    log(LogLevel.DEBUG, format, arg);
+  }
+
+  public void d(String format, @Nullable Object arg1, @Nullable Object arg2) {
+    log(LogLevel.DEBUG, format, arg1, arg2);
+  }
+
+  public void d(Message message) {
+    log(LogLevel.DEBUG, message);
+  }
+
+  public void i(String message) {
+    log(LogLevel.INFO, message);
+  }
+
+  public void i(String format, @Nullable Object arg) {
+    log(LogLevel.INFO, format, arg);
+  }
+
+  public void i(String format, @Nullable Object arg1, @Nullable Object arg2) {
+    log(LogLevel.INFO, format, arg1, arg2);
+  }
+
+  public void i(Message message) {
+    log(LogLevel.INFO, message);
+  }
+
+  public void w(String message) {
+    log(LogLevel.WARN, message);
+  }
+
+  public void w(String format, @Nullable Object arg) {
+    log(LogLevel.WARN, format, arg);
+  }
+
+  public void w(String format, @Nullable Object arg1, @Nullable Object arg2) {
+    log(LogLevel.WARN, format, arg1, arg2);
+  }
+
+  /**
+   * Logs the given message followed by the stack trace of the given error, as a warning
+   */
+  public void w(String message, Throwable error) {
+    final Logger logger = logger();
+    if (isLoggable(logger, LogLevel.WARN)) {
+      write(logger, LogLevel.WARN, message + '\n' + Log.getStackTraceString(error));
+    }
+  }
+
+  public void e(String message) {
+    log(LogLevel.ERROR, message);
+  }
+
+  public void e(String format, @Nullable Object arg) {
+    log(LogLevel.ERROR, format, arg);
+  }
+
+  public void log(LogLevel level, String message) {
+    final Logger logger = logger();
+    if (message != null && isLoggable(logger, level)) {
+      write(logger, level, message);
+    }
+  }
+
+  public void log(LogLevel level, String format, @Nullable Object arg) {
+    final Logger logger = logger();
+    if (isLoggable(logger, level)) {
+      write(logger, level, format(format, arg));
+    }
+  }
+
+  public void log(LogLevel level, String format, @Nullable Object arg1, @Nullable Object arg2) {
+    final Logger logger = logger();
+    if (isLoggable(logger, level)) {
+      write(logger, level, format(format, arg1, arg2));
+    }
+  }
+
+  public void log(LogLevel level, Message message) {
+    final Logger logger = logger();
+    if (isLoggable(logger, level)) {
+      write(logger, level, message.build());
+    }
+  }
+
+  static String format(String format, Object... args) {
+    final StringBuilder builder = new StringBuilder(format.length() + 16 * args.length);
+    int start = 0;
+    for (final Object arg : args) {
+      final int placeholder = format.indexOf(PLACEHOLDER, start);
+      if (placeholder < 0) {
+        break;
+      }
+      builder.append(format, start, placeholder).append(arg);
+      start = placeholder + PLACEHOLDER.length();
+    }
+    return builder.append(format, start, format.length()).toString();
+  }
+
+  private static boolean isLoggable(@Nullable Logger logger, LogLevel level) {
+    if (logger == null) {
+      return false;
+    }
+    return !(logger instanceof LevelAwareLogger) || ((LevelAwareLogger) logger).isLoggable(level);
+  }
+
+  private void write(Logger logger, LogLevel level, String message) {
+    final String tagged = CashierTrace.tag(message);
+    switch (level) {
+      case DEBUG:
+        if (logger instanceof LevelAwareLogger) {
+          ((LevelAwareLogger) logger).d(tag, tagged);
+        } else {
+          logger.i(tag, tagged);
+        }
+        break;
+      case INFO:
+        logger.i(tag, tagged);
+        break;
+      case WARN:
+        logger.w(tag, tagged);
+        break;
+      default:
+        logger.e(tag, tagged);
+        break;
+    }
+  }
+}
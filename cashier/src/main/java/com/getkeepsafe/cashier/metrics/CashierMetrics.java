@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.metrics;
+
+import com.getkeepsafe.cashier.Vendor;
+
+/**
+ * Receives measurements of the operations of {@link com.getkeepsafe.cashier.Cashier}. Methods are
+ * called on whichever thread the measured operation completes on, often the main thread, so
+ * implementations have to be thread safe and fast.
+ *
+ * @see HistogramMetrics
+ * @see com.getkeepsafe.cashier.Cashier.Builder#withMetrics(CashierMetrics)
+ */
+public interface CashierMetrics {
+  enum Operation {
+    /** Connecting to the vendor, only measured when it is not connected yet */
+    INITIALIZE,
+    PRODUCT_DETAILS,
+    /** From launching the purchase flow to its result */
+    PURCHASE,
+    CONSUME,
+    INVENTORY
+  }
+
+  /** The number of distinct vendor queries in flight */
+  String QUEUE_IN_FLIGHT = "inFlight";
+
+  /** The number of tasks waiting for a thread of a {@link com.getkeepsafe.cashier.BackgroundExecutor} */
+  String QUEUE_BACKGROUND = "background";
+
+  void recordLatency(String vendorId, Operation operation, long latencyNanos);
+
+  /**
+   * Counts a failed operation, by {@link Vendor.Error#code} and by {@link Vendor.Error#vendorCode}
+   */
+  void recordError(String vendorId, Operation operation, Vendor.Error error);
+
+  void recordQueueDepth(String queue, int depth);
+}
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2017 Keepsafe Software, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.getkeepsafe.cashier.metrics;
+
+import androidx.annotation.Nullable;
+
+import com.getkeepsafe.cashier.Vendor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link LatencyHistogram} per operation of each vendor, counts errors and tracks the
+ * latest depth of each queue, to be read through {@link #snapshot()}. Recording latencies does not
+ * lock nor allocate once a vendor's first latency has been recorded.
+ */
+public final class HistogramMetrics implements CashierMetrics {
+  private static final int OPERATIONS = Operation.values().length;
+
+  private final ConcurrentHashMap<String, LatencyHistogram[]> latencies = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> vendorCodeCounts = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordLatency(String vendorId, Operation operation, long latencyNanos) {
+    LatencyHistogram[] histograms = latencies.get(vendorId);
+    if (histograms == null) {
+      histograms = new LatencyHistogram[OPERATIONS];
+      for (int i = 0; i < OPERATIONS; i++) {
+        histograms[i] = new LatencyHistogram();
+      }
+      final LatencyHistogram[] existing = latencies.putIfAbsent(vendorId, histograms);
+      if (existing != null) {
+        histograms = existing;
+      }
+    }
+    histograms[operation.ordinal()].record(latencyNanos);
+  }
+
+  @Override
+  public void recordError(String vendorId, Operation operation, Vendor.Error error) {
+    increment(errorCounts, key(vendorId, operation, error.code));
+    increment(vendorCodeCounts, key(vendorId, operation, error.vendorCode));
+  }
+
+  @Override
+  public void recordQueueDepth(String queue, int depth) {
+    AtomicInteger current = queueDepths.get(queue);
+    if (current == null) {
+      final AtomicInteger created = new AtomicInteger();
+      current = queueDepths.putIfAbsent(queue, created);
+      if (current == null) {
+        current = created;
+      }
+    }
+    current.set(depth);
+  }
+
+  public Snapshot snapshot() {
+    final HashMap<String, LatencyHistogram.Snapshot> latencies = new HashMap<>();
+    for (final Map.Entry<String, LatencyHistogram[]> entry : this.latencies.entrySet()) {
+      for (final Operation operation : Operation.values()) {
+        latencies.put(key(entry.getKey(), operation),
+            entry.getValue()[operation.ordinal()].snapshot());
+      }
+    }
+
+    final HashMap<String, Integer> queueDepths = new HashMap<>();
+    for (final Map.Entry<String, AtomicInteger> entry : this.queueDepths.entrySet()) {
+      queueDepths.put(entry.getKey(), entry.getValue().get());
+    }
+    return new Snapshot(latencies, counts(errorCounts), counts(vendorCodeCounts), queueDepths);
+  }
+
+  private static void increment(ConcurrentHashMap<String, AtomicLong> counts, String key) {
+    AtomicLong count = counts.get(key);
+    if (count == null) {
+      final AtomicLong created = new AtomicLong();
+      count = counts.putIfAbsent(key, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  private static HashMap<String, Long> counts(ConcurrentHashMap<String, AtomicLong> counts) {
+    final HashMap<String, Long> copy = new HashMap<>();
+    for (final Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue().get());
+    }
+    return copy;
+  }
+
+  private static String key(String vendorId, Operation operation) {
+    return vendorId + '\n' + operation.name();
+  }
+
+  private static String key(String vendorId, Operation operation, int code) {
+    return key(vendorId, operation) + '\n' + code;
+  }
+
+  public static final class Snapshot {
+    private final Map<String, LatencyHistogram.Snapshot> latencies;
+    private final Map<String, Long> errorCounts;
+    private final Map<String, Long> vendorCodeCounts;
+    private final Map<String, Integer> queueDepths;
+
+    Snapshot(Map<String, LatencyHistogram.Snapshot> latencies,
+             Map<String, Long> errorCounts,
+             Map<String, Long> vendorCodeCounts,
+             Map<String, Integer> queueDepths) {
+      this.latencies = latencies;
+      this.errorCounts = errorCounts;
+      this.vendorCodeCounts = vendorCodeCounts;
+      this.queueDepths = Collections.unmodifiableMap(queueDepths);
+    }
+
+    /**
+     * @return The latencies of the given operation in nanoseconds, or null if no operation of the
+     * vendor was measured
+     */
+    @Nullable
+    public LatencyHistogram.Snapshot latency(String vendorId, Operation operation) {
+      return latencies.get(key(vendorId, operation));
+    }
+
+    /**
+     * @return How many times the given operation failed with the given
+     * {@link Vendor.Error#code}
+     */
+    public long errorCount(String vendorId, Operation operation, int code) {
+      final Long count = errorCounts.get(key(vendorId, operation, code));
+      return count == null ? 0 : count;
+    }
+
+    /**
+     * @return How many times the given operation failed with the given
+     * {@link Vendor.Error#vendorCode}
+     */
+    public long vendorCodeCount(String vendorId, Operation operation, int vendorCode) {
+      final Long count = vendorCodeCounts.get(key(vendorId, operation, vendorCode));
+      return count == null ? 0 : count;
+    }
+
+    /**
+     * @return The latest depth of every queue
+     */
+    public Map<String, Integer> queueDepths() {
+      return queueDepths;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.getkeepsafe.cashier;
+
+import com.getkeepsafe.cashier.metrics.CashierMetrics;
+import com.getkeepsafe.cashier.metrics.HistogramMetrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class BackgroundExecutorTest {
+  @Test
+  public void runsOnNamedDaemonThreads() throws InterruptedException {
+    final BackgroundExecutor executor = new BackgroundExecutor.Builder()
+        .name("test-background")
+        .build();
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+    final CountDownLatch ran = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        thread.set(Thread.currentThread());
+        ran.countDown();
+      }
+    });
+
+    assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(thread.get().getName()).isEqualTo("test-background-1");
+    assertThat(thread.get().isDaemon()).isTrue();
+  }
+
+  @Test
+  public void rejectsTasksBeyondQueueCapacity() throws InterruptedException {
+    final HistogramMetrics metrics = new HistogramMetrics();
+    final BackgroundExecutor executor = new BackgroundExecutor.Builder()
+        .threads(1)
+        .queueCapacity(1)
+        .metrics(metrics)
+        .build();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Runnable blocking = new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    executor.execute(blocking);
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    executor.execute(blocking);
+    assertThat(executor.queueDepth()).isEqualTo(1);
+    assertThat(executor.activeThreads()).isEqualTo(1);
+    try {
+      executor.execute(blocking);
+      fail("Expected the task to be rejected");
+    } catch (RejectedExecutionException e) {
+      // Expected
+    }
+    assertThat(executor.rejectedTasks()).isEqualTo(1);
+    assertThat(metrics.snapshot().queueDepths()).containsEntry(CashierMetrics.QUEUE_BACKGROUND, 1);
+    release.countDown();
+  }
+
+  @Test
+  public void sharesOneExecutor() {
+    assertThat(BackgroundExecutor.shared()).isSameAs(BackgroundExecutor.shared());
+  }
+}
@@ -0,0 +1,82 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class CallbackExecutorTest {
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final Executor queue = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+  };
+
+  @Test
+  public void deliversDirectlyOnCallingThread() {
+    final List<String> ran = new ArrayList<>();
+    CallbackExecutor.direct().execute(new Runnable() {
+      @Override
+      public void run() {
+        ran.add(Thread.currentThread().getName());
+      }
+    });
+    assertThat(ran).containsExactly(Thread.currentThread().getName());
+  }
+
+  @Test
+  public void runsNestedDeliveriesInline() {
+    final CallbackExecutor executor = CallbackExecutor.from(queue);
+    final List<String> ran = new ArrayList<>();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            ran.add("nested");
+          }
+        });
+        ran.add("outer");
+      }
+    });
+
+    assertThat(tasks).hasSize(1);
+    tasks.get(0).run();
+    assertThat(ran).containsExactly("nested", "outer").inOrder();
+    assertThat(tasks).hasSize(1);
+  }
+
+  @Test
+  public void keepsPageListeners() {
+    final CallbackExecutor executor = CallbackExecutor.from(queue);
+    final ProductsDetailsPageListener listener = mock(ProductsDetailsPageListener.class);
+    final List<Product> products = Arrays.asList(
+        Product.create("vendor", "sku", "$1", "USD", "name", "description", false, 1000000L));
+
+    final ProductsDetailsListener wrapped = executor.wrap(listener);
+    assertThat(wrapped).isInstanceOf(ProductsDetailsPageListener.class);
+    ((ProductsDetailsPageListener) wrapped).page(products);
+    wrapped.success(products);
+    assertThat(tasks).hasSize(2);
+    for (final Runnable task : tasks) {
+      task.run();
+    }
+    verify(listener).page(products);
+    verify(listener).success(products);
+  }
+
+  @Test
+  public void doesNotWrapCallbackExecutors() {
+    final CallbackExecutor executor = CallbackExecutor.from(queue);
+    assertThat(CallbackExecutor.from(executor)).isSameAs(executor);
+  }
+}
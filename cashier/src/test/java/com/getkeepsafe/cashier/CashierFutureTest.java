@@ -0,0 +1,209 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(RobolectricTestRunner.class)
+public class CashierFutureTest {
+  final Vendor.Error error = new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, 1);
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void callsBackOnceCompleted() throws Exception {
+    final CashierFuture<String> future = new CashierFuture<>();
+    final CashierFuture.Callback<String> before = mock(CashierFuture.Callback.class);
+    final CashierFuture.Callback<String> after = mock(CashierFuture.Callback.class);
+    future.addCallback(before);
+    verifyZeroInteractions(before);
+
+    assertThat(future.succeed("value")).isTrue();
+    assertThat(future.fail(error)).isFalse();
+    future.addCallback(after);
+    verify(before).success("value");
+    verify(after).success("value");
+    assertThat(future.isDone()).isTrue();
+    assertThat(future.get()).isEqualTo("value");
+  }
+
+  @Test
+  public void throwsErrorOnGet() throws Exception {
+    try {
+      CashierFuture.failed(error).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(((CashierException) e.getCause()).error).isEqualTo(error);
+    }
+  }
+
+  @Test
+  public void mapsAndChains() throws Exception {
+    final CashierFuture<Integer> next = new CashierFuture<>();
+    final CashierFuture<Integer> result = CashierFuture.succeeded("abc")
+        .map(new CashierFuture.Transform<String, Integer>() {
+          @Override
+          public Integer apply(String value) {
+            return value.length();
+          }
+        })
+        .then(new CashierFuture.Continuation<Integer, Integer>() {
+          @Override
+          public CashierFuture<Integer> then(Integer value) {
+            return next;
+          }
+        });
+    assertThat(result.isDone()).isFalse();
+
+    next.succeed(4);
+    assertThat(result.get()).isEqualTo(4);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void cancelsWholeChain() {
+    final CashierFuture<String> source = new CashierFuture<>();
+    final CashierFuture<Integer> mapped = source.map(new CashierFuture.Transform<String, Integer>() {
+      @Override
+      public Integer apply(String value) {
+        return value.length();
+      }
+    });
+    final CashierFuture.Callback<Integer> callback = mock(CashierFuture.Callback.class);
+    mapped.addCallback(callback);
+
+    assertThat(mapped.cancel(false)).isTrue();
+    assertThat(source.isCancelled()).isTrue();
+    assertThat(source.succeed("dropped")).isFalse();
+    verifyZeroInteractions(callback);
+    try {
+      mapped.get();
+      fail();
+    } catch (CancellationException expected) {
+    } catch (Exception e) {
+      fail();
+    }
+  }
+
+  @Test
+  public void allSucceedsInOrderOrFailsFast() throws Exception {
+    final CashierFuture<String> first = new CashierFuture<>();
+    final CashierFuture<String> second = new CashierFuture<>();
+    final CashierFuture<List<String>> all = CashierFuture.all(Arrays.asList(first, second));
+    second.succeed("b");
+    first.succeed("a");
+    assertThat(all.get()).containsExactly("a", "b").inOrder();
+
+    final CashierFuture<String> failing = new CashierFuture<>();
+    final CashierFuture<String> pending = new CashierFuture<>();
+    final CashierFuture<List<String>> failed = CashierFuture.all(Arrays.asList(failing, pending));
+    failing.fail(error);
+    assertThat(failed.isDone()).isTrue();
+    assertThat(pending.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void anySucceedsWithFirstSuccess() throws Exception {
+    final CashierFuture<String> failing = new CashierFuture<>();
+    final CashierFuture<String> succeeding = new CashierFuture<>();
+    final CashierFuture<String> pending = new CashierFuture<>();
+    final CashierFuture<String> any = CashierFuture.any(Arrays.asList(failing, succeeding, pending));
+    failing.fail(error);
+    assertThat(any.isDone()).isFalse();
+
+    succeeding.succeed("value");
+    assertThat(any.get()).isEqualTo("value");
+    assertThat(pending.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void timesOutOnTimeoutExecutor() throws Exception {
+    final AtomicReference<String> thread = new AtomicReference<>();
+    final CountDownLatch failed = new CountDownLatch(1);
+    final Executor executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "callbacks");
+      }
+    });
+    final CashierFuture<String> future = new CashierFuture<String>(executor)
+        .map(new CashierFuture.Transform<String, String>() {
+          @Override
+          public String apply(String value) {
+            return value;
+          }
+        })
+        .timeout(10, TimeUnit.MILLISECONDS);
+    future.addCallback(new CashierFuture.Callback<String>() {
+      @Override
+      public void success(String value) {
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        thread.set(Thread.currentThread().getName());
+        failed.countDown();
+      }
+    });
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(((CashierException) e.getCause()).error.code).isEqualTo(VendorConstants.TIMED_OUT);
+    }
+    assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(thread.get()).isEqualTo("callbacks");
+  }
+
+  @Test
+  public void failsWhenTransformThrows() throws Exception {
+    final CashierFuture<String> future = new CashierFuture<>();
+    final CashierFuture<Integer> mapped = future.map(new CashierFuture.Transform<String, Integer>() {
+      @Override
+      public Integer apply(String value) {
+        return Integer.parseInt(value);
+      }
+    });
+    future.succeed("not a number");
+    try {
+      mapped.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(((CashierException) e.getCause()).error.code).isEqualTo(VendorConstants.CALLBACK_FAILED);
+    }
+  }
+
+  @Test
+  public void failsWhenContinuationThrows() throws Exception {
+    final CashierFuture<String> future = new CashierFuture<>();
+    final CashierFuture<String> next = future.then(new CashierFuture.Continuation<String, String>() {
+      @Override
+      public CashierFuture<String> then(String value) {
+        throw new IllegalStateException();
+      }
+    });
+    future.succeed("value");
+    try {
+      next.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(((CashierException) e.getCause()).error.code).isEqualTo(VendorConstants.CALLBACK_FAILED);
+    }
+  }
+}
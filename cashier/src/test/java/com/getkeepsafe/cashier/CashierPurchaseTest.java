@@ -2,12 +2,24 @@ package com.getkeepsafe.cashier;
 
 import android.os.Bundle;
 
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.json.JsonFieldReader;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.google.common.truth.Truth.assertThat;
 
 @RunWith(RobolectricTestRunner.class)
@@ -47,6 +59,65 @@ public class CashierPurchaseTest {
     assertThat(CashierPurchase.create(purchase.toJson())).isEqualTo(purchase);
   }
 
+  @Test
+  public void streamsToJson() throws IOException, JSONException {
+    final StringWriter out = new StringWriter();
+    purchase.writeJson(new JsonWriter(out));
+    assertJsonHasProperties(new JSONObject(out.toString()), purchase);
+  }
+
+  @Test
+  public void streamsFromJson() throws IOException, JSONException {
+    final JsonReader reader = new JsonReader(new StringReader(purchase.toJson().toString()));
+    assertThat(CashierPurchase.create(reader)).isEqualTo(purchase);
+  }
+
+  @Test
+  public void streamsArraysOfPurchases() throws IOException {
+    final StringWriter out = new StringWriter();
+    final JsonWriter writer = new JsonWriter(out);
+    writer.beginArray();
+    for (int i = 0; i < 3; i++) {
+      purchase.writeJson(writer);
+    }
+    writer.endArray();
+    writer.close();
+
+    final List<CashierPurchase> purchases = new ArrayList<>();
+    final JsonReader reader = new JsonReader(new StringReader(out.toString()));
+    reader.beginArray();
+    while (reader.hasNext()) {
+      purchases.add(CashierPurchase.create(reader));
+    }
+    reader.endArray();
+    assertThat(purchases).containsExactly(purchase, purchase, purchase);
+  }
+
+  @Test
+  public void streamingHandsExtraFieldsToReader() throws IOException, JSONException {
+    final JSONObject json = purchase.toJson();
+    json.put("extra", "value");
+    final List<String> extras = new ArrayList<>();
+    final CashierPurchase streamed = CashierPurchase.create(
+        new JsonReader(new StringReader(json.toString())),
+        new JsonFieldReader() {
+          @Override
+          public boolean readField(String name, JsonReader reader) throws IOException {
+            extras.add(name + "=" + reader.nextString());
+            return true;
+          }
+        });
+    assertThat(streamed).isEqualTo(purchase);
+    assertThat(extras).containsExactly("extra=value");
+  }
+
+  @Test
+  public void binaryRoundTrip() throws IOException {
+    final BinaryWriter writer = new BinaryWriter();
+    purchase.writeTo(writer);
+    assertThat(CashierPurchase.create(new BinaryReader(writer.toByteArray()))).isEqualTo(purchase);
+  }
+
   @Test
   public void isParcelable() {
     final Bundle bundle = new Bundle();
@@ -5,20 +5,49 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.logging.Logger;
+import com.getkeepsafe.cashier.metrics.CashierMetrics;
+import com.getkeepsafe.cashier.metrics.HistogramMetrics;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -26,10 +55,13 @@ import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 public class CashierTest {
+  interface TestVendor extends BinaryVendor, ProductsDetailsVendor {
+  }
+
   final String TEST_VENDOR_ID = "test";
   final Context context = mock(Context.class);
   final PackageManager packageManager = mock(PackageManager.class);
-  final Vendor testVendor = mock(Vendor.class);
+  final TestVendor testVendor = mock(TestVendor.class);
 
   final VendorFactory testVendorFactory = new VendorFactory() {
     @Override
@@ -75,6 +107,38 @@ public class CashierTest {
     assertThat(Cashier.getVendorFactory(TEST_VENDOR_ID)).isEqualTo(testVendorFactory);
   }
 
+  @Test
+  public void putsVendorFactoriesInBulk() {
+    final Map<String, VendorFactory> factories = new HashMap<>();
+    factories.put("first", testVendorFactory);
+    factories.put("second", testVendorFactory);
+    Cashier.putVendorFactories(factories);
+    assertThat(Cashier.getVendorFactory("first")).isEqualTo(testVendorFactory);
+    assertThat(Cashier.getVendorFactory("second")).isEqualTo(testVendorFactory);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsBulkVendorFactoriesWithInvalidIds() {
+    final Map<String, VendorFactory> factories = new HashMap<>();
+    factories.put("valid", testVendorFactory);
+    factories.put("", testVendorFactory);
+    Cashier.putVendorFactories(factories);
+  }
+
+  @Test
+  public void rejectsVendorFactoriesWhenFrozen() {
+    Cashier.freezeVendorFactories();
+    try {
+      Cashier.putVendorFactory(TEST_VENDOR_ID, testVendorFactory);
+      fail("Expected frozen vendor factories to reject registration");
+    } catch (IllegalStateException e) {
+      // Expected
+    } finally {
+      Cashier.setVendorFactoriesFrozen(false);
+    }
+    assertThat(Cashier.getVendorFactory(TEST_VENDOR_ID)).isEqualTo(testVendorFactory);
+  }
+
   @Test
   public void getsInstanceFromInstaller() {
     assertThat(Cashier.forInstaller(context).build().vendorId()).isEqualTo(TEST_VENDOR_ID);
@@ -98,6 +162,145 @@ public class CashierTest {
     assertThat(Cashier.forPurchase(context, purchase).build().vendorId()).isEqualTo(TEST_VENDOR_ID);
   }
 
+  @Test
+  public void looksUpInstallerOnce() {
+    Cashier.forInstaller(context).build();
+    Cashier.forInstaller(context).build();
+    verify(packageManager, atMost(1)).getInstallerPackageName(TEST_VENDOR_ID);
+  }
+
+  @Test
+  public void sharesVendorInstances() throws JSONException {
+    final int[] created = new int[1];
+    Cashier.putVendorFactory(TEST_VENDOR_ID, new VendorFactory() {
+      @Override
+      public Vendor create() {
+        created[0]++;
+        return testVendor;
+      }
+    });
+
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    Cashier.productFromVendor(product.toJson());
+    Cashier.productFromVendor(product.toJson());
+    Cashier.forProduct(context, product).build();
+    Cashier.forProduct(context, product).build();
+    assertThat(created[0]).isEqualTo(1);
+  }
+
+  @Test
+  public void prewarmsAndSharesVendor() {
+    final Vendor warmVendor = mock(Vendor.class);
+    when(warmVendor.id()).thenReturn(TEST_VENDOR_ID);
+    Cashier.prewarm(context, warmVendor);
+    verify(warmVendor).initialize(eq(context), any(Vendor.InitializationListener.class));
+
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    final Cashier cashier = Cashier.forProduct(context, product).build();
+    cashier.getInventory(mock(InventoryListener.class));
+    verify(warmVendor, times(2)).initialize(eq(context), any(Vendor.InitializationListener.class));
+    verify(testVendor, never()).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+  }
+
+  @Test
+  public void disposesPrewarmedVendorOnTrim() {
+    final Vendor warmVendor = mock(Vendor.class);
+    when(warmVendor.id()).thenReturn(TEST_VENDOR_ID);
+    Cashier.prewarm(context, warmVendor);
+
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    final Cashier cashier = Cashier.forProduct(context, product).build();
+    Cashier.trimVendorCache();
+    verify(warmVendor, never()).dispose(any(Context.class));
+
+    cashier.dispose();
+    verify(warmVendor).dispose(context);
+
+    Cashier.prewarm(context, warmVendor);
+    Cashier.trimVendorCache();
+    verify(warmVendor, times(2)).dispose(context);
+  }
+
+  @Test
+  public void prewarmsProductDetailsCache() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Product product = aTestVendorProduct();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((ProductsDetailsPageListener) invocation.getArgument(3)).success(Collections.singletonList(product));
+        return null;
+      }
+    }).when(testVendor).getProductsDetails(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        eq(false), any(ProductsDetailsPageListener.class));
+
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+    Cashier.prewarm(context, testVendor, cache, Collections.singletonList(product.sku()), null);
+    assertThat(cache.get(TEST_VENDOR_ID, product.sku(), false).product).isEqualTo(product);
+  }
+
+  @Test
+  public void prewarmsVendorInUseInsteadOfGivenInstance() {
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    final Cashier cashier = Cashier.forProduct(context, product).build();
+
+    final Vendor warmVendor = mock(Vendor.class);
+    when(warmVendor.id()).thenReturn(TEST_VENDOR_ID);
+    Cashier.prewarm(context, warmVendor);
+    verify(warmVendor, never()).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    verify(testVendor).initialize(eq(context), any(Vendor.InitializationListener.class));
+
+    cashier.dispose();
+    verify(testVendor, never()).dispose(any(Context.class));
+    Cashier.trimVendorCache();
+    verify(testVendor).dispose(context);
+  }
+
+  @Test
+  public void prewarmReplacesUnusedCachedVendor() throws JSONException {
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    Cashier.productFromVendor(product.toJson());
+
+    final Vendor warmVendor = mock(Vendor.class);
+    when(warmVendor.id()).thenReturn(TEST_VENDOR_ID);
+    Cashier.prewarm(context, warmVendor);
+    verify(warmVendor).initialize(eq(context), any(Vendor.InitializationListener.class));
+    verify(testVendor, never()).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+  }
+
+  @Test
+  public void releasesVendorAfterPrewarmingProductDetails() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Product product = aTestVendorProduct();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((ProductsDetailsPageListener) invocation.getArgument(3)).success(Collections.singletonList(product));
+        return null;
+      }
+    }).when(testVendor).getProductsDetails(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        eq(false), any(ProductsDetailsPageListener.class));
+
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+    Cashier.prewarm(context, testVendor, cache, Collections.singletonList(product.sku()), null);
+    verify(testVendor, never()).dispose(any(Context.class));
+    Cashier.trimVendorCache();
+    verify(testVendor).dispose(context);
+  }
+
+  @Test
+  public void disposesSharedVendorWithLastInstance() {
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    final Cashier first = Cashier.forProduct(context, product).build();
+    final Cashier second = Cashier.forProduct(context, product).build();
+
+    first.dispose();
+    first.dispose();
+    verify(testVendor, times(0)).dispose(context);
+    second.dispose();
+    verify(testVendor).dispose(context);
+  }
+
   @Test
   public void getsProductFromVendor() throws JSONException {
     when(testVendor.getProductFrom(any(JSONObject.class))).thenAnswer(new Answer<Product>() {
@@ -146,6 +349,133 @@ public class CashierTest {
     assertThat(fromVendor).isEqualTo(CashierPurchase.create(purchaseJson));
   }
 
+  @Test
+  public void getsPurchasesFromVendorInOrder() throws JSONException {
+    when(testVendor.getPurchaseFrom(any(JSONObject.class))).thenAnswer(new Answer<CashierPurchase>() {
+      @Override
+      public CashierPurchase answer(InvocationOnMock invocation) throws Throwable {
+        return CashierPurchase.create((JSONObject) invocation.getArgument(0));
+      }
+    });
+
+    final Product product = aTestVendorProduct();
+    final JSONArray json = new JSONArray();
+    for (int i = 0; i < 100; i++) {
+      json.put(CashierPurchase.create(product, "order" + i, "token" + i, "receipt", "").toJson());
+    }
+    json.put(new JSONObject().put(Product.KEY_VENDOR_ID, "missing"));
+    json.put("not a purchase");
+    json.put(new JSONObject().put(Product.KEY_VENDOR_ID, ""));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final List<ParseResult<Purchase>> results = Cashier.purchasesFromVendor(json, executor);
+      assertThat(results).hasSize(103);
+      for (int i = 0; i < 100; i++) {
+        assertThat(results.get(i).isSuccess()).isTrue();
+        assertThat(results.get(i).value().token()).isEqualTo("token" + i);
+      }
+      assertThat(results.get(100).error()).isInstanceOf(VendorMissingException.class);
+      assertThat(results.get(101).error()).isInstanceOf(JSONException.class);
+      assertThat(results.get(102).error()).isInstanceOf(IllegalArgumentException.class);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void getsProductsFromVendorReader() throws IOException, JSONException {
+    when(testVendor.getProductFrom(any(JSONObject.class))).thenAnswer(new Answer<Product>() {
+      @Override
+      public Product answer(InvocationOnMock invocation) throws Throwable {
+        return Product.create((JSONObject) invocation.getArgument(0));
+      }
+    });
+
+    final Product product = aTestVendorProduct();
+    final String json = "[" + product.toJson() + ",{}, 42, {\"vendor-id\": \"\"}]";
+    final List<ParseResult<Product>> results = Cashier.productsFromVendor(
+        new StringReader(json), new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+          }
+        });
+    assertThat(results).hasSize(4);
+    assertThat(results.get(0).value()).isEqualTo(product);
+    assertThat(results.get(1).isSuccess()).isFalse();
+    assertThat(results.get(2).error()).isInstanceOf(JSONException.class);
+    assertThat(results.get(3).error()).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test(expected = JSONException.class)
+  public void failsProductsFromVendorReaderThatIsNotAnArray() throws IOException, JSONException {
+    Cashier.productsFromVendor(new StringReader("{\"vendor-id\": \"a\"}"));
+  }
+
+  @Test
+  public void getsProductFromBytes() throws IOException {
+    when(testVendor.getProductFrom(any(BinaryReader.class))).thenAnswer(new Answer<Product>() {
+      @Override
+      public Product answer(InvocationOnMock invocation) throws Throwable {
+        return Product.create((BinaryReader) invocation.getArgument(0));
+      }
+    });
+
+    final Product product = aTestVendorProduct();
+    assertThat(Cashier.productFromBytes(Cashier.productToBytes(product))).isEqualTo(product);
+  }
+
+  @Test
+  public void getsPurchasesFromBytes() throws IOException {
+    when(testVendor.getPurchaseFrom(any(BinaryReader.class))).thenAnswer(new Answer<CashierPurchase>() {
+      @Override
+      public CashierPurchase answer(InvocationOnMock invocation) throws Throwable {
+        return CashierPurchase.create((BinaryReader) invocation.getArgument(0));
+      }
+    });
+
+    final Product product = aTestVendorProduct();
+    final CashierPurchase first = CashierPurchase.create(product, "a", "b", "c", "d");
+    final CashierPurchase second = CashierPurchase.create(product, "e", "f", "g", "d");
+    assertThat(Cashier.purchaseFromBytes(Cashier.purchaseToBytes(first))).isEqualTo(first);
+
+    final List<Purchase> purchases = Cashier.purchasesFromBytes(
+        Cashier.purchasesToBytes(Arrays.asList(first, second)));
+    assertThat(purchases).containsExactly(first, second).inOrder();
+  }
+
+  @Test
+  public void getsPurchasesOfNonBinaryVendorFromBytes() throws IOException, JSONException {
+    final Vendor jsonVendor = mock(Vendor.class);
+    when(jsonVendor.getPurchaseFrom(any(JSONObject.class))).thenAnswer(new Answer<CashierPurchase>() {
+      @Override
+      public CashierPurchase answer(InvocationOnMock invocation) throws Throwable {
+        return CashierPurchase.create((JSONObject) invocation.getArgument(0));
+      }
+    });
+    Cashier.putVendorFactory("json", new VendorFactory() {
+      @Override
+      public Vendor create() {
+        return jsonVendor;
+      }
+    });
+
+    final Product product = Product.create("json", "a", "a", "a", "a", "a", true, 1L);
+    final Purchase purchase = mock(Purchase.class);
+    when(purchase.product()).thenReturn(product);
+    when(purchase.toJson()).thenReturn(CashierPurchase.create(product, "a", "b", "c", "d").toJson());
+    assertThat(Cashier.purchaseFromBytes(Cashier.purchaseToBytes(purchase)))
+        .isEqualTo(CashierPurchase.create(product, "a", "b", "c", "d"));
+    assertThat(Cashier.productFromBytes(Cashier.productToBytes(product))).isEqualTo(product);
+  }
+
+  @Test(expected = VendorMissingException.class)
+  public void purchaseFromBytesRequiresRegisteredVendor() throws IOException {
+    final CashierPurchase purchase = ValueFactory.aPurchase();
+    Cashier.purchaseFromBytes(Cashier.purchaseToBytes(purchase));
+  }
+
   @Test
   public void purchaseUnavailableVendor() {
     doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
@@ -179,6 +509,599 @@ public class CashierTest {
     verify(testVendor, times(0)).purchase(activity, product, null, listener);
   }
 
+  @Test
+  public void writesConsumptionThroughToStore() throws IOException {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Purchase purchase = CashierPurchase.create(aTestVendorProduct(), "a", "b", "c", "d");
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((ConsumeListener) invocation.getArgument(2)).success(purchase);
+        return null;
+      }
+    }).when(testVendor).consume(any(Context.class), any(Purchase.class), any(ConsumeListener.class));
+
+    final PurchaseStore store = mock(PurchaseStore.class);
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withPurchaseStore(store).build();
+    final ConsumeListener listener = mock(ConsumeListener.class);
+    cashier.consume(purchase, listener);
+
+    verify(store, timeout(1000)).remove(purchase);
+    verify(listener).success(purchase);
+  }
+
+  @Test
+  public void writesInventoryThroughToStore() throws IOException {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Inventory inventory = new Inventory.Builder()
+        .addPurchase(CashierPurchase.create(aTestVendorProduct(), "a", "b", "c", "d"))
+        .build();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((InventoryListener) invocation.getArgument(3)).success(inventory);
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final PurchaseStore store = mock(PurchaseStore.class);
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withPurchaseStore(store).build();
+    final InventoryListener listener = mock(InventoryListener.class);
+    cashier.getInventory(listener);
+
+    verify(store, timeout(1000)).replace(TEST_VENDOR_ID, inventory.purchases());
+    verify(listener).success(inventory);
+  }
+
+  @Test
+  public void writesToStoreInOrderOnBackgroundExecutor() throws IOException {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Purchase purchase = CashierPurchase.create(aTestVendorProduct(), "a", "b", "c", "d");
+    final Inventory inventory = new Inventory.Builder().addPurchase(purchase).build();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((InventoryListener) invocation.getArgument(3)).success(inventory);
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((ConsumeListener) invocation.getArgument(2)).success(purchase);
+        return null;
+      }
+    }).when(testVendor).consume(any(Context.class), any(Purchase.class), any(ConsumeListener.class));
+
+    final List<Runnable> tasks = new ArrayList<>();
+    final PurchaseStore store = mock(PurchaseStore.class);
+    final Cashier cashier = Cashier.forVendor(context, testVendor)
+        .withPurchaseStore(store)
+        .withBackgroundExecutor(new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            tasks.add(command);
+          }
+        })
+        .build();
+    final InventoryListener inventoryListener = mock(InventoryListener.class);
+    final ConsumeListener consumeListener = mock(ConsumeListener.class);
+    cashier.getInventory(inventoryListener);
+    cashier.consume(purchase, consumeListener);
+
+    // Listeners do not wait on the store
+    verify(inventoryListener).success(inventory);
+    verify(consumeListener).success(purchase);
+    verifyZeroInteractions(store);
+
+    for (int i = 0; i < tasks.size(); i++) {
+      tasks.get(i).run();
+    }
+    final InOrder inOrder = inOrder(store);
+    inOrder.verify(store).replace(TEST_VENDOR_ID, inventory.purchases());
+    inOrder.verify(store).remove(purchase);
+  }
+
+  @Test
+  public void deliversInventoryDeltas() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Purchase first = CashierPurchase.create(aTestVendorProduct(), "a", "b", "c", "d");
+    final Purchase second = CashierPurchase.create(aTestVendorProduct(), "e", "f", "g", "h");
+    final Inventory firstInventory = new Inventory.Builder().addPurchase(first).build();
+    final Inventory secondInventory = new Inventory.Builder().addPurchase(second).build();
+    doAnswer(new Answer<Void>() {
+      int calls;
+
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((InventoryListener) invocation.getArgument(3))
+            .success(calls++ == 0 ? firstInventory : secondInventory);
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor).build();
+    final List<InventoryDelta> deltas = new ArrayList<>();
+    final InventoryDeltaListener listener = new InventoryDeltaListener() {
+      @Override
+      public void success(Inventory inventory, InventoryDelta delta) {
+        deltas.add(delta);
+      }
+
+      @Override
+      public void failure(Vendor.Error error) {
+        fail("Unexpected inventory failure " + error);
+      }
+    };
+    cashier.getInventory(listener);
+    cashier.getInventory(listener);
+
+    assertThat(deltas.get(0).addedPurchases()).containsExactly(first);
+    assertThat(deltas.get(1).addedPurchases()).containsExactly(second);
+    assertThat(deltas.get(1).removedPurchases()).containsExactly(first);
+  }
+
+  @Test
+  public void servesProductDetailsFromCache() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Product product = aTestVendorProduct();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        final ProductDetailsListener listener = invocation.getArgument(3);
+        if (invocation.getArgument(1).equals(product.sku())) {
+          listener.success(product);
+        } else {
+          listener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_NOT_FOUND, 4));
+        }
+        return null;
+      }
+    }).when(testVendor).getProductDetails(any(Context.class), any(String.class), any(Boolean.class), any(ProductDetailsListener.class));
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor)
+        .withProductDetailsCache(new ProductDetailsCache.Builder().build())
+        .build();
+    final ProductDetailsListener listener = mock(ProductDetailsListener.class);
+    cashier.getProductDetails(product.sku(), false, listener);
+    cashier.getProductDetails(product.sku(), false, listener);
+    cashier.getProductDetails("missing", false, listener);
+    cashier.getProductDetails("missing", false, listener);
+
+    verify(listener, times(2)).success(product);
+    verify(listener, times(2)).failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_NOT_FOUND, 4));
+    verify(testVendor, times(1)).getProductDetails(any(Context.class), eq(product.sku()), eq(false), any(ProductDetailsListener.class));
+    verify(testVendor, times(1)).getProductDetails(any(Context.class), eq("missing"), eq(false), any(ProductDetailsListener.class));
+  }
+
+  @Test
+  public void getsProductsDetailsMissingFromCache() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Product cached = Product.create(TEST_VENDOR_ID, "cached", "$1", "USD", "name", "description", false, 1000000L);
+    final Product queried = Product.create(TEST_VENDOR_ID, "queried", "$1", "USD", "name", "description", false, 1000000L);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        assertThat((Collection<String>) invocation.getArgument(1)).containsExactly("queried", "missing").inOrder();
+        final ProductsDetailsPageListener listener = invocation.getArgument(3);
+        listener.page(Collections.singletonList(queried));
+        listener.success(Collections.singletonList(queried));
+        return null;
+      }
+    }).when(testVendor).getProductsDetails(any(Context.class), ArgumentMatchers.<Collection<String>>any(), any(Boolean.class), any(ProductsDetailsPageListener.class));
+
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+    cache.put(TEST_VENDOR_ID, "cached", false, cached);
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withProductDetailsCache(cache).build();
+    final ProductsDetailsPageListener listener = mock(ProductsDetailsPageListener.class);
+    cashier.getProductDetails(Arrays.asList("queried", "cached", "missing"), false, listener);
+
+    verify(listener).page(Collections.singletonList(cached));
+    verify(listener).page(Collections.singletonList(queried));
+    verify(listener).success(Arrays.asList(queried, cached));
+    assertThat(cache.get(TEST_VENDOR_ID, "queried", false).product).isEqualTo(queried);
+    assertThat(cache.get(TEST_VENDOR_ID, "missing", false).error.code).isEqualTo(VendorConstants.PRODUCT_DETAILS_NOT_FOUND);
+
+    final ProductsDetailsListener cachedListener = mock(ProductsDetailsListener.class);
+    cashier.getProductDetails(Arrays.asList("cached", "missing", "queried"), false, cachedListener);
+    verify(cachedListener).success(Arrays.asList(cached, queried));
+    verify(testVendor, times(1)).getProductsDetails(any(Context.class), ArgumentMatchers.<Collection<String>>any(), any(Boolean.class), any(ProductsDetailsPageListener.class));
+  }
+
+  @Test
+  public void getsProductsDetailsOneByOneFromVendorsThatCannotBatch() {
+    final Vendor vendor = mock(Vendor.class);
+    when(vendor.id()).thenReturn(TEST_VENDOR_ID);
+    doAnswer(initializationSuccess).when(vendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Product product = aTestVendorProduct();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        final ProductDetailsListener listener = invocation.getArgument(3);
+        if (invocation.getArgument(1).equals(product.sku())) {
+          listener.success(product);
+        } else {
+          listener.failure(new Vendor.Error(VendorConstants.PRODUCT_DETAILS_NOT_FOUND, -1));
+        }
+        return null;
+      }
+    }).when(vendor).getProductDetails(any(Context.class), any(String.class), eq(false), any(ProductDetailsListener.class));
+
+    final Cashier cashier = Cashier.forVendor(context, vendor).build();
+    final ProductsDetailsPageListener listener = mock(ProductsDetailsPageListener.class);
+    cashier.getProductDetails(Arrays.asList("missing", product.sku()), false, listener);
+
+    verify(listener).page(Collections.singletonList(product));
+    verify(listener).success(Collections.singletonList(product));
+    verify(listener, never()).failure(any(Vendor.Error.class));
+  }
+
+  @Test
+  public void dropsCachedProductDetailsWhenVendorReconnects() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Product product = aTestVendorProduct();
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withProductDetailsCache(cache).build();
+    cache.put(TEST_VENDOR_ID, product.sku(), false, product);
+    cache.put(TEST_VENDOR_ID, "other", false, product);
+    cashier.getProductDetails("missing", false, mock(ProductDetailsListener.class));
+    assertThat(cache.size()).isEqualTo(2);
+
+    when(testVendor.available()).thenReturn(false);
+    cashier.getProductDetails("later", false, mock(ProductDetailsListener.class));
+
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void keepsCachedProductDetailsOnFirstVendorConnect() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(false);
+    final Product product = aTestVendorProduct();
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+    cache.put(TEST_VENDOR_ID, product.sku(), false, product);
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withProductDetailsCache(cache).build();
+
+    cashier.getProductDetails("missing", false, mock(ProductDetailsListener.class));
+    when(testVendor.available()).thenReturn(true);
+    cashier.getProductDetails("later", false, mock(ProductDetailsListener.class));
+
+    assertThat(cache.get(TEST_VENDOR_ID, product.sku(), false).product).isEqualTo(product);
+  }
+
+  @Test
+  public void coalescesIdenticalInventoryQueries() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final Cashier first = Cashier.forVendor(context, testVendor).build();
+    final Cashier second = Cashier.forVendor(context, testVendor).build();
+    final InventoryListener firstListener = mock(InventoryListener.class);
+    final InventoryListener secondListener = mock(InventoryListener.class);
+    final InventoryListener otherListener = mock(InventoryListener.class);
+    first.getInventory(Arrays.asList("a", "b"), null, firstListener);
+    second.getInventory(Arrays.asList("b", "a", "a"), null, secondListener);
+    first.getInventory(Arrays.asList("a"), null, otherListener);
+    assertThat(vendorListeners).hasSize(2);
+
+    final Inventory inventory = new Inventory.Builder().build();
+    vendorListeners.get(0).success(inventory);
+    verify(firstListener).success(inventory);
+    verify(secondListener).success(inventory);
+    verifyZeroInteractions(otherListener);
+
+    final Vendor.Error error = new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, 6);
+    vendorListeners.get(1).failure(error);
+    verify(otherListener).failure(error);
+
+    // Completed queries are not joined anymore
+    first.getInventory(Arrays.asList("a", "b"), null, firstListener);
+    assertThat(vendorListeners).hasSize(3);
+  }
+
+  @Test
+  public void disposingCashierKeepsQueriesOfOthers() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final Cashier first = Cashier.forVendor(context, testVendor).build();
+    final Cashier second = Cashier.forVendor(context, testVendor).build();
+    final InventoryListener firstListener = mock(InventoryListener.class);
+    final InventoryListener secondListener = mock(InventoryListener.class);
+    first.getInventory(firstListener);
+    second.getInventory(secondListener);
+    first.dispose();
+
+    final Inventory inventory = new Inventory.Builder().build();
+    vendorListeners.get(0).success(inventory);
+    verifyZeroInteractions(firstListener);
+    verify(secondListener).success(inventory);
+  }
+
+  @Test
+  public void disposingCashierOfSharedVendorKeepsQueriesOfOthers() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final Product product = Product.create(TEST_VENDOR_ID, "a", "a", "a", "a", "a", true, 1L);
+    final Cashier first = Cashier.forProduct(context, product).build();
+    final Cashier second = Cashier.forProduct(context, product).build();
+    final InventoryListener firstListener = mock(InventoryListener.class);
+    final InventoryListener secondListener = mock(InventoryListener.class);
+    first.getInventory(firstListener);
+    second.getInventory(secondListener);
+    first.dispose();
+    verify(testVendor, never()).dispose(any(Context.class));
+
+    final Inventory inventory = new Inventory.Builder().build();
+    vendorListeners.get(0).success(inventory);
+    verifyZeroInteractions(firstListener);
+    verify(secondListener).success(inventory);
+  }
+
+  @Test
+  public void coalescesIdenticalProductDetailsQueries() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final List<ProductDetailsListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((ProductDetailsListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getProductDetails(any(Context.class), any(String.class), any(Boolean.class), any(ProductDetailsListener.class));
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor).build();
+    final ProductDetailsListener firstListener = mock(ProductDetailsListener.class);
+    final ProductDetailsListener secondListener = mock(ProductDetailsListener.class);
+    cashier.getProductDetails("sku", false, firstListener);
+    cashier.getProductDetails("sku", false, secondListener);
+    cashier.getProductDetails("sku", true, mock(ProductDetailsListener.class));
+    assertThat(vendorListeners).hasSize(2);
+
+    final Product product = aTestVendorProduct();
+    vendorListeners.get(0).success(product);
+    verify(firstListener).success(product);
+    verify(secondListener).success(product);
+  }
+
+  @Test
+  public void getsStoredPurchasesOfVendor() {
+    final Purchase purchase = CashierPurchase.create(aTestVendorProduct(), "a", "b", "c", "d");
+    final Purchase otherPurchase = CashierPurchase.create(ValueFactory.aProduct(), "e", "f", "g", "h");
+    final PurchaseStore store = mock(PurchaseStore.class);
+    when(store.purchases()).thenReturn(Arrays.asList(purchase, otherPurchase));
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withPurchaseStore(store).build();
+    assertThat(cashier.storedPurchases()).containsExactly(purchase);
+    assertThat(Cashier.forVendor(context, testVendor).build().storedPurchases()).isEmpty();
+    verify(testVendor, times(0)).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+  }
+
+
+  @Test
+  public void recordsOperationMetrics() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final Vendor.Error error = new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, 6);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((InventoryListener) invocation.getArgument(3)).failure(error);
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final HistogramMetrics metrics = new HistogramMetrics();
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withMetrics(metrics).build();
+    cashier.getInventory(mock(InventoryListener.class));
+
+    final HistogramMetrics.Snapshot snapshot = metrics.snapshot();
+    assertThat(snapshot.latency(TEST_VENDOR_ID, CashierMetrics.Operation.INVENTORY).count()).isEqualTo(1);
+    // The vendor mock is never available, so connecting to it is measured too
+    assertThat(snapshot.latency(TEST_VENDOR_ID, CashierMetrics.Operation.INITIALIZE).count()).isEqualTo(1);
+    assertThat(snapshot.errorCount(TEST_VENDOR_ID, CashierMetrics.Operation.INVENTORY,
+        VendorConstants.INVENTORY_QUERY_FAILURE)).isEqualTo(1);
+    assertThat(snapshot.vendorCodeCount(TEST_VENDOR_ID, CashierMetrics.Operation.INVENTORY, 6)).isEqualTo(1);
+    assertThat(snapshot.queueDepths()).containsKey(CashierMetrics.QUEUE_IN_FLIGHT);
+  }
+
+  @Test
+  public void passesSettingsToVendorPerCall() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.id()).thenReturn(TEST_VENDOR_ID);
+    final List<CallSettings> settings = new ArrayList<>();
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        settings.add(CallSettings.current());
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+    final Logger logger = mock(Logger.class);
+    final Executor executor = new BackgroundExecutor.Builder().build();
+    final ProductDetailsCache cache = new ProductDetailsCache.Builder().build();
+
+    final Cashier configured = Cashier.forVendor(context, testVendor)
+        .withLogger(logger)
+        .withBackgroundExecutor(executor)
+        .withProductDetailsCache(cache)
+        .build();
+    final Cashier defaults = Cashier.forVendor(context, testVendor).build();
+    configured.getInventory(mock(InventoryListener.class));
+    defaults.getInventory(mock(InventoryListener.class));
+
+    // Queries with different settings are not coalesced
+    assertThat(settings).hasSize(2);
+    assertThat(settings.get(0).logger()).isSameAs(logger);
+    assertThat(settings.get(0).backgroundExecutor()).isSameAs(executor);
+    assertThat(settings.get(0).productDetailsCache()).isSameAs(cache);
+    assertThat(settings.get(1)).isEqualTo(CallSettings.DEFAULT);
+    // Operations log to their own call's logger, the vendor only falls back to the last one set
+    verify(testVendor).setLogger(logger);
+    for (final InventoryListener listener : vendorListeners) {
+      listener.failure(new Vendor.Error(VendorConstants.INVENTORY_QUERY_FAILURE, -1));
+    }
+  }
+
+  @Test
+  public void unregistersSettingsOfOpenCallsOnDispose() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final int[] operationId = new int[1];
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        operationId[0] = CashierTrace.currentOperationId();
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withLogger(mock(Logger.class)).build();
+    cashier.getInventory(mock(InventoryListener.class));
+
+    final CashierTrace.Scope scope = CashierTrace.enter(operationId[0]);
+    try {
+      assertThat(CallSettings.current()).isNotEqualTo(CallSettings.DEFAULT);
+      cashier.dispose();
+      assertThat(CallSettings.current()).isEqualTo(CallSettings.DEFAULT);
+    } finally {
+      scope.exit();
+    }
+  }
+
+  @Test
+  public void deliversOnCallbackExecutor() {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.available()).thenReturn(true);
+    final Product product = aTestVendorProduct();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        final ProductDetailsListener listener = invocation.getArgument(3);
+        listener.success(product);
+        return null;
+      }
+    }).when(testVendor).getProductDetails(any(Context.class), any(String.class), any(Boolean.class), any(ProductDetailsListener.class));
+    final List<Runnable> callbacks = new ArrayList<>();
+    final CallbackExecutor executor = CallbackExecutor.from(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        callbacks.add(command);
+      }
+    });
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor)
+        .withCallbackExecutor(executor)
+        .withProductDetailsCache(new ProductDetailsCache.Builder().build())
+        .build();
+    final ProductDetailsListener listener = mock(ProductDetailsListener.class);
+    cashier.getProductDetails(product.sku(), false, listener);
+    cashier.getProductDetails(product.sku(), false, listener);
+
+    verify(listener, never()).success(product);
+    assertThat(callbacks).hasSize(2);
+    for (final Runnable callback : callbacks) {
+      callback.run();
+    }
+    verify(listener, times(2)).success(product);
+  }
+
+  @Test
+  public void timesOutInventoryAndDropsLateResponse() throws Exception {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    when(testVendor.id()).thenReturn(TEST_VENDOR_ID);
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final OperationTimeouts timeouts = new OperationTimeouts.Builder()
+        .timeout(10, TimeUnit.MILLISECONDS)
+        .build();
+    final CountDownLatch timedOut = new CountDownLatch(1);
+    timeouts.timeoutExecutor(new Executor() {
+      @Override
+      public void execute(Runnable runnable) {
+        runnable.run();
+        timedOut.countDown();
+      }
+    });
+    final Cashier cashier = Cashier.forVendor(context, testVendor).withOperationTimeouts(timeouts).build();
+    final InventoryListener listener = mock(InventoryListener.class);
+    cashier.getInventory(listener);
+    assertThat(timedOut.await(5, TimeUnit.SECONDS)).isTrue();
+    verify(listener).failure(new Vendor.Error(VendorConstants.TIMED_OUT, -1));
+
+    // A new query is not joined to the timed out one, nor given its late response
+    final InventoryListener nextListener = mock(InventoryListener.class);
+    cashier.getInventory(nextListener);
+    assertThat(vendorListeners).hasSize(2);
+    vendorListeners.get(0).success(new Inventory.Builder().build());
+    verify(listener, never()).success(any(Inventory.class));
+    verify(nextListener, never()).success(any(Inventory.class));
+  }
+
+  @Test
+  public void getsInventoryAsFuture() throws Exception {
+    doAnswer(initializationSuccess).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
+    final List<InventoryListener> vendorListeners = new ArrayList<>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        vendorListeners.add((InventoryListener) invocation.getArgument(3));
+        return null;
+      }
+    }).when(testVendor).getInventory(any(Context.class), ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<String>>any(), any(InventoryListener.class));
+
+    final Cashier cashier = Cashier.forVendor(context, testVendor).build();
+    final CashierFuture<Inventory> future = cashier.getInventory();
+    assertThat(future.isDone()).isFalse();
+
+    final Inventory inventory = new Inventory.Builder().build();
+    vendorListeners.get(0).success(inventory);
+    assertThat(future.get()).isEqualTo(inventory);
+  }
+
   @Test
   public void purchaseUninitializedVendor() {
     doAnswer(initializationFailure).when(testVendor).initialize(any(Context.class), any(Vendor.InitializationListener.class));
@@ -234,4 +1157,8 @@ public class CashierTest {
     cashier.purchase(activity, product, devPayload, listener);
     Cashier.sPurchaseInProgress = false;
   }
+
+  private Product aTestVendorProduct() {
+    return Product.create(TEST_VENDOR_ID, "sku", "$1", "USD", "name", "description", false, 1000000L);
+  }
 }
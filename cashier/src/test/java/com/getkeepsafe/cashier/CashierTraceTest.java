@@ -0,0 +1,81 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CashierTraceTest {
+  @Test
+  public void givesDistinctOperationIds() {
+    final int first = CashierTrace.newOperationId();
+    final int second = CashierTrace.newOperationId();
+    assertThat(first).isNotEqualTo(CashierTrace.NO_OPERATION);
+    assertThat(second).isNotEqualTo(first);
+  }
+
+  @Test
+  public void restoresPreviousOperationOnExit() {
+    assertThat(CashierTrace.currentOperationId()).isEqualTo(CashierTrace.NO_OPERATION);
+    final CashierTrace.Scope outer = CashierTrace.enter(1);
+    final CashierTrace.Scope inner = CashierTrace.enter(2);
+    assertThat(CashierTrace.currentOperationId()).isEqualTo(2);
+    inner.exit();
+    assertThat(CashierTrace.currentOperationId()).isEqualTo(1);
+    outer.exit();
+    assertThat(CashierTrace.currentOperationId()).isEqualTo(CashierTrace.NO_OPERATION);
+  }
+
+  @Test
+  public void tagsMessagesWithCurrentOperation() {
+    assertThat(CashierTrace.tag("message")).isEqualTo("message");
+    final CashierTrace.Scope scope = CashierTrace.enter(42);
+    try {
+      assertThat(CashierTrace.tag("message")).isEqualTo("[op 42] message");
+    } finally {
+      scope.exit();
+    }
+  }
+
+  @Test
+  public void carriesOperationAcrossThreads() throws InterruptedException {
+    final AtomicInteger seen = new AtomicInteger(-1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Runnable wrapped;
+    final CashierTrace.Scope scope = CashierTrace.enter(7);
+    try {
+      wrapped = CashierTrace.wrap("stage", new Runnable() {
+        @Override
+        public void run() {
+          seen.set(CashierTrace.currentOperationId());
+          latch.countDown();
+        }
+      });
+    } finally {
+      scope.exit();
+    }
+
+    new Thread(wrapped).start();
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(seen.get()).isEqualTo(7);
+  }
+
+  @Test
+  public void doesNotWrapOutsideOfOperations() {
+    final Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+      }
+    };
+    assertThat(CashierTrace.wrap("stage", runnable)).isSameAs(runnable);
+  }
+
+  @Test
+  public void opensNoSectionWhenDisabled() {
+    CashierTrace.setEnabled(false);
+    assertThat(CashierTrace.beginSection("stage")).isFalse();
+  }
+}
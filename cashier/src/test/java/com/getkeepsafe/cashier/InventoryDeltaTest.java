@@ -0,0 +1,83 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class InventoryDeltaTest {
+  @Test
+  public void reportsEverythingAddedWithoutPreviousInventory() {
+    final CashierPurchase purchase = ValueFactory.aPurchase();
+    final Product product = ValueFactory.aProduct();
+    final Inventory inventory = new Inventory.Builder()
+        .addPurchase(purchase)
+        .addProduct(product)
+        .build();
+
+    final InventoryDelta delta = InventoryDelta.between(null, inventory);
+    assertThat(delta.addedPurchases()).containsExactly(purchase);
+    assertThat(delta.addedProducts()).containsExactly(product);
+    assertThat(delta.removedPurchases()).isEmpty();
+    assertThat(delta.changedPurchases()).isEmpty();
+    assertThat(delta.isEmpty()).isFalse();
+  }
+
+  @Test
+  public void diffsPurchases() {
+    final CashierPurchase kept = ValueFactory.aPurchase();
+    final CashierPurchase removed = ValueFactory.aPurchase();
+    final CashierPurchase changed = ValueFactory.aPurchase();
+    final CashierPurchase added = ValueFactory.aPurchase();
+    final CashierPurchase changedNow = CashierPurchase.create(changed.product(), changed.orderId(),
+        changed.token(), "refunded receipt", changed.developerPayload());
+
+    final Inventory previous = new Inventory.Builder()
+        .addPurchase(kept)
+        .addPurchase(removed)
+        .addPurchase(changed)
+        .build();
+    final Inventory current = new Inventory.Builder()
+        .addPurchase(kept)
+        .addPurchase(changedNow)
+        .addPurchase(added)
+        .build();
+
+    final InventoryDelta delta = InventoryDelta.between(previous, current);
+    assertThat(delta.addedPurchases()).containsExactly(added);
+    assertThat(delta.removedPurchases()).containsExactly(removed);
+    assertThat(delta.changedPurchases()).containsExactly(changedNow);
+  }
+
+  @Test
+  public void diffsProducts() {
+    final Product kept = ValueFactory.aProduct();
+    final Product removed = ValueFactory.aProduct();
+    final Product changed = ValueFactory.aProduct();
+    final Product changedNow = Product.create(changed.vendorId(), changed.sku(), "$2",
+        changed.currency(), changed.name(), changed.description(), changed.isSubscription(), 2000000L);
+
+    final Inventory previous = new Inventory.Builder()
+        .addProduct(kept)
+        .addProduct(removed)
+        .addProduct(changed)
+        .build();
+    final Inventory current = new Inventory.Builder()
+        .addProduct(kept)
+        .addProduct(changedNow)
+        .build();
+
+    final InventoryDelta delta = InventoryDelta.between(previous, current);
+    assertThat(delta.addedProducts()).isEmpty();
+    assertThat(delta.removedProducts()).containsExactly(removed);
+    assertThat(delta.changedProducts()).containsExactly(changedNow);
+  }
+
+  @Test
+  public void reportsNoChangesForEqualInventories() {
+    final Inventory inventory = new Inventory.Builder()
+        .addPurchase(ValueFactory.aPurchase())
+        .addProduct(ValueFactory.aProduct())
+        .build();
+    assertThat(InventoryDelta.between(inventory, inventory).isEmpty()).isTrue();
+  }
+}
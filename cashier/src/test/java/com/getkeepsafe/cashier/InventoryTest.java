@@ -50,6 +50,41 @@ public class InventoryTest {
     }
   }
 
+  @Test
+  public void buildsIndexedSnapshot() {
+    final CashierPurchase purchase = ValueFactory.aPurchase();
+    final Product product = ValueFactory.aProduct();
+    final Inventory.Builder builder = new Inventory.Builder()
+        .addPurchase(purchase)
+        .addProduct(product);
+    final Inventory inventory = builder.build();
+    builder.addPurchase(ValueFactory.aPurchase());
+
+    assertThat(inventory.purchases()).containsExactly(purchase);
+    assertThat(inventory.products()).containsExactly(product);
+    assertThat(inventory.purchaseForSku(purchase.product().sku())).isEqualTo(purchase);
+    assertThat(inventory.purchaseForToken(purchase.token())).isEqualTo(purchase);
+    assertThat(inventory.purchaseForOrderId(purchase.orderId())).isEqualTo(purchase);
+    assertThat(inventory.productForSku(product.sku())).isEqualTo(product);
+    assertThat(inventory.owns(purchase.product().sku())).isTrue();
+    assertThat(inventory.owns(product.sku())).isFalse();
+    assertThat(inventory.purchaseForToken("missing")).isNull();
+    assertThat(inventory.productForSku("missing")).isNull();
+  }
+
+  @Test
+  public void indexesAddedPurchases() {
+    final CashierPurchase purchase = ValueFactory.aPurchase();
+    final Inventory inventory = new Inventory();
+    inventory.addPurchase(purchase);
+    assertThat(inventory.purchaseForToken(purchase.token())).isEqualTo(purchase);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void builtInventoryIsImmutable() {
+    new Inventory.Builder().build().addPurchase(ValueFactory.aPurchase());
+  }
+
   @Test(expected = UnsupportedOperationException.class)
   public void returnsImmutableProductList() {
     final Inventory inventory = new Inventory();
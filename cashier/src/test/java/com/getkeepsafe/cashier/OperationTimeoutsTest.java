@@ -0,0 +1,86 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class OperationTimeoutsTest {
+  final ProductDetailsCacheTest.FakeClock clock = new ProductDetailsCacheTest.FakeClock();
+
+  @Test
+  public void usesFixedTimeoutUntilEnoughLatenciesObserved() {
+    final OperationTimeouts timeouts = new OperationTimeouts.Builder()
+        .timeout(10, TimeUnit.SECONDS)
+        .adaptive(true)
+        .minTimeout(1, TimeUnit.SECONDS)
+        .maxTimeout(30, TimeUnit.SECONDS)
+        .build();
+    for (int i = 1; i < OperationTimeouts.MIN_SAMPLES; i++) {
+      timeouts.record("vendor", "inventory", TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    assertThat(timeouts.timeoutNanos("vendor", "inventory")).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+
+    timeouts.record("vendor", "inventory", TimeUnit.SECONDS.toNanos(2));
+    // The slowest response is the 99th percentile of 20
+    assertThat(timeouts.timeoutNanos("vendor", "inventory")).isEqualTo(TimeUnit.SECONDS.toNanos(4));
+    assertThat(timeouts.timeoutNanos("vendor", "consume")).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+    assertThat(timeouts.timeoutNanos("other", "inventory")).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @Test
+  public void clampsAdaptiveTimeouts() {
+    final OperationTimeouts timeouts = new OperationTimeouts.Builder()
+        .adaptive(true)
+        .minTimeout(1, TimeUnit.SECONDS)
+        .maxTimeout(30, TimeUnit.SECONDS)
+        .build();
+    for (int i = 0; i < OperationTimeouts.MIN_SAMPLES; i++) {
+      timeouts.record("vendor", "fast", TimeUnit.MILLISECONDS.toNanos(1));
+      timeouts.record("vendor", "slow", TimeUnit.MINUTES.toNanos(1));
+    }
+    assertThat(timeouts.timeoutNanos("vendor", "fast")).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    assertThat(timeouts.timeoutNanos("vendor", "slow")).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+  }
+
+  @Test
+  public void finishesDeadlineOnce() {
+    final OperationTimeouts timeouts = new OperationTimeouts.Builder()
+        .adaptive(true)
+        .clock(clock)
+        .build();
+    final OperationTimeouts.Deadline deadline = timeouts.start("vendor", "inventory", new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    clock.advance(1);
+    assertThat(deadline.finish()).isTrue();
+    assertThat(deadline.finish()).isFalse();
+    assertThat(deadline.expire()).isFalse();
+  }
+
+  @Test
+  public void recordsTimeoutAsLatencyOfExpiredDeadline() {
+    final OperationTimeouts timeouts = new OperationTimeouts.Builder()
+        .timeout(10, TimeUnit.SECONDS)
+        .adaptive(true)
+        .minTimeout(1, TimeUnit.SECONDS)
+        .maxTimeout(60, TimeUnit.SECONDS)
+        .clock(clock)
+        .build();
+    for (int i = 1; i < OperationTimeouts.MIN_SAMPLES; i++) {
+      timeouts.record("vendor", "inventory", TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    final OperationTimeouts.Deadline deadline = timeouts.start("vendor", "inventory", new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    assertThat(deadline.expire()).isTrue();
+    assertThat(deadline.finish()).isFalse();
+    // The expired call counts as taking the 10 second timeout
+    assertThat(timeouts.timeoutNanos("vendor", "inventory")).isEqualTo(TimeUnit.SECONDS.toNanos(20));
+  }
+}
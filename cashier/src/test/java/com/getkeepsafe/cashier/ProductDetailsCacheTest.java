@@ -0,0 +1,101 @@
+package com.getkeepsafe.cashier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ProductDetailsCacheTest {
+  final Locale defaultLocale = Locale.getDefault();
+  final FakeClock clock = new FakeClock();
+  final ProductDetailsCache cache = new ProductDetailsCache.Builder()
+      .maxEntries(2)
+      .expireAfter(10, TimeUnit.SECONDS)
+      .staleWhileRevalidate(20, TimeUnit.SECONDS)
+      .notFoundExpireAfter(1, TimeUnit.SECONDS)
+      .clock(clock)
+      .build();
+
+  @After
+  public void teardown() {
+    Locale.setDefault(defaultLocale);
+  }
+
+  @Test
+  public void servesFreshThenStaleThenNothing() {
+    final Product product = ValueFactory.aProduct();
+    cache.put("vendor", "sku", false, product);
+
+    ProductDetailsCache.Entry entry = cache.get("vendor", "sku", false);
+    assertThat(entry.product).isEqualTo(product);
+    assertThat(cache.isFresh(entry)).isTrue();
+    assertThat(cache.get("vendor", "sku", true)).isNull();
+
+    clock.advance(15);
+    entry = cache.get("vendor", "sku", false);
+    assertThat(entry.product).isEqualTo(product);
+    assertThat(cache.isFresh(entry)).isFalse();
+    assertThat(cache.beginRefresh(entry)).isTrue();
+    assertThat(cache.beginRefresh(entry)).isFalse();
+
+    clock.advance(15);
+    assertThat(cache.get("vendor", "sku", false)).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void cachesNotFoundBriefly() {
+    final Vendor.Error error = new Vendor.Error(VendorConstants.PRODUCT_DETAILS_NOT_FOUND, 4);
+    cache.putNotFound("vendor", "sku", false, error);
+    assertThat(cache.get("vendor", "sku", false).error).isEqualTo(error);
+
+    clock.advance(1);
+    assertThat(cache.get("vendor", "sku", false)).isNull();
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    cache.put("vendor", "first", false, ValueFactory.aProduct());
+    cache.put("vendor", "second", false, ValueFactory.aProduct());
+    cache.get("vendor", "first", false);
+    cache.put("vendor", "third", false, ValueFactory.aProduct());
+
+    assertThat(cache.get("vendor", "first", false)).isNotNull();
+    assertThat(cache.get("vendor", "second", false)).isNull();
+    assertThat(cache.get("vendor", "third", false)).isNotNull();
+  }
+
+  @Test
+  public void invalidatesVendor() {
+    cache.put("vendor", "sku", false, ValueFactory.aProduct());
+    cache.put("other", "sku", false, ValueFactory.aProduct());
+    cache.invalidate("vendor");
+
+    assertThat(cache.get("vendor", "sku", false)).isNull();
+    assertThat(cache.get("other", "sku", false)).isNotNull();
+  }
+
+  @Test
+  public void invalidatesOnLocaleChange() {
+    Locale.setDefault(Locale.US);
+    cache.put("vendor", "sku", false, ValueFactory.aProduct());
+    Locale.setDefault(Locale.FRANCE);
+    assertThat(cache.get("vendor", "sku", false)).isNull();
+  }
+
+  static class FakeClock implements ProductDetailsCache.Clock {
+    long now = 1000L;
+
+    void advance(long seconds) {
+      now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    @Override
+    public long nanoTime() {
+      return now;
+    }
+  }
+}
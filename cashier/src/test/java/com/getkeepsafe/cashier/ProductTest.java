@@ -2,12 +2,22 @@ package com.getkeepsafe.cashier;
 
 import android.os.Bundle;
 
+import com.getkeepsafe.cashier.binary.BinaryReader;
+import com.getkeepsafe.cashier.binary.BinaryWriter;
+import com.getkeepsafe.cashier.json.JsonReader;
+import com.getkeepsafe.cashier.json.JsonWriter;
+import com.getkeepsafe.cashier.json.MalformedJsonException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static com.google.common.truth.Truth.assertThat;
 
 @RunWith(RobolectricTestRunner.class)
@@ -43,6 +53,60 @@ public class ProductTest {
     assertThat(Product.create(product.toJsonString())).isEqualTo(product);
   }
 
+  @Test
+  public void streamsToJson() throws IOException, JSONException {
+    final StringWriter out = new StringWriter();
+    product.writeJson(new JsonWriter(out));
+    assertJsonHasProperties(new JSONObject(out.toString()), product);
+  }
+
+  @Test
+  public void streamsFromJson() throws IOException, JSONException {
+    final JsonReader reader = new JsonReader(new StringReader(product.toJsonString()));
+    assertThat(Product.create(reader)).isEqualTo(product);
+  }
+
+  @Test
+  public void streamingSkipsUnknownKeys() throws IOException {
+    final Product streamed = Product.create(new JsonReader(new StringReader(
+        "{\"micros-price\":1," +
+            "\"vendor-id\":\"1\"," +
+            "\"unknown\":{\"nested\":[1,\"two\",null]}," +
+            "\"price\":\"1\"," +
+            "\"name\":\"1\"," +
+            "\"description\":\"1\"," +
+            "\"currency\":\"1\"," +
+            "\"subscription\":false," +
+            "\"sku\":\"1\"}")));
+    assertThat(streamed.sku()).isEqualTo("1");
+    assertThat(streamed.microsPrice()).isEqualTo(1L);
+  }
+
+  @Test(expected = MalformedJsonException.class)
+  public void streamingRejectsMissingKeys() throws IOException {
+    Product.create(new JsonReader(new StringReader("{\"sku\":\"1\"}")));
+  }
+
+  @Test
+  public void binaryRoundTrip() throws IOException {
+    final BinaryWriter writer = new BinaryWriter();
+    product.writeTo(writer);
+    assertThat(Product.create(new BinaryReader(writer.toByteArray()))).isEqualTo(product);
+  }
+
+  @Test
+  public void binaryWritesRepeatedProductsOnce() throws IOException {
+    final BinaryWriter writer = new BinaryWriter();
+    product.writeTo(writer);
+    final int sizeAfterFirst = writer.size();
+    product.writeTo(writer);
+    assertThat(writer.size() - sizeAfterFirst).isEqualTo(1);
+
+    final BinaryReader reader = new BinaryReader(writer.toByteArray());
+    final Product first = Product.create(reader);
+    assertThat(Product.create(reader)).isSameAs(first);
+  }
+
   @Test
   public void isParcelable() {
     final Bundle bundle = new Bundle();
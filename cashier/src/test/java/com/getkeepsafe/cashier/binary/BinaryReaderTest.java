@@ -0,0 +1,75 @@
+package com.getkeepsafe.cashier.binary;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class BinaryReaderTest {
+  @Test
+  public void readsWhatWasWritten() throws MalformedBinaryException {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeBoolean(true);
+    writer.writeVarint(0);
+    writer.writeVarint(300);
+    writer.writeVarint(Long.MAX_VALUE);
+    writer.writeSignedVarint(-1);
+    writer.writeSignedVarint(Long.MIN_VALUE);
+    writer.writeUniqueString("plain");
+    writer.writeUniqueString("\u00e9\u20ac\ud83d\ude00");
+
+    final BinaryReader reader = new BinaryReader(writer.toByteArray());
+    assertThat(reader.version()).isEqualTo(BinaryWriter.FORMAT_VERSION);
+    assertThat(reader.readBoolean()).isTrue();
+    assertThat(reader.readVarint()).isEqualTo(0L);
+    assertThat(reader.readVarint()).isEqualTo(300L);
+    assertThat(reader.readVarint()).isEqualTo(Long.MAX_VALUE);
+    assertThat(reader.readSignedVarint()).isEqualTo(-1L);
+    assertThat(reader.readSignedVarint()).isEqualTo(Long.MIN_VALUE);
+    assertThat(reader.readUniqueString()).isEqualTo("plain");
+    assertThat(reader.readUniqueString()).isEqualTo("\u00e9\u20ac\ud83d\ude00");
+    assertThat(reader.hasRemaining()).isFalse();
+  }
+
+  @Test
+  public void encodesSmallValuesCompactly() {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeVarint(127);
+    writer.writeSignedVarint(-64);
+    assertThat(writer.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void sharesRepeatedStrings() throws MalformedBinaryException {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeString("com.android.vending");
+    final int sizeAfterFirst = writer.size();
+    writer.writeString("com.android.vending");
+    writer.writeString("other");
+    assertThat(writer.size() - sizeAfterFirst).isEqualTo(1 + 1 + 1 + "other".length());
+
+    final BinaryReader reader = new BinaryReader(writer.toByteArray());
+    final String first = reader.readString();
+    assertThat(reader.readString()).isSameAs(first);
+    assertThat(reader.readString()).isEqualTo("other");
+  }
+
+  @Test(expected = MalformedBinaryException.class)
+  public void rejectsUnknownVersions() throws MalformedBinaryException {
+    new BinaryReader(new byte[]{(byte) (BinaryWriter.FORMAT_VERSION + 1)});
+  }
+
+  @Test(expected = MalformedBinaryException.class)
+  public void rejectsTruncatedData() throws MalformedBinaryException {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeUniqueString("truncated");
+    final byte[] bytes = writer.toByteArray();
+    new BinaryReader(bytes, 0, bytes.length - 1).readUniqueString();
+  }
+
+  @Test(expected = MalformedBinaryException.class)
+  public void rejectsDanglingReferences() throws MalformedBinaryException {
+    final BinaryWriter writer = new BinaryWriter();
+    writer.writeVarint(3);
+    new BinaryReader(writer.toByteArray()).readString();
+  }
+}
@@ -0,0 +1,128 @@
+package com.getkeepsafe.cashier.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class JsonReaderTest {
+  @Test
+  public void readsObjects() throws IOException {
+    final JsonReader reader = reader(" { \"a\" : \"b\", \"c\": 12, \"d\": true, \"e\": null } ");
+    reader.beginObject();
+    assertThat(reader.nextName()).isEqualTo("a");
+    assertThat(reader.nextString()).isEqualTo("b");
+    assertThat(reader.nextName()).isEqualTo("c");
+    assertThat(reader.nextLong()).isEqualTo(12L);
+    assertThat(reader.nextName()).isEqualTo("d");
+    assertThat(reader.nextBoolean()).isTrue();
+    assertThat(reader.nextName()).isEqualTo("e");
+    reader.nextNull();
+    assertThat(reader.hasNext()).isFalse();
+    reader.endObject();
+    assertThat(reader.peek()).isEqualTo(JsonToken.END_DOCUMENT);
+  }
+
+  @Test
+  public void readsArrays() throws IOException {
+    final JsonReader reader = reader("[[], {}, 1, -2]");
+    reader.beginArray();
+    reader.beginArray();
+    reader.endArray();
+    reader.beginObject();
+    reader.endObject();
+    assertThat(reader.nextInt()).isEqualTo(1);
+    assertThat(reader.nextInt()).isEqualTo(-2);
+    reader.endArray();
+  }
+
+  @Test
+  public void readsEscapes() throws IOException {
+    final JsonReader reader = reader("[\"\\\"\\\\\\/\\n\\t\\u00e9\"]");
+    reader.beginArray();
+    assertThat(reader.nextString()).isEqualTo("\"\\/\n\té");
+  }
+
+  @Test
+  public void readsStringsLongerThanTheBuffer() throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      builder.append(i % 10);
+    }
+    final String value = builder.toString();
+    final JsonReader reader = reader("[\"" + value + "\", " + value.substring(0, 3000) + "1, \"a\\nb\"]");
+    reader.beginArray();
+    assertThat(reader.nextString()).isEqualTo(value);
+    reader.skipValue();
+    assertThat(reader.nextString()).isEqualTo("a\nb");
+    reader.endArray();
+  }
+
+  @Test
+  public void readsRepeatedAndEscapedNames() throws IOException {
+    final JsonReader reader = reader("[{\"a\": 1, \"b\": 2}, {\"a\": 3, \"\\u0062\": 4, \"ab\": 5}]");
+    reader.beginArray();
+    for (int i = 0; i < 2; i++) {
+      reader.beginObject();
+      assertThat(reader.nextName()).isEqualTo("a");
+      reader.skipValue();
+      assertThat(reader.nextName()).isEqualTo("b");
+      reader.skipValue();
+      if (i == 1) {
+        assertThat(reader.nextName()).isEqualTo("ab");
+        reader.skipValue();
+      }
+      reader.endObject();
+    }
+    reader.endArray();
+  }
+
+  @Test
+  public void coercesLikeJsonObject() throws IOException {
+    final JsonReader reader = reader("[1, \"2\", \"true\", 3.0]");
+    reader.beginArray();
+    assertThat(reader.nextString()).isEqualTo("1");
+    assertThat(reader.nextLong()).isEqualTo(2L);
+    assertThat(reader.nextBoolean()).isTrue();
+    assertThat(reader.nextLong()).isEqualTo(3L);
+  }
+
+  @Test
+  public void skipsNestedValues() throws IOException {
+    final JsonReader reader = reader("{\"a\": {\"b\": [1, {\"c\": \"}\"}]}, \"d\": 1}");
+    reader.beginObject();
+    reader.nextName();
+    reader.skipValue();
+    assertThat(reader.nextName()).isEqualTo("d");
+  }
+
+  @Test(expected = MalformedJsonException.class)
+  public void rejectsTypeMismatch() throws IOException {
+    final JsonReader reader = reader("{\"a\": {}}");
+    reader.beginObject();
+    reader.nextName();
+    reader.nextString();
+  }
+
+  @Test(expected = MalformedJsonException.class)
+  public void rejectsTruncatedInput() throws IOException {
+    final JsonReader reader = reader("{\"a\": \"b");
+    reader.beginObject();
+    reader.nextName();
+    reader.nextString();
+  }
+
+  @Test(expected = MalformedJsonException.class)
+  public void rejectsMultipleTopLevelValues() throws IOException {
+    final JsonReader reader = reader("{} {}");
+    reader.beginObject();
+    reader.endObject();
+    reader.peek();
+  }
+
+  private static JsonReader reader(String json) {
+    return new JsonReader(new StringReader(json));
+  }
+}
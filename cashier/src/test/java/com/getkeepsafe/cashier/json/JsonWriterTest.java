@@ -0,0 +1,50 @@
+package com.getkeepsafe.cashier.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class JsonWriterTest {
+  @Test
+  public void writesObjectsAndArrays() throws IOException {
+    final StringWriter out = new StringWriter();
+    final JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("a").value("b");
+    writer.name("c").value(12L);
+    writer.name("d").beginArray().value(true).nullValue().beginObject().endObject().endArray();
+    writer.endObject();
+    writer.close();
+    assertThat(out.toString()).isEqualTo("{\"a\":\"b\",\"c\":12,\"d\":[true,null,{}]}");
+  }
+
+  @Test
+  public void escapesStrings() throws IOException {
+    final StringWriter out = new StringWriter();
+    new JsonWriter(out).value("\"\\\n\u0001\u2028/");
+    assertThat(out.toString()).isEqualTo("\"\\\"\\\\\\n\\u0001\\u2028/\"");
+  }
+
+  @Test
+  public void writesUtf8ToStreams() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final JsonWriter writer = new JsonWriter(out);
+    writer.value("é");
+    writer.close();
+    assertThat(out.toString("UTF-8")).isEqualTo("\"é\"");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsValuesWithoutNames() throws IOException {
+    new JsonWriter(new StringWriter()).beginObject().value("a");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsMultipleTopLevelValues() throws IOException {
+    new JsonWriter(new StringWriter()).value("a").value("b");
+  }
+}
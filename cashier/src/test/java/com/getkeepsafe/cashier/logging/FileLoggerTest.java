@@ -0,0 +1,94 @@
+package com.getkeepsafe.cashier.logging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FileLoggerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static class CollectingSink implements FileLogger.RingBuffer.Sink {
+    final List<String> messages = new ArrayList<>();
+
+    @Override
+    public void write(long timeMillis, LogLevel level, String tag, String message) {
+      messages.add(level.name().charAt(0) + "/" + tag + ": " + message);
+    }
+  }
+
+  @Test
+  public void roundsCapacityUpToPowerOfTwo() {
+    assertThat(new FileLogger.RingBuffer(1).capacity()).isEqualTo(1);
+    assertThat(new FileLogger.RingBuffer(3).capacity()).isEqualTo(4);
+    assertThat(new FileLogger.RingBuffer(4096).capacity()).isEqualTo(4096);
+  }
+
+  @Test
+  public void drainsRecordsInOrderAndDropsWhenFull() throws IOException {
+    final FileLogger.RingBuffer records = new FileLogger.RingBuffer(4);
+    for (int i = 0; i < 6; i++) {
+      records.offer(i, LogLevel.INFO, "Tag", "message " + i);
+    }
+    assertThat(records.size()).isEqualTo(4);
+    assertThat(records.dropped()).isEqualTo(2);
+
+    final CollectingSink sink = new CollectingSink();
+    assertThat(records.drain(sink, 3)).isEqualTo(3);
+    assertThat(records.offer(6, LogLevel.WARN, "Tag", "message 6")).isTrue();
+    assertThat(records.drain(sink, 10)).isEqualTo(2);
+    assertThat(sink.messages).containsExactly(
+        "I/Tag: message 0", "I/Tag: message 1", "I/Tag: message 2", "I/Tag: message 3",
+        "W/Tag: message 6").inOrder();
+    assertThat(records.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void writesRecordsToFile() throws IOException {
+    final File file = new File(folder.getRoot(), "logs/cashier.log");
+    final FileLogger logger = new FileLogger.Builder(file)
+        .minLevel(LogLevel.INFO)
+        .build();
+    logger.d("Vendor", "skipped");
+    logger.i("Vendor", "first");
+    logger.e("Api", "second");
+    logger.flush();
+    logger.close();
+
+    final List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0)).endsWith(" I/Vendor: first");
+    assertThat(lines.get(1)).endsWith(" E/Api: second");
+    assertThat(logger.isLoggable(LogLevel.ERROR)).isFalse();
+  }
+
+  @Test
+  public void rotatesFiles() throws IOException {
+    final File file = new File(folder.getRoot(), "cashier.log");
+    final FileLogger logger = new FileLogger.Builder(file)
+        .maxFileSize(100)
+        .maxFiles(3)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      logger.i("Tag", "a message that takes up about half of a file " + i);
+      logger.flush();
+    }
+    logger.close();
+
+    final List<File> files = logger.files();
+    assertThat(files).containsExactly(
+        new File(file.getPath() + ".2"), new File(file.getPath() + ".1"), file).inOrder();
+    final List<String> newest = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+    assertThat(newest.get(newest.size() - 1)).endsWith("file 9");
+    assertThat(new File(file.getPath() + ".3").exists()).isFalse();
+  }
+}
@@ -0,0 +1,126 @@
+package com.getkeepsafe.cashier.logging;
+
+import com.getkeepsafe.cashier.CashierTrace;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TaggedLoggerTest {
+  static class RecordingLogger implements LevelAwareLogger {
+    final List<String> lines = new ArrayList<>();
+    final LogLevel minLevel;
+
+    RecordingLogger(LogLevel minLevel) {
+      this.minLevel = minLevel;
+    }
+
+    @Override
+    public boolean isLoggable(LogLevel level) {
+      return level.isAtLeast(minLevel);
+    }
+
+    @Override
+    public void d(String tag, String message) {
+      lines.add("D/" + tag + ": " + message);
+    }
+
+    @Override
+    public void i(String tag, String message) {
+      lines.add("I/" + tag + ": " + message);
+    }
+
+    @Override
+    public void w(String tag, String message) {
+      lines.add("W/" + tag + ": " + message);
+    }
+
+    @Override
+    public void e(String tag, String message) {
+      lines.add("E/" + tag + ": " + message);
+    }
+  }
+
+  @Test
+  public void formatsPlaceholders() {
+    assertThat(TaggedLogger.format("no placeholders")).isEqualTo("no placeholders");
+    assertThat(TaggedLogger.format("{} and {}", "a", 1)).isEqualTo("a and 1");
+    assertThat(TaggedLogger.format("{} only", "a", "b")).isEqualTo("a only");
+    assertThat(TaggedLogger.format("{} and {}", "a")).isEqualTo("a and {}");
+    assertThat(TaggedLogger.format("{}", (Object) null)).isEqualTo("null");
+  }
+
+  @Test
+  public void skipsMessagesBelowLevel() {
+    final RecordingLogger logger = new RecordingLogger(LogLevel.INFO);
+    final TaggedLogger log = new TaggedLogger("Tag");
+    log.setLogger(logger);
+
+    log.d(new TaggedLogger.Message() {
+      @Override
+      public String build() {
+        throw new AssertionError("Debug message should not be built");
+      }
+    });
+    log.d("debug {}", "arg");
+    log.i("info {}", "arg");
+    log.w("warn {} {}", 1, 2);
+    log.e("error");
+
+    assertThat(logger.lines).containsExactly("I/Tag: info arg", "W/Tag: warn 1 2", "E/Tag: error").inOrder();
+    assertThat(log.isLoggable(LogLevel.DEBUG)).isFalse();
+  }
+
+  @Test
+  public void writesDebugAsInfoToPlainLoggers() {
+    final List<String> lines = new ArrayList<>();
+    final TaggedLogger log = new TaggedLogger("Tag");
+    log.setLogger(new Logger() {
+      @Override
+      public void i(String tag, String message) {
+        lines.add(message);
+      }
+
+      @Override
+      public void w(String tag, String message) {
+      }
+
+      @Override
+      public void e(String tag, String message) {
+      }
+    });
+
+    log.d("debug {}", "arg");
+    assertThat(lines).containsExactly("debug arg");
+  }
+
+  @Test
+  public void buildsNothingWithoutLogger() {
+    final TaggedLogger log = new TaggedLogger("Tag");
+    assertThat(log.isLoggable(LogLevel.ERROR)).isFalse();
+    log.log(LogLevel.ERROR, new TaggedLogger.Message() {
+      @Override
+      public String build() {
+        throw new AssertionError("Message should not be built");
+      }
+    });
+  }
+
+  @Test
+  public void tagsMessagesWithCurrentOperation() {
+    final RecordingLogger logger = new RecordingLogger(LogLevel.DEBUG);
+    final TaggedLogger log = new TaggedLogger("Tag");
+    log.setLogger(logger);
+
+    final CashierTrace.Scope scope = CashierTrace.enter(3);
+    try {
+      log.d("message");
+    } finally {
+      scope.exit();
+    }
+    assertThat(logger.lines).containsExactly("D/Tag: [op 3] message");
+  }
+}
@@ -0,0 +1,40 @@
+package com.getkeepsafe.cashier.metrics;
+
+import com.getkeepsafe.cashier.Vendor;
+import com.getkeepsafe.cashier.VendorConstants;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class HistogramMetricsTest {
+  final HistogramMetrics metrics = new HistogramMetrics();
+
+  @Test
+  public void recordsLatenciesPerVendorAndOperation() {
+    metrics.recordLatency("vendor", CashierMetrics.Operation.INVENTORY, 100);
+    metrics.recordLatency("vendor", CashierMetrics.Operation.INVENTORY, 200);
+    metrics.recordLatency("vendor", CashierMetrics.Operation.CONSUME, 300);
+
+    final HistogramMetrics.Snapshot snapshot = metrics.snapshot();
+    assertThat(snapshot.latency("vendor", CashierMetrics.Operation.INVENTORY).count()).isEqualTo(2);
+    assertThat(snapshot.latency("vendor", CashierMetrics.Operation.CONSUME).max()).isEqualTo(300);
+    assertThat(snapshot.latency("vendor", CashierMetrics.Operation.PURCHASE).count()).isEqualTo(0);
+    assertThat(snapshot.latency("other", CashierMetrics.Operation.INVENTORY)).isNull();
+  }
+
+  @Test
+  public void countsErrorsAndQueueDepths() {
+    final Vendor.Error error = new Vendor.Error(VendorConstants.CONSUME_FAILURE, 6);
+    metrics.recordError("vendor", CashierMetrics.Operation.CONSUME, error);
+    metrics.recordError("vendor", CashierMetrics.Operation.CONSUME, error);
+    metrics.recordQueueDepth(CashierMetrics.QUEUE_IN_FLIGHT, 3);
+    metrics.recordQueueDepth(CashierMetrics.QUEUE_IN_FLIGHT, 1);
+
+    final HistogramMetrics.Snapshot snapshot = metrics.snapshot();
+    assertThat(snapshot.errorCount("vendor", CashierMetrics.Operation.CONSUME, VendorConstants.CONSUME_FAILURE)).isEqualTo(2);
+    assertThat(snapshot.vendorCodeCount("vendor", CashierMetrics.Operation.CONSUME, 6)).isEqualTo(2);
+    assertThat(snapshot.errorCount("vendor", CashierMetrics.Operation.INVENTORY, VendorConstants.CONSUME_FAILURE)).isEqualTo(0);
+    assertThat(snapshot.queueDepths()).containsEntry(CashierMetrics.QUEUE_IN_FLIGHT, 1);
+  }
+}
@@ -0,0 +1,45 @@
+package com.getkeepsafe.cashier.metrics;
+
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LatencyHistogramTest {
+  @Test
+  public void bucketsValuesWithinOneSixteenth() {
+    long previousIndex = -1;
+    for (long value = 0; value < 1_000_000; value += 7) {
+      final int index = LatencyHistogram.index(value);
+      assertThat(index).isAtLeast((int) previousIndex);
+      assertThat(LatencyHistogram.upperBound(index)).isAtLeast(value);
+      assertThat(LatencyHistogram.upperBound(index) - value).isAtMost(value / 16);
+      previousIndex = index;
+    }
+    assertThat(LatencyHistogram.index(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+  }
+
+  @Test
+  public void computesPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count()).isEqualTo(1000);
+    assertThat(snapshot.max()).isEqualTo(1_000_000L);
+    assertThat(snapshot.mean()).isWithin(1).of(500_500);
+    assertThat(snapshot.percentile(50)).isIn(Range.closed(500_000L, 500_000L * 17 / 16));
+    assertThat(snapshot.percentile(99)).isIn(Range.closed(990_000L, 1_000_000L));
+    assertThat(snapshot.percentile(100)).isEqualTo(1_000_000L);
+  }
+
+  @Test
+  public void emptySnapshot() {
+    final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+    assertThat(snapshot.count()).isEqualTo(0);
+    assertThat(snapshot.percentile(99)).isEqualTo(0);
+  }
+}